@@ -45,7 +45,7 @@ import static javax.lang.model.SourceVersion.*;
  * @author harald
  */
 @SupportedAnnotationTypes("org.tentackle.annotations.Analyze")
-@SupportedSourceVersion(RELEASE_6)
+@SupportedSourceVersion(RELEASE_8)
 public class AnalyzeProcessor extends AbstractProcessor {
   
   /**
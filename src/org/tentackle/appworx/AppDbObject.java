@@ -26,10 +26,12 @@ import org.tentackle.db.Db;
 import org.tentackle.db.DbGlobal;
 import org.tentackle.db.DbObject;
 import org.tentackle.db.DbObjectClassVariables;
+import org.tentackle.db.DbObjectFactory;
 import org.tentackle.db.DbRuntimeException;
 import org.tentackle.db.PreparedStatementWrapper;
 import org.tentackle.db.ResultSetWrapper;
 import org.tentackle.db.SqlHelper;
+import org.tentackle.db.rmi.DbObjectResult;
 import org.tentackle.ui.FormContainer;
 import org.tentackle.ui.FormTableEntry;
 import org.tentackle.util.ApplicationException;
@@ -45,7 +47,10 @@ import java.sql.Timestamp;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import org.tentackle.appworx.rmi.QbfCursorResult;
@@ -85,7 +90,7 @@ public abstract class AppDbObject extends DbObject implements ContextDependable
   // for AppDbObjectCache
   private transient long cacheAccessCount;        // access counter (if caching strategy is MOU)
   private transient long cacheAccessTime;         // last access time (if caching strategy is LRU)
-  private transient boolean expired;              // true = object is expired in all caches it belongs to
+  private transient volatile boolean expired;     // true = object is expired in all caches it belongs to
   
   // lazy method optimization
   private transient boolean showableLazy;
@@ -109,6 +114,10 @@ public abstract class AppDbObject extends DbObject implements ContextDependable
   public static final String TX_TRANSFER_EDITEDBY       = "transfer edited by";
   
   
+  /** number of IDs per statement for bulk operations on the being-edited-token **/
+  public static final int EDITEDBY_BULK_SIZE = 50;
+  
+  
   private static String[] classPath = { StringHelper.emptyString };       // classpath for loadClass()
   
   // the default name for a FormTable of this class of objects
@@ -371,6 +380,18 @@ public abstract class AppDbObject extends DbObject implements ContextDependable
   }
   
   
+  /**
+   * {@inheritDoc}
+   * <p>
+   * Overridden because the read security rules filter the objects per user.
+   * Objects are only shareable if security checks are disabled for this class.
+   */
+  @Override
+  public boolean isShareable() {
+    return !getAppDbObjectClassVariables().checkSecurity || this instanceof Security;
+  }
+  
+  
   /**
    * Checks whether object has been marked expired.
    * Expired objects will be reloaded from the database by
@@ -2019,27 +2040,11 @@ public abstract class AppDbObject extends DbObject implements ContextDependable
    * Overridden to clear editedBy if remote db.
    */
   @Override
-  public boolean updateObject(boolean withLinkedObjects) {
-    boolean rv = super.updateObject(withLinkedObjects);
-    if (rv && getDb().isRemote()) {
-      clearEditedBy();
-    }
-    return rv;
-  }
-  
-  
-  /**
-   * {@inheritDoc}
-   * <p>
-   * Overridden to clear editedBy if remote db.
-   */
-  @Override
-  public boolean save() {
-    boolean rv = super.save();
-    if (rv && getDb().isRemote()) {
+  protected void applyRemoteResult(DbObjectResult result, boolean insertOrUpdate) {
+    super.applyRemoteResult(result, insertOrUpdate);
+    if (insertOrUpdate && result.result) {
       clearEditedBy();
     }
-    return rv;
   }
   
   
@@ -2207,6 +2212,64 @@ public abstract class AppDbObject extends DbObject implements ContextDependable
   }
   
   
+  /**
+   * Prepares the bulk {@link #updateEditedBy(long[], Timestamp, long, Timestamp)} statement.
+   * 
+   * @return the statement id
+   */
+  protected int prepareUpdateEditedByBulkStatement() {
+    int stmtId = getAppDbObjectClassVariables().updateEditedByBulkStatementId;
+    if (stmtId == 0 || alwaysPrepare())  {
+      getDb().assertNotRemote();
+      stmtId = getDb().prepareStatement(
+              "UPDATE " + getTableName() + " SET " +     // NOI18N
+              FIELD_EDITEDBY + "=?, " +    // NOI18N
+              FIELD_EDITEDSINCE + "=?, " +     // NOI18N
+              FIELD_EDITEDEXPIRY + "=? WHERE " +    // NOI18N
+              FIELD_ID + " IN (" + editedByBulkParameters() + ") AND (" +     // NOI18N
+              FIELD_EDITEDBY + "=? OR " +         // the current user holds the token    // NOI18N
+              FIELD_EDITEDBY + "=0 OR " +         // no one holding the token    // NOI18N
+              FIELD_EDITEDEXPIRY + "<? OR " +     // token expired    // NOI18N
+              FIELD_EDITEDEXPIRY + " IS NULL)");  // or not set at all (pathologic case)            // NOI18N
+      getAppDbObjectClassVariables().updateEditedByBulkStatementId = stmtId;
+    }
+    return stmtId;
+  }
+  
+  
+  /**
+   * Prepares the select in the bulk {@link #updateEditedBy(long[], Timestamp, long, Timestamp)} statement.
+   * 
+   * @return the statement id
+   */
+  protected int prepareSelectEditedByBulkStatement() {
+    int stmtId = getAppDbObjectClassVariables().selectEditedByBulkStatementId;
+    if (stmtId == 0 || alwaysPrepare())  {
+      getDb().assertNotRemote();
+      stmtId = getDb().prepareStatement(
+              "SELECT " + FIELD_ID + "," + FIELD_EDITEDBY + "," + FIELD_EDITEDSINCE + "," + FIELD_EDITEDEXPIRY +    // NOI18N
+              " FROM " + getTableName() + " WHERE " + FIELD_ID + " IN (" + editedByBulkParameters() + ")");    // NOI18N
+      getAppDbObjectClassVariables().selectEditedByBulkStatementId = stmtId;
+    }
+    return stmtId;
+  }
+  
+  
+  /**
+   * Creates the parameter list for the IN-clause of the bulk statements.
+   */
+  private static String editedByBulkParameters() {
+    StringBuilder buf = new StringBuilder();
+    for (int i=0; i < EDITEDBY_BULK_SIZE; i++) {
+      if (i > 0) {
+        buf.append(',');
+      }
+      buf.append('?');
+    }
+    return buf.toString();
+  }
+  
+  
   /**
    * Gets the id of the user currently editing this object.
    *
@@ -2438,6 +2501,176 @@ public abstract class AppDbObject extends DbObject implements ContextDependable
   
 
 
+  /**
+   * Updates the editing info for a bunch of objects of this class at once.<br>
+   * Same as {@link #updateEditedBy(Timestamp, long, Timestamp)} but
+   * for many objects with a single statement per {@link #EDITEDBY_BULK_SIZE} objects.
+   * Only conflicting objects need an extra select.
+   * <p>
+   * The operation is not atomic, i.e. tokens are acquired or released
+   * for all objects that are not held by another user.
+   * Objects no longer in the database are reported as failed
+   * with an empty token (editedBy = 0).
+   * Applications should release the acquired tokens if the result is not empty
+   * and the whole set of objects is required.
+   * <p>
+   * The method does not check getUpdateEditedByTimeout()! This is due to the application.
+   * Applications should use {@link #updateEditedBy(Collection, Timestamp)}.
+   * This is an internal implementation only.
+   *
+   * @param ids the object IDs
+   * @param tokenExpiry holds the time the token will expire. Null to release token.
+   * @param userId is the current user
+   * @param curTime is the current system time
+   *
+   * @return the tokens of the objects held by other users or not found, indexed by ID. Empty if all done.
+   */
+  public Map<Long,AppDbObjectRemoteDelegate.BeingEditedToken> updateEditedBy(long[] ids, Timestamp tokenExpiry, long userId, Timestamp curTime) {
+    
+    Map<Long,AppDbObjectRemoteDelegate.BeingEditedToken> conflicts = new HashMap<Long,AppDbObjectRemoteDelegate.BeingEditedToken>();
+    
+    if (getDb().isRemote())  {
+      try {
+        conflicts = getRemoteDelegate().updateEditedBy(ids, tokenExpiry, userId, curTime);
+      }
+      catch (Exception e) {
+        DbGlobal.errorHandler.severe(getDb(), e, Locales.bundle.getString("remote_updateBeingEditedToken_failed"));
+      }
+    }
+    
+    else  {
+      
+      long newUser = tokenExpiry != null ? userId : 0;
+      
+      for (int offset=0; offset < ids.length; offset += EDITEDBY_BULK_SIZE) {
+        
+        int count = Math.min(EDITEDBY_BULK_SIZE, ids.length - offset);
+        
+        PreparedStatementWrapper st = getDb().getPreparedStatement(prepareUpdateEditedByBulkStatement());
+        st.setLong(1, newUser);
+        st.setTimestamp(2, curTime);
+        st.setTimestamp(3, tokenExpiry);
+        setEditedByBulkIds(st, 4, ids, offset, count);
+        st.setLong(4 + EDITEDBY_BULK_SIZE, userId);
+        st.setTimestamp(5 + EDITEDBY_BULK_SIZE, curTime);
+        
+        if (st.executeUpdate() < count) {
+          // at least one token held by another user, deleted objects or duplicate IDs: find out which
+          Set<Long> foundIds = new HashSet<Long>();
+          st = getDb().getPreparedStatement(prepareSelectEditedByBulkStatement());
+          setEditedByBulkIds(st, 1, ids, offset, count);
+          ResultSetWrapper rs = st.executeQuery();
+          while (rs.next())  {
+            long id = rs.getLong(FIELD_ID);
+            foundIds.add(id);
+            long editedBy = rs.getLong(FIELD_EDITEDBY);
+            if (editedBy != newUser) {
+              AppDbObjectRemoteDelegate.BeingEditedToken token = new AppDbObjectRemoteDelegate.BeingEditedToken();
+              token.editedBy = editedBy;
+              token.editedSince = rs.getTimestamp(FIELD_EDITEDSINCE);
+              token.editedExpiry = rs.getTimestamp(FIELD_EDITEDEXPIRY);
+              conflicts.put(id, token);
+            }
+          }
+          rs.close();
+          // objects no longer in the database have failed as well
+          for (int i=offset; i < offset + count; i++) {
+            if (!foundIds.contains(ids[i])) {
+              conflicts.put(ids[i], new AppDbObjectRemoteDelegate.BeingEditedToken());
+            }
+          }
+        }
+      }
+    }
+    
+    return conflicts;
+  }
+  
+  
+  /**
+   * Sets the IDs of a bulk statement.<br>
+   * Unused parameters are filled up with the last ID.
+   */
+  private void setEditedByBulkIds(PreparedStatementWrapper st, int pos, long[] ids, int offset, int count) {
+    for (int i=0; i < EDITEDBY_BULK_SIZE; i++) {
+      st.setLong(pos + i, ids[offset + Math.min(i, count - 1)]);
+    }
+  }
+  
+  
+  /**
+   * Updates the editing info for a collection of objects at once.<br>
+   * All objects must be of the same class as this object.
+   * The editedBy-attributes of the objects are updated to reflect the
+   * values in the database, i.e. conflicting objects hold the token of the other user.
+   * Objects deleted in the meantime are returned as failed as well.
+   * 
+   * @param objects the objects
+   * @param tokenExpiry holds the time the token will expire. Null to release token.
+   * @return the objects held by other users or deleted, empty if all done
+   * @see #updateEditedBy(long[], Timestamp, long, Timestamp)
+   */
+  public List<AppDbObject> updateEditedBy(Collection<? extends AppDbObject> objects, Timestamp tokenExpiry) {
+    
+    Timestamp curTime = SqlHelper.now();
+    long userId = 0;
+    
+    try {
+      userId = getContextDb().getAppUserInfo().getUserId();
+      if (userId == 0) {
+        throw new ApplicationException(Locales.bundle.getString("userId_is_0"));
+      }
+    }
+    catch (ApplicationException e)  {
+      DbGlobal.errorHandler.severe(getDb(), e, Locales.bundle.getString("couldn't_determine_user_id"));
+    }
+    
+    long[] ids = new long[objects.size()];
+    int ndx = 0;
+    for (AppDbObject object: objects) {
+      if (object.getClass() != getClass()) {
+        throw new IllegalArgumentException("object " + object + " is not a " + getClass().getName());
+      }
+      ids[ndx++] = object.getId();
+    }
+    
+    List<AppDbObject> lockedObjects = new ArrayList<AppDbObject>();
+    if (ids.length > 0) {
+      long newUser = tokenExpiry != null ? userId : 0;
+      Map<Long,AppDbObjectRemoteDelegate.BeingEditedToken> conflicts = updateEditedBy(ids, tokenExpiry, userId, curTime);
+      for (AppDbObject object: objects) {
+        AppDbObjectRemoteDelegate.BeingEditedToken token = conflicts.get(object.getId());
+        if (token != null) {
+          object.setEditedBy(token.editedBy);
+          object.setEditedSince(token.editedSince);
+          object.setEditedExpiry(token.editedExpiry);
+          lockedObjects.add(object);
+        }
+        else  {
+          object.setEditedBy(newUser);
+          object.setEditedSince(curTime);
+          object.setEditedExpiry(tokenExpiry);
+        }
+      }
+    }
+    return lockedObjects;
+  }
+  
+  
+  /**
+   * Releases the editing tokens for a collection of objects at once.<br>
+   * All objects must be of the same class as this object.
+   * 
+   * @param objects the objects
+   * @return the objects held by other users, empty if all released
+   * @see #updateEditedBy(Collection, Timestamp)
+   */
+  public List<AppDbObject> releaseEditedBy(Collection<? extends AppDbObject> objects) {
+    return updateEditedBy(objects, null);
+  }
+  
+  
+
   /**
    * Update the editedBy-attributes to persistent storage.<br>
    * No check is done whether locked or not and there is no serial
@@ -2917,12 +3150,15 @@ public abstract class AppDbObject extends DbObject implements ContextDependable
   @SuppressWarnings("unchecked")
   static public <T extends AppDbObject> T select (ContextDb contextDb, Class<T> clazz, long id)
          throws ClassNotFoundException, InstantiationException, IllegalAccessException {
-    if (Modifier.isAbstract(clazz.getModifiers()))  {
+    DbObjectFactory<T> factory = DbObjectFactory.getFactory(clazz);
+    if (factory.isAbstract())  {
       // find the static method in abstract class to load the object.
       // if there is none, fall through and generate an InstantationException
       try {
-        Method method = clazz.getDeclaredMethod("select", new Class[] { ContextDb.class, Long.TYPE });    // NOI18N
-        return (T)method.invoke(null, new Object[] { contextDb, new Long(id) });
+        Method method = factory.getStaticMethod("select", ContextDb.class, Long.TYPE);    // NOI18N
+        if (method != null) {
+          return (T)method.invoke(null, new Object[] { contextDb, id });
+        }
       }
       catch (Exception ex)  {}  // fall through...
     }
@@ -2954,12 +3190,15 @@ public abstract class AppDbObject extends DbObject implements ContextDependable
   @SuppressWarnings("unchecked")
   static public <T extends AppDbObject> T selectCached (ContextDb contextDb, Class<T> clazz, long id)
          throws ClassNotFoundException, InstantiationException, IllegalAccessException {
-    if (Modifier.isAbstract(clazz.getModifiers()))  {
+    DbObjectFactory<T> factory = DbObjectFactory.getFactory(clazz);
+    if (factory.isAbstract())  {
       // find the static method in abstract class to load the object.
       // if there is none, fall through and generate an InstantationException
       try {
-        Method method = clazz.getDeclaredMethod("selectCached", new Class[] { ContextDb.class, Long.TYPE });    // NOI18N
-        return (T)method.invoke(null, new Object[] { contextDb, new Long(id) });
+        Method method = factory.getStaticMethod("selectCached", ContextDb.class, Long.TYPE);    // NOI18N
+        if (method != null) {
+          return (T)method.invoke(null, new Object[] { contextDb, id });
+        }
       }
       catch (Exception ex)  {}  // fall through...
     }
@@ -2991,12 +3230,15 @@ public abstract class AppDbObject extends DbObject implements ContextDependable
   @SuppressWarnings("unchecked")
   static public <T extends AppDbObject> T selectLocked (ContextDb contextDb, Class<T> clazz, long id)
          throws ClassNotFoundException, InstantiationException, IllegalAccessException {
-    if (Modifier.isAbstract(clazz.getModifiers()))  {
+    DbObjectFactory<T> factory = DbObjectFactory.getFactory(clazz);
+    if (factory.isAbstract())  {
       // find the static method in abstract class to load the object.
       // if there is none, fall through and generate an InstantationException
       try {
-        Method method = clazz.getDeclaredMethod("selectLocked", new Class[] { ContextDb.class, Long.TYPE });    // NOI18N
-        return (T)method.invoke(null, new Object[] { contextDb, new Long(id) });
+        Method method = factory.getStaticMethod("selectLocked", ContextDb.class, Long.TYPE);    // NOI18N
+        if (method != null) {
+          return (T)method.invoke(null, new Object[] { contextDb, id });
+        }
       }
       catch (Exception ex)  {}  // fall through...
     }
@@ -3166,8 +3408,7 @@ public abstract class AppDbObject extends DbObject implements ContextDependable
    */
   public static QbfPlugin makeQbfPlugin(Class<? extends AppDbObject> clazz, ContextDb db) 
          throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
-    Method method = clazz.getDeclaredMethod("makeQbfPlugin", new Class[] { ContextDb.class });    // NOI18N
-    return (QbfPlugin)method.invoke(null, new Object[] { db });
+    return (QbfPlugin) DbObjectFactory.getFactory(clazz).invokeStatic("makeQbfPlugin", new Class<?>[] { ContextDb.class }, db);    // NOI18N
   }
   
 }
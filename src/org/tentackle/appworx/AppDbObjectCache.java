@@ -28,8 +28,12 @@ import org.tentackle.db.DbGlobal;
 import org.tentackle.db.DbObject;
 import org.tentackle.db.ModificationThread;
 import org.tentackle.util.ApplicationException;
+import java.io.File;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -37,6 +41,11 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import org.tentackle.db.DbRuntimeException;
 import org.tentackle.util.Compare;
 import org.tentackle.util.StringHelper;
@@ -55,6 +64,20 @@ import org.tentackle.util.StringHelper;
  * objects in the current context) or loaded on demand. The cache is also
  * aware of object-lists. For example, a selectAllCached will return a
  * cached list of all objects. And many more features...
+ * <p>
+ * Preloading caches may be backed by a persistent snapshot (see {@link #setSnapshotFile}).
+ * On the first access of a context the objects are taken from the snapshot
+ * and the cache serves lookups immediately. The snapshot is validated in the
+ * background by loading only the objects modified since the snapshot was taken.
+ * <p>
+ * For read-mostly workloads with many threads, such as in middle tier servers, a cache
+ * can be created concurrent (see {@link #createCache(Class, boolean, boolean)}).
+ * Concurrent caches keep their indexes and lists in concurrent skip lists and
+ * answer lookups of valid objects, range queries and cached lists without locking.
+ * Writers (loads, adds, expirations, shrinking) still synchronize on the cache.
+ * <p>
+ * Each cache collects metrics such as hit rates, load and expiration times and lock
+ * waits (see {@link #getMetrics()}), which can be exposed via JMX (see {@link #registerMBeans()}).
  *
  * @param <T> the {@link AppDbObject} class
  * @author harald
@@ -67,18 +90,32 @@ public class AppDbObjectCache<T extends AppDbObject> {
   private Set<ContextDb> dbSet;                     // if preload: set of contextDb's used in cache (null if no preloading)
   private Map<ContextDb, List<T>> lists;            // lists for selectAll
   private Set<List<T>> expiredLists;                // lists that contain expired objects
-  private long minTableSerial;                      // min tableserial to use for update check
+  private volatile long minTableSerial;             // min tableserial to use for update check
   private long maxTableSerial;                      // max tableserial to use for update check
   private long tableSerial;                         // highest tableserial of all objects in cache
-  private long expiredTableSerial;                  // > 0 if delayed expire check
-  private boolean enabled;                          // true if cache enabled
+  private volatile long expiredTableSerial;         // > 0 if delayed expire check
+  private volatile boolean enabled;                 // true if cache enabled
+  private final boolean concurrent;                 // true if lookups without locking
   private int maxSize;                              // maximum size, 0 = unlimited (default)
   private int strategy;                             // caching strategy if maxSize != 0
   private int keepQuota;                            // percentage of entries to keep when applying caching strategy. Default is 50.
+  private File snapshotFile;                        // persistent snapshot file, null if none
+  private AppDbObjectCacheSnapshot<T> snapshot;     // snapshot not yet applied to all contexts, null if none
+  private boolean snapshotRead;                     // true if snapshot file already read
+  private boolean deltaRefresh;                     // true if lists are refreshed asynchronously
+  private Comparator<? super T> listComparator;     // order of lists, null if unordered
+  private long generation;                          // incremented on each invalidation
+  private long refreshSequence;                     // sequence number of the last requested list refresh
+  private Map<ContextDb, Long> publishedRefreshes;  // sequence number of the last published refresh per context
+  private List<Runnable> pendingRefreshes;          // refreshes deferred until the lock is released (no modthread)
+  private volatile boolean refreshPending;          // true if pendingRefreshes is not empty
+  private final AppDbObjectCacheMetrics metrics;    // the metrics
+  private ObjectName mbeanName;                     // name of the registered MBean, null if not registered
   
   private boolean inToString;                       // avoid recursion in logging
   
   private static boolean allEnabled = true;         // false = all caches disabled. default is true
+  private static boolean mbeansRegistered;          // true if caches are registered at the MBean server
   
   // cache eviction strategies
   /** forget all entries if maxSize reached (default) **/
@@ -107,13 +144,66 @@ public class AppDbObjectCache<T extends AppDbObject> {
    * @param preload is true if preload all objects in contextDb of cache.
    * @return the cache
    */
-  @SuppressWarnings("unchecked")
   public static <T extends AppDbObject> AppDbObjectCache<T> createCache(Class<T> clazz, boolean preload) {
-    AppDbObjectCache<T> cache = new AppDbObjectCache(clazz, preload);
-    cacheList.add(cache);
+    AppDbObjectCache<T> cache = new AppDbObjectCache<T>(clazz, preload);
+    addToCacheList(cache);
     return cache;
   }
   
+  /**
+   * Creates an instance of an AppDbObjectCache and registers
+   * in a global cache-list.
+   *
+   * @param <T> the data object class
+   * @param clazz is the AppDbObject-class managed by the cache.
+   * @param preload is true if preload all objects in contextDb of cache.
+   * @param concurrent is true if the cache is read without locking
+   * @return the cache
+   */
+  public static <T extends AppDbObject> AppDbObjectCache<T> createCache(Class<T> clazz, boolean preload, boolean concurrent) {
+    AppDbObjectCache<T> cache = new AppDbObjectCache<T>(clazz, preload, concurrent);
+    addToCacheList(cache);
+    return cache;
+  }
+  
+  /**
+   * Adds a cache to the global cache-list.
+   */
+  private static void addToCacheList(AppDbObjectCache<? extends AppDbObject> cache) {
+    synchronized (cacheList) {
+      cacheList.add(cache);
+      if (mbeansRegistered) {
+        cache.registerMBean();
+      }
+    }
+  }
+  
+  /**
+   * Registers the metrics of all caches at the platform MBean server.<br>
+   * Caches created later are registered as well.
+   * The object names are <tt>org.tentackle.appworx:type=AppDbObjectCache,name="&lt;classname&gt;"</tt>.
+   */
+  public static void registerMBeans() {
+    synchronized (cacheList) {
+      mbeansRegistered = true;
+      for (AppDbObjectCache<? extends AppDbObject> cache: cacheList) {
+        cache.registerMBean();
+      }
+    }
+  }
+  
+  /**
+   * Unregisters the metrics of all caches from the platform MBean server.
+   */
+  public static void unregisterMBeans() {
+    synchronized (cacheList) {
+      mbeansRegistered = false;
+      for (AppDbObjectCache<? extends AppDbObject> cache: cacheList) {
+        cache.unregisterMBean();
+      }
+    }
+  }
+  
   /**
    * Removes all objects in ALL caches that refer to a given db.
    * Useful after having closed a db-connection in an RMI-Server, for example.
@@ -126,6 +216,20 @@ public class AppDbObjectCache<T extends AppDbObject> {
     }
   }
   
+  /**
+   * Saves the snapshots of all caches with a snapshot file.
+   * Usually invoked when the application terminates.
+   * 
+   * @see #saveSnapshot() 
+   */
+  public static void saveSnapshotsOfAllCaches() {
+    for (AppDbObjectCache<? extends AppDbObject> cache: cacheList) {
+      if (cache.getSnapshotFile() != null) {
+        cache.saveSnapshot();
+      }
+    }
+  }
+  
   // ---------------------------------------------------------------------------------------
   
   
@@ -138,18 +242,30 @@ public class AppDbObjectCache<T extends AppDbObject> {
    *
    * @param objectClazz is the AppDbObject-class managed by the cache.
    * @param preload is true if preload all objects in contextDb of cache.
+   * @param concurrent is true if the cache is read without locking
    */
-  public AppDbObjectCache(Class<T> objectClazz, boolean preload) {
+  public AppDbObjectCache(Class<T> objectClazz, boolean preload, boolean concurrent) {
     
-    this.clazz = objectClazz;
+    this.clazz      = objectClazz;
+    this.concurrent = concurrent;
     
     indexes         = new ArrayList<AppDbObjectCacheIndex<T,?>>();  // first index created below
-    dbSet           = preload ? new TreeSet<ContextDb>() : null;    // no contextDbs preloaded so far
-    lists           = new TreeMap<ContextDb, List<T>>();            // lists from selectAll
-    expiredLists    = new HashSet<List<T>>();                       // expired lists
+    if (concurrent) {
+      dbSet         = preload ? new ConcurrentSkipListSet<ContextDb>() : null;
+      lists         = new ConcurrentSkipListMap<ContextDb, List<T>>();
+      expiredLists  = Collections.newSetFromMap(new ConcurrentHashMap<List<T>, Boolean>());
+    }
+    else  {
+      dbSet         = preload ? new TreeSet<ContextDb>() : null;    // no contextDbs preloaded so far
+      lists         = new TreeMap<ContextDb, List<T>>();            // lists from selectAll
+      expiredLists  = new HashSet<List<T>>();                       // expired lists
+    }
+    publishedRefreshes = new TreeMap<ContextDb, Long>();
+    pendingRefreshes   = new ArrayList<Runnable>();
     enabled         = true;                                         // initially enabled
     keepQuota       = 50;                                           // keep 50% when shrinking
     minTableSerial  = -1;                                           // initialize the next cache-access
+    metrics         = new AppDbObjectCacheMetrics(this);
     
     if (AppworxGlobal.logger.isFineLoggable()) {
       AppworxGlobal.logger.fine("creating cache for " + clazz);
@@ -175,6 +291,17 @@ public class AppDbObjectCache<T extends AppDbObject> {
   }
   
   
+  /**
+   * Creates an instance of an AppDbObjectCache.
+   *
+   * @param objectClazz is the AppDbObject-class managed by the cache.
+   * @param preload is true if preload all objects in contextDb of cache.
+   */
+  public AppDbObjectCache(Class<T> objectClazz, boolean preload) {
+    this(objectClazz, preload, false);
+  }
+  
+  
   /**
    * Creates a cache without preloading.
    * 
@@ -192,6 +319,81 @@ public class AppDbObjectCache<T extends AppDbObject> {
   }
   
   
+  /**
+   * Gets the class of the objects managed by this cache.
+   * 
+   * @return the AppDbObject-class
+   */
+  public Class<T> getObjectClass() {
+    return clazz;
+  }
+  
+  
+  /**
+   * Gets the metrics of this cache.
+   * 
+   * @return the metrics
+   */
+  public AppDbObjectCacheMetrics getMetrics() {
+    return metrics;
+  }
+  
+  
+  /**
+   * Gets the statistics of all indexes.
+   * 
+   * @return one string per index
+   */
+  public List<String> getIndexStatistics() {
+    List<String> stats = new ArrayList<String>();
+    for (AppDbObjectCacheIndex<T,?> index: getIndexArray())  {
+      stats.add(index + " " + index.printCacheStats());
+    }
+    return stats;
+  }
+  
+  
+  /**
+   * Registers the metrics at the platform MBean server.
+   */
+  private void registerMBean() {
+    if (mbeanName == null) {
+      try {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        String baseName = "org.tentackle.appworx:type=AppDbObjectCache,name=" + ObjectName.quote(clazz.getName());
+        ObjectName name = new ObjectName(baseName);
+        for (int instance=2; server.isRegistered(name); instance++) {
+          // more than one cache for this class
+          name = new ObjectName(baseName + ",instance=" + instance);
+        }
+        server.registerMBean(metrics, name);
+        mbeanName = name;
+      }
+      catch (Exception ex) {
+        AppworxGlobal.logger.warning("registering MBean failed for " + this + "\n" + 
+                                     ApplicationException.getStackTraceAsString(ex));
+      }
+    }
+  }
+  
+  
+  /**
+   * Unregisters the metrics from the platform MBean server.
+   */
+  private void unregisterMBean() {
+    if (mbeanName != null) {
+      try {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+      }
+      catch (Exception ex) {
+        AppworxGlobal.logger.warning("unregistering MBean failed for " + this + "\n" + 
+                                     ApplicationException.getStackTraceAsString(ex));
+      }
+      mbeanName = null;
+    }
+  }
+  
+  
   /**
    * Assigns an index to this cache.
    * Note: if already added to another cache the db-errorhandler is invoked.
@@ -299,9 +501,9 @@ public class AppDbObjectCache<T extends AppDbObject> {
   
   
   /**
-   * get cache-stats
+   * clear cache-stats
    */
-  private void clearCacheStats()  {
+  void clearCacheStats()  {
     for (AppDbObjectCacheIndex<T,?> index: indexes)  {
       index.clearCacheStats();
     }
@@ -316,9 +518,13 @@ public class AppDbObjectCache<T extends AppDbObject> {
       index.clear();
     }
     lists.clear();
+    publishedRefreshes.clear();
     if (dbSet != null)  {
       dbSet.clear();
     }
+    snapshot = null;  // don't trust the snapshot anymore
+    metrics.countInvalidation();
+    generation++;     // discard pending refreshes
     tableSerial = 0;  // no object in cache -> tableSerial = 0
   }
   
@@ -356,6 +562,19 @@ public class AppDbObjectCache<T extends AppDbObject> {
    * @param curSerial is the current table serial (from Modification-table), 0 = don't check
    */
   public void expireByExpirationInfo(long[] expireSet, long curSerial)  {
+    try {
+      expireByExpirationInfoImpl(expireSet, curSerial);
+    }
+    finally {
+      runPendingRefreshes();
+    }
+  }
+  
+  
+  /**
+   * impl of expireByExpirationInfo without running deferred refreshes
+   */
+  private void expireByExpirationInfoImpl(long[] expireSet, long curSerial)  {
     
     synchronized(this)  {
       
@@ -440,6 +659,17 @@ public class AppDbObjectCache<T extends AppDbObject> {
         }
       }
       
+      metrics.countExpiredObjects(foundSet.size());
+      
+      if (deltaRefresh && !lists.isEmpty()) {
+        /**
+         * Load the modified objects in the background and patch them into the lists.
+         * Until then, selectAllInContext() returns the current lists.
+         */
+        refreshLists(new ArrayList<ContextDb>(lists.keySet()), expireSet);
+        return;
+      }
+      
       int foundSetSize = foundSet.size();
       boolean expireAllLists = foundSetSize < idSet.size();  // not all IDs found in cache
       
@@ -471,6 +701,7 @@ public class AppDbObjectCache<T extends AppDbObject> {
         }
         else  {
           lists.clear();
+          publishedRefreshes.clear();
           if (AppworxGlobal.logger.isFinerLoggable()) {
             AppworxGlobal.logger.finer(this + ": some uncached objects expired or objects deleted -> all lists expired");
           }
@@ -510,7 +741,22 @@ public class AppDbObjectCache<T extends AppDbObject> {
    * @param maxSerial is the max. tableSerial to scan for updates, 0 = clazz provides no tableSerial
    */
   public void expire(Db db, long maxSerial)  {
+    try {
+      expireImpl(db, maxSerial);
+    }
+    finally {
+      runPendingRefreshes();
+    }
+  }
+  
+  
+  /**
+   * impl of expire without running deferred refreshes
+   */
+  private void expireImpl(Db db, long maxSerial)  {
+    long lockStart = metrics.startLockWait();
     synchronized(this)  {
+      metrics.recordLockWait(lockStart);
       
       if (maxSerial > maxTableSerial) {
         // remember upper bound of all requests
@@ -578,6 +824,7 @@ public class AppDbObjectCache<T extends AppDbObject> {
    * @param maxSerial is the max. tableSerial to scan for, 0 = up to end
    */
   private void expireObjects(Db db, long oldSerial, long maxSerial)  {
+    long startNanos = System.nanoTime();
     try {
 
       DbObject obj = DbObject.newByClass(db, clazz);
@@ -600,6 +847,7 @@ public class AppDbObjectCache<T extends AppDbObject> {
       AppworxGlobal.logger.warning(ApplicationException.getStackTraceAsString(e));
       invalidateImpl();
     }
+    metrics.recordExpiration(startNanos);
   }
   
   
@@ -681,10 +929,12 @@ public class AppDbObjectCache<T extends AppDbObject> {
   public void shrinkCache()  {
     if (strategy == FORGET || keepQuota <= 0) {
       // FORGET
+      metrics.countEvictions(getSize());
       invalidate();
     } 
     else {
       synchronized (this)  {
+        int sizeBefore = getSize();
         try {
           long millis = 0;    // to determine the duration
           if (AppworxGlobal.logger.isFineLoggable()) {
@@ -739,6 +989,7 @@ public class AppDbObjectCache<T extends AppDbObject> {
           AppworxGlobal.logger.warning(e.getAllMessages());
           invalidateImpl();
         }
+        metrics.countEvictions(sizeBefore - getSize());
       }
     }
   }
@@ -837,9 +1088,49 @@ public class AppDbObjectCache<T extends AppDbObject> {
    * @return the object or null if no such object
    */
   public <C extends Comparable<? super C>> T select(AppDbObjectCacheIndex<T,C> index, ContextDb db, C key, boolean loadIfMissing)  {
+    try {
+      return selectImpl(index, db, key, loadIfMissing);
+    }
+    finally {
+      runPendingRefreshes();
+    }
+  }
+  
+  
+  /**
+   * impl of select without running deferred refreshes
+   */
+  private <C extends Comparable<? super C>> T selectImpl(AppDbObjectCacheIndex<T,C> index, ContextDb db, C key, boolean loadIfMissing)  {
     
+    if (concurrent && enabled && allEnabled && minTableSerial >= 0 && expiredTableSerial == 0 &&
+        index.isAssignedToCache(this))  {
+      // try without locking first
+      boolean preload = isPreloading() && db.getDb().isAutoCommit();
+      if (!preload || dbSet.contains(db)) {
+        try {
+          T obj = index.get(db, key);
+          if (obj != null) {
+            if (!obj.isExpired()) {
+              obj.markCacheAccess();
+              metrics.countHit();
+              return obj;
+            }
+          }
+          else if (preload || !loadIfMissing) {
+            metrics.countMiss();
+            return null;    // not in preloaded cache
+          }
+        }
+        catch (ApplicationException e)  {
+          // key change detected: will be handled below
+        }
+      }
+    }
+    
+    long lockStart = metrics.startLockWait();
     synchronized (this)  {
       
+      metrics.recordLockWait(lockStart);
       initializeMinTableSerial(db.getDb());   // preset minTableSerial if not yet done
       addIndexIfNotAssigned(index);           // make sure index is setup and belongs to this cache
       expireObjects(db.getDb());              // check for delayed expiration
@@ -882,9 +1173,18 @@ public class AppDbObjectCache<T extends AppDbObject> {
             // else: not expired: use it!
           }
           
+          if (obj != null) {
+            metrics.countHit();
+          }
+          else  {
+            metrics.countMiss();
+          }
+          
           if (obj == null && preload == false && loadIfMissing)  {
             // not in cache (or expired) and no preloading: get it from db
+            long loadStart = System.nanoTime();
             obj = index.select(db, key);
+            metrics.recordLoad(loadStart, obj == null ? 0 : 1);
             if (obj != null && obj.isCacheable())  {
               // add to all indexes
               for (AppDbObjectCacheIndex<T,?> ndx: indexes)  {
@@ -1050,6 +1350,7 @@ public class AppDbObjectCache<T extends AppDbObject> {
       // remove all lists for those contexts
       for (ContextDb contextDb: cbList) {
         lists.remove(contextDb);
+        publishedRefreshes.remove(contextDb);
       }
       // remove all preloadings for those contexts
       if (dbSet != null)  {
@@ -1096,9 +1397,35 @@ public class AppDbObjectCache<T extends AppDbObject> {
    * @return the list of objects
    */
   public <C extends Comparable<? super C>> List<T> select(AppDbObjectCacheIndex<T,C> index, ContextDb db, C fromKey, C toKey)  {
+    try {
+      return selectImpl(index, db, fromKey, toKey);
+    }
+    finally {
+      runPendingRefreshes();
+    }
+  }
+  
+  
+  /**
+   * impl of select without running deferred refreshes
+   */
+  private <C extends Comparable<? super C>> List<T> selectImpl(AppDbObjectCacheIndex<T,C> index, ContextDb db, C fromKey, C toKey)  {
+    
+    if (concurrent && expiredTableSerial == 0 && index.isAssignedToCache(this) &&
+        (!isPreloading() || dbSet.contains(db)))  {
+      // try without locking first
+      try {
+        return index.getObjects(db, fromKey, toKey);
+      }
+      catch (ApplicationException e)  {
+        // key change detected: will be handled below
+      }
+    }
     
+    long lockStart = metrics.startLockWait();
     synchronized (this)  {
       
+      metrics.recordLockWait(lockStart);
       addIndexIfNotAssigned(index); // make sure index is setup and belongs to this cache
       expireObjects(db.getDb());    // check for delayed expiration
       
@@ -1130,6 +1457,7 @@ public class AppDbObjectCache<T extends AppDbObject> {
   @SuppressWarnings("unchecked")
   private List<T> selectAllFromStorage(ContextDb db) {
     // read from storage
+    long loadStart = System.nanoTime();
     try {
       if (db.getDb().isRemote()) {
         /**
@@ -1140,10 +1468,13 @@ public class AppDbObjectCache<T extends AppDbObject> {
          */
         List<T> list = (List<T>)AppDbObject.newByClass(db, clazz).getRemoteDelegate().selectAllInContextFromServerCache(db);
         ContextDb.applyToCollection(db, list);
+        metrics.recordLoad(loadStart, list.size());
         return list;
       }
       else  {
-        return AppDbObject.selectAllInContext(db, clazz);
+        List<T> list = AppDbObject.selectAllInContext(db, clazz);
+        metrics.recordLoad(loadStart, list.size());
+        return list;
       }
     } 
     catch (Exception ex)  {
@@ -1161,13 +1492,37 @@ public class AppDbObjectCache<T extends AppDbObject> {
    * @param db the database context
    * @return the list of objects
    */
-  @SuppressWarnings("unchecked")
   public List<T> selectAllInContext(ContextDb db)  {
+    try {
+      return selectAllInContextImpl(db);
+    }
+    finally {
+      runPendingRefreshes();
+    }
+  }
+  
+  
+  /**
+   * impl of selectAllInContext without running deferred refreshes
+   */
+  @SuppressWarnings("unchecked")
+  private List<T> selectAllInContextImpl(ContextDb db)  {
     
     if (enabled && allEnabled)  {
       
+      if (concurrent && expiredTableSerial == 0 && expiredLists.isEmpty()) {
+        // try without locking first
+        List<T> list = lists.get(db);
+        if (list != null) {
+          metrics.countHit();
+          return list;
+        }
+      }
+      
+      long lockStart = metrics.startLockWait();
       synchronized (this)  {
         
+        metrics.recordLockWait(lockStart);
         expireObjects(db.getDb());      // check for delayed expiration
         
         /*
@@ -1179,7 +1534,20 @@ public class AppDbObjectCache<T extends AppDbObject> {
         
         if (list == null)  {
           // not in cache
-          list = selectAllFromStorage(db);
+          metrics.countMiss();
+          AppDbObjectCacheSnapshot<T> snap = getSnapshot(db);
+          list = snap == null ? null : snap.removeList(db);
+          if (list != null) {
+            // take objects from snapshot and validate later
+            if (snap.isEmpty()) {
+              snapshot = null;
+            }
+            ContextDb.applyToCollection(db, list);
+          }
+          else  {
+            snap = null;
+            list = selectAllFromStorage(db);
+          }
           
           List<T> cList = new ArrayList<T>(list.size());    // cacheables only
           
@@ -1202,27 +1570,30 @@ public class AppDbObjectCache<T extends AppDbObject> {
           if (isPreloading())  {
             dbSet.add(db);    // if preloading enabled, add contextDb
           }
+          
+          if (snap != null) {
+            validateSnapshot(db, snap.getTableSerial());
+          }
         }
         
         else  {
+          metrics.countHit();
           /**
            * list is cached.
            * We cannot verify that there was no keychange in the list.
            * However, if the list is marked to be checked for expired objects,
            * we must scan the list for expired objects.
+           * The list is copied because readers without lock may still iterate over it.
            */
           if (expiredLists.contains(list))  {
-            int size = list.size();
-            T object;
-            for (int i=0; i < size; i++) {  
-              object = list.get(i); // list is an ArrayList(): get(i) is fast!
+            List<T> newList = new ArrayList<T>(list.size());
+            for (T object: list) {
               if (object.isExpired()) {
-                object = (T)object.reload();    // unchecked
-                if (object == null) { // vanished, i.e. object has been deleted in db
-                  list.remove(i--);   // remove from list too (costly but better than loading the whole list!)
+                T reloadedObject = (T)object.reload();    // unchecked
+                if (reloadedObject == null) { // vanished, i.e. object has been deleted in db
+                  // not taken over to the new list (costly but better than loading the whole list!)
                   // notice: this will only happen for explicitly expired objects because deleted objects cannot
                   // be found by DbObject.selectExpiredTableSerials()!
-                  size--;
                   if (AppworxGlobal.logger.isFinerLoggable() && !inToString) {
                     inToString = true;    // avoid recursion cause contextDb.toString
                     AppworxGlobal.logger.finer("object " + object.getSingleName() + " '" + object + "', ID=" + object.getId() +
@@ -1232,7 +1603,8 @@ public class AppDbObjectCache<T extends AppDbObject> {
                 }
                 else  {
                   // replace in list
-                  list.set(i, object);
+                  object = reloadedObject;
+                  newList.add(object);
                   // replace in cache (this keeps lists in syncObject with index cache)
                   remove(object);
                   add(object);
@@ -1245,11 +1617,16 @@ public class AppDbObjectCache<T extends AppDbObject> {
                   }
                 }
               }
+              else  {
+                newList.add(object);
+              }
             }
-            // check done, remove it
+            // check done, replace it
             if (!expiredLists.remove(list)) {
               throw new DbRuntimeException("expired list not found");
             }
+            lists.put(db, newList);
+            list = newList;
           }
         }
         return list;
@@ -1263,6 +1640,495 @@ public class AppDbObjectCache<T extends AppDbObject> {
   
   
   
+  /**
+   * Sets the file for the persistent snapshot.<br>
+   * Only applies to preloading caches. The snapshot is read on the first
+   * preload and written by {@link #saveSnapshot()}.
+   * Must be set before the first access to the cache.
+   * 
+   * @param snapshotFile the snapshot file, null if no snapshot (default)
+   */
+  public void setSnapshotFile(File snapshotFile) {
+    synchronized (this) {
+      this.snapshotFile = snapshotFile;
+      snapshot          = null;
+      snapshotRead      = false;
+    }
+  }
+  
+  /**
+   * Gets the file for the persistent snapshot.
+   * 
+   * @return the snapshot file, null if none
+   */
+  public File getSnapshotFile() {
+    return snapshotFile;
+  }
+  
+  
+  /**
+   * Saves all lists of a preloading cache to the snapshot file.<br>
+   * Lists with expired objects are not saved.
+   * 
+   * @return true if saved, false if nothing to save
+   */
+  public boolean saveSnapshot() {
+    synchronized (this) {
+      if (snapshotFile == null || !isPreloading() || lists.isEmpty() || minTableSerial < 0) {
+        return false;
+      }
+      // all objects in lists are valid at least up to minTableSerial, unless a delayed expiration is pending
+      long serial = minTableSerial;
+      if (expiredTableSerial > 0 && expiredTableSerial < serial) {
+        serial = expiredTableSerial;
+      }
+      AppDbObjectCacheSnapshot<T> snap = null;
+      for (Map.Entry<ContextDb, List<T>> entry: lists.entrySet()) {
+        if (!expiredLists.contains(entry.getValue())) {
+          if (snap == null) {
+            snap = new AppDbObjectCacheSnapshot<T>(clazz, getSnapshotSource(entry.getKey().getDb()), serial);
+          }
+          snap.addList(entry.getKey(), entry.getValue());
+        }
+      }
+      if (snap == null) {
+        return false;
+      }
+      try {
+        snap.write(snapshotFile);
+        if (AppworxGlobal.logger.isFineLoggable()) {
+          AppworxGlobal.logger.fine(this + ": snapshot saved to " + snapshotFile + ", tableSerial=" + serial);
+        }
+        return true;
+      }
+      catch (Exception ex) {
+        AppworxGlobal.logger.warning(this + ": saving snapshot to " + snapshotFile + " failed\n" +
+                                     ApplicationException.getStackTraceAsString(ex));
+        return false;
+      }
+    }
+  }
+  
+  
+  /**
+   * Gets the source of the objects to check whether a snapshot belongs to the db.
+   */
+  private String getSnapshotSource(Db db) {
+    return db.isRemote() ? db.getUrl() : db.getUserInfo().getDbPropertiesName();
+  }
+  
+  
+  /**
+   * Gets the snapshot.<br>
+   * The snapshot file is read on first invocation.
+   * Notice: invoke from within synchronized block only!
+   * 
+   * @param db the context
+   * @return the snapshot, null if none
+   */
+  private AppDbObjectCacheSnapshot<T> getSnapshot(ContextDb db) {
+    if (snapshotFile != null && isPreloading() && db.getDb().isAutoCommit()) {
+      if (!snapshotRead) {
+        snapshotRead = true;
+        try {
+          long millis = System.currentTimeMillis();
+          snapshot = AppDbObjectCacheSnapshot.read(snapshotFile, clazz, getSnapshotSource(db.getDb()));
+          if (AppworxGlobal.logger.isFineLoggable()) {
+            AppworxGlobal.logger.fine(this + ": snapshot " + snapshotFile +
+                    (snapshot == null ? " not found or invalid" :
+                     (" read, tableSerial=" + snapshot.getTableSerial() +
+                      ", duration=" + (System.currentTimeMillis() - millis) + "ms")));
+          }
+        }
+        catch (Exception ex) {
+          AppworxGlobal.logger.warning(this + ": reading snapshot from " + snapshotFile + " failed\n" +
+                                       ApplicationException.getStackTraceAsString(ex));
+        }
+      }
+      return snapshot;
+    }
+    return null;
+  }
+  
+  
+  /**
+   * Validates a list taken from the snapshot.<br>
+   * Runs in the modification thread, if there is one.
+   * Notice: invoke from within synchronized block only!
+   * 
+   * @param db the context
+   * @param serial the tableSerial of the snapshot
+   */
+  private void validateSnapshot(final ContextDb db, final long serial) {
+    final long gen = generation;
+    final long seq = ++refreshSequence;
+    scheduleRefresh(new ListRefresh() {
+      public void run(Db loadDb) {
+        validateSnapshot(db, serial, gen, seq, loadDb);
+      }
+    });
+  }
+  
+  
+  /**
+   * Validates a list taken from the snapshot.<br>
+   * Only the objects modified since the snapshot was taken are loaded.
+   * If objects have been deleted meanwhile, the whole list is reloaded.
+   * 
+   * @param db the context
+   * @param serial the tableSerial of the snapshot
+   * @param gen the cache generation the list belongs to
+   * @param seq the sequence number of the refresh
+   * @param loadDb the db to load the objects, null to use the db of the context
+   */
+  private void validateSnapshot(ContextDb db, long serial, long gen, long seq, Db loadDb) {
+    if (loadDb == null) {
+      loadDb = db.getDb();
+    }
+    try {
+      long curSerial = selectCurrentTableSerial(loadDb);
+      if (curSerial == serial) {
+        if (AppworxGlobal.logger.isFineLoggable()) {
+          AppworxGlobal.logger.fine(this + ": snapshot for context '" + db.getInfo() + "' is up to date");
+        }
+        return;
+      }
+      
+      /**
+       * Check for gaps in the tableSerials. A gap means that objects have been deleted.
+       * If so, or the serial went backwards (different database?), reload the whole list.
+       */
+      long[] expireSet = null;
+      if (curSerial > serial) {
+        expireSet = DbObject.newByClass(loadDb, clazz).getExpiredTableSerials(serial, curSerial);
+        long prevSerial = serial;
+        for (int i=1; i < expireSet.length; i+=2) {
+          if (expireSet[i] - prevSerial > 1) {
+            break;
+          }
+          prevSerial = expireSet[i];
+        }
+        if (curSerial != prevSerial) {
+          expireSet = null;
+        }
+      }
+      refreshList(db, expireSet, gen, seq, loadDb);
+    }
+    catch (Exception ex) {
+      // snapshot cannot be validated: load from storage on next access
+      AppworxGlobal.logger.warning(this + ": validating snapshot failed for context '" + db.getInfo() + "'\n" +
+                                   ApplicationException.getStackTraceAsString(ex));
+      synchronized (this) {
+        if (gen == generation) {
+          invalidateImpl();
+        }
+      }
+    }
+  }
+  
+  
+  /**
+   * A refresh of lists to be scheduled by {@link #scheduleRefresh}.
+   */
+  private interface ListRefresh {
+    
+    /**
+     * Runs the refresh.
+     * 
+     * @param loadDb the db to load the objects, null to use the db of the context
+     */
+    void run(Db loadDb);
+  }
+  
+  
+  /**
+   * Schedules a refresh of lists.<br>
+   * The refresh runs in the modification thread, if there is one. Otherwise it is
+   * deferred until the current thread has released the lock of this cache, so that
+   * objects are never loaded while holding the lock.
+   * Notice: invoke from within synchronized block only!
+   * 
+   * @param refresh the refresh
+   */
+  private void scheduleRefresh(final ListRefresh refresh) {
+    final ModificationThread mt = ModificationThread.getThread();
+    if (mt.isDummy()) {
+      // no background thread
+      pendingRefreshes.add(new Runnable() {
+        public void run() {
+          refresh.run(null);
+        }
+      });
+      refreshPending = true;
+    }
+    else  {
+      mt.runOnce(new Runnable() {
+        public void run() {
+          refresh.run(mt.getDb());
+        }
+      });
+    }
+  }
+  
+  
+  /**
+   * Runs the deferred refreshes, if any.<br>
+   * Does nothing if the current thread still holds the lock of this cache.
+   */
+  private void runPendingRefreshes() {
+    if (refreshPending && !Thread.holdsLock(this)) {
+      for (;;) {
+        Runnable refresh;
+        synchronized (this) {
+          if (pendingRefreshes.isEmpty()) {
+            refreshPending = false;
+            return;
+          }
+          refresh = pendingRefreshes.remove(0);
+        }
+        refresh.run();
+      }
+    }
+  }
+  
+  
+  /**
+   * Refreshes the lists of the given contexts.<br>
+   * Runs in the modification thread, if there is one.
+   * Notice: invoke from within synchronized block only!
+   * 
+   * @param contexts the contexts
+   * @param expireSet the expiration info (see {@link #expireByExpirationInfo}), null to reload all
+   */
+  private void refreshLists(final List<ContextDb> contexts, final long[] expireSet) {
+    final long gen = generation;
+    final long seq = ++refreshSequence;
+    scheduleRefresh(new ListRefresh() {
+      public void run(Db loadDb) {
+        for (ContextDb db: contexts) {
+          refreshList(db, expireSet, gen, seq, loadDb);
+        }
+      }
+    });
+  }
+  
+  
+  /**
+   * Refreshes the list of a context.<br>
+   * The modified objects are loaded and patched into a copy of the list, which
+   * replaces the current list when done. Readers get the current list in the meantime.
+   * The objects are loaded via the given db but belong to the context of the list.
+   * If there are too many modified objects the whole list is reloaded.
+   * If the cache has been invalidated in the meantime, the refresh is discarded.
+   * If a refresh requested later has already been published, the loaded objects
+   * may be older than those in the list. The refresh is then discarded and requested again.
+   * 
+   * @param db the context
+   * @param expireSet the pairs of ID/tableSerial of the modified objects, null to reload all
+   * @param gen the cache generation the list belongs to
+   * @param seq the sequence number of the refresh
+   * @param loadDb the db to load the objects, null to use the db of the context
+   */
+  private void refreshList(ContextDb db, long[] expireSet, long gen, long seq, Db loadDb) {
+    if (loadDb == null) {
+      loadDb = db.getDb();
+    }
+    try {
+      long millis = System.currentTimeMillis();
+      
+      Set<Long> idSet = null;     // IDs of modified objects, null if reload all
+      if (expireSet != null) {
+        idSet = new HashSet<Long>();
+        for (int i=0; i < expireSet.length; i+=2) {
+          idSet.add(expireSet[i]);
+        }
+        synchronized (this) {
+          List<T> list = lists.get(db);
+          if (gen != generation || list == null) {
+            return;
+          }
+          if (idSet.size() > list.size() / 2) {
+            idSet = null;   // cheaper to load the whole list
+          }
+        }
+      }
+      
+      ContextDb loadContext = db;
+      if (loadDb != db.getDb()) {
+        loadContext = db.clone();
+        loadContext.setDb(loadDb);
+      }
+      
+      List<T> loadedList;
+      if (idSet == null) {
+        loadedList = selectAllFromStorage(loadContext);
+      }
+      else  {
+        long loadStart = System.nanoTime();
+        loadedList = new ArrayList<T>(idSet.size());
+        for (Long id: idSet) {
+          T obj = AppDbObject.select(loadContext, clazz, id);
+          if (obj != null && obj.getContextId() == db.getContextId()) {
+            loadedList.add(obj);
+          }
+        }
+        metrics.recordLoad(loadStart, loadedList.size());
+      }
+      ContextDb.applyToCollection(db, loadedList);
+      
+      synchronized (this) {
+        List<T> list = lists.get(db);
+        if (gen != generation || list == null) {
+          // invalidated in the meantime
+          return;
+        }
+        
+        Long publishedSeq = publishedRefreshes.get(db);
+        if (publishedSeq != null && publishedSeq > seq) {
+          // overtaken by a later refresh: don't publish older objects over newer ones
+          if (AppworxGlobal.logger.isFineLoggable()) {
+            AppworxGlobal.logger.fine(this + ": refresh " + seq + " of list for context '" + db.getInfo() +
+                    "' overtaken by refresh " + publishedSeq + " -> requested again");
+          }
+          List<ContextDb> contexts = new ArrayList<ContextDb>();
+          contexts.add(db);
+          refreshLists(contexts, expireSet);
+          return;
+        }
+        publishedRefreshes.put(db, seq);
+        
+        AppDbObjectCacheIndex<T,?>[] indexArray = getIndexArray();
+        List<T> newList = new ArrayList<T>(list.size() + loadedList.size());
+        
+        // loaded objects by ID
+        List<T> cList = new ArrayList<T>(loadedList.size());    // cacheables only
+        Map<Long,T> loadedMap = new HashMap<Long,T>();
+        for (T obj: loadedList) {
+          if (obj.isCacheable()) {
+            cList.add(obj);
+            loadedMap.put(obj.getId(), obj);
+          }
+        }
+        
+        // copy the unmodified objects, remove the modified ones from the indexes
+        for (T obj: list) {
+          if (idSet == null || idSet.contains(obj.getId())) {
+            remove(obj);
+            if (idSet != null && listComparator == null) {
+              // keep the position
+              T newObj = loadedMap.remove(obj.getId());
+              if (newObj != null) {
+                newList.add(newObj);
+              }
+            }
+          }
+          else  {
+            newList.add(obj);
+          }
+        }
+        
+        // insert the remaining (new or repositioned) objects
+        if (idSet == null) {
+          newList.addAll(cList);
+          if (listComparator != null) {
+            Collections.sort(newList, listComparator);
+          }
+        }
+        else  {
+          for (T obj: loadedMap.values()) {
+            if (listComparator != null) {
+              int pos = Collections.binarySearch(newList, obj, listComparator);
+              newList.add(pos < 0 ? -pos - 1 : pos, obj);
+            }
+            else  {
+              newList.add(obj);
+            }
+          }
+        }
+        
+        // add the loaded objects to the indexes
+        for (T obj: cList) {
+          for (AppDbObjectCacheIndex<T,?> index: indexArray)  {
+            index.add(obj);
+          }
+          obj.markCacheAccess();
+          updateTableSerial(obj);
+        }
+        
+        // publish
+        lists.put(db, newList);
+        if (expiredLists.remove(list)) {
+          expiredLists.add(newList);
+        }
+        
+        if (AppworxGlobal.logger.isFineLoggable()) {
+          AppworxGlobal.logger.fine(this + ": list for context '" + db.getInfo() + "' " +
+                  (idSet == null ? "reloaded" : ("refreshed by " + loadedList.size() + " objects")) +
+                  ", duration=" + (System.currentTimeMillis() - millis) + "ms");
+        }
+      }
+    }
+    catch (Exception ex) {
+      // refresh failed: load from storage on next access
+      AppworxGlobal.logger.warning(this + ": refreshing list failed for context '" + db.getInfo() + "'\n" +
+                                   ApplicationException.getStackTraceAsString(ex));
+      synchronized (this) {
+        if (gen == generation) {
+          invalidateImpl();
+        }
+      }
+    }
+  }
+  
+  
+  /**
+   * Sets whether the lists of {@link #selectAllInContext} are refreshed asynchronously.<br>
+   * If enabled, only the modified objects are loaded in the background and patched into
+   * a copy of the list, while {@link #selectAllInContext} keeps returning the previous list.
+   * Without a {@link ModificationThread} the objects are loaded by the thread that detected
+   * the modification, after it has released the lock of this cache.
+   * Otherwise, lists are cleared (or the cache invalidated if preloading) if objects not
+   * in the cache have been modified.
+   * 
+   * @param deltaRefresh true to enable delta refresh, default is false
+   */
+  public void setDeltaRefresh(boolean deltaRefresh) {
+    this.deltaRefresh = deltaRefresh;
+  }
+  
+  /**
+   * Returns whether lists are refreshed asynchronously.
+   * 
+   * @return true if delta refresh enabled
+   */
+  public boolean isDeltaRefresh() {
+    return deltaRefresh;
+  }
+  
+  
+  /**
+   * Sets the ordering of the lists of {@link #selectAllInContext}.<br>
+   * Used to insert objects into a list that have been added or modified
+   * in the persistence layer. The comparator must reflect the order of
+   * {@link AppDbObject#selectAllInContext()}.
+   * 
+   * @param listComparator the comparator, null if unordered (default)
+   */
+  public void setListComparator(Comparator<? super T> listComparator) {
+    this.listComparator = listComparator;
+  }
+  
+  /**
+   * Gets the ordering of the lists.
+   * 
+   * @return the comparator, null if unordered
+   */
+  public Comparator<? super T> getListComparator() {
+    return listComparator;
+  }
+  
+  
+  
   /**
    * Check whether all caches are enabled at all.
    *
@@ -1303,6 +2169,16 @@ public class AppDbObjectCache<T extends AppDbObject> {
   }
   
   
+  /**
+   * Returns whether this cache is read without locking.
+   * 
+   * @return true if concurrent cache
+   */
+  public boolean isConcurrent() {
+    return concurrent;
+  }
+  
+  
   /**
    * @return true if this is a preloading cache
    */
@@ -25,14 +25,19 @@ import org.tentackle.util.ApplicationException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
 
 
 /**
  * Cache index.<br>
  * 
  * Holds the mapping of keys to objects.
+ * If assigned to a concurrent cache (see {@link AppDbObjectCache#isConcurrent()})
+ * the mapping is held in a concurrent skip list and can be read without locking.
  *
  * @param <T> the {@link AppDbObject} class
  * @param <C> the {@link Comparable} class
@@ -42,10 +47,10 @@ public abstract class AppDbObjectCacheIndex<T extends AppDbObject, C extends Com
   
     
   private String name;                          // symbolic name of the index
-  private AppDbObjectCache<T> cache;            // the associated cache, null if not already added
-  private TreeMap<CacheKey<C>, T> cacheMap;     // index tree for AppDbObjects
-  private long accessCount;                     // for statistics if fineLoggable
-  private long missCount;                       // number of cache-misses
+  private volatile AppDbObjectCache<T> cache;   // the associated cache, null if not already added
+  private NavigableMap<CacheKey<C>, T> cacheMap; // index tree for AppDbObjects
+  private final LongAdder accessCount;     // number of cache accesses
+  private final LongAdder missCount;       // number of cache-misses
   private boolean inToString;                   // to avoid recursive calls (the object could be part of the toString() evaluation)
   
   
@@ -60,6 +65,8 @@ public abstract class AppDbObjectCacheIndex<T extends AppDbObject, C extends Com
   public AppDbObjectCacheIndex(String name)  {
     this.name      = name;
     cacheMap       = new TreeMap<CacheKey<C>, T>();
+    accessCount    = new LongAdder();
+    missCount      = new LongAdder();
   }
 
   
@@ -100,6 +107,12 @@ public abstract class AppDbObjectCacheIndex<T extends AppDbObject, C extends Com
       if (this.cache != null) {
         throw new ApplicationException(this + " is already assigned to " + this.cache);
       }
+      if (cache.isConcurrent() != cacheMap instanceof ConcurrentSkipListMap) {
+        // switch the map implementation (before the cache is set!)
+        cacheMap = cache.isConcurrent() ?
+                     new ConcurrentSkipListMap<CacheKey<C>, T>(cacheMap) :
+                     new TreeMap<CacheKey<C>, T>(cacheMap);
+      }
     }
     else  {
       // clear assignment
@@ -126,6 +139,16 @@ public abstract class AppDbObjectCacheIndex<T extends AppDbObject, C extends Com
   }
   
   
+  /**
+   * Gets the symbolic name of this index.
+   * 
+   * @return the name
+   */
+  public String getName() {
+    return name;
+  }
+  
+  
   /**
    * clear contents of the cache index.
    */
@@ -150,8 +173,10 @@ public abstract class AppDbObjectCacheIndex<T extends AppDbObject, C extends Com
    * @return the string for cache stats
    */
   protected String printCacheStats()  {
-    int rate = (int)(100L - missCount * 100L / (accessCount == 0 ? 1 : accessCount));
-    return "(size=" + size() + ", accesses=" + accessCount + ", misses=" + missCount + ", hitrate=" + rate + "%)";
+    long accesses = accessCount.sum();
+    long misses = missCount.sum();
+    int rate = (int)(100L - misses * 100L / (accesses == 0 ? 1 : accesses));
+    return "(size=" + size() + ", accesses=" + accesses + ", misses=" + misses + ", hitrate=" + rate + "%)";
   }
   
   
@@ -159,8 +184,28 @@ public abstract class AppDbObjectCacheIndex<T extends AppDbObject, C extends Com
    * Clears the cache statistics.
    */
   protected void clearCacheStats()  {
-    accessCount = 0;
-    missCount   = 0;
+    accessCount.reset();
+    missCount.reset();
+  }
+  
+  
+  /**
+   * Gets the number of accesses to this index.
+   * 
+   * @return the number of accesses
+   */
+  public long getAccessCount() {
+    return accessCount.sum();
+  }
+  
+  
+  /**
+   * Gets the number of cache misses of this index.
+   * 
+   * @return the number of misses
+   */
+  public long getMissCount() {
+    return missCount.sum();
   }
   
   
@@ -222,29 +267,17 @@ public abstract class AppDbObjectCacheIndex<T extends AppDbObject, C extends Com
       return null;
     }
       
-    if (AppworxGlobal.logger.isFineLoggable())  {
-      accessCount++;
-      obj = cacheMap.get(ck);
-      if (obj == null)  {
-        missCount++;
-        if (AppworxGlobal.logger.isFinerLoggable())  {
-          AppworxGlobal.logger.finer(this + ": cache miss for '" + ck + "'");
-          if (AppworxGlobal.logger.isFinestLoggable()) {
-            AppworxGlobal.logger.finest(printCacheStats());
-          }
-        }
-      }
-      else  {
-        if (AppworxGlobal.logger.isFinerLoggable())  {
-          AppworxGlobal.logger.finer(this + ": cache hit for '" + ck + "'");
-          if (AppworxGlobal.logger.isFinestLoggable()) {
-            AppworxGlobal.logger.finest(printCacheStats());
-          }
-        }
-      }
+    accessCount.increment();
+    obj = cacheMap.get(ck);
+    if (obj == null)  {
+      missCount.increment();
     }
-    else  {
-      obj = cacheMap.get(ck);
+    
+    if (AppworxGlobal.logger.isFinerLoggable())  {
+      AppworxGlobal.logger.finer(this + (obj == null ? ": cache miss for '" : ": cache hit for '") + ck + "'");
+      if (AppworxGlobal.logger.isFinestLoggable()) {
+        AppworxGlobal.logger.finest(printCacheStats());
+      }
     }
 
     if (obj != null)  {
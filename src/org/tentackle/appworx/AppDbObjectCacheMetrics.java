@@ -0,0 +1,295 @@
+/**
+ * Tentackle - a framework for java desktop applications
+ * Copyright (C) 2001-2008 Harald Krake, harald@krake.de, +49 7722 9508-0
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+// $Id$
+
+package org.tentackle.appworx;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import org.tentackle.util.LatencyHistogram;
+
+
+/**
+ * Metrics of an {@link AppDbObjectCache}.<br>
+ * 
+ * The metrics are always collected. Counters are {@link LongAdder}s to keep the overhead
+ * low for concurrent readers. The metrics are available via
+ * {@link AppDbObjectCache#getMetrics()} and via JMX (see {@link AppDbObjectCache#registerMBeans()}).
+ *
+ * @author harald
+ */
+public class AppDbObjectCacheMetrics implements AppDbObjectCacheMetricsMBean {
+  
+  /**
+   * Only every LOCK_SAMPLE_RATE'th lock acquisition is timed.
+   * Must be a power of 2.
+   */
+  public static final int LOCK_SAMPLE_RATE = 64;
+  
+  
+  private final AppDbObjectCache<?> cache;                // the cache
+  
+  private final LongAdder hits;                      // lookups answered from cache
+  private final LongAdder misses;                    // lookups not answered from cache
+  private final LongAdder loadedObjects;             // objects loaded from storage
+  private final LongAdder evictions;                 // objects evicted
+  private final LongAdder invalidations;             // cache invalidations
+  private final LongAdder expiredObjects;            // objects marked expired
+  private final LatencyHistogram loadTimes;               // load latencies
+  private final LatencyHistogram expirationTimes;         // expiration latencies
+  private final LatencyHistogram lockWaits;               // lock wait times
+  private final ThreadLocal<int[]> lockSamples;           // sample counter per thread
+  
+  
+  /**
+   * Creates the metrics for a cache.
+   * 
+   * @param cache the cache
+   */
+  AppDbObjectCacheMetrics(AppDbObjectCache<?> cache) {
+    this.cache      = cache;
+    hits            = new LongAdder();
+    misses          = new LongAdder();
+    loadedObjects   = new LongAdder();
+    evictions       = new LongAdder();
+    invalidations   = new LongAdder();
+    expiredObjects  = new LongAdder();
+    loadTimes       = new LatencyHistogram();
+    expirationTimes = new LatencyHistogram();
+    lockWaits       = new LatencyHistogram();
+    lockSamples     = new ThreadLocal<int[]>() {
+      @Override
+      protected int[] initialValue() {
+        return new int[1];
+      }
+    };
+  }
+  
+  
+  /**
+   * Counts a cache hit.
+   */
+  void countHit() {
+    hits.increment();
+  }
+  
+  /**
+   * Counts a cache miss.
+   */
+  void countMiss() {
+    misses.increment();
+  }
+  
+  /**
+   * Records a load from storage.
+   * 
+   * @param startNanos the start of the load (from {@link System#nanoTime()})
+   * @param count the number of objects loaded
+   */
+  void recordLoad(long startNanos, int count) {
+    loadTimes.record(System.nanoTime() - startNanos);
+    loadedObjects.add(count);
+  }
+  
+  /**
+   * Counts evicted objects.
+   * 
+   * @param count the number of objects
+   */
+  void countEvictions(int count) {
+    evictions.add(count);
+  }
+  
+  /**
+   * Counts an invalidation.
+   */
+  void countInvalidation() {
+    invalidations.increment();
+  }
+  
+  /**
+   * Counts expired objects.
+   * 
+   * @param count the number of objects
+   */
+  void countExpiredObjects(int count) {
+    expiredObjects.add(count);
+  }
+  
+  /**
+   * Records an expiration.
+   * 
+   * @param startNanos the start of the expiration (from {@link System#nanoTime()})
+   */
+  void recordExpiration(long startNanos) {
+    expirationTimes.record(System.nanoTime() - startNanos);
+  }
+  
+  /**
+   * Starts timing the wait for the cache lock.<br>
+   * Invoke right before acquiring the lock.
+   * Each thread counts its own acquisitions, so that exactly every
+   * {@link #LOCK_SAMPLE_RATE}th acquisition of a thread is timed.
+   * 
+   * @return the start time (from {@link System#nanoTime()}), 0 if not sampled
+   */
+  long startLockWait() {
+    int[] samples = lockSamples.get();
+    return (++samples[0] & (LOCK_SAMPLE_RATE - 1)) == 0 ? System.nanoTime() : 0;
+  }
+  
+  /**
+   * Records the wait for the cache lock.<br>
+   * Invoke right after the lock has been acquired.
+   * 
+   * @param startNanos the time returned by {@link #startLockWait()}
+   */
+  void recordLockWait(long startNanos) {
+    if (startNanos != 0) {
+      lockWaits.record(System.nanoTime() - startNanos);
+    }
+  }
+  
+  
+  
+  public String getCacheClassName() {
+    return cache.getObjectClass().getName();
+  }
+
+  public int getSize() {
+    return cache.getSize();
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  public double getHitRate() {
+    long h = hits.sum();
+    long total = h + misses.sum();
+    return total == 0 ? 0.0 : h * 100.0 / total;
+  }
+
+  public long getLoads() {
+    return loadTimes.getCount();
+  }
+
+  public long getLoadedObjects() {
+    return loadedObjects.sum();
+  }
+
+  public long getLoadAverageMicros() {
+    return loadTimes.getAverageNanos() / 1000;
+  }
+
+  public long getLoadP99Micros() {
+    return loadTimes.getPercentileMicros(99.0);
+  }
+
+  public long getLoadMaxMicros() {
+    return loadTimes.getMaxNanos() / 1000;
+  }
+
+  public long[] getLoadHistogram() {
+    return loadTimes.getCounts();
+  }
+
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+  public long getInvalidations() {
+    return invalidations.sum();
+  }
+
+  public long getExpirations() {
+    return expirationTimes.getCount();
+  }
+
+  public long getExpiredObjects() {
+    return expiredObjects.sum();
+  }
+
+  public long getExpirationAverageMicros() {
+    return expirationTimes.getAverageNanos() / 1000;
+  }
+
+  public long getExpirationMaxMicros() {
+    return expirationTimes.getMaxNanos() / 1000;
+  }
+
+  public long[] getExpirationHistogram() {
+    return expirationTimes.getCounts();
+  }
+
+  public long getSampledLockAcquisitions() {
+    return lockWaits.getCount();
+  }
+
+  public long getLockWaitAverageMicros() {
+    return lockWaits.getAverageNanos() / 1000;
+  }
+
+  public long getLockWaitMaxMicros() {
+    return lockWaits.getMaxNanos() / 1000;
+  }
+
+  public long[] getLockWaitHistogram() {
+    return lockWaits.getCounts();
+  }
+
+  public long[] getHistogramLimitsMicros() {
+    return LatencyHistogram.BUCKET_LIMITS.clone();
+  }
+
+  public String[] getIndexStatistics() {
+    List<String> stats = cache.getIndexStatistics();
+    return stats.toArray(new String[stats.size()]);
+  }
+
+  public void reset() {
+    hits.reset();
+    misses.reset();
+    loadedObjects.reset();
+    evictions.reset();
+    invalidations.reset();
+    expiredObjects.reset();
+    loadTimes.reset();
+    expirationTimes.reset();
+    lockWaits.reset();
+    cache.clearCacheStats();
+  }
+  
+  
+  @Override
+  public String toString() {
+    return "hits=" + getHits() + ", misses=" + getMisses() + ", hitrate=" + (int) getHitRate() + "%" +
+           ", evictions=" + getEvictions() + ", invalidations=" + getInvalidations() +
+           ", expired=" + getExpiredObjects() + 
+           "\n  loads: " + loadTimes + ", objects=" + getLoadedObjects() +
+           "\n  expirations: " + expirationTimes +
+           "\n  lock waits: " + lockWaits;
+  }
+  
+}
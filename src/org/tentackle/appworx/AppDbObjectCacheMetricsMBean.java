@@ -0,0 +1,187 @@
+/**
+ * Tentackle - a framework for java desktop applications
+ * Copyright (C) 2001-2008 Harald Krake, harald@krake.de, +49 7722 9508-0
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+// $Id$
+
+package org.tentackle.appworx;
+
+
+/**
+ * JMX interface for the metrics of an {@link AppDbObjectCache}.
+ *
+ * @author harald
+ */
+public interface AppDbObjectCacheMetricsMBean {
+  
+  /**
+   * Gets the name of the class managed by the cache.
+   * @return the classname
+   */
+  String getCacheClassName();
+  
+  /**
+   * Gets the number of objects in the cache.
+   * @return the size
+   */
+  int getSize();
+  
+  /**
+   * Gets the number of lookups answered from the cache.
+   * @return the hits
+   */
+  long getHits();
+  
+  /**
+   * Gets the number of lookups not answered from the cache.
+   * @return the misses
+   */
+  long getMisses();
+  
+  /**
+   * Gets the hit rate.
+   * @return the hit rate in percent
+   */
+  double getHitRate();
+  
+  /**
+   * Gets the number of loads from storage (single objects and lists).
+   * @return the number of loads
+   */
+  long getLoads();
+  
+  /**
+   * Gets the number of objects loaded from storage.
+   * @return the number of objects
+   */
+  long getLoadedObjects();
+  
+  /**
+   * Gets the average load time.
+   * @return the average in microseconds
+   */
+  long getLoadAverageMicros();
+  
+  /**
+   * Gets the 99th percentile of the load times.
+   * @return the upper bound in microseconds
+   */
+  long getLoadP99Micros();
+  
+  /**
+   * Gets the maximum load time.
+   * @return the maximum in microseconds
+   */
+  long getLoadMaxMicros();
+  
+  /**
+   * Gets the histogram of the load times.
+   * @return the counts per bucket
+   * @see #getHistogramLimitsMicros() 
+   */
+  long[] getLoadHistogram();
+  
+  /**
+   * Gets the number of objects evicted by the caching strategy.
+   * @return the evictions
+   */
+  long getEvictions();
+  
+  /**
+   * Gets the number of cache invalidations.
+   * @return the invalidations
+   */
+  long getInvalidations();
+  
+  /**
+   * Gets the number of expirations processed.
+   * @return the expirations
+   */
+  long getExpirations();
+  
+  /**
+   * Gets the number of objects marked expired.
+   * @return the expired objects
+   */
+  long getExpiredObjects();
+  
+  /**
+   * Gets the average expiration time.
+   * @return the average in microseconds
+   */
+  long getExpirationAverageMicros();
+  
+  /**
+   * Gets the maximum expiration time.
+   * @return the maximum in microseconds
+   */
+  long getExpirationMaxMicros();
+  
+  /**
+   * Gets the histogram of the expiration times.
+   * @return the counts per bucket
+   * @see #getHistogramLimitsMicros() 
+   */
+  long[] getExpirationHistogram();
+  
+  /**
+   * Gets the number of sampled lock acquisitions.<br>
+   * Only every {@link AppDbObjectCacheMetrics#LOCK_SAMPLE_RATE}th acquisition
+   * of the cache lock is timed. Multiply by the sample rate to estimate
+   * the total number of acquisitions.
+   * @return the sampled lock acquisitions
+   */
+  long getSampledLockAcquisitions();
+  
+  /**
+   * Gets the average time waited for the cache lock.
+   * @return the average in microseconds
+   */
+  long getLockWaitAverageMicros();
+  
+  /**
+   * Gets the maximum time waited for the cache lock.
+   * @return the maximum in microseconds
+   */
+  long getLockWaitMaxMicros();
+  
+  /**
+   * Gets the histogram of the times waited for the cache lock.
+   * @return the counts per bucket
+   * @see #getHistogramLimitsMicros() 
+   */
+  long[] getLockWaitHistogram();
+  
+  /**
+   * Gets the upper limits of the histogram buckets.
+   * @return the limits in microseconds
+   */
+  long[] getHistogramLimitsMicros();
+  
+  /**
+   * Gets the statistics of the cache indexes.
+   * @return one string per index
+   */
+  String[] getIndexStatistics();
+  
+  /**
+   * Resets all metrics.
+   */
+  void reset();
+  
+}
@@ -0,0 +1,184 @@
+/**
+ * Tentackle - a framework for java desktop applications
+ * Copyright (C) 2001-2008 Harald Krake, harald@krake.de, +49 7722 9508-0
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+// $Id$
+
+package org.tentackle.appworx;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Persistent snapshot of a preloading {@link AppDbObjectCache}.<br>
+ * 
+ * Holds the lists of all objects per context and the tableSerial the lists
+ * were valid at. The snapshot is read from a memory mapped file. Because the
+ * deserialized contexts are not connected to a db, contexts are matched by
+ * class and context ID.
+ *
+ * @param <T> the {@link AppDbObject} class
+ * @author harald
+ */
+class AppDbObjectCacheSnapshot<T extends AppDbObject> implements Serializable {
+  
+  private static final long serialVersionUID = 4318065170294458193L;
+  
+  private final String className;               // the name of the object class
+  private final String source;                  // the db source, see AppDbObjectCache#getSnapshotSource
+  private final long tableSerial;               // the tableSerial the lists are valid at
+  private final List<ContextDb> contexts;       // the contexts (without db)
+  private final List<List<T>> lists;            // the lists, one per context
+  
+  
+  /**
+   * Creates an empty snapshot.
+   * 
+   * @param clazz the object class
+   * @param source the db source
+   * @param tableSerial the tableSerial the lists are valid at
+   */
+  AppDbObjectCacheSnapshot(Class<T> clazz, String source, long tableSerial) {
+    this.className   = clazz.getName();
+    this.source      = source;
+    this.tableSerial = tableSerial;
+    contexts         = new ArrayList<ContextDb>();
+    lists            = new ArrayList<List<T>>();
+  }
+  
+  
+  /**
+   * Gets the tableSerial the lists are valid at.
+   * 
+   * @return the table serial
+   */
+  long getTableSerial() {
+    return tableSerial;
+  }
+  
+  
+  /**
+   * Adds the list of objects for a context.
+   * 
+   * @param contextDb the context
+   * @param list the objects
+   */
+  void addList(ContextDb contextDb, List<T> list) {
+    contexts.add(contextDb);
+    lists.add(new ArrayList<T>(list));
+  }
+  
+  
+  /**
+   * Removes the list for a context.
+   * 
+   * @param contextDb the context
+   * @return the list, null if snapshot does not contain that context
+   */
+  List<T> removeList(ContextDb contextDb) {
+    for (int i=0; i < contexts.size(); i++) {
+      ContextDb snapContext = contexts.get(i);
+      if (snapContext.getClass() == contextDb.getClass() &&
+          snapContext.getContextId() == contextDb.getContextId()) {
+        contexts.remove(i);
+        return lists.remove(i);
+      }
+    }
+    return null;
+  }
+  
+  
+  /**
+   * Returns whether all lists have been removed.
+   * 
+   * @return true if empty
+   */
+  boolean isEmpty() {
+    return lists.isEmpty();
+  }
+  
+  
+  /**
+   * Writes the snapshot to a file.<br>
+   * The snapshot is written to a temporary file first which is
+   * then renamed. Thus, readers never see a partially written snapshot.
+   * 
+   * @param file the snapshot file
+   * @throws IOException if writing failed
+   */
+  void write(File file) throws IOException {
+    File tmpFile = new File(file.getPath() + ".tmp");
+    ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+    try {
+      out.writeObject(this);
+    }
+    finally {
+      out.close();
+    }
+    file.delete();    // renameTo does not replace on all platforms
+    if (!tmpFile.renameTo(file)) {
+      throw new IOException("renaming " + tmpFile + " to " + file + " failed");
+    }
+  }
+  
+  
+  /**
+   * Reads a snapshot from a file.
+   * 
+   * @param <T> the object class
+   * @param file the snapshot file
+   * @param clazz the object class
+   * @param source the db source
+   * @return the snapshot, null if no such file or snapshot belongs to another class or source
+   * @throws IOException if reading failed
+   * @throws ClassNotFoundException if some class of the snapshot is missing
+   */
+  @SuppressWarnings("unchecked")
+  static <T extends AppDbObject> AppDbObjectCacheSnapshot<T> read(File file, Class<T> clazz, String source)
+         throws IOException, ClassNotFoundException {
+    
+    if (!file.isFile()) {
+      return null;
+    }
+    
+    FileInputStream fis = new FileInputStream(file);
+    try {
+      ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(fis));
+      AppDbObjectCacheSnapshot<T> snapshot = (AppDbObjectCacheSnapshot<T>) in.readObject();
+      if (!clazz.getName().equals(snapshot.className) ||
+          (source == null ? snapshot.source != null : !source.equals(snapshot.source))) {
+        return null;
+      }
+      return snapshot;
+    }
+    finally {
+      fis.close();
+    }
+  }
+  
+}
@@ -296,4 +296,14 @@ public class AppDbObjectClassVariables extends DbObjectClassVariables {
    */
   public int transferEditedByStatementId;
   
+  /**
+   * prepared statement ID for the bulk {@link AppDbObject#updateEditedBy(long[], java.sql.Timestamp, long, java.sql.Timestamp)}
+   */
+  public int updateEditedByBulkStatementId;
+  
+  /**
+   * prepared statement ID for select in the bulk {@link AppDbObject#updateEditedBy(long[], java.sql.Timestamp, long, java.sql.Timestamp)}
+   */
+  public int selectEditedByBulkStatementId;
+  
 }
@@ -0,0 +1,161 @@
+/**
+ * Tentackle - a framework for java desktop applications
+ * Copyright (C) 2001-2008 Harald Krake, harald@krake.de, +49 7722 9508-0
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+// $Id$
+
+package org.tentackle.appworx;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import org.tentackle.db.DbCursor;
+import org.tentackle.db.DbObject;
+import org.tentackle.ui.FormTableCursorPageSource;
+
+
+/**
+ * Page source for {@link org.tentackle.ui.FormTablePagedModel}s
+ * running a QBF-query.
+ * <p>
+ * Sorting is pushed down to the database by an {@code ORDER BY}-clause
+ * for all columns with a known SQL column name.
+ * In remote mode sorting is not supported and the query is run
+ * via {@link AppDbObject#searchQbfCursor}.
+ * Because the server runs queries with a limit, an offset or an estimated row count
+ * as forward-only one-shot queries, such remote queries are loaded as a list
+ * via {@link AppDbObject#searchQbf} instead of being paged through a cursor.
+ *
+ * @param <T> the database object class
+ * @author harald
+ */
+public class AppDbObjectPageSource<T extends AppDbObject> extends FormTableCursorPageSource {
+
+  private final QbfParameter qbfPar;      // the qbf parameter
+  private final T object;                 // the object to create the query for
+  private final String[] sqlColumnNames;  // the SQL column names for the model columns
+  private final boolean oneShot;          // true if remote one-shot query (no scrollable cursor)
+  private List<? extends AppDbObject> rows; // the rows of a one-shot query, null if not loaded yet
+
+
+  /**
+   * Creates a page source.
+   *
+   * @param qbfPar the qbf parameter
+   * @param object the object to create the default query for
+   * @param sqlColumnNames the SQL column names for each model column,
+   *        null elements for non-sortable columns, null if no sorting at all
+   */
+  public AppDbObjectPageSource(QbfParameter qbfPar, T object, String... sqlColumnNames) {
+    this.qbfPar = qbfPar;
+    this.object = object;
+    this.sqlColumnNames = sqlColumnNames;
+    oneShot = object.getDb().isRemote() && 
+              (qbfPar.limit > 0 || qbfPar.offset > 0 || qbfPar.withEstimatedRowCount);
+  }
+
+
+  /**
+   * Gets the qbf parameter.
+   *
+   * @return the parameter
+   */
+  public QbfParameter getQbfParameter() {
+    return qbfPar;
+  }
+
+
+  @Override
+  protected String getSqlColumnName(int column) {
+    if (object.getDb().isRemote() ||
+        sqlColumnNames == null || column < 0 || column >= sqlColumnNames.length) {
+      return null;
+    }
+    return sqlColumnNames[column];
+  }
+
+
+  @Override
+  public synchronized int getRowCount() {
+    if (oneShot) {
+      return getRows().size();
+    }
+    return super.getRowCount();
+  }
+
+
+  @Override
+  public synchronized List<?> loadPage(int firstRow, int rowCount) {
+    if (oneShot) {
+      List<? extends AppDbObject> list = getRows();
+      int lastRow = Math.min(firstRow + rowCount, list.size());
+      return firstRow < lastRow ? new ArrayList<AppDbObject>(list.subList(firstRow, lastRow)) : new ArrayList<AppDbObject>();
+    }
+    return super.loadPage(firstRow, rowCount);
+  }
+
+
+  @Override
+  public synchronized void close() {
+    rows = null;
+    super.close();
+  }
+
+
+  @Override
+  protected DbCursor<? extends DbObject> openCursor(String orderBy) {
+    if (object.getDb().isRemote()) {
+      return object.searchQbfCursor(qbfPar);
+    }
+    AppDbQuery<T> query = createQuery();
+    if (orderBy == null) {
+      orderBy = object.orderBy();
+    }
+    if (orderBy != null) {
+      query.add(" ORDER BY " + orderBy);    // NOI18N
+    }
+    return query.cursor(ResultSet.TYPE_SCROLL_INSENSITIVE);
+  }
+
+
+  /**
+   * Gets the rows of a remote one-shot query.
+   * Loads them if not yet done.
+   *
+   * @return the rows
+   */
+  private List<? extends AppDbObject> getRows() {
+    if (rows == null) {
+      rows = object.searchQbf(qbfPar);
+    }
+    return rows;
+  }
+
+
+  /**
+   * Creates the query without the order by clause.<br>
+   * The default implementation creates the default query for
+   * the object. Override to add more conditions.
+   *
+   * @return the query
+   */
+  protected AppDbQuery<T> createQuery() {
+    return new AppDbQuery<T>(qbfPar, object);
+  }
+
+}
@@ -34,11 +34,14 @@ import javax.swing.event.TableModelListener;
 import javax.swing.table.TableModel;
 import org.tentackle.db.Db;
 import org.tentackle.plaf.PlafGlobal;
+import org.tentackle.ui.AbstractFormTableModel;
 import org.tentackle.ui.FormButton;
 import org.tentackle.ui.FormHelper;
 import org.tentackle.ui.FormTable;
 import org.tentackle.ui.FormTableEntry;
 import org.tentackle.ui.FormTableModel;
+import org.tentackle.ui.FormTablePageSource;
+import org.tentackle.ui.FormTablePagedModel;
 import org.tentackle.ui.FormTableSorter;
 import org.tentackle.ui.FormTableUtilityPopup;
 import org.tentackle.util.Compare;
@@ -60,6 +63,7 @@ public class AppDbObjectTablePanel extends org.tentackle.ui.FormPanel {
   private boolean                     unique;                 // true if objects cannot be added more than once
   private FormTableModel              dataModel;              // data model
   private FormTableSorter             dataSorter;             // data sorter
+  private FormTablePagedModel         pagedModel;             // != null if browsing a page source (read-only)
   private FormTable                   dataTable;              // the table itself
   private FormTableUtilityPopup       popup;                  // the popup menu
   private AppDbObject                 current;                // current selected object, null = none
@@ -131,6 +135,8 @@ public class AppDbObjectTablePanel extends org.tentackle.ui.FormPanel {
   @SuppressWarnings("unchecked")
   public void setup(FormTableEntry template, List<? extends AppDbObject> objList, boolean ordered, String prefName) {
     
+    closePagedModel();
+    
     this.template  = template;
     this.objList   = (List<AppDbObject>)objList;
     this.db        = ((AppDbObject)template.getObject()).getDb();
@@ -169,6 +175,42 @@ public class AppDbObjectTablePanel extends org.tentackle.ui.FormPanel {
 
   
   
+  /**
+   * Sets up the table panel to browse the objects of a page source.<br>
+   * Only a window of rows is kept in memory and sorting is
+   * pushed down to the page source. The table is read-only, i.e.
+   * the objects cannot be added, removed or moved.
+   * Use this for very large result sets.
+   * 
+   * @param template  the template for the table-row
+   * @param source    the page source
+   * @param prefName  the FormTable-Name for preferences (installs FormTableUtility-Menu too), null = none (no Menu either)
+   * @see AppDbObjectPageSource
+   */
+  public void setup(FormTableEntry template, FormTablePageSource source, String prefName) {
+    
+    setup(template, new ArrayList<AppDbObject>(), false, prefName);
+    
+    pagedModel = new FormTablePagedModel(template, source);
+    dataSorter = new FormTableSorter(pagedModel);
+    dataTable.setModel(dataSorter);
+    
+    updateSelection();
+  }
+  
+  
+  /**
+   * Returns whether the panel browses a page source.
+   * 
+   * @return true if paged, false if list of objects
+   * @see #setup(FormTableEntry, FormTablePageSource, String) 
+   */
+  public boolean isPaged() {
+    return pagedModel != null;
+  }
+  
+  
+  
   /**
    * Defines whether the data is ordered or not.
    *
@@ -535,6 +577,9 @@ public class AppDbObjectTablePanel extends org.tentackle.ui.FormPanel {
       this.template = template;
       templateChanged = true;
       dataModel.setTemplate(template);
+      if (pagedModel != null) {
+        pagedModel.setTemplate(template);
+      }
     }
   }
   
@@ -569,7 +614,7 @@ public class AppDbObjectTablePanel extends org.tentackle.ui.FormPanel {
   @SuppressWarnings("unchecked")
   public void listChanged (List<? extends AppDbObject> objList)  {
     this.objList = (List<AppDbObject>)objList;
-    if (templateChanged) {
+    if (templateChanged || pagedModel != null) {
       templateChanged = false;
       setup(template, objList, ordered, getTableName());
     }
@@ -585,7 +630,7 @@ public class AppDbObjectTablePanel extends org.tentackle.ui.FormPanel {
    * @return true if model data has been changed
    */
   public boolean isDataChanged()  {
-    return dataModel.isDataChanged();  
+    return getDataModel().isDataChanged();  
   }
   
 
@@ -606,7 +651,7 @@ public class AppDbObjectTablePanel extends org.tentackle.ui.FormPanel {
    * @param l the listener to add
    */
   public void addTableModelListener (TableModelListener l) {
-    dataModel.addTableModelListener(l);
+    getDataModel().addTableModelListener(l);
   }
 
   /**
@@ -615,7 +660,7 @@ public class AppDbObjectTablePanel extends org.tentackle.ui.FormPanel {
    * @param l the listener to remove
    */
   public void removeTableModelListener (TableModelListener l) {
-    dataModel.removeTableModelListener(l);
+    getDataModel().removeTableModelListener(l);
   }
 
 
@@ -631,8 +676,34 @@ public class AppDbObjectTablePanel extends org.tentackle.ui.FormPanel {
   
   
 
+  // gets the data model (list or paged)
+  private AbstractFormTableModel getDataModel() {
+    return pagedModel != null ? pagedModel : dataModel;
+  }
+  
+  
+  // closes the paged model, if any
+  private void closePagedModel() {
+    if (pagedModel != null) {
+      pagedModel.close();
+      pagedModel = null;
+    }
+  }
+  
+  
   // updates the selection
   private void updateSelection()  {
+    if (pagedModel != null) {
+      // read-only browsing
+      rowIndex = dataSorter.getModelIndex(dataTable.getSelectedRow());
+      FormTableEntry entry = rowIndex >= 0 ? pagedModel.getEntryAt(rowIndex) : null;
+      current = entry == null ? null : (AppDbObject)entry.getObject();
+      newButton.setEnabled(false);
+      deleteButton.setEnabled(false);
+      moveUpButton.setEnabled(false);
+      moveDownButton.setEnabled(false);
+      return;
+    }
     rowIndex = ordered ? dataTable.getSelectedRow() : dataSorter.getModelIndex(dataTable.getSelectedRow());
     if (rowIndex >= 0) {
       current = objList.get(rowIndex);
@@ -23,10 +23,14 @@
 package org.tentackle.appworx;
 
 import java.text.MessageFormat;
+import org.tentackle.db.Db;
+import org.tentackle.db.DbRuntimeException;
+import org.tentackle.ui.FormError;
 import org.tentackle.ui.FormHelper;
 import org.tentackle.ui.FormInfo;
 import org.tentackle.ui.FormTree;
 import org.tentackle.util.FileTransferable;
+import java.awt.EventQueue;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.Toolkit;
@@ -53,11 +57,21 @@ import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import javax.swing.JComponent;
 import javax.swing.JMenuItem;
 import javax.swing.JSeparator;
@@ -122,6 +136,11 @@ public class AppDbObjectTree extends FormTree implements TreeWillExpandListener,
   private JSeparator                              extraSeparator;         // != null if sep. exists
   private Collection                              objCollection;          // List of objects in tree
   private int                                     maxDepthForExtractPath; // default max. depth to show "extract path" button
+  private boolean                                 asyncExpansion;         // true if load child objects in background
+  private boolean                                 syncExpansionForced;    // true if doExpandPath in progress
+  private Map<DefaultMutableTreeNode,ChildLoader> childLoaders;           // pending or prefetched loads for async expansion
+  private ExecutorService                         childExecutor;          // the executor for async expansion
+  private Map<Db,Db>                              loaderDbs;              // dedicated connections for async expansion by the objects' Db
   
   
   /**
@@ -333,6 +352,59 @@ public class AppDbObjectTree extends FormTree implements TreeWillExpandListener,
   }
   
 
+  /**
+   * Enables the asynchronous expansion mode.<br>
+   * If enabled, the child objects are loaded in a background thread
+   * while a placeholder node is shown. Furthermore, the child objects
+   * of the children are prefetched one level ahead.
+   * <p>
+   * Since a {@link Db} must not be used by more than one thread at a time,
+   * the background thread loads through a dedicated connection, which is a clone
+   * of the objects' Db (see {@link Db#clone()}). The objects are copied to that
+   * connection and the loaded child objects are moved back to the objects' Db
+   * via {@link AppDbObject#setContextDb}. Hence, child objects that are not
+   * AppDbObjects must not keep a reference to the db they were loaded with.
+   * The dedicated connections are closed when the asynchronous mode is disabled.
+   * Only {@link AppDbObject}s are expanded asynchronously, other objects such as
+   * {@link AppDbObjectTreeExtension}s and expansions via {@link #doExpandPath} are always
+   * expanded synchronously.
+   *
+   * @param asyncExpansion true to load children asynchronously, false if synchronous (default)
+   */
+  public void setAsyncExpansion(boolean asyncExpansion) {
+    this.asyncExpansion = asyncExpansion;
+    if (!asyncExpansion) {
+      if (childLoaders != null) {
+        for (ChildLoader loader: childLoaders.values()) {
+          loader.cancelled = true;
+        }
+        childLoaders.clear();
+      }
+      if (loaderDbs != null && !loaderDbs.isEmpty()) {
+        final List<Db> dbs = new ArrayList<Db>(loaderDbs.values());
+        loaderDbs.clear();
+        // close after the running load, if any
+        childExecutor.execute(new Runnable() {
+          public void run() {
+            for (Db db: dbs) {
+              db.close();
+            }
+          }
+        });
+      }
+    }
+  }
+  
+  /**
+   * Returns whether asynchronous expansion mode is enabled.
+   *
+   * @return true if children are loaded in background
+   */
+  public boolean isAsyncExpansion() {
+    return asyncExpansion;
+  }
+  
+
   /**
    * Shows the popup menu at current selection.
    */
@@ -480,8 +552,15 @@ public class AppDbObjectTree extends FormTree implements TreeWillExpandListener,
    */
   public void doExpandPath(int level, int maxLevel, AppDbObject stopObject, TreePath path)  {
     
-    // expand this path
-    expandPath(path);
+    // expand this path (children must be loaded before descending)
+    boolean oldForced = syncExpansionForced;
+    syncExpansionForced = true;
+    try {
+      expandPath(path);
+    }
+    finally {
+      syncExpansionForced = oldForced;
+    }
     
     if (maxLevel == 0 || level + 1 < maxLevel)  {
       // expand all other objects
@@ -520,6 +599,7 @@ public class AppDbObjectTree extends FormTree implements TreeWillExpandListener,
   public void doCollapsePath(TreePath path)  {
     collapsePath(path);
     DefaultMutableTreeNode node = (DefaultMutableTreeNode)(path.getLastPathComponent());
+    cancelChildLoaders(node);
     AppDbTreeObject tobj = (AppDbTreeObject)(node.getUserObject());
     tobj.setExpanded(false);
     if (!(tobj instanceof AppDbTreeToggleNodeObject))  {
@@ -576,37 +656,37 @@ public class AppDbObjectTree extends FormTree implements TreeWillExpandListener,
           throw new ExpandVetoException(e);
         }
         
-        // load child objects
-        List<Object> childList = null;
-        
         Object object = tobj.getObject();
         
-        FormHelper.setWaitCursor(this);
-        
-        if (object instanceof AppDbObjectTreeExtension)  {
-          childList = ((AppDbObjectTreeExtension)object).getTreeChildObjects(tobj.getParentObject()); 
-        }
-        
-        if (object instanceof AppDbObject)  {
-          childList = ((AppDbObject)object).getTreeChildObjects(tobj.getParentObject()); 
-        }
-        
-        if (childList != null)  {
-          for (Object obj: childList)  {
-            if (isObjectAppendable(obj))  {
-              AppDbTreeObject to = new AppDbTreeObject(obj, object);
-              to.setStopTreeWillExpand(isObjectInParents(obj, node));
-              DefaultMutableTreeNode childnode = new DefaultMutableTreeNode(to);
-              childnode.setAllowsChildren(
-                (obj instanceof AppDbObjectTreeExtension && ((AppDbObjectTreeExtension)obj).allowsTreeChildObjects()) ||
-                (obj instanceof AppDbObject && ((AppDbObject)obj).allowsTreeChildObjects()));
-              ((DefaultTreeModel)treeModel).insertNodeInto(childnode, node, node.getChildCount());
+        if (asyncExpansion && !syncExpansionForced && object instanceof AppDbObject) {
+          ChildLoader loader = childLoaders == null ? null : childLoaders.get(node);
+          if (loader != null && loader.done) {
+            // prefetched
+            childLoaders.remove(node);
+            insertChildren(node, loader.childList);
+            prefetchChildren(node);
+          }
+          else  {
+            if (loader == null) {
+              loader = loadChildren(node, (AppDbObject)object, tobj.getParentObject());
             }
+            loader.expanding = true;
+            // show placeholder until loaded
+            AppDbTreeObject to = new AppDbTreeObject(Locales.bundle.getString("loading..."), object);
+            to.setStopTreeWillExpand(true);
+            ((DefaultTreeModel)treeModel).insertNodeInto(new DefaultMutableTreeNode(to, false), node, 0);
+          }
+        }
+        else  {
+          FormHelper.setWaitCursor(this);
+          try {
+            insertChildren(node, loadTreeChildObjects(object, tobj.getParentObject()));
+          }
+          finally {
+            FormHelper.setDefaultCursor(this);
           }
         }
         
-        FormHelper.setDefaultCursor(this);
-
         // mark it expanded
         tobj.setExpanded(true);
       }
@@ -616,12 +696,274 @@ public class AppDbObjectTree extends FormTree implements TreeWillExpandListener,
   /**
    * {@inheritDoc}
    * <p>
-   * The default implementation does nothing.
-   * Applications may override.
+   * The default implementation cancels pending asynchronous loads.
+   * Applications may override and should invoke super.
    * 
    * @param e the expansion event
    */
-  public void treeWillCollapse (TreeExpansionEvent e) {}
+  public void treeWillCollapse (TreeExpansionEvent e) {
+    DefaultMutableTreeNode node = (DefaultMutableTreeNode)(e.getPath().getLastPathComponent());
+    if (node != null && childLoaders != null) {
+      ChildLoader loader = childLoaders.get(node);
+      if (loader != null && loader.expanding) {
+        // not loaded yet: remove placeholder and load again on next expansion
+        cancelChildLoaders(node);
+        node.removeAllChildren();
+        ((DefaultTreeModel)treeModel).nodeStructureChanged(node);
+        ((AppDbTreeObject)node.getUserObject()).setExpanded(false);
+      }
+      else  {
+        // discard prefetched results below this node
+        for (int i=0; i < node.getChildCount(); i++) {
+          cancelChildLoaders((DefaultMutableTreeNode)node.getChildAt(i));
+        }
+      }
+    }
+  }
+  
+  
+  /**
+   * Loads the child objects of a node.
+   * 
+   * @param object the node's object
+   * @param parentObject the object of the parent node
+   * @return the child objects, null if none
+   */
+  protected List<Object> loadTreeChildObjects(Object object, Object parentObject) {
+    if (object instanceof AppDbObjectTreeExtension)  {
+      return ((AppDbObjectTreeExtension)object).getTreeChildObjects(parentObject); 
+    }
+    if (object instanceof AppDbObject)  {
+      return ((AppDbObject)object).getTreeChildObjects(parentObject); 
+    }
+    return null;
+  }
+  
+  
+  /**
+   * Appends the child objects to a node.<br>
+   * Fires a single {@code nodesWereInserted} event.
+   * 
+   * @param node the parent node
+   * @param childList the child objects, null if none
+   */
+  private void insertChildren(DefaultMutableTreeNode node, List<Object> childList) {
+    if (childList != null)  {
+      Object object = ((AppDbTreeObject)node.getUserObject()).getObject();
+      int firstIndex = node.getChildCount();
+      for (Object obj: childList)  {
+        if (isObjectAppendable(obj))  {
+          AppDbTreeObject to = new AppDbTreeObject(obj, object);
+          to.setStopTreeWillExpand(isObjectInParents(obj, node));
+          DefaultMutableTreeNode childnode = new DefaultMutableTreeNode(to);
+          childnode.setAllowsChildren(
+            (obj instanceof AppDbObjectTreeExtension && ((AppDbObjectTreeExtension)obj).allowsTreeChildObjects()) ||
+            (obj instanceof AppDbObject && ((AppDbObject)obj).allowsTreeChildObjects()));
+          node.add(childnode);
+        }
+      }
+      int count = node.getChildCount() - firstIndex;
+      if (count > 0) {
+        int[] indices = new int[count];
+        for (int i=0; i < count; i++) {
+          indices[i] = firstIndex + i;
+        }
+        ((DefaultTreeModel)treeModel).nodesWereInserted(node, indices);
+      }
+    }
+  }
+  
+  
+  /**
+   * Starts loading the child objects of a node in background.
+   * 
+   * @param node the node
+   * @param object the node's object
+   * @param parentObject the object of the parent node
+   * @return the loader
+   */
+  private ChildLoader loadChildren(DefaultMutableTreeNode node, AppDbObject object, Object parentObject) {
+    if (childLoaders == null) {
+      childLoaders = new HashMap<DefaultMutableTreeNode,ChildLoader>();
+      loaderDbs = new HashMap<Db,Db>();
+    }
+    if (childExecutor == null) {
+      childExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "AppDbObjectTree loader");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    Db db = object.getDb();
+    Db loaderDb = loaderDbs.get(db);
+    if (loaderDb == null) {
+      loaderDb = db.clone();
+      loaderDbs.put(db, loaderDb);
+    }
+    ChildLoader loader = new ChildLoader(node, db, copyToDb(object, loaderDb),
+            parentObject instanceof AppDbObject ? copyToDb((AppDbObject)parentObject, loaderDb) : parentObject);
+    childLoaders.put(node, loader);
+    childExecutor.execute(loader);
+    return loader;
+  }
+  
+  
+  /**
+   * Prefetches the child objects of all children of a node.
+   * 
+   * @param node the expanded node
+   */
+  private void prefetchChildren(DefaultMutableTreeNode node) {
+    Object parentObject = ((AppDbTreeObject)node.getUserObject()).getObject();
+    for (int i=0; i < node.getChildCount(); i++) {
+      DefaultMutableTreeNode child = (DefaultMutableTreeNode)node.getChildAt(i);
+      AppDbTreeObject to = (AppDbTreeObject)child.getUserObject();
+      if (child.getAllowsChildren() && !to.isExpanded() && !to.isStopTreeWillExpand() &&
+          to.getObject() instanceof AppDbObject && !childLoaders.containsKey(child)) {
+        loadChildren(child, (AppDbObject)to.getObject(), parentObject);
+      }
+    }
+  }
+  
+  
+  /**
+   * Cancels all pending or prefetched loads of a node and its descendants.
+   * 
+   * @param node the node
+   */
+  private void cancelChildLoaders(DefaultMutableTreeNode node) {
+    if (childLoaders != null) {
+      for (Iterator<Map.Entry<DefaultMutableTreeNode,ChildLoader>> iter = childLoaders.entrySet().iterator(); iter.hasNext(); ) {
+        Map.Entry<DefaultMutableTreeNode,ChildLoader> entry = iter.next();
+        if (entry.getKey().isNodeAncestor(node)) {
+          entry.getValue().cancelled = true;
+          iter.remove();
+        }
+      }
+    }
+  }
+  
+  
+  /**
+   * Invoked from the event dispatch thread when a loader has finished.
+   * 
+   * @param loader the loader
+   */
+  private void childrenLoaded(ChildLoader loader) {
+    if (loader.cancelled || childLoaders == null || childLoaders.get(loader.node) != loader) {
+      return;   // stale
+    }
+    if (loader.failure != null) {
+      childLoaders.remove(loader.node);
+      if (loader.expanding) {
+        loader.node.removeAllChildren();
+        ((DefaultTreeModel)treeModel).nodeStructureChanged(loader.node);
+        ((AppDbTreeObject)loader.node.getUserObject()).setExpanded(false);
+        collapsePath(new TreePath(loader.node.getPath()));
+        FormError.printException(Locales.bundle.getString("loading_child_objects_failed"), loader.failure);
+      }
+      return;
+    }
+    if (loader.expanding) {
+      childLoaders.remove(loader.node);
+      // remove the placeholder
+      loader.node.removeAllChildren();
+      ((DefaultTreeModel)treeModel).nodeStructureChanged(loader.node);
+      insertChildren(loader.node, loader.childList);
+      prefetchChildren(loader.node);
+    }
+    // else: prefetched, inserted on expansion
+  }
+  
+  
+  /**
+   * Copies an object to another db connection.<br>
+   * The copy is a serialized clone, so that it doesn't share any state with the original.
+   * 
+   * @param object the object
+   * @param db the db connection
+   * @return the copy
+   */
+  private static AppDbObject copyToDb(AppDbObject object, Db db) {
+    try {
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      ObjectOutputStream out = new ObjectOutputStream(bos);
+      out.writeObject(object);
+      out.close();
+      ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()));
+      AppDbObject copy = (AppDbObject)in.readObject();
+      ContextDb contextDb = object.getContextDb() == null ? new ContextDb(db) : object.getContextDb().clone();
+      contextDb.setDb(db);
+      copy.setContextDb(contextDb);
+      return copy;
+    }
+    catch (Exception ex) {
+      throw new DbRuntimeException("copying " + object.getClass().getName() + "[" + object.getId() + "] failed", ex);
+    }
+  }
+  
+  
+  /**
+   * Loads the child objects of a node in background.<br>
+   * The objects are loaded via a dedicated db connection and moved
+   * to the db of the node's object when done.
+   */
+  private class ChildLoader implements Runnable {
+    
+    private final DefaultMutableTreeNode node;    // the node to load the children for
+    private final Db db;                          // the db of the node's object
+    private final Object object;                  // the copy of the node's object in the loader's db
+    private final Object parentObject;            // the copy of the parent object
+    private volatile boolean cancelled;           // true if result is stale
+    private volatile boolean done;                // true if loaded
+    private volatile List<Object> childList;      // the loaded children
+    private volatile RuntimeException failure;    // != null if loading failed
+    private boolean expanding;                    // true if node is waiting for the result (EDT only)
+    
+    private ChildLoader(DefaultMutableTreeNode node, Db db, Object object, Object parentObject) {
+      this.node = node;
+      this.db = db;
+      this.object = object;
+      this.parentObject = parentObject;
+    }
+    
+    public void run() {
+      if (!cancelled) {
+        try {
+          List<Object> list = loadTreeChildObjects(object, parentObject);
+          if (list != null) {
+            // move to the db of the tree
+            for (Object child: list) {
+              if (child instanceof AppDbObject) {
+                AppDbObject appObject = (AppDbObject)child;
+                ContextDb contextDb = appObject.getContextDb();
+                if (contextDb == null) {
+                  appObject.setDb(db);
+                }
+                else  {
+                  contextDb = contextDb.clone();
+                  contextDb.setDb(db);
+                  appObject.setContextDb(contextDb);
+                }
+              }
+            }
+          }
+          childList = list;
+        }
+        catch (RuntimeException ex) {
+          failure = ex;
+        }
+        done = true;
+        EventQueue.invokeLater(new Runnable() {
+          public void run() {
+            childrenLoaded(ChildLoader.this);
+          }
+        });
+      }
+    }
+  }
 
 
 
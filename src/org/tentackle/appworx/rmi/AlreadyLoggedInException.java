@@ -66,6 +66,6 @@ public class AlreadyLoggedInException extends LoginFailedException {
   @Override
   public String getMessage() {
     return MessageFormat.format(Locales.bundle.getString("You're_already_logged_into_{0}_since_{1}"),
-                                loginInfo.getApplication(), StringHelper.shortTimestampFormat.format(new Date(loginInfo.getSince())));
+                                loginInfo.getApplication(), StringHelper.shortTimestampFormatter.format(new Date(loginInfo.getSince())));
   }
 }
@@ -25,6 +25,7 @@ import java.io.Serializable;
 import java.rmi.RemoteException;
 import java.sql.Timestamp;
 import java.util.List;
+import java.util.Map;
 import org.tentackle.appworx.AppDbObject;
 import org.tentackle.appworx.ContextDb;
 import org.tentackle.appworx.QbfParameter;
@@ -92,5 +93,7 @@ public interface AppDbObjectRemoteDelegate extends DbObjectRemoteDelegate {
   public AppDbObjectRemoteDelegate.BeingEditedToken transferEditedBy(long id) throws RemoteException;
 
   public boolean updateEditedByOnly(long id, long editedBy, Timestamp editedSince, Timestamp editedExpiry) throws RemoteException;
+  
+  public Map<Long,AppDbObjectRemoteDelegate.BeingEditedToken> updateEditedBy(long[] ids, Timestamp tokenExpiry, long userId, Timestamp curTime) throws RemoteException;
 
 }
@@ -26,6 +26,7 @@ import java.rmi.server.RMIClientSocketFactory;
 import java.rmi.server.RMIServerSocketFactory;
 import java.sql.Timestamp;
 import java.util.List;
+import java.util.Map;
 import org.tentackle.appworx.AppDbObject;
 import org.tentackle.appworx.ContextDb;
 import org.tentackle.appworx.QbfParameter;
@@ -291,13 +292,10 @@ public abstract class AppDbObjectRemoteDelegateImpl<T extends AppDbObject>
   
   
   @Override
+  @SuppressWarnings("unchecked")
   public List<? extends AppDbObject> selectAll(boolean withLinkedObjects) throws RemoteException {
-    try {
-      return dbObject.selectAll(withLinkedObjects);
-    }
-    catch (Exception e) {
-      throw new RemoteException("selectAll failed", e); 
-    }    
+    // super method takes care of the server cache
+    return (List<? extends AppDbObject>) super.selectAll(withLinkedObjects);
   }
   
   
@@ -489,4 +487,13 @@ public abstract class AppDbObjectRemoteDelegateImpl<T extends AppDbObject>
     }
   }
   
+  public Map<Long,AppDbObjectRemoteDelegate.BeingEditedToken> updateEditedBy(long[] ids, Timestamp tokenExpiry, long userId, Timestamp curTime) throws RemoteException {
+    try {
+      return dbObject.updateEditedBy(ids, tokenExpiry, userId, curTime);
+    }
+    catch (Exception e) {
+      throw new RemoteException("updateBeingEditedToken failed", e); 
+    }
+  }
+  
 }
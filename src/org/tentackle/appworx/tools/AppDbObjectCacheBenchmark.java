@@ -0,0 +1,308 @@
+/**
+ * Tentackle - a framework for java desktop applications
+ * Copyright (C) 2001-2008 Harald Krake, harald@krake.de, +49 7722 9508-0
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+// $Id$
+
+package org.tentackle.appworx.tools;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import org.tentackle.appworx.AppDbObject;
+import org.tentackle.appworx.AppDbObjectCache;
+import org.tentackle.appworx.AppDbObjectClassVariables;
+import org.tentackle.appworx.ContextDb;
+import org.tentackle.db.PreparedStatementWrapper;
+import org.tentackle.db.ResultSetWrapper;
+
+
+/**
+ * Console application to measure the throughput of an {@link AppDbObjectCache}.
+ * <pre>
+ * usage: AppDbObjectCacheBenchmark [--objects=&lt;n&gt;] [--threads=&lt;n,...&gt;] [--reads=&lt;percent,...&gt;]
+ *                                  [--warmup=&lt;ms&gt;] [--duration=&lt;ms&gt;]
+ * </pre>
+ *
+ * For each percentage of reads and each number of threads, the locking cache
+ * and the concurrent cache (see {@link AppDbObjectCache#isConcurrent()}) are
+ * measured one after the other. Each thread selects random objects by ID or,
+ * for the remaining percentage, replaces a random object under the cache's lock.
+ * The caches work in memory only, i.e. no database connection is required.
+ * <p>
+ * The defaults cover read:write ratios from 99:1 to 80:20 and 1 to 32 threads.
+ * The random generators are seeded by the thread number, so that each run
+ * performs the same sequence of operations. The JVM version and the number of
+ * processors are printed along with the results.
+ * <p>
+ * Example:
+ * <pre>
+ * java -server -Xms1g -Xmx1g org.tentackle.appworx.tools.AppDbObjectCacheBenchmark --duration=10000
+ * </pre>
+ *
+ * @author harald
+ */
+public class AppDbObjectCacheBenchmark {
+
+  /**
+   * The context of the cached objects.<br>
+   * All objects belong to the same context without a db.
+   */
+  private static class BenchmarkContextDb extends ContextDb {
+
+    private static final long serialVersionUID = 1L;
+
+    BenchmarkContextDb() {
+      super(null);
+    }
+
+    @Override
+    public int compareTo(ContextDb contextDb) {
+      return contextDb instanceof BenchmarkContextDb ? 0 : 1;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof BenchmarkContextDb;
+    }
+
+    @Override
+    public int hashCode() {
+      return 1;
+    }
+  }
+
+
+  /**
+   * The cached objects.<br>
+   * Never persisted.
+   */
+  public static class BenchmarkObject extends AppDbObject {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates an object without context.
+     */
+    public BenchmarkObject() {
+      super();
+    }
+
+    /**
+     * Creates an object.
+     *
+     * @param contextDb the context
+     * @param id the object ID
+     */
+    public BenchmarkObject(ContextDb contextDb, long id) {
+      super(contextDb);
+      setId(id);
+    }
+
+    @Override
+    public AppDbObjectClassVariables getAppDbObjectClassVariables() {
+      return null;
+    }
+
+    @Override
+    public boolean getFields(ResultSetWrapper rs) {
+      return false;
+    }
+
+    @Override
+    public int setFields(PreparedStatementWrapper st) {
+      return 0;
+    }
+
+    @Override
+    public int prepareInsertStatement() {
+      return 0;
+    }
+
+    @Override
+    public int prepareUpdateStatement() {
+      return 0;
+    }
+  }
+
+
+  private int objectCount = 10000;                      // number of cached objects
+  private int[] threadCounts = { 1, 2, 4, 8, 16, 32 };  // number of threads to measure
+  private int[] readPercents = { 99, 95, 90, 80 };      // percentage of reads to measure
+  private long warmupMillis = 2000;                     // warmup per measurement
+  private long durationMillis = 5000;                   // duration per measurement
+
+  private ContextDb contextDb;                          // the context of all objects
+  private BenchmarkObject[] objects;                    // the objects
+
+
+  /**
+   * Creates the benchmark.
+   *
+   * @param args the command line arguments
+   * @throws IllegalArgumentException if some option is invalid
+   */
+  public AppDbObjectCacheBenchmark(String[] args) {
+    for (String arg: args) {
+      if (arg.startsWith("--objects=")) {
+        objectCount = Integer.parseInt(arg.substring(10));
+      }
+      else if (arg.startsWith("--threads=")) {
+        threadCounts = parseInts(arg.substring(10));
+      }
+      else if (arg.startsWith("--reads=")) {
+        readPercents = parseInts(arg.substring(8));
+      }
+      else if (arg.startsWith("--warmup=")) {
+        warmupMillis = Long.parseLong(arg.substring(9));
+      }
+      else if (arg.startsWith("--duration=")) {
+        durationMillis = Long.parseLong(arg.substring(11));
+      }
+      else  {
+        throw new IllegalArgumentException("unknown option: " + arg);
+      }
+    }
+
+    contextDb = new BenchmarkContextDb();
+    objects = new BenchmarkObject[objectCount];
+    for (int i=0; i < objectCount; i++) {
+      objects[i] = new BenchmarkObject(contextDb, i + 1);
+    }
+  }
+
+
+  /**
+   * Runs all measurements and prints the results to stdout.
+   *
+   * @throws InterruptedException if interrupted
+   */
+  public void run() throws InterruptedException {
+    System.out.println("java " + System.getProperty("java.version") +
+                       ", " + Runtime.getRuntime().availableProcessors() + " processors" +
+                       ", " + objectCount + " objects" +
+                       ", warmup " + warmupMillis + "ms, duration " + durationMillis + "ms");
+    System.out.printf("%8s %8s %16s %16s%n", "reads", "threads", "locked ops/ms", "concurrent ops/ms");
+    for (int readPercent: readPercents) {
+      for (int threadCount: threadCounts) {
+        double locked = measure(false, readPercent, threadCount);
+        double concurrent = measure(true, readPercent, threadCount);
+        System.out.printf("%7d%% %8d %16.0f %16.0f%n", readPercent, threadCount, locked, concurrent);
+      }
+    }
+  }
+
+
+  /**
+   * Measures the throughput of a cache.
+   *
+   * @param concurrent true if concurrent cache, false if locking
+   * @param readPercent the percentage of reads
+   * @param threadCount the number of threads
+   * @return the operations per millisecond
+   * @throws InterruptedException if interrupted
+   */
+  private double measure(boolean concurrent, final int readPercent, int threadCount) throws InterruptedException {
+
+    final AppDbObjectCache<BenchmarkObject> cache =
+            new AppDbObjectCache<BenchmarkObject>(BenchmarkObject.class, false, concurrent);
+    cache.expireByExpirationInfo(new long[0], 0);     // initialize without db
+    for (BenchmarkObject object: objects) {
+      cache.add(object);
+    }
+
+    final LongAdder operations = new LongAdder();
+    final AtomicBoolean measuring = new AtomicBoolean();
+    final AtomicBoolean stopped = new AtomicBoolean();
+
+    Thread[] threads = new Thread[threadCount];
+    for (int i=0; i < threadCount; i++) {
+      final long seed = i;
+      threads[i] = new Thread("cache benchmark " + i) {
+        @Override
+        public void run() {
+          Random random = new Random(seed);
+          while (!stopped.get()) {
+            for (int n=0; n < 100; n++) {
+              int ndx = random.nextInt(objects.length);
+              if (random.nextInt(100) < readPercent) {
+                cache.select(contextDb, ndx + 1, false);
+              }
+              else  {
+                BenchmarkObject object = objects[ndx];
+                synchronized (cache) {
+                  cache.remove(object);
+                  cache.add(object);
+                }
+              }
+            }
+            if (measuring.get()) {
+              operations.add(100);
+            }
+          }
+        }
+      };
+    }
+
+    for (Thread thread: threads) {
+      thread.start();
+    }
+    Thread.sleep(warmupMillis);
+    measuring.set(true);
+    long start = System.nanoTime();
+    Thread.sleep(durationMillis);
+    measuring.set(false);
+    long duration = System.nanoTime() - start;
+    stopped.set(true);
+    for (Thread thread: threads) {
+      thread.join();
+    }
+
+    return operations.sum() / (duration / 1000000.0);
+  }
+
+
+  /**
+   * Parses a comma separated list of ints.
+   */
+  private static int[] parseInts(String str) {
+    String[] parts = str.split(",");
+    int[] values = new int[parts.length];
+    for (int i=0; i < parts.length; i++) {
+      values[i] = Integer.parseInt(parts[i].trim());
+    }
+    return values;
+  }
+
+
+  /**
+   * Runs the benchmark.
+   *
+   * @param args the command line arguments
+   */
+  public static void main(String[] args) {
+    try {
+      new AppDbObjectCacheBenchmark(args).run();
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+}
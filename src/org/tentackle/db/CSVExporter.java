@@ -0,0 +1,243 @@
+/**
+ * Tentackle - a framework for java desktop applications
+ * Copyright (C) 2001-2008 Harald Krake, harald@krake.de, +49 7722 9508-0
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+// $Id$
+
+package org.tentackle.db;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import org.tentackle.util.ApplicationException;
+import org.tentackle.util.CSVObject;
+import org.tentackle.util.CSVWriter;
+
+
+/**
+ * Streaming export of database rows to CSV.
+ * <p>
+ * The rows are read forward-only with a large fetch size and written
+ * to the {@link CSVWriter} row by row, i.e. the data is never materialized as a whole.
+ * Result set columns are written by their SQL type without creating
+ * intermediate objects for numbers and dates.
+ * <p>
+ * Example:
+ * <pre>
+ *   CSVWriter writer = new CSVWriter(new FileOutputStream(file), Charset.forName("UTF-8"), true);
+ *   PreparedStatementWrapper st = db.getPreparedStatement("SELECT * FROM invoice");
+ *   new CSVExporter(writer).export(st, true);
+ *   writer.close();
+ * </pre>
+ *
+ * @author harald
+ */
+public class CSVExporter {
+
+  private final CSVWriter writer;   // the CSV writer
+  private int fetchSize;            // the fetch size
+  private int[] types;              // column types of current result set
+
+
+  /**
+   * Creates an exporter.
+   *
+   * @param writer the CSV writer
+   */
+  public CSVExporter(CSVWriter writer) {
+    this.writer = writer;
+    fetchSize = 1000;
+  }
+
+
+  /**
+   * Sets the fetch size.
+   *
+   * @param fetchSize the number of rows fetched at once, default is 1000
+   */
+  public void setFetchSize(int fetchSize) {
+    this.fetchSize = fetchSize;
+  }
+
+  /**
+   * Gets the fetch size.
+   *
+   * @return the number of rows fetched at once
+   */
+  public int getFetchSize() {
+    return fetchSize;
+  }
+
+
+  /**
+   * Exports the result of a query.<br>
+   * The statement should be prepared with {@link ResultSet#TYPE_FORWARD_ONLY}.
+   * The result set is closed at the end.
+   *
+   * @param st the prepared statement retrieved by {@link Db#getPreparedStatement}
+   * @param header true if write the column names as the first record
+   * @return the number of rows exported
+   * @throws ApplicationException if writing failed
+   */
+  public long export(PreparedStatementWrapper st, boolean header) throws ApplicationException {
+    st.setFetchSize(fetchSize);
+    ResultSetWrapper rs = st.executeQuery();
+    try {
+      return export(rs, header);
+    }
+    finally {
+      rs.close();
+    }
+  }
+
+
+  /**
+   * Exports all remaining rows of a result set.
+   *
+   * @param rs the result set
+   * @param header true if write the column names as the first record
+   * @return the number of rows exported
+   * @throws ApplicationException if writing failed
+   */
+  public long export(ResultSetWrapper rs, boolean header) throws ApplicationException {
+    rs.setFetchSize(fetchSize);
+    ResultSetMetaData meta = rs.getMetaData();
+    try {
+      types = new int[meta.getColumnCount()];
+      for (int i=0; i < types.length; i++) {
+        types[i] = meta.getColumnType(i + 1);
+        if (header) {
+          writer.writeField(meta.getColumnLabel(i + 1));
+        }
+      }
+    }
+    catch (SQLException e) {
+      throw new ApplicationException("retrieving column types failed", e);
+    }
+    if (header) {
+      writer.endRecord();
+    }
+
+    long count = 0;
+    while (rs.next()) {
+      for (int pos=1; pos <= types.length; pos++) {
+        writeColumn(rs, pos);
+      }
+      writer.endRecord();
+      count++;
+    }
+    return count;
+  }
+
+
+  /**
+   * Exports all remaining objects of a cursor.<br>
+   * The objects must implement {@link CSVObject}.
+   * The cursor is closed at the end.
+   *
+   * @param cursor the cursor
+   * @return the number of objects exported
+   * @throws ApplicationException if writing failed
+   */
+  public long export(DbCursor<? extends DbObject> cursor) throws ApplicationException {
+    try {
+      cursor.setFetchSize(fetchSize);
+      long count = 0;
+      while (cursor.next()) {
+        writer.formatCSVObject((CSVObject) cursor.getObject());
+        count++;
+      }
+      return count;
+    }
+    finally {
+      cursor.close();
+    }
+  }
+
+
+  /**
+   * Writes a column of the current row.<br>
+   * Override to change the format of columns.
+   *
+   * @param rs the result set
+   * @param pos the column index (starting at 1)
+   */
+  protected void writeColumn(ResultSetWrapper rs, int pos) {
+    switch (types[pos - 1]) {
+      case Types.BIGINT:
+      case Types.INTEGER:
+      case Types.SMALLINT:
+      case Types.TINYINT:
+        long lval = rs.getLong(pos);
+        if (rs.wasNull()) {
+          writer.writeNull();
+        }
+        else  {
+          writer.writeField(lval);
+        }
+        break;
+
+      case Types.DOUBLE:
+      case Types.FLOAT:
+      case Types.REAL:
+        double dval = rs.getDouble(pos);
+        if (rs.wasNull()) {
+          writer.writeNull();
+        }
+        else  {
+          writer.writeField(dval);
+        }
+        break;
+
+      case Types.DECIMAL:
+      case Types.NUMERIC:
+        BigDecimal bval = rs.getBigDecimal(pos);
+        writer.writeField(bval);
+        break;
+
+      case Types.BIT:
+      case Types.BOOLEAN:
+        boolean flag = rs.getBoolean(pos);
+        if (rs.wasNull()) {
+          writer.writeNull();
+        }
+        else  {
+          writer.writeField(flag ? 1 : 0);
+        }
+        break;
+
+      case Types.DATE:
+        writer.writeField(rs.getDate(pos));
+        break;
+
+      case Types.TIME:
+        writer.writeField(rs.getTime(pos));
+        break;
+
+      case Types.TIMESTAMP:
+        writer.writeField(rs.getTimestamp(pos));
+        break;
+
+      default:
+        writer.writeField(rs.getString(pos));
+    }
+  }
+
+}
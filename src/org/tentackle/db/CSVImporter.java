@@ -0,0 +1,557 @@
+/**
+ * Tentackle - a framework for java desktop applications
+ * Copyright (C) 2001-2008 Harald Krake, harald@krake.de, +49 7722 9508-0
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+// $Id$
+
+package org.tentackle.db;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import org.tentackle.util.ApplicationException;
+import org.tentackle.util.CSVObject;
+import org.tentackle.util.CSVTokenizer;
+
+
+/**
+ * Streaming import of CSV data into {@link DbObject}s.
+ * <p>
+ * The import runs as a pipeline:
+ * <ol>
+ * <li>a reader thread reads the input in large chunks and splits them at record boundaries</li>
+ * <li>worker threads tokenize the chunks and map the records to objects via {@link #createObject}</li>
+ * <li>the invoking thread inserts the objects with JDBC batches and commits periodically</li>
+ * </ol>
+ * The chunks are passed through a bounded queue, i.e. reading and parsing blocks
+ * if the database cannot keep up. Hence, the memory consumption does not depend
+ * on the size of the input. The objects are inserted in the order of the input.
+ * <p>
+ * The objects are inserted without linked objects, but with modification counting and logging.
+ * Notice that {@link #createObject} runs in the worker threads and must not access the database.
+ * If the import is invoked within a transaction, the transaction is neither committed
+ * nor rolled back by the importer. In remote mode the objects are saved one by one.
+ *
+ * @param <T> the database object class
+ * @author harald
+ */
+public class CSVImporter<T extends DbObject> {
+
+  /** transaction name for import **/
+  public static final String TX_CSV_IMPORT = "csv import";
+
+
+  private final T template;             // the template object to create new objects from
+  private char fieldDelimiter;          // field delimiter
+  private char quoteCharacter;          // quote character
+  private int chunkSize;                // chars per chunk
+  private int threads;                  // number of worker threads
+  private int batchSize;                // JDBC batch size
+  private int commitInterval;           // number of objects per transaction
+  private int skipRecords;              // number of leading records to skip (header)
+  private long importCount;             // number of objects imported so far
+
+
+  /**
+   * Creates an importer.
+   *
+   * @param template the object to create new objects from by {@link DbObject#newObject()}.
+   *        Also determines the {@link Db}.
+   */
+  public CSVImporter(T template) {
+    this.template = template;
+    fieldDelimiter = ',';
+    quoteCharacter = '"';
+    chunkSize = 1024 * 1024;
+    threads = Runtime.getRuntime().availableProcessors();
+    batchSize = 500;
+    commitInterval = 10000;
+  }
+
+
+  /**
+   * Sets the field delimiter.
+   *
+   * @param fieldDelimiter the delimiter, default is comma
+   */
+  public void setFieldDelimiter(char fieldDelimiter) {
+    this.fieldDelimiter = fieldDelimiter;
+  }
+
+  /**
+   * Gets the field delimiter.
+   *
+   * @return the delimiter
+   */
+  public char getFieldDelimiter() {
+    return fieldDelimiter;
+  }
+
+
+  /**
+   * Sets the quote character.
+   *
+   * @param quoteCharacter the quote character, default is double quote
+   */
+  public void setQuoteCharacter(char quoteCharacter) {
+    this.quoteCharacter = quoteCharacter;
+  }
+
+  /**
+   * Gets the quote character.
+   *
+   * @return the quote character
+   */
+  public char getQuoteCharacter() {
+    return quoteCharacter;
+  }
+
+
+  /**
+   * Sets the chunk size.<br>
+   * The input is read in chunks of this size.
+   * Records longer than a chunk are processed as well.
+   *
+   * @param chunkSize the number of characters, default is 1M
+   */
+  public void setChunkSize(int chunkSize) {
+    if (chunkSize < 1) {
+      throw new IllegalArgumentException("illegal chunk size " + chunkSize);
+    }
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * Gets the chunk size.
+   *
+   * @return the number of characters
+   */
+  public int getChunkSize() {
+    return chunkSize;
+  }
+
+
+  /**
+   * Sets the number of worker threads parsing the chunks.
+   *
+   * @param threads the number of threads, default is the number of processors
+   */
+  public void setThreads(int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("illegal number of threads " + threads);
+    }
+    this.threads = threads;
+  }
+
+  /**
+   * Gets the number of worker threads.
+   *
+   * @return the number of threads
+   */
+  public int getThreads() {
+    return threads;
+  }
+
+
+  /**
+   * Sets the JDBC batch size.
+   *
+   * @param batchSize the number of inserts per batch, default is 500
+   */
+  public void setBatchSize(int batchSize) {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("illegal batch size " + batchSize);
+    }
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Gets the JDBC batch size.
+   *
+   * @return the number of inserts per batch
+   */
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+
+  /**
+   * Sets the commit interval.<br>
+   * Rounded up to a multiple of the batch size.
+   *
+   * @param commitInterval the number of objects per transaction, default is 10000
+   */
+  public void setCommitInterval(int commitInterval) {
+    if (commitInterval < 1) {
+      throw new IllegalArgumentException("illegal commit interval " + commitInterval);
+    }
+    this.commitInterval = commitInterval;
+  }
+
+  /**
+   * Gets the commit interval.
+   *
+   * @return the number of objects per transaction
+   */
+  public int getCommitInterval() {
+    return commitInterval;
+  }
+
+
+  /**
+   * Sets the number of leading records to skip.<br>
+   * Usually 1 to skip a header line.
+   *
+   * @param skipRecords the number of records to skip, default is 0
+   */
+  public void setSkipRecords(int skipRecords) {
+    this.skipRecords = skipRecords;
+  }
+
+  /**
+   * Gets the number of leading records to skip.
+   *
+   * @return the number of records to skip
+   */
+  public int getSkipRecords() {
+    return skipRecords;
+  }
+
+
+  /**
+   * Gets the number of objects imported so far.
+   *
+   * @return the number of committed objects
+   */
+  public long getImportCount() {
+    return importCount;
+  }
+
+
+  /**
+   * Creates an object from a record.<br>
+   * Invoked from the worker threads.
+   * The default implementation creates a new object from the template and
+   * passes all fields to {@link CSVObject#parseCSVField}.
+   *
+   * @param recordNumber the record number (starting at 1)
+   * @param fields the fields of the record
+   * @return the object, null to skip this record
+   * @throws ApplicationException if record could not be mapped
+   */
+  @SuppressWarnings("unchecked")
+  protected T createObject(long recordNumber, String[] fields) throws ApplicationException {
+    if (!(template instanceof CSVObject)) {
+      throw new ApplicationException(template.getClass().getName() + " is not a CSVObject");
+    }
+    T object = (T) template.newObject();
+    for (int i=0; i < fields.length; i++) {
+      ((CSVObject) object).parseCSVField(i, fields[i]);
+    }
+    return object;
+  }
+
+
+  /**
+   * Invoked after each commit.<br>
+   * The default implementation logs the number of imported objects.
+   *
+   * @param count the number of objects imported so far
+   */
+  protected void importProgress(long count) {
+    DbGlobal.logger.info(count + " " + template.getClassBaseName() + " objects imported");
+  }
+
+
+  /**
+   * Imports the CSV data.
+   * <p>
+   * The reader is not closed.
+   *
+   * @param reader the reader providing the data
+   * @return the number of objects imported
+   * @throws ApplicationException if import failed. All objects of the current transaction are rolled back.
+   */
+  public long importCSV(final Reader reader) throws ApplicationException {
+
+    importCount = 0;
+
+    final CSVTokenizer tokenizer = new CSVTokenizer(fieldDelimiter, quoteCharacter);
+
+    final ExecutorService workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "CSVImporter parser");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+
+    // futures in input order, the capacity limits the number of parsed chunks in memory
+    final BlockingQueue<Future<List<T>>> queue = new ArrayBlockingQueue<Future<List<T>>>(threads * 2);
+    final Future<List<T>> endOfInput = new FutureTask<List<T>>(new Callable<List<T>>() {
+      public List<T> call() {
+        return null;
+      }
+    });
+
+    Thread readerThread = new Thread("CSVImporter reader") {
+      @Override
+      public void run() {
+        try {
+          char[] buf = new char[chunkSize];
+          int len = 0;                  // number of chars in buf
+          long recordCount = 0;         // number of records before buf
+          int num;
+          while ((num = reader.read(buf, len, buf.length - len)) >= 0) {
+            int boundary = tokenizer.scan(buf, len, num);
+            len += num;
+            if (boundary > 0) {
+              char[] rest = new char[Math.max(chunkSize, len - boundary)];
+              System.arraycopy(buf, boundary, rest, 0, len - boundary);
+              queue.put(workers.submit(createParser(tokenizer, buf, boundary, recordCount)));
+              recordCount = tokenizer.getScannedRecordCount();
+              buf = rest;
+              len -= boundary;
+            }
+            else if (len == buf.length) {
+              // record longer than chunk
+              char[] larger = new char[buf.length * 2];
+              System.arraycopy(buf, 0, larger, 0, len);
+              buf = larger;
+            }
+          }
+          if (len > 0) {
+            // last record without newline
+            queue.put(workers.submit(createParser(tokenizer, buf, len, recordCount)));
+          }
+          queue.put(endOfInput);
+        }
+        catch (InterruptedException ex) {
+          // import aborted
+        }
+        catch (final Exception ex) {
+          FutureTask<List<T>> failed = new FutureTask<List<T>>(new Callable<List<T>>() {
+            public List<T> call() throws Exception {
+              throw ex;
+            }
+          });
+          failed.run();
+          try {
+            queue.put(failed);
+          }
+          catch (InterruptedException ex2) {
+            // import aborted
+          }
+        }
+      }
+    };
+    readerThread.setDaemon(true);
+    readerThread.start();
+
+    Db db = template.getDb();
+    boolean oldCommit = false;
+    boolean inTx = false;
+    // pending batches per statement id, usually only one
+    Map<Integer,List<T>> batches = new LinkedHashMap<Integer,List<T>>();
+    int batchCount = 0;     // objects in current batches
+    int txCount = 0;        // objects in current transaction
+
+    try {
+      for (;;) {
+        Future<List<T>> future = queue.take();
+        if (future == endOfInput) {
+          break;
+        }
+        List<T> objects;
+        try {
+          objects = future.get();
+        }
+        catch (ExecutionException ex) {
+          Throwable cause = ex.getCause();
+          if (cause instanceof ApplicationException) {
+            throw (ApplicationException) cause;
+          }
+          throw new ApplicationException("parsing CSV data failed", cause);
+        }
+
+        for (T object: objects) {
+          if (db.isRemote()) {
+            if (!object.save()) {
+              throw new ApplicationException("saving " + object + " failed");
+            }
+            importCount++;
+            if (++txCount >= commitInterval) {
+              importProgress(importCount);
+              txCount = 0;
+            }
+            continue;
+          }
+
+          if (!inTx) {
+            oldCommit = db.begin(TX_CSV_IMPORT);
+            inTx = true;
+          }
+          addToBatch(object, batches);
+          if (++batchCount >= batchSize) {
+            executeBatches(batches);
+            txCount += batchCount;
+            batchCount = 0;
+            if (txCount >= commitInterval) {
+              db.commit(oldCommit);
+              inTx = false;
+              importCount += txCount;
+              txCount = 0;
+              importProgress(importCount);
+            }
+          }
+        }
+      }
+
+      if (inTx) {
+        executeBatches(batches);
+        txCount += batchCount;
+        db.commit(oldCommit);
+        inTx = false;
+      }
+      importCount += txCount;
+      if (txCount > 0) {
+        importProgress(importCount);
+      }
+      return importCount;
+    }
+    catch (InterruptedException ex) {
+      throw new ApplicationException("CSV import interrupted", ex);
+    }
+    finally {
+      if (inTx) {
+        for (Integer stmtId: batches.keySet()) {
+          db.getPreparedStatement(stmtId).clearBatch();
+        }
+        db.rollback(oldCommit);
+      }
+      workers.shutdownNow();
+      readerThread.interrupt();
+    }
+  }
+
+
+  /**
+   * Creates the parser task for a chunk.
+   *
+   * @param tokenizer the tokenizer
+   * @param buf the chunk
+   * @param length the number of chars in the chunk
+   * @param recordCount the number of records before the chunk
+   * @return the task
+   */
+  private Callable<List<T>> createParser(final CSVTokenizer tokenizer, final char[] buf, final int length,
+                                         final long recordCount) {
+    return new Callable<List<T>>() {
+      public List<T> call() throws ApplicationException {
+        List<String[]> records = tokenizer.tokenize(buf, 0, length);
+        List<T> objects = new ArrayList<T>(records.size());
+        long recordNumber = recordCount;
+        for (String[] fields: records) {
+          recordNumber++;
+          if (recordNumber > skipRecords) {
+            T object = createObject(recordNumber, fields);
+            if (object != null) {
+              objects.add(object);
+            }
+          }
+        }
+        return objects;
+      }
+    };
+  }
+
+
+  /**
+   * Adds an object to the batch of its insert statement.
+   *
+   * @param object the object
+   * @param batches the batches
+   * @throws ApplicationException if object could not be prepared
+   */
+  private void addToBatch(T object, Map<Integer,List<T>> batches) throws ApplicationException {
+    if (!object.prepareSetFields()) {
+      throw new ApplicationException("preparing " + object + " failed");
+    }
+    object.newId();
+    object.setSerial(object.getSerial() + 1);
+    if (!object.initModification(DbObject.INSERT)) {
+      throw new ApplicationException("initModification for " + object + " failed");
+    }
+    int stmtId = object.prepareInsertStatement();
+    PreparedStatementWrapper st = object.getDb().getPreparedStatement(stmtId);
+    if (object.setFields(st) < 0) {
+      st.unmarkReady();
+      st.detachDb();
+      throw new ApplicationException("setting fields for " + object + " failed");
+    }
+    st.addBatch();
+    List<T> batch = batches.get(stmtId);
+    if (batch == null) {
+      batch = new ArrayList<T>(batchSize);
+      batches.put(stmtId, batch);
+    }
+    batch.add(object);
+  }
+
+
+  /**
+   * Executes all pending batches.
+   *
+   * @param batches the batches
+   * @throws ApplicationException if some object could not be inserted
+   */
+  private void executeBatches(Map<Integer,List<T>> batches) throws ApplicationException {
+    Db db = template.getDb();
+    for (Iterator<Map.Entry<Integer,List<T>>> iter = batches.entrySet().iterator(); iter.hasNext(); ) {
+      Map.Entry<Integer,List<T>> entry = iter.next();
+      List<T> batch = entry.getValue();
+      int count = db.getPreparedStatement(entry.getKey()).executeBatch();
+      if (db.isUniqueViolation()) {
+        throw new ApplicationException("unique violation in batch of " + batch.size() + " objects");
+      }
+      if (count != batch.size()) {
+        throw new ApplicationException("batch inserted " + count + " of " + batch.size() + " objects");
+      }
+      for (T object: batch) {
+        if (!object.finishModification(DbObject.INSERT)) {
+          throw new ApplicationException("finishModification for " + object + " failed");
+        }
+        object.setModified(false);
+      }
+      iter.remove();
+    }
+  }
+
+}
@@ -22,6 +22,7 @@
 
 package org.tentackle.db;
 
+import java.io.IOException;
 import java.rmi.Naming;
 import java.rmi.RemoteException;
 import java.sql.Connection;
@@ -37,12 +38,17 @@ import java.util.Properties;
 import java.util.TreeMap;
 import javax.naming.InitialContext;
 import javax.sql.DataSource;
+import org.tentackle.db.rmi.DbObjectResult;
 import org.tentackle.db.rmi.DbRemoteDelegate;
+import org.tentackle.db.rmi.DispatchedDelegate;
 import org.tentackle.db.rmi.LoginFailedException;
 import org.tentackle.db.rmi.RemoteDbConnection;
 import org.tentackle.db.rmi.RemoteDbSession;
 import org.tentackle.db.rmi.RemoteDbSessionImpl;
 import org.tentackle.db.rmi.RemoteDelegate;
+import org.tentackle.db.rmi.RemoteBatchOperation;
+import org.tentackle.db.rmi.RemoteBatchResult;
+import org.tentackle.db.rmi.RemoteDelegateDispatcher;
 import org.tentackle.util.ApplicationException;
 import org.tentackle.util.CharConverter;
 import org.tentackle.util.DefaultObfuscator;
@@ -300,6 +306,10 @@ public class Db implements Cloneable, Comparable<Db> {
   private RemoteDbSession           rses;                 // remote database session if logged in to RMI-server
   private DbRemoteDelegate          rdel;                 // remote database delegate
   private RemoteDelegate[]          delegates;            // the delegates per session
+  private RemoteDelegateDispatcher  rdis;                 // the delegate dispatcher, null if delegates are exported
+  private boolean                   remoteBatching;       // true if modifications within transactions are batched
+  private boolean                   remoteBatchBegin;     // true if begin() is pending
+  private List<RemoteBatchOperation> remoteBatch;         // pending operations, null if none
   // for RMI remote connections (all Db)
   private static Class[]            remoteClasses;        // the classes Objects for the delegates provide service for
   private static int                nextDelegateId;       // next handle per class
@@ -796,6 +806,11 @@ public class Db implements Cloneable, Comparable<Db> {
         // get delegate
         rdel = rses.getDbRemoteDelegate();
         
+        if (ui.getDbProperties().getProperty("dispatcher") != null) {
+          // one exported dispatcher instead of a delegate per class
+          rdis = rses.getRemoteDelegateDispatcher();
+        }
+        
         // get the remote connection id
         conId = rdel.getConnectionId();
       }
@@ -1001,7 +1016,19 @@ public class Db implements Cloneable, Comparable<Db> {
     
     boolean begun = false;
     
-    if (isRemote()) {
+    if (isRemote() && remoteBatching) {
+      if (autoCommit) {
+        // defer begin until the first flush or commit
+        remoteBatchBegin = true;
+        begun = true;
+        txCount++;
+        this.txName = txName;
+        updateCount = 0;
+        autoCommit = false;
+      }
+      // else: already within a transaction
+    }
+    else if (isRemote()) {
       try {
         long newTxCount = rdel.begin(txName);
         if (newTxCount > 0) {
@@ -1132,7 +1159,18 @@ public class Db implements Cloneable, Comparable<Db> {
     
     boolean committed = false;
     
-    if (isRemote()) {
+    if (isRemote() && remoteBatching && !this.autoCommit && (remoteBatchBegin || remoteBatch != null)) {
+      if (autoCommit) {
+        // send pending operations and commit in one roundtrip
+        committed = executeRemoteBatch(true);
+        if (committed) {
+          txName = null;
+          txObject = null;
+        }
+      }
+      // else: nested commit is ignored
+    }
+    else if (isRemote()) {
       try {
         committed = rdel.commit(autoCommit);
         if (committed) {
@@ -1212,8 +1250,23 @@ public class Db implements Cloneable, Comparable<Db> {
     
     boolean rolledBack = false;
     
-    if (isRemote()) {
+    if (isRemote() && remoteBatching && !this.autoCommit && remoteBatchBegin) {
+      // transaction not begun at the server yet
+      if (autoCommit) {
+        remoteBatchBegin = false;
+        remoteBatch = null;
+        txName = null;
+        txObject = null;
+        this.autoCommit = true;
+        rolledBack = true;
+      }
+      // else: nested rollback is ignored
+    }
+    else if (isRemote()) {
       try {
+        if (autoCommit) {
+          remoteBatch = null;   // discard pending operations
+        }
         rolledBack = rdel.rollback(autoCommit);
         if (rolledBack) {
           txName = null;
@@ -1698,6 +1751,9 @@ public class Db implements Cloneable, Comparable<Db> {
       db.rses               = null;
       db.rcon               = null;
       db.delegates          = null;
+      db.rdis               = null;
+      db.remoteBatchBegin   = false;
+      db.remoteBatch        = null;
       // returning to GC will also GC on server-side (if invoked from close())
     }
     else  {
@@ -1908,6 +1964,8 @@ public class Db implements Cloneable, Comparable<Db> {
     
     assertRemote();        // only allowed on remote connections!
     
+    flushRemoteBatch();    // make pending modifications visible to the server
+    
     id--; // starting from 0
     
     if (id < 0 || id >= remoteClasses.length) {
@@ -1937,7 +1995,18 @@ public class Db implements Cloneable, Comparable<Db> {
     if (delegates[id] == null) {
       // we need to prepare it
       try {
-        RemoteDelegate delegate = rses.getRemoteDelegate(remoteClasses[id].getName(), id);
+        String classname = remoteClasses[id].getName();
+        RemoteDelegate delegate = null;
+        if (rdis != null) {
+          Class<?>[] interfaces = rdis.prepareDelegate(classname, id);
+          if (interfaces != null) {
+            delegate = DispatchedDelegate.createProxy(rdis, id, interfaces);
+          }
+          // else: delegate needs its own sockets
+        }
+        if (delegate == null) {
+          delegate = rses.getRemoteDelegate(classname, id);
+        }
         delegates[id] = delegate;
         return delegate;
       } 
@@ -1952,6 +2021,148 @@ public class Db implements Cloneable, Comparable<Db> {
   
   
   
+  /**
+   * Enables batching of remote transactions.<br>
+   * If enabled, {@link #begin} and all modifications of {@link DbObject}s within a transaction
+   * that don't need an immediate result from the server are deferred and sent
+   * together with the {@link #commit} in a single roundtrip.
+   * Deferred are {@link DbObject#insertObject}, {@link DbObject#updateObject}, {@link DbObject#deleteObject}
+   * and {@link DbObject#save} of objects that already have an ID.
+   * Pending operations are sent in advance if any other remote method is invoked.
+   * <p>
+   * The state of an object is taken when the method is invoked, i.e. later changes are not
+   * sent unless the object is modified again within the transaction, which replaces the pending state.
+   * Notice that the deferred methods return true, but the IDs, serials and modified-flags
+   * of the objects are updated with the values assigned by the server not until the operations
+   * are executed. Until then, a reserved negative ID stays negative, for example.
+   * Applications that need those values immediately should not enable batching.
+   * If an operation fails, the transaction is rolled back and a {@link DbRuntimeException} is thrown.
+   * <p>
+   * Ignored for local connections.
+   *
+   * @param remoteBatching true to enable batching, false to disable (default)
+   */
+  public void setRemoteBatching(boolean remoteBatching) {
+    if (!remoteBatching) {
+      flushRemoteBatch();
+    }
+    this.remoteBatching = remoteBatching;
+  }
+  
+  
+  /**
+   * Returns whether remote transactions are batched.
+   *
+   * @return true if batched
+   */
+  public boolean isRemoteBatching() {
+    return remoteBatching;
+  }
+  
+  
+  /**
+   * Adds an operation to the remote batch.<br>
+   * Invoked by {@link DbObject}.
+   *
+   * @param object the object
+   * @param type the operation type, see {@link RemoteBatchOperation}
+   * @param withLinkedObjects true if with linked objects
+   * @return true if deferred, false if operation must be executed immediately
+   */
+  boolean addRemoteBatchOperation(DbObject object, int type, boolean withLinkedObjects) {
+    if (!isRemote() || !remoteBatching || autoCommit) {
+      return false;
+    }
+    try {
+      if (remoteBatch == null) {
+        remoteBatch = new ArrayList<RemoteBatchOperation>();
+      }
+      else if (type != RemoteBatchOperation.DELETE) {
+        for (RemoteBatchOperation operation: remoteBatch) {
+          if (operation.object == object && operation.type != RemoteBatchOperation.DELETE) {
+            /**
+             * Already pending: replace the state.
+             * Another operation would fail because the serial is not updated before the batch is executed.
+             */
+            operation.takeSnapshot();
+            return true;
+          }
+        }
+      }
+      int delegateId = object.getDbObjectClassVariables().getRemoteDelegateId() - 1;
+      remoteBatch.add(new RemoteBatchOperation(type, delegateId, remoteClasses[delegateId].getName(), 
+                                               object, withLinkedObjects));
+    }
+    catch (IOException ex) {
+      DbGlobal.errorHandler.severe(this, ex, "serializing " + object.getClass().getName() + " for remote batch failed");
+    }
+    return true;
+  }
+  
+  
+  /**
+   * Sends the pending remote operations, if any.
+   */
+  private void flushRemoteBatch() {
+    if (remoteBatchBegin || remoteBatch != null) {
+      executeRemoteBatch(false);
+    }
+  }
+  
+  
+  /**
+   * Executes the pending remote operations.
+   *
+   * @param commit true if commit the transaction
+   * @return true if committed
+   */
+  private boolean executeRemoteBatch(boolean commit) {
+    List<RemoteBatchOperation> operations = remoteBatch;
+    if (operations == null) {
+      operations = new ArrayList<RemoteBatchOperation>();
+    }
+    boolean begin = remoteBatchBegin;
+    remoteBatch = null;
+    remoteBatchBegin = false;
+    
+    RemoteBatchResult batchResult = null;
+    try {
+      batchResult = rdel.executeBatch(txName, begin, operations, commit);
+    }
+    catch (RemoteException e) {
+      // server has rolled back
+      autoCommit = true;
+      txName = null;
+      txObject = null;
+      DbGlobal.errorHandler.severe(this, e, "remote batch failed");
+      return false;   // not reached
+    }
+    
+    if (batchResult.txCount > 0) {
+      txCount = batchResult.txCount;
+    }
+    for (int i=0; i < operations.size(); i++) {
+      DbObjectResult result = batchResult.results[i];
+      if (result != null) {
+        RemoteBatchOperation operation = operations.get(i);
+        operation.object.applyRemoteResult(result, operation.type != RemoteBatchOperation.DELETE);
+      }
+    }
+    if (batchResult.failedIndex >= 0) {
+      // server has rolled back
+      autoCommit = true;
+      txName = null;
+      txObject = null;
+      DbGlobal.errorHandler.severe(this, null, "remote batch failed at " + operations.get(batchResult.failedIndex));
+      return false;   // not reached
+    }
+    if (batchResult.committed) {
+      autoCommit = true;
+    }
+    return batchResult.committed;
+  }
+  
+  
   /** 
    * Checks whether objects are allowed to count modifications.
    * The default is true.
@@ -1974,6 +2185,7 @@ public class Db implements Cloneable, Comparable<Db> {
   public void setCountModificationAllowed(boolean countModificationAllowed) {
     try {
       if (isRemote()) {
+        flushRemoteBatch();
         rdel.setCountModificationAllowed(countModificationAllowed);
       }
       this.countModificationAllowed = countModificationAllowed;
@@ -2022,6 +2234,7 @@ public class Db implements Cloneable, Comparable<Db> {
   public void setLogModificationAllowed(boolean logModificationAllowed) {
     try {
       if (isRemote()) {
+        flushRemoteBatch();
         rdel.setLogModificationAllowed(logModificationAllowed);
       }
       this.logModificationAllowed = logModificationAllowed;
@@ -2059,6 +2272,7 @@ public class Db implements Cloneable, Comparable<Db> {
   public void setLogModificationDeferred(boolean logModificationDeferred) {
     try {
       if (isRemote()) {
+        flushRemoteBatch();
         rdel.setLogModificationDeferred(logModificationDeferred);
       }
       this.logModificationDeferred = logModificationDeferred;
@@ -2103,6 +2317,7 @@ public class Db implements Cloneable, Comparable<Db> {
     List<ModificationLog> list = modificationLogList;
     if (isRemote()) {
       try {
+        flushRemoteBatch();
         list = rdel.getDeferredModificationLogList();
         applyToCollection(this, list);
       }
@@ -2303,6 +2518,7 @@ public class Db implements Cloneable, Comparable<Db> {
   public long getLogModificationTxId() {
     if (isRemote()) {
       try {
+        flushRemoteBatch();
         return rdel.getLogModificationTxId();
       }
       catch (Exception e) {
@@ -2327,6 +2543,7 @@ public class Db implements Cloneable, Comparable<Db> {
   public void setLogModificationTxId(long logModificationTxId) {
     if (isRemote()) {
       try {
+        flushRemoteBatch();
         rdel.setLogModificationTxId(logModificationTxId);
       }
       catch (Exception e) {
@@ -2359,6 +2576,7 @@ public class Db implements Cloneable, Comparable<Db> {
   public void setLogModificationTxEnabled(boolean logModificationTxEnabled) {
     try {
       if (isRemote()) {
+        flushRemoteBatch();
         rdel.setLogModificationTxEnabled(logModificationTxEnabled);
       }
       this.logModificationTxEnabled = logModificationTxEnabled;
@@ -2465,6 +2683,18 @@ public class Db implements Cloneable, Comparable<Db> {
   public boolean isDb2() {
     return db2;
   }
+  
+  
+  /**
+   * Gets the backend type as a bitmask.<br>
+   * Used as part of cache keys for SQL strings that depend on the backend.
+   * 
+   * @return the backend type
+   */
+  int getBackendType() {
+    return (ingres ? 0x01 : 0) | (postgres ? 0x02 : 0) | (oracle ? 0x04 : 0) | (informix ? 0x08 : 0) |
+           (mysql ? 0x10 : 0) | (db2 ? 0x20 : 0) | (mssql ? 0x40 : 0);
+  }
 
 
   
@@ -23,6 +23,7 @@ package org.tentackle.db;
 
 import org.tentackle.db.rmi.DbObjectRemoteDelegate;
 import org.tentackle.db.rmi.DbObjectResult;
+import org.tentackle.db.rmi.RemoteBatchOperation;
 import org.tentackle.util.Compare;
 import org.tentackle.util.LongArray;
 import org.tentackle.util.TrackedArrayList;
@@ -292,6 +293,20 @@ public abstract class DbObject implements Serializable, Comparable<DbObject>, Cl
     return true;
   }
   
+  
+  /**
+   * Determines whether selected objects of this class may be shared among
+   * the sessions of different users, for example by the
+   * {@link org.tentackle.db.rmi.ServerObjectCache}.<br>
+   * The default is true. Must be overridden if the result of a select
+   * depends on the permissions of the user.
+   * 
+   * @return true if objects can be shared
+   */
+  public boolean isShareable() {
+    return true;
+  }
+  
 
   /**
    * Creates a new object with the same class and same logical
@@ -302,7 +317,7 @@ public abstract class DbObject implements Serializable, Comparable<DbObject>, Cl
    */
   public DbObject newObject() {
     try {
-      DbObject obj = (DbObject)(getClass().newInstance());
+      DbObject obj = (DbObject) DbObjectFactory.getFactory(getClass()).newInstance();
       obj.setDb(getDb());
       return obj;
     }
@@ -1766,15 +1781,12 @@ public abstract class DbObject implements Serializable, Comparable<DbObject>, Cl
     }
     
     if (getDb().isRemote())  {
+      if (id > 0 && getDb().addRemoteBatchOperation(this, RemoteBatchOperation.INSERT, withLinkedObjects)) {
+        return true;    // deferred until commit
+      }
       try {
         DbObjectResult result = getRemoteDelegate().insertObject(this, withLinkedObjects);
-        id = result.id;
-        serial = result.serial;
-        tableSerial = result.tableSerial;
-        getDb().setUniqueViolation(result.uniqueViolation);
-        if (result.result)  {
-          setModified(false);
-        }
+        applyRemoteResult(result, true);
         return result.result;
       }
       catch (Exception e) {
@@ -1854,15 +1866,12 @@ public abstract class DbObject implements Serializable, Comparable<DbObject>, Cl
     }
     
     if (getDb().isRemote())  {
+      if (getDb().addRemoteBatchOperation(this, RemoteBatchOperation.UPDATE, withLinkedObjects)) {
+        return true;    // deferred until commit
+      }
       try {
         DbObjectResult result = getRemoteDelegate().updateObject(this, withLinkedObjects);
-        id = result.id;
-        serial = result.serial;
-        tableSerial = result.tableSerial;
-        getDb().setUniqueViolation(result.uniqueViolation);
-        if (result.result)  {
-          setModified(false);
-        }
+        applyRemoteResult(result, true);
         return result.result;
       }
       catch (Exception e) {
@@ -1987,15 +1996,13 @@ public abstract class DbObject implements Serializable, Comparable<DbObject>, Cl
         return false;   // we do that on the client side BEFORE update/insert
       }
       
+      if (id != 0 && getDb().addRemoteBatchOperation(this, RemoteBatchOperation.SAVE, true)) {
+        return true;    // deferred until commit
+      }
+      
       try {
         DbObjectResult result = getRemoteDelegate().save(this);
-        id = result.id;
-        serial = result.serial;
-        tableSerial = result.tableSerial;
-        getDb().setUniqueViolation(result.uniqueViolation);
-        if (result.result)  {
-          setModified(false);
-        }
+        applyRemoteResult(result, true);
         return result.result;
       }
       catch (Exception e) {
@@ -2126,11 +2133,12 @@ public abstract class DbObject implements Serializable, Comparable<DbObject>, Cl
     }
     
     if (getDb().isRemote())  {
+      if (getDb().addRemoteBatchOperation(this, RemoteBatchOperation.DELETE, withLinkedObjects)) {
+        return true;    // deferred until commit
+      }
       try {
         DbObjectResult result = getRemoteDelegate().deleteObject(this, withLinkedObjects);
-        id = result.id;
-        serial = result.serial;
-        tableSerial = result.tableSerial;
+        applyRemoteResult(result, false);
         return result.result;
       }
       catch (Exception e) {
@@ -2416,6 +2424,28 @@ public abstract class DbObject implements Serializable, Comparable<DbObject>, Cl
   }
   
   
+  /**
+   * Applies the result of a remote modification to this object.<br>
+   * Invoked when the result of a remote insert, update, save or delete
+   * is received, which may be deferred until commit if the db is batching
+   * (see {@link Db#setRemoteBatching(boolean)}).
+   *
+   * @param result the result from the server
+   * @param insertOrUpdate true if insert or update, false if delete
+   */
+  protected void applyRemoteResult(DbObjectResult result, boolean insertOrUpdate) {
+    id = result.id;
+    serial = result.serial;
+    tableSerial = result.tableSerial;
+    if (insertOrUpdate) {
+      getDb().setUniqueViolation(result.uniqueViolation);
+      if (result.result)  {
+        setModified(false);
+      }
+    }
+  }
+  
+  
   /**
    * Gets the delegate for remote connections.<br>
    * Each class has its own delegate.
@@ -2950,8 +2980,7 @@ public abstract class DbObject implements Serializable, Comparable<DbObject>, Cl
    */
   static public <T extends DbObject> T newByClass (Class<T> clazz) 
          throws InstantiationException, IllegalAccessException {
-    // load the class
-    return clazz.newInstance();
+    return DbObjectFactory.getFactory(clazz).newInstance();
   }
   
   
@@ -0,0 +1,356 @@
+/**
+ * Tentackle - a framework for java desktop applications
+ * Copyright (C) 2001-2008 Harald Krake, harald@krake.de, +49 7722 9508-0
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+// $Id$
+
+package org.tentackle.db;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * Per-class factory for database objects.<br>
+ * 
+ * {@link Class#newInstance()} performs an access check on every invocation and
+ * {@link Class#getDeclaredMethod} copies the method table each time it is called.
+ * Both are noticeable when objects are created for each row read by a cursor, or
+ * for each request in a remote delegate. The factory resolves the no-arg constructor
+ * and the static methods of a class only once and keeps them with the class
+ * (see {@link ClassValue}), so that the factory doesn't prevent the class and its
+ * class loader from being unloaded.
+ * Objects are created by a {@link Creator} generated via the {@link LambdaMetafactory},
+ * or by invoking the constructor's {@link MethodHandle} if the class is not visible
+ * to the factory's class loader or not public.
+ * <p>
+ * Applications may register their own {@link Creator} as well, for example:
+ * <pre>
+ *   DbObjectFactory.getFactory(Invoice.class).setCreator(new DbObjectFactory.Creator&lt;Invoice&gt;() {
+ *     public Invoice create() {
+ *       return new Invoice();
+ *     }
+ *   });
+ * </pre>
+ *
+ * @param <T> the object class
+ * @author harald
+ */
+public final class DbObjectFactory<T> {
+  
+  
+  /**
+   * Creates a new instance without reflection.
+   * 
+   * @param <T> the object class
+   */
+  public interface Creator<T> {
+    
+    /**
+     * Creates a new instance.
+     * 
+     * @return the new object
+     */
+    public T create();
+  }
+  
+  
+  
+  // all factories by class
+  private static final ClassValue<DbObjectFactory<?>> factories = new ClassValue<DbObjectFactory<?>>() {
+    @Override
+    protected DbObjectFactory<?> computeValue(Class<?> clazz) {
+      return new DbObjectFactory<Object>(clazz);
+    }
+  };
+  
+  
+  /**
+   * Gets the factory for a class.
+   * 
+   * @param <T> the object class
+   * @param clazz the class
+   * @return the factory, never null
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> DbObjectFactory<T> getFactory(Class<T> clazz) {
+    return (DbObjectFactory<T>) factories.get(clazz);
+  }
+  
+  
+  
+  
+  private final Class<T> clazz;                               // the class
+  private final boolean isAbstract;                           // true if class is abstract
+  private volatile MethodHandle constructor;                  // the no-arg constructor, null if not resolved yet
+  private volatile Creator<T> generatedCreator;               // creator generated for the constructor, null if none
+  private volatile Creator<T> creator;                        // optional creator
+  private final ConcurrentMap<String,StaticMethod[]> staticMethods;   // static methods by name
+  
+  
+  /**
+   * Creates a factory.
+   * 
+   * @param clazz the class
+   */
+  @SuppressWarnings("unchecked")
+  private DbObjectFactory(Class<?> clazz) {
+    this.clazz = (Class<T>) clazz;
+    isAbstract = Modifier.isAbstract(clazz.getModifiers());
+    staticMethods = new ConcurrentHashMap<String,StaticMethod[]>();
+  }
+  
+  
+  /**
+   * Gets the class.
+   * 
+   * @return the class
+   */
+  public Class<T> getObjectClass() {
+    return clazz;
+  }
+  
+  
+  /**
+   * Returns whether the class is abstract.
+   * 
+   * @return true if abstract
+   */
+  public boolean isAbstract() {
+    return isAbstract;
+  }
+  
+  
+  /**
+   * Sets the creator.
+   * 
+   * @param creator the creator, null to use reflection
+   */
+  public void setCreator(Creator<T> creator) {
+    this.creator = creator;
+  }
+  
+  /**
+   * Gets the creator.
+   * 
+   * @return the creator, null if none
+   */
+  public Creator<T> getCreator() {
+    return creator;
+  }
+  
+  
+  /**
+   * Creates a new instance.<br>
+   * Throws the same exceptions as {@link Class#newInstance()}.
+   * 
+   * @return the new object
+   * @throws InstantiationException if the class cannot be instantiated
+   * @throws IllegalAccessException if the constructor is not accessible
+   */
+  public T newInstance() throws InstantiationException, IllegalAccessException {
+    Creator<T> c = creator;
+    if (c == null) {
+      c = generatedCreator;
+    }
+    if (c != null) {
+      return c.create();
+    }
+    MethodHandle con = constructor;
+    if (con == null) {
+      con = resolveConstructor();
+      c = generatedCreator;
+      if (c != null) {
+        return c.create();
+      }
+    }
+    try {
+      return clazz.cast(con.invoke());
+    }
+    catch (RuntimeException ex) {
+      throw ex;
+    }
+    catch (Error err) {
+      throw err;
+    }
+    catch (Throwable t) {
+      InstantiationException iex = new InstantiationException(clazz.getName());
+      iex.initCause(t);
+      throw iex;
+    }
+  }
+  
+  
+  /**
+   * Resolves the no-arg constructor and generates a creator, if possible.<br>
+   * The access check is the same as for {@link Class#newInstance()}.
+   * 
+   * @return the constructor handle
+   * @throws InstantiationException if the class cannot be instantiated
+   * @throws IllegalAccessException if the constructor is not accessible
+   */
+  @SuppressWarnings("unchecked")
+  private MethodHandle resolveConstructor() throws InstantiationException, IllegalAccessException {
+    if (isAbstract || clazz.isInterface()) {
+      throw new InstantiationException(clazz.getName() + " is abstract");
+    }
+    MethodHandles.Lookup lookup = MethodHandles.lookup();
+    MethodHandle con;
+    try {
+      con = lookup.findConstructor(clazz, MethodType.methodType(void.class));
+    }
+    catch (NoSuchMethodException ex) {
+      InstantiationException iex = new InstantiationException(clazz.getName());
+      iex.initCause(ex);
+      throw iex;
+    }
+    if (Modifier.isPublic(clazz.getModifiers()) && isVisible()) {
+      try {
+        CallSite site = LambdaMetafactory.metafactory(lookup, "create",
+                MethodType.methodType(Creator.class), MethodType.methodType(Object.class),
+                con, MethodType.methodType(clazz));
+        generatedCreator = (Creator<T>) site.getTarget().invoke();
+      }
+      catch (Throwable t) {
+        // use the method handle
+        DbGlobal.logger.fine("no creator generated for " + clazz.getName() + ": " + t);
+      }
+    }
+    constructor = con;
+    return con;
+  }
+  
+  
+  /**
+   * Checks whether the class is visible to the class loader of the factory.<br>
+   * Otherwise the generated creator could not link to it.
+   * 
+   * @return true if visible
+   */
+  private boolean isVisible() {
+    try {
+      return Class.forName(clazz.getName(), false, DbObjectFactory.class.getClassLoader()) == clazz;
+    }
+    catch (ClassNotFoundException ex) {
+      return false;
+    }
+  }
+  
+  
+  /**
+   * Gets a public static method declared by the class.<br>
+   * The method is looked up only once. Missing methods are remembered as well.
+   * Non-public methods are treated as missing, i.e. the factory doesn't grant
+   * more access than invoking the method directly.
+   * 
+   * @param name the method name
+   * @param parameterTypes the parameter types
+   * @return the method, null if no such public static method
+   */
+  public Method getStaticMethod(String name, Class<?>... parameterTypes) {
+    StaticMethod[] methods = staticMethods.get(name);
+    if (methods != null) {
+      for (StaticMethod sm: methods) {
+        if (sm.matches(parameterTypes)) {
+          return sm.method;
+        }
+      }
+    }
+    // not resolved so far
+    Method method;
+    try {
+      method = clazz.getDeclaredMethod(name, parameterTypes);
+      int modifiers = method.getModifiers();
+      if (!Modifier.isStatic(modifiers) || !Modifier.isPublic(modifiers)) {
+        method = null;
+      }
+    }
+    catch (Exception ex) {
+      method = null;
+    }
+    synchronized(staticMethods) {
+      methods = staticMethods.get(name);
+      int len = methods == null ? 0 : methods.length;
+      StaticMethod[] newMethods = new StaticMethod[len + 1];
+      if (len > 0) {
+        System.arraycopy(methods, 0, newMethods, 0, len);
+      }
+      newMethods[len] = new StaticMethod(parameterTypes.clone(), method);
+      staticMethods.put(name, newMethods);
+    }
+    return method;
+  }
+  
+  
+  /**
+   * Invokes a public static method declared by the class.
+   * 
+   * @param name the method name
+   * @param parameterTypes the parameter types
+   * @param args the arguments
+   * @return the method's return value
+   * @throws NoSuchMethodException if no such public static method
+   * @throws IllegalAccessException if method not accessible
+   * @throws InvocationTargetException if method threw an exception
+   */
+  public Object invokeStatic(String name, Class<?>[] parameterTypes, Object... args) 
+         throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+    Method method = getStaticMethod(name, parameterTypes);
+    if (method == null) {
+      throw new NoSuchMethodException(clazz.getName() + "." + name);
+    }
+    return method.invoke(null, args);
+  }
+  
+  
+  
+  /**
+   * A resolved static method.
+   */
+  private static final class StaticMethod {
+    
+    private final Class<?>[] parameterTypes;    // the parameter types
+    private final Method method;                // the method, null if no such method
+    
+    private StaticMethod(Class<?>[] parameterTypes, Method method) {
+      this.parameterTypes = parameterTypes;
+      this.method = method;
+    }
+    
+    private boolean matches(Class<?>[] types) {
+      if (types.length != parameterTypes.length) {
+        return false;
+      }
+      for (int i=0; i < types.length; i++) {
+        if (types[i] != parameterTypes[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+  
+}
@@ -24,8 +24,11 @@ package org.tentackle.db;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.EventObject;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -33,6 +36,7 @@ import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.prefs.InvalidPreferencesFormatException;
 import java.util.prefs.NodeChangeEvent;
 import java.util.prefs.NodeChangeListener;
@@ -42,6 +46,7 @@ import java.util.prefs.Preferences;
 import java.util.prefs.BackingStoreException;
 import org.tentackle.util.Base64;
 import org.tentackle.util.Compare;
+import org.tentackle.util.LongMap;
 import org.tentackle.util.PreferencesSupport;
 
 
@@ -100,6 +105,17 @@ import org.tentackle.util.PreferencesSupport;
  * </li>
  * </ul>
  * 
+ * Reading values does not require the global lock. Each node with loaded keys keeps
+ * a concurrent snapshot of its values which is updated whenever a key is changed
+ * locally or by expiration. Hence, readers are not blocked by flushes or expiration
+ * processing in the ModificationThread.
+ * <p>
+ * Applications modifying preferences frequently may enable the write-behind mode
+ * via {@link #setWriteBehind(long)}. In this mode, modified nodes are just marked dirty
+ * and flushed periodically in a single transaction by the ModificationThread.
+ * {@link #flush()} returns immediately and {@link #flushPending()} forces the pending changes
+ * to be written.
+ * 
  * @author harald
  */
 public class DbPreferences extends Preferences {
@@ -142,51 +158,63 @@ public class DbPreferences extends Preferences {
   private static Db db;                       // database connection
   private static boolean autoSync;            // true = keep in syncObject with other JVMs
   private static Object lock;                 // we need a single lock for all DbPreferences cause of Mod.Thread
-  private static long nodeTableSerial = -1;   // highest tableSerial of _all_ DbPreferencesNodes
-  private static long keyTableSerial  = -1;   // highest tableSerial of _all_ DbPreferencesKeys
+  private static volatile long nodeTableSerial = -1;   // highest tableSerial of _all_ DbPreferencesNodes
+  private static volatile long keyTableSerial  = -1;   // highest tableSerial of _all_ DbPreferencesKeys
+  
+  // write behind
+  private static long writeBehindInterval;                                         // flush interval in ms, 0 = write through
+  private static Set<DbPreferences> dirtyPrefs = new LinkedHashSet<DbPreferences>(); // nodes to flush (guarded by lock)
+  private static Runnable flushRunnable;                                           // the write-behind runnable, null if not registered yet
+  private static long lastFlush;                                                   // time of last write-behind flush
   
   // for expiration processing: all persistent nodes and keys indexed by id
-  private static Map<Long,DbPreferences>     prefIdMap = new TreeMap<Long,DbPreferences>();
-  private static Map<Long,DbPreferencesKey>  keyIdMap  = new TreeMap<Long,DbPreferencesKey>();
+  private static LongMap<DbPreferences>     prefIdMap = new LongMap<DbPreferences>();
+  private static LongMap<DbPreferencesKey>  keyIdMap  = new LongMap<DbPreferencesKey>();
   
-  // dto. indexed by user + name
-  private static Map<NodeIndex,DbPreferences> prefNameMap = new TreeMap<NodeIndex,DbPreferences>();
+  // dto. indexed by user + name (user is null for system nodes)
+  private static Map<String,Map<String,DbPreferences>> prefNameMap = new HashMap<String,Map<String,DbPreferences>>();
   
-  // key for preNameMap
-  private static class NodeIndex implements Comparable<NodeIndex> {
-    
-    private String user;
-    private String name;
-    
-    private NodeIndex(String user, String name) {
-      this.user = user;
-      this.name = name;
-    }
-    
-    private NodeIndex(DbPreferencesNode node)  {
-      this.user = node.getUser();
-      this.name = node.getName();
+  
+  /**
+   * Gets a node from the name index.<br>
+   * Does not create any objects.
+   * 
+   * @param user the username, null if system
+   * @param name the absolute pathname
+   * @return the node, null if not loaded
+   */
+  private static DbPreferences getPrefByName(String user, String name) {
+    Map<String,DbPreferences> userMap = prefNameMap.get(user);
+    return userMap == null ? null : userMap.get(name);
+  }
+  
+  /**
+   * Adds a node to the name index.
+   * 
+   * @param node the persistent node
+   * @param pref the preferences node
+   */
+  private static void putPrefByName(DbPreferencesNode node, DbPreferences pref) {
+    Map<String,DbPreferences> userMap = prefNameMap.get(node.getUser());
+    if (userMap == null) {
+      userMap = new HashMap<String,DbPreferences>();
+      prefNameMap.put(node.getUser(), userMap);
     }
-    
-    public int compareTo(NodeIndex o) {
-      int rv = Compare.compare(user, o.user);
-      if (rv == 0)  {
-        rv = Compare.compare(name, o.name);
+    userMap.put(node.getName(), pref);
+  }
+  
+  /**
+   * Removes a node from the name index.
+   * 
+   * @param node the persistent node
+   */
+  private static void removePrefByName(DbPreferencesNode node) {
+    Map<String,DbPreferences> userMap = prefNameMap.get(node.getUser());
+    if (userMap != null) {
+      userMap.remove(node.getName());
+      if (userMap.isEmpty()) {
+        prefNameMap.remove(node.getUser());
       }
-      return rv;
-    }
-    
-    @Override
-    public boolean equals(Object obj) {
-      return obj instanceof NodeIndex && compareTo((NodeIndex)obj) == 0;
-    }
-
-    @Override
-    public int hashCode() {
-      int hash = 5;
-      hash = 97 * hash + (user != null ? user.hashCode() : 0);
-      hash = 97 * hash + (name != null ? name.hashCode() : 0);
-      return hash;
     }
   }
   
@@ -279,6 +307,119 @@ public class DbPreferences extends Preferences {
   }
   
   
+  /**
+   * Enables or disables the write-behind mode.<br>
+   * In write-behind mode {@link #flush()} and all modifications just mark the node
+   * as dirty. All dirty nodes are flushed periodically within a single transaction.
+   * The flush runs in the {@link ModificationThread}, hence the effective interval
+   * is rounded up to the polling interval of the ModificationThread.
+   * Disabling the write-behind mode flushes all pending modifications.
+   * <p>
+   * Notice: applications should invoke {@link #flushPending()} before closing the
+   * preferences' db connection.
+   * 
+   * @param interval the flush interval in milliseconds, 0 to disable write-behind
+   * @throws BackingStoreException if disabling failed to flush pending modifications
+   * @throws IllegalStateException if enabled and the ModificationThread is not created yet
+   */
+  public static void setWriteBehind(long interval) throws BackingStoreException {
+    synchronized(lock) {
+      if (interval > 0 && flushRunnable == null) {
+        ModificationThread mt = ModificationThread.getThread();
+        if (mt.isDummy()) {
+          throw new IllegalStateException("write-behind requires the modification thread");
+        }
+        flushRunnable = new WriteBehindRunnable();
+        mt.registerRunnable(flushRunnable);
+      }
+      writeBehindInterval = interval;
+      lastFlush = System.currentTimeMillis();
+    }
+    if (interval <= 0) {
+      flushPending();
+    }
+  }
+  
+  
+  /**
+   * Gets the write-behind interval.
+   * 
+   * @return the interval in milliseconds, 0 if write through
+   */
+  public static long getWriteBehindInterval() {
+    synchronized(lock) {
+      return writeBehindInterval;
+    }
+  }
+  
+  
+  /**
+   * Flushes all dirty nodes within a single transaction.<br>
+   * Only necessary in write-behind mode.
+   * If flushing failed, all dirty nodes are recovered from storage, i.e.
+   * their modifications are lost.
+   * 
+   * @throws BackingStoreException if flush failed
+   */
+  public static void flushPending() throws BackingStoreException {
+    synchronized(lock) {
+      if (dirtyPrefs.isEmpty()) {
+        return;
+      }
+      DbPreferences[] prefs = new DbPreferences[dirtyPrefs.size()];
+      dirtyPrefs.toArray(prefs);
+      dirtyPrefs.clear();
+      boolean oldCommit = db.begin(TX_FLUSH);
+      try {
+        for (DbPreferences pref: prefs) {
+          if (pref.node != null) {
+            pref.firstNewNode().flushImpl();
+          }
+        }
+        db.commit(oldCommit);
+        if (DbGlobal.logger.isFineLoggable()) {
+          DbGlobal.logger.fine(prefs.length + " preferences nodes flushed");
+        }
+      }
+      catch (BackingStoreException ex) {
+        db.rollback(oldCommit);
+        for (DbPreferences pref: prefs) {
+          if (pref.node != null) {
+            pref.firstNewNode().recover();
+          }
+        }
+        throw ex;
+      }
+    }
+  }
+  
+  
+  /**
+   * Runnable flushing the dirty nodes in write-behind mode.<br>
+   * Registered once in the ModificationThread and invoked on each poll.
+   */
+  private static class WriteBehindRunnable implements Runnable {
+    
+    public void run() {
+      synchronized(lock) {
+        if (writeBehindInterval <= 0 || System.currentTimeMillis() - lastFlush < writeBehindInterval) {
+          return;
+        }
+        lastFlush = System.currentTimeMillis();
+      }
+      try {
+        flushPending();
+      }
+      catch (BackingStoreException ex) {
+        DbGlobal.logger.severe("write-behind flush failed: " + ex.getMessage());
+      }
+      catch (RuntimeException ex) {
+        DbGlobal.logger.severe("write-behind flush failed: " + ex);
+      }
+    }
+  }
+  
+  
   
   /**
    * Expire the preferences keys.<br>
@@ -301,6 +442,9 @@ public class DbPreferences extends Preferences {
         if (key != null && key.getTableSerial() < expTableSerial)  {
           // update value, if not same jvm (the rest cannot change!)
           DbPreferencesKey nkey = factory.createKey(db).select(expId);
+          if (nkey == null) {
+            continue;   // removed meanwhile: will be processed by expireNodes
+          }
           // update key value and status info
           key.setValue(nkey.getValue());
           key.setSerial(nkey.getSerial());
@@ -308,6 +452,7 @@ public class DbPreferences extends Preferences {
           // fire listeners if any for this node
           DbPreferences pref = prefIdMap.get(key.getNodeId());
           if (pref != null) {
+            pref.updateValue(key);
             if (DbGlobal.logger.isFineLoggable()) {
               DbGlobal.logger.fine("key updated in " + pref + ": " + key);
             }
@@ -368,7 +513,7 @@ public class DbPreferences extends Preferences {
         
         if (pref == null) {
           // node is not known so far: possibly it does not have an ID yet, so giv'em an ID if new
-          pref = prefNameMap.get(new NodeIndex(expiredNode));
+          pref = getPrefByName(expiredNode.getUser(), expiredNode.getName());
           if (pref != null && pref.node.isNew()) {
             pref.node.setId(expiredNode.getId());   // serial and tableserial will be updated below
             pref.node.setParentId(expiredNode.getParentId());
@@ -394,6 +539,7 @@ public class DbPreferences extends Preferences {
                   key.setDb(DbPreferences.db);        // switch to Preferences-Db
                   pref.keys.put(key.getKey(), key);   // add to node key list
                   keyIdMap.put(key.getId(), key);     // add to key-cache
+                  pref.updateValue(key);
                   pref.enqueuePreferenceChangeEvent(key.getKey(), key.getValue());
                   if (DbGlobal.logger.isFineLoggable()) {
                     DbGlobal.logger.fine("key added to node " + pref.node + ": " + key);
@@ -407,6 +553,9 @@ public class DbPreferences extends Preferences {
                   // key removed
                   iter.remove();                  // this will also remove from the map
                   keyIdMap.remove(key.getId());   // remove from global keymap too
+                  if (pref.values != null) {
+                    pref.values.remove(key.getKey());
+                  }
                   pref.enqueuePreferenceChangeEvent(key.getKey(), null);
                   if (DbGlobal.logger.isFineLoggable()) {
                     DbGlobal.logger.fine("key removed from node " + pref.node + ": " + key);
@@ -439,7 +588,7 @@ public class DbPreferences extends Preferences {
                     node.setDb(DbPreferences.db);
                     DbPreferences child = factory.createPreferences(pref, node);
                     prefIdMap.put(node.getId(), child);
-                    prefNameMap.put(new NodeIndex(node), child);
+                    putPrefByName(node, child);
                     pref.childPrefs.put(child.name, child);
                     pref.childIds.add(node.getId());
                     pref.enqueueNodeAddedEvent(child);
@@ -496,8 +645,9 @@ public class DbPreferences extends Preferences {
   private boolean userMode;                           // true if this is a user-node (speeds up)
   private DbPreferences parent;                       // parent node, null = this is the root
   private DbPreferences root;                         // the root preference (non-static because of user and system-scope)
-  private DbPreferencesNode node;                     // the database node (backing store), null = deleted
+  private volatile DbPreferencesNode node;            // the database node (backing store), null = deleted
   private Map<String, DbPreferencesKey> keys;         // list of keys associated with this node (lazy if no PreferenceChangeListeners registered)
+  private volatile Map<String, String> values;        // snapshot of the values for lock-free reads, null if keys not loaded
   private Set<Long> childIds;                         // IDs of all child nodes (only if NodeChangeListeners registered)
   private Map<String, DbPreferences> childPrefs;      // accessed child preferences so far. Key is the name relative to the parent.
   private PreferenceChangeListener[] prefListeners;   // preference change listeners
@@ -630,7 +780,7 @@ public class DbPreferences extends Preferences {
       updateNodeTableSerial(node.getTableSerial());
       prefIdMap.put(node.getId(), this);
     }
-    prefNameMap.put(new NodeIndex(node), this);
+    putPrefByName(node, this);
   }
   
   
@@ -660,11 +810,18 @@ public class DbPreferences extends Preferences {
    */
   private void loadKeys() {
     keys = new TreeMap<String, DbPreferencesKey>();
-    for (DbPreferencesKey k: factory.createKey(db).selectByNodeId(node.getId())) {
-      keys.put(k.getKey(), k);
-      updateKeyTableSerial(k.getTableSerial());
-      keyIdMap.put(k.getId(), k);
+    Map<String, String> snapshot = new ConcurrentHashMap<String, String>();
+    if (node.isIdValid()) {
+      for (DbPreferencesKey k: factory.createKey(db).selectByNodeId(node.getId())) {
+        keys.put(k.getKey(), k);
+        if (k.getValue() != null) {
+          snapshot.put(k.getKey(), k.getValue());
+        }
+        updateKeyTableSerial(k.getTableSerial());
+        keyIdMap.put(k.getId(), k);
+      }
     }
+    values = snapshot;
   }
   
   /**
@@ -677,6 +834,54 @@ public class DbPreferences extends Preferences {
       }
     }
     keys = null;
+    values = null;
+  }
+  
+  
+  /**
+   * Updates the value snapshot for a key.
+   * 
+   * @param key the key
+   */
+  private void updateValue(DbPreferencesKey key) {
+    Map<String, String> snapshot = values;
+    if (snapshot != null) {
+      if (key.isDeleted() || key.getValue() == null) {
+        snapshot.remove(key.getKey());
+      }
+      else  {
+        snapshot.put(key.getKey(), key.getValue());
+      }
+    }
+  }
+  
+  
+  /**
+   * Marks this node dirty in write-behind mode.
+   * Invoked with lock held.
+   * 
+   * @return true if write-behind, false if write through
+   */
+  private boolean markDirty() {
+    if (writeBehindInterval > 0) {
+      dirtyPrefs.add(this);
+      return true;
+    }
+    return false;
+  }
+  
+  
+  /**
+   * Gets the topmost node on the path to this node that is not persistent yet.
+   * 
+   * @return the node to start flushing at
+   */
+  private DbPreferences firstNewNode() {
+    DbPreferences prefs = this;
+    while (prefs.parent != null && prefs.parent.node != null && prefs.parent.node.isNew()) {
+      prefs = prefs.parent;
+    }
+    return prefs;
   }
   
   
@@ -691,7 +896,7 @@ public class DbPreferences extends Preferences {
     for (DbPreferences child: childPrefs.values()) {
       if (child.node != null) {
         prefIdMap.remove(child.node.getId());
-        prefNameMap.remove(new NodeIndex(child.node));
+        removePrefByName(child.node);
       }
     }
     childPrefs.clear();
@@ -707,7 +912,7 @@ public class DbPreferences extends Preferences {
       }
       // append to maps
       prefIdMap.put(n.getId(), this);
-      prefNameMap.put(new NodeIndex(n), this);
+      putPrefByName(n, this);
     }
   }
   
@@ -870,6 +1075,7 @@ public class DbPreferences extends Preferences {
       }
       keys = null;
     }
+    values = null;
 
     // remove this node from its parent
     if (parent != null) {
@@ -883,7 +1089,7 @@ public class DbPreferences extends Preferences {
     // remove the node from the global pool
     if (node != null) {
       prefIdMap.remove(node.getId());
-      prefNameMap.remove(new NodeIndex(node));
+      removePrefByName(node);
     }
     
     node = null;
@@ -955,7 +1161,7 @@ public class DbPreferences extends Preferences {
       }
 
       prefIdMap.remove(node.getId());     // remove from nodemap
-      prefNameMap.remove(new NodeIndex(node));
+      removePrefByName(node);
 
       // delete all keys for this node
       factory.createKey(db).deleteByNodeId(node.getId());
@@ -1073,9 +1279,11 @@ public class DbPreferences extends Preferences {
         }
         String oldValue = k.getValue();
         k.setValue(value);
+        values.put(key, value);
         if (Compare.compare(oldValue, value) != 0)  {
           enqueuePreferenceChangeEvent(key, value);
         }
+        markDirty();
       }
     }
   }
@@ -1085,6 +1293,13 @@ public class DbPreferences extends Preferences {
     if (key == null) {
       throw new NullPointerException("null key");
     }
+    Map<String, String> snapshot = values;
+    if (snapshot != null) {
+      // lock-free read
+      assertNotRemoved();
+      String value = snapshot.get(key);
+      return value == null ? def : value;
+    }
     synchronized(lock) {
       assertNotRemoved();
       DbPreferencesKey k = getKey(key);
@@ -1112,7 +1327,9 @@ public class DbPreferences extends Preferences {
             keys.remove(key);
           }
           // else: already marked deleted
+          values.remove(key);
           enqueuePreferenceChangeEvent(key, null);
+          markDirty();
         }
       }
     }
@@ -1131,27 +1348,30 @@ public class DbPreferences extends Preferences {
   
   public void sync() throws BackingStoreException {       
     flush();  // flush first
+    flushPending();
     // explicit expiration
     expireKeys(db, factory.createKey(db).selectModification());
     expireNodes(db, factory.createNode(db).selectModification());
   }
 
 
+  /**
+   * {@inheritDoc}
+   * <p>
+   * In write-behind mode the node is just marked dirty and will be
+   * flushed by the write-behind thread.
+   */
   public void flush() throws BackingStoreException {
     if (!isReadOnly())  {
       synchronized(lock)  {
+        if (node != null && markDirty()) {
+          return;
+        }
         // single transaction
         boolean oldCommit = db.begin(TX_FLUSH);
         try {
-          /**
-           * go up to the first parent with a new node
-           */
-          DbPreferences prefs = this;
-          while (prefs.parent != null && prefs.parent.node != null && prefs.parent.node.isNew()) {
-            prefs = prefs.parent;
-          }
           // flush starting at first non-persistent node
-          prefs.flushImpl();
+          firstNewNode().flushImpl();
           db.commit(oldCommit);
         }
         catch (BackingStoreException ex)  {
@@ -1368,7 +1588,7 @@ public class DbPreferences extends Preferences {
       }
       
       // go by absolute path
-      DbPreferences pref = prefNameMap.get(new NodeIndex(node.getUser(), pathName));  // check cache first
+      DbPreferences pref = getPrefByName(node.getUser(), pathName);  // check cache first
       return (pref != null && pref.node.isNew() == false) ||  // persistent node exists in cache
              // or node exists in storage
              factory.createNode(db).selectByUserAndName(node.getUser(), pathName) != null;
@@ -0,0 +1,275 @@
+/**
+ * Tentackle - a framework for java desktop applications
+ * Copyright (C) 2001-2008 Harald Krake, harald@krake.de, +49 7722 9508-0
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+// $Id$
+
+package org.tentackle.db;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Detects resources the application forgot to close.<br>
+ * 
+ * Result sets and remote cursors register themselves on creation
+ * and unregister when closed. If a tracked object is garbage collected
+ * while still open, the leak is logged and the resources are released
+ * by a background thread.
+ * <p>
+ * Tracking is based on {@link PhantomReference}s rather than finalizers,
+ * i.e. the objects are reclaimed in a single GC cycle and objects closed by the
+ * application don't cost anything beyond registration.
+ * <p>
+ * Modes:
+ * <ul>
+ * <li>{@link #OFF}: no tracking at all. Forgotten resources are neither logged nor released.</li>
+ * <li>{@link #SAMPLED}: all resources are tracked, but only every n-th (see {@link #setSampleRate})
+ * records the call site of its creation. This is the default.</li>
+ * <li>{@link #PARANOID}: all resources are tracked and record the call site.</li>
+ * </ul>
+ *
+ * @author harald
+ */
+public final class LeakTracker {
+  
+  /** no leak tracking **/
+  public static final int OFF = 0;
+  /** track all, record call site of every n-th resource **/
+  public static final int SAMPLED = 1;
+  /** track all and record the call site **/
+  public static final int PARANOID = 2;
+  
+  
+  /**
+   * A resource to be released if leaked.<br>
+   * Implementations must not refer to the tracked object, because
+   * otherwise it will never become unreachable.
+   * The toString-method should describe the resource.
+   */
+  public interface Resource {
+    
+    /**
+     * Gets the db of the resource.
+     * 
+     * @return the db, null if unknown
+     */
+    Db getDb();
+    
+    /**
+     * Releases the resource.
+     */
+    void release();
+  }
+  
+  
+  /**
+   * The handle for a tracked object.
+   */
+  public static final class Handle extends PhantomReference<Object> {
+    
+    private final Resource resource;    // the resource to release
+    private final Throwable origin;     // the call site, null if not recorded
+    
+    private Handle(Object referent, Resource resource, Throwable origin) {
+      super(referent, queue);
+      this.resource = resource;
+      this.origin = origin;
+    }
+    
+    /**
+     * Stops tracking.<br>
+     * Must be invoked when the object is closed by the application.
+     */
+    public void untrack() {
+      handles.remove(this);
+      clear();
+    }
+  }
+  
+  
+  
+  private static volatile int mode = SAMPLED;                 // the tracking mode
+  private static volatile int sampleRate = 100;               // record every n-th call site in SAMPLED mode
+  private static final AtomicInteger trackCount = new AtomicInteger();    // for sampling
+  private static final AtomicLong leakCount = new AtomicLong();           // number of detected leaks
+  private static final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+  private static final Map<Handle,Boolean> handles = new ConcurrentHashMap<Handle,Boolean>();   // keeps handles reachable
+  
+  
+  static {
+    new ReleaseThread().start();
+  }
+  
+  
+  /**
+   * Sets the tracking mode.<br>
+   * Changing the mode affects only resources created afterwards.
+   * 
+   * @param mode one of {@link #OFF}, {@link #SAMPLED} or {@link #PARANOID}
+   */
+  public static void setMode(int mode) {
+    if (mode != OFF && mode != SAMPLED && mode != PARANOID) {
+      throw new IllegalArgumentException("illegal leak tracking mode " + mode);
+    }
+    LeakTracker.mode = mode;
+  }
+  
+  /**
+   * Gets the tracking mode.
+   * 
+   * @return the mode
+   */
+  public static int getMode() {
+    return mode;
+  }
+  
+  
+  /**
+   * Sets the sample rate for {@link #SAMPLED} mode.
+   * 
+   * @param sampleRate the call site of every n-th resource is recorded, default is 100
+   */
+  public static void setSampleRate(int sampleRate) {
+    if (sampleRate < 1) {
+      throw new IllegalArgumentException("sample rate must be positive");
+    }
+    LeakTracker.sampleRate = sampleRate;
+  }
+  
+  /**
+   * Gets the sample rate for {@link #SAMPLED} mode.
+   * 
+   * @return the sample rate
+   */
+  public static int getSampleRate() {
+    return sampleRate;
+  }
+  
+  
+  /**
+   * Returns whether tracking is enabled.
+   * 
+   * @return true if mode is not {@link #OFF}
+   */
+  public static boolean isEnabled() {
+    return mode != OFF;
+  }
+  
+  
+  /**
+   * Gets the number of currently tracked objects.
+   * 
+   * @return the number of open resources
+   */
+  public static int getTrackedCount() {
+    return handles.size();
+  }
+  
+  /**
+   * Gets the number of leaks detected so far.
+   * 
+   * @return the number of leaks
+   */
+  public static long getLeakCount() {
+    return leakCount.get();
+  }
+  
+  
+  /**
+   * Starts tracking an object.
+   * 
+   * @param object the object to track
+   * @param resource the resource to release if object is leaked
+   * @return the handle, null if tracking is disabled
+   */
+  public static Handle track(Object object, Resource resource) {
+    int currentMode = mode;
+    if (currentMode == OFF) {
+      return null;
+    }
+    Throwable origin = null;
+    if (currentMode == PARANOID || trackCount.incrementAndGet() % sampleRate == 0) {
+      origin = new Throwable("created at");
+    }
+    Handle handle = new Handle(object, resource, origin);
+    handles.put(handle, Boolean.TRUE);
+    return handle;
+  }
+  
+  
+  
+  /**
+   * Logs and releases a leaked resource.
+   * 
+   * @param handle the handle of the leaked object
+   */
+  private static void release(Handle handle) {
+    if (handles.remove(handle) != null) {
+      leakCount.incrementAndGet();
+      Resource resource = handle.resource;
+      String msg = "pending " + resource + " closed";
+      if (handle.origin == null) {
+        msg += " (call site not recorded, see LeakTracker.setMode)";
+      }
+      try {
+        DbGlobal.errorHandler.warning(resource.getDb(), new DbRuntimeException(msg, handle.origin), null);
+      }
+      finally {
+        resource.release();
+      }
+    }
+  }
+  
+  
+  /**
+   * Thread releasing the leaked resources.
+   */
+  private static class ReleaseThread extends Thread {
+    
+    private ReleaseThread() {
+      super("LeakTracker release");
+      setDaemon(true);
+    }
+    
+    @Override
+    public void run() {
+      for (;;) {
+        try {
+          release((Handle) queue.remove());
+        }
+        catch (InterruptedException ex) {
+          // continue
+        }
+        catch (RuntimeException ex) {
+          DbGlobal.logger.severe("releasing leaked resource failed: " + ex);
+        }
+      }
+    }
+  }
+  
+  
+  // no instances
+  private LeakTracker() {}
+  
+}
@@ -396,7 +396,7 @@ public class ModificationLog extends DbObject {
   @Override
   public String toString()  {
     String str = "<" + getId() + "/" + modType + ":" + user + "," + txId + (txName == null ? "" : ("/" + txName)) +
-                 "," + StringHelper.timestampFormat.format(when) + ">";
+                 "," + StringHelper.timestampFormatter.format(when) + ">";
     if (objectClass != null && objectId != 0) {
       str += " " + objectClass + "[" + objectId + "]";
     }
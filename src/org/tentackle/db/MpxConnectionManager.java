@@ -273,7 +273,7 @@ public class MpxConnectionManager extends DefaultConnectionManager {
         con.setExpireAt(con.getEstablishedSince() + (minMinutes*60 + random.nextInt((maxMinutes - minMinutes)*60)) * 1000L);
         if (DbGlobal.logger.isInfoLoggable()) {
           DbGlobal.logger.info(this + ": open connection " + con +
-                               ", valid until " + StringHelper.timestampFormat.format(new Date(con.getExpireAt())));
+                               ", valid until " + StringHelper.timestampFormatter.format(new Date(con.getExpireAt())));
         }
         synchronized(this) {
           pushUnattached(addConnection(con));   // add to established connections and unattached freelist
@@ -477,7 +477,7 @@ public class MpxConnectionManager extends DefaultConnectionManager {
       if (closed) {
         if (DbGlobal.logger.isInfoLoggable()) {
           DbGlobal.logger.info(this + ": closing connection " + con +
-                               ", open since " + StringHelper.timestampFormat.format(new Date(con.getEstablishedSince())));
+                               ", open since " + StringHelper.timestampFormatter.format(new Date(con.getEstablishedSince())));
         }
         con.close();
         reopenConnections();
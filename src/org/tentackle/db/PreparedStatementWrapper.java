@@ -27,6 +27,7 @@ import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Time;
 import java.sql.Timestamp;
 import java.sql.Types;
@@ -160,7 +161,102 @@ public class PreparedStatementWrapper extends StatementWrapper {
   public ResultSetWrapper executeQuery () {
     return executeQuery(false);
   }
-  
+
+
+  /**
+   * Adds the current parameters to the batch of this statement.<br>
+   * Like {@link #executeUpdate()} this consumes the statement, i.e.
+   * the statement must be retrieved via {@link Db#getPreparedStatement(int)}
+   * for each batched row. Should be used within a transaction only
+   * to make sure that all rows are batched on the same connection.
+   */
+  public void addBatch() {
+    unmarkReady();
+    try {
+      ((PreparedStatement)stmt).addBatch();
+    }
+    catch (SQLException e)  {
+      DbGlobal.errorHandler.severe(getDb(), e, Locales.bundle.getString("Datenbankfehler_beim_addBatch()_des_SQL-PreparedStatements"));
+    }
+    detachDb();
+  }
+
+
+  /**
+   * Executes the batch of this statement.<br>
+   * The statement must have been retrieved via {@link Db#getPreparedStatement(int)}.
+   * <p>
+   * Unique violations are reported via {@link Db#isUniqueViolation()} as in {@link #executeUpdate()}.
+   * The batch is cleared in any case.
+   *
+   * @return the total number of rows affected
+   */
+  public int executeBatch() {
+
+    con.countForClearWarnings();
+    getDb().setUniqueViolation(false);
+
+    if (DbGlobal.logger.isFinestLoggable()) {
+      DbGlobal.logger.finest("execute batch " + stmt.toString());
+    }
+
+    unmarkReady();
+    getDb().setAlive(true);
+    int total = 0;
+    try {
+      int[] counts = stmt.executeBatch();
+      for (int count: counts) {
+        if (count > 0) {
+          total += count;
+        }
+        else if (count == Statement.SUCCESS_NO_INFO) {
+          total++;
+        }
+      }
+      if (total > 0) {
+        getDb().addToUpdateCount(total);
+      }
+    }
+    catch (SQLException e)  {
+      String state = e.getSQLState();
+      if (state != null && state.startsWith("23")) {
+        getDb().setUniqueViolation(true);
+        if (getDb().isUniqueViolationLogEnabled()) {
+          DbGlobal.errorHandler.info(getDb(), e, Locales.bundle.getString("unique_violation_detected"));
+        }
+      }
+      else  {
+        DbGlobal.errorHandler.severe(getDb(), e, Locales.bundle.getString("Datenbankfehler_beim_Modifizieren_der_DB"));
+      }
+    }
+    finally {
+      try {
+        stmt.clearBatch();
+      }
+      catch (SQLException e) {
+        // ignore, statement will be closed anyway
+      }
+      detachDb();
+    }
+    return total;
+  }
+
+
+  /**
+   * Discards the batch of this statement.<br>
+   * The statement must have been retrieved via {@link Db#getPreparedStatement(int)}.
+   */
+  public void clearBatch() {
+    unmarkReady();
+    try {
+      stmt.clearBatch();
+    }
+    catch (SQLException e)  {
+      DbGlobal.errorHandler.severe(getDb(), e, Locales.bundle.getString("Datenbankfehler_beim_addBatch()_des_SQL-PreparedStatements"));
+    }
+    detachDb();
+  }
+
 
   
 
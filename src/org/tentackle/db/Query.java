@@ -27,7 +27,10 @@ import java.sql.ResultSet;
 import java.sql.Time;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 
 
@@ -39,10 +42,30 @@ import java.util.List;
  * Notice that by default the underlying prepared statement is closed
  * when the resultset (or cursor) is closed by the application.
  * You can change that behaviour, however.
+ * <p>
+ * The statement IDs are cached by the structure of the query, i.e.
+ * the sql-parts, the null-pattern of the parameters, whether limit
+ * and offset are used and the database backend. Thus, repeated queries
+ * of the same structure don't build any sql string at all.
  *
  * @author harald
  */
 public class Query {
+  
+  /** maximum number of cached statement IDs **/
+  private static final int MAX_CACHED_STATEMENTS = 2048;
+  
+  /** cached statement IDs by query shape **/
+  private static final ConcurrentMap<Shape,Integer> statementIds = new ConcurrentHashMap<Shape,Integer>();
+  
+  
+  /**
+   * Clears the cache of statement IDs.
+   */
+  public static void clearStatementCache() {
+    statementIds.clear();
+  }
+  
 
   private List<QueryItem> items;          // query parameters
   private int fetchSize;                  // fetchsize, 0 = default
@@ -185,7 +208,7 @@ public class Query {
    */
   public ResultSetWrapper execute(Db db, int resultSetType, int resultSetConcurrency) {
 
-    PreparedStatementWrapper st = db.getPreparedStatement(getSql(db), resultSetType, resultSetConcurrency);
+    PreparedStatementWrapper st = db.getPreparedStatement(getStatementId(db, false, resultSetType, resultSetConcurrency));
 
     // apply parameters to statement
     apply(db, st);
@@ -258,11 +281,8 @@ public class Query {
    * @return the number of rows for this query
    */
   public int getEstimatedRowCount(Db db) {
-    StringBuilder buf = buildSql();
-    buf.insert(0, "SELECT COUNT(*) FROM (");
-    buf.append(") AS F_O_O");
-    
-    PreparedStatementWrapper st = db.getPreparedStatement(buf.toString());
+    PreparedStatementWrapper st = db.getPreparedStatement(
+            getStatementId(db, true, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY));
     applyParameters(st, 1);
     ResultSetWrapper rs = st.executeQuery();
     rs.setCloseStatementOnclose(true);
@@ -402,6 +422,100 @@ public class Query {
   }
   
   
+  /**
+   * Gets the statement ID for this query.<br>
+   * The ID is taken from the cache, if a query with the same shape
+   * has already been prepared. Otherwise the sql string is built and prepared.
+   * 
+   * @param db the db connection
+   * @param count true if {@code SELECT COUNT(*)} for {@link #getEstimatedRowCount}
+   * @param resultSetType is one of ResultSet.TYPE_...
+   * @param resultSetConcurrency is one of ResultSet.CONCUR_..
+   * @return the statement ID
+   */
+  private int getStatementId(Db db, boolean count, int resultSetType, int resultSetConcurrency) {
+    Shape shape = new Shape(items, limit, offset, db.getBackendType(), count,
+                            resultSetType, resultSetConcurrency);
+    Integer stmtId = statementIds.get(shape);
+    if (stmtId == null) {
+      String sql;
+      if (count) {
+        StringBuilder buf = buildSql();
+        buf.insert(0, "SELECT COUNT(*) FROM (");
+        buf.append(") AS F_O_O");
+        sql = buf.toString();
+      }
+      else  {
+        sql = getSql(db);
+      }
+      stmtId = db.prepareStatement(sql, resultSetType, resultSetConcurrency);
+      if (statementIds.size() >= MAX_CACHED_STATEMENTS) {
+        statementIds.clear();
+      }
+      statementIds.put(shape, stmtId);
+    }
+    return stmtId;
+  }
+  
+  
+
+  /**
+   * The shape of a query.<br>
+   * Two queries with the same shape result in the same sql string.
+   */
+  private static class Shape {
+    
+    private final String[] sql;           // the sql parts
+    private final boolean[] nulls;        // null-pattern of parameters
+    private final int flags;              // backend, limit, offset, count
+    private final int resultSetType;
+    private final int resultSetConcurrency;
+    private final int hash;
+    
+    Shape(List<QueryItem> items, int limit, int offset, int backendType, boolean count,
+          int resultSetType, int resultSetConcurrency) {
+      int size = items.size();
+      int parCount = 0;
+      sql = new String[size];
+      for (int i=0; i < size; i++) {
+        QueryItem item = items.get(i);
+        sql[i] = item.sql;
+        parCount += item.data.length;
+      }
+      nulls = new boolean[parCount];
+      int parNdx = 0;
+      for (QueryItem item : items) {
+        for (Object data : item.data) {
+          nulls[parNdx++] = data == null;
+        }
+      }
+      flags = (backendType << 3) | (limit > 0 ? 0x01 : 0) | (offset > 0 ? 0x02 : 0) | (count ? 0x04 : 0);
+      this.resultSetType = resultSetType;
+      this.resultSetConcurrency = resultSetConcurrency;
+      hash = ((Arrays.hashCode(sql) * 31 + flags) * 31 + resultSetType) * 31 + resultSetConcurrency;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (obj instanceof Shape) {
+        Shape other = (Shape) obj;
+        return hash == other.hash &&
+               flags == other.flags &&
+               resultSetType == other.resultSetType &&
+               resultSetConcurrency == other.resultSetConcurrency &&
+               Arrays.equals(nulls, other.nulls) &&
+               Arrays.equals(sql, other.sql);
+      }
+      return false;
+    }
+  }
+  
+  
 
   /**
    * bundles sql + parameters
@@ -29,6 +29,7 @@ import java.sql.Date;
 import java.sql.Time;
 import java.sql.Timestamp;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import org.tentackle.util.StringHelper;
 
@@ -46,6 +47,8 @@ public class ResultSetWrapper {
   private int columnOffset;               // offset to add to column index (e.g. for eager loading / joins)
   private boolean commitOnClose;          // true = issue a commit() before close()
   private boolean closeStatementOnClose;  // true = close the statement after resultset is closed
+  private PendingResources pending;       // resources to release if leaked, null if not tracked
+  private LeakTracker.Handle leakHandle;  // leak tracker handle, null if not tracked
 
   
   /**
@@ -63,6 +66,11 @@ public class ResultSetWrapper {
     
     // disable autoclosing the statement if it is a prepared statement
     closeStatementOnClose = !(stmt instanceof PreparedStatementWrapper);
+    
+    if (LeakTracker.isEnabled()) {
+      pending = new PendingResources(stmt, rs, db, closeStatementOnClose);
+      leakHandle = LeakTracker.track(this, pending);
+    }
   }
   
   
@@ -87,11 +95,34 @@ public class ResultSetWrapper {
    * Closes the resultset.
    */
   public void close ()  {
+    if (leakHandle != null) {
+      leakHandle.untrack();
+      leakHandle = null;
+      pending    = null;
+    }
+    close(stmt, rs, db, commitOnClose, closeStatementOnClose);
+    commitOnClose = false;
+    stmt   = null;  // to GC
+    db     = null;
+    rs     = null;
+  }
+  
+  
+  /**
+   * Closes the resultset.
+   * 
+   * @param stmt the statement
+   * @param rs the result set
+   * @param db the db
+   * @param commitOnClose true if commit before close
+   * @param closeStatementOnClose true if close the statement as well
+   */
+  private static void close(StatementWrapper stmt, ResultSet rs, Db db, 
+                            boolean commitOnClose, boolean closeStatementOnClose) {
     try {
       stmt.unmarkReady();  // mark statement consumed
       if (commitOnClose)  {
         db.commit(true);
-        commitOnClose = false;
       }
       if (closeStatementOnClose)  {
         stmt.close();  // this will also close the result set!
@@ -100,9 +131,6 @@ public class ResultSetWrapper {
         rs.close();   // this is ok even if closed (according to the API)
       }
       stmt.detachDb();
-      stmt   = null;  // to GC
-      db     = null;
-      rs     = null;
     } 
     catch (SQLException e)  {
       DbGlobal.errorHandler.severe(db, e, Locales.bundle.getString("Datenbankfehler_beim_Schliessen_des_SQL-ResultSets"));
@@ -133,15 +161,37 @@ public class ResultSetWrapper {
 
   
   /**
-   * Overridden to close forgotten resultsets.
+   * The resources to be closed if the application forgot to close the resultset.
+   * 
+   * @see LeakTracker
    */
-  @Override
-  protected void finalize() throws Throwable {
-    if (!isClosed()) {
-      DbGlobal.errorHandler.warning(db, new DbRuntimeException("pending resultset '" + this + "' closed"), null);
-      close();
+  private static class PendingResources implements LeakTracker.Resource {
+    
+    private final StatementWrapper stmt;
+    private final ResultSet rs;
+    private final Db db;
+    private volatile boolean commitOnClose;
+    private volatile boolean closeStatementOnClose;
+
+    private PendingResources(StatementWrapper stmt, ResultSet rs, Db db, boolean closeStatementOnClose) {
+      this.stmt = stmt;
+      this.rs = rs;
+      this.db = db;
+      this.closeStatementOnClose = closeStatementOnClose;
+    }
+    
+    public Db getDb() {
+      return db;
+    }
+
+    public void release() {
+      close(stmt, rs, db, commitOnClose, closeStatementOnClose);
+    }
+    
+    @Override
+    public String toString() {
+      return "resultset '" + stmt + "'";
     }
-    super.finalize();
   }
 
   
@@ -157,6 +207,9 @@ public class ResultSetWrapper {
    */
   public void setCommitOnClose(boolean commitOnClose) {
     this.commitOnClose = commitOnClose;
+    if (pending != null) {
+      pending.commitOnClose = commitOnClose;
+    }
   }
   
   /**
@@ -178,6 +231,9 @@ public class ResultSetWrapper {
    */
   public void setCloseStatementOnclose(boolean closeStatementOnClose) {
     this.closeStatementOnClose = closeStatementOnClose;
+    if (pending != null) {
+      pending.closeStatementOnClose = closeStatementOnClose;
+    }
   }
   
   /**
@@ -228,6 +284,22 @@ public class ResultSetWrapper {
       return -1;    // not reached
     }
   }
+
+
+  /**
+   * Retrieves the number, types and properties of the columns.
+   *
+   * @return the description of the columns
+   */
+  public ResultSetMetaData getMetaData() {
+    try {
+      return rs.getMetaData();
+    }
+    catch (SQLException e)  {
+      DbGlobal.errorHandler.severe(db, e, "db-error while rs.getMetaData()");
+      return null;    // not reached
+    }
+  }
   
   
   /**
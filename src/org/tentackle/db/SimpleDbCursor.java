@@ -50,6 +50,7 @@ public class SimpleDbCursor<T extends DbObject> implements DbCursor<T> {
   
   
   private boolean firstInvoked;   // true = first() has been invoked
+  private LeakTracker.Handle leakHandle;  // leak tracker handle for remote cursors, null if not tracked
   
 
   /**
@@ -98,6 +99,8 @@ public class SimpleDbCursor<T extends DbObject> implements DbCursor<T> {
     catch (Exception e) {
       DbGlobal.errorHandler.severe(db, e, "remote getDbClassName failed");
     }
+    // local cursors are tracked by their ResultSetWrapper
+    leakHandle = LeakTracker.track(this, new PendingRemoteCursor(db, rc));
   }
   
   
@@ -116,6 +119,10 @@ public class SimpleDbCursor<T extends DbObject> implements DbCursor<T> {
    * This frees also the result set (local or remote).
    */
   public void close() {
+    if (leakHandle != null) {
+      leakHandle.untrack();
+      leakHandle = null;
+    }
     if (isRemote())  {
       try {
         if (rc != null) {
@@ -150,15 +157,37 @@ public class SimpleDbCursor<T extends DbObject> implements DbCursor<T> {
   
   
   /**
-   * Overridden to close forgotten cursors.
+   * Remote cursor to be closed if the application forgot to close the cursor.
+   * 
+   * @see LeakTracker
    */
-  @Override
-  protected void finalize() throws Throwable {
-    if (isOpen()) {
-      DbGlobal.errorHandler.warning(db, new DbRuntimeException("pending cursor " + this + " closed"), null);
-      close();
+  private static class PendingRemoteCursor implements LeakTracker.Resource {
+    
+    private final Db db;
+    private final RemoteDbCursor rc;
+    
+    private PendingRemoteCursor(Db db, RemoteDbCursor rc) {
+      this.db = db;
+      this.rc = rc;
+    }
+
+    public Db getDb() {
+      return db;
+    }
+
+    public void release() {
+      try {
+        rc.close();
+      }
+      catch (Exception e) {
+        DbGlobal.errorHandler.severe(db, e, "remote close failed"); 
+      }
+    }
+    
+    @Override
+    public String toString() {
+      return "remote cursor " + rc;
     }
-    super.finalize();
   }
   
 
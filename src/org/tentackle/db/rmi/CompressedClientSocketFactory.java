@@ -37,15 +37,31 @@ public class CompressedClientSocketFactory implements RMIClientSocketFactory, Se
   private static final long serialVersionUID = 2357672465175511279L;
   
   private int hshCode; // the hashcode (for RMI to distinguish the socket types)
+  private boolean dictionary; // true if streams in dictionary mode
   
   
-  /** Creates a new instance of CompressedClientSocketFactory */
-  public CompressedClientSocketFactory() {
+  /** 
+   * Creates a new instance of CompressedClientSocketFactory.
+   * 
+   * @param dictionary true if the streams use a session dictionary
+   */
+  public CompressedClientSocketFactory(boolean dictionary) {
     hshCode = getClass().hashCode();
+    this.dictionary = dictionary;
+  }
+  
+  /** 
+   * Creates a new instance of CompressedClientSocketFactory
+   * with the default dictionary mode.
+   * 
+   * @see CompressedSocket#isDictionaryDefault() 
+   */
+  public CompressedClientSocketFactory() {
+    this(CompressedSocket.isDictionaryDefault());
   }
 
   public Socket createSocket(String host, int port) throws IOException {
-    return new CompressedSocket(host, port);
+    return new CompressedSocket(host, port, dictionary);
   }
   
   @Override
@@ -62,7 +78,18 @@ public class CompressedClientSocketFactory implements RMIClientSocketFactory, Se
     if (obj == this) {
       return true;
     }
-    return this.getClass().equals(obj.getClass());
+    return this.getClass().equals(obj.getClass()) &&
+           dictionary == ((CompressedClientSocketFactory) obj).dictionary;
+  }
+  
+  
+  /**
+   * Returns whether the compressed streams use a session dictionary.
+   * 
+   * @return true if dictionary mode
+   */
+  public boolean isDictionary() {
+    return dictionary;
   }
   
 }
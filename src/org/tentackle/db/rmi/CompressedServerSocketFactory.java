@@ -25,6 +25,7 @@ import java.io.IOException;
 import java.net.ServerSocket;
 import java.rmi.server.RMIServerSocketFactory;
 import org.tentackle.net.CompressedServerSocket;
+import org.tentackle.net.CompressedSocket;
 
 /**
  * Zip-compressed server socket factory.
@@ -34,15 +35,31 @@ import org.tentackle.net.CompressedServerSocket;
 public class CompressedServerSocketFactory implements RMIServerSocketFactory {
   
   private int hshCode; // the hashcode (for RMI to distinguish the socket types)
+  private boolean dictionary; // true if streams in dictionary mode
   
   
-  /** Creates a new instance of CompressedServerSocketFactory */
-  public CompressedServerSocketFactory() {
+  /** 
+   * Creates a new instance of CompressedServerSocketFactory.
+   * 
+   * @param dictionary true if the streams use a session dictionary
+   */
+  public CompressedServerSocketFactory(boolean dictionary) {
     hshCode = getClass().hashCode();
+    this.dictionary = dictionary;
+  }
+  
+  /** 
+   * Creates a new instance of CompressedServerSocketFactory
+   * with the default dictionary mode.
+   * 
+   * @see CompressedSocket#isDictionaryDefault() 
+   */
+  public CompressedServerSocketFactory() {
+    this(CompressedSocket.isDictionaryDefault());
   }
 
   public ServerSocket createServerSocket(int port) throws IOException {
-    return new CompressedServerSocket(port);
+    return new CompressedServerSocket(port, dictionary);
   }
 
   @Override
@@ -59,7 +76,18 @@ public class CompressedServerSocketFactory implements RMIServerSocketFactory {
     if (obj == this) {
       return true;
     }
-    return this.getClass().equals(obj.getClass());
+    return this.getClass().equals(obj.getClass()) &&
+           dictionary == ((CompressedServerSocketFactory) obj).dictionary;
+  }
+  
+  
+  /**
+   * Returns whether the compressed streams use a session dictionary.
+   * 
+   * @return true if dictionary mode
+   */
+  public boolean isDictionary() {
+    return dictionary;
   }
   
 }
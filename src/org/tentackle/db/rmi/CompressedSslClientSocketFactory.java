@@ -25,6 +25,7 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.net.Socket;
 import javax.rmi.ssl.SslRMIClientSocketFactory;
+import org.tentackle.net.CompressedSocket;
 import org.tentackle.net.CompressedSocketWrapper;
 
 
@@ -38,16 +39,32 @@ public class CompressedSslClientSocketFactory extends SslRMIClientSocketFactory
   private static final long serialVersionUID = 3906670971029103850L;
   
   private int hshCode; // the hashcode (for RMI to distinguish the socket types)
+  private boolean dictionary; // true if streams in dictionary mode
   
   
-  /** Creates a new instance of CompressedClientSocketFactory */
-  public CompressedSslClientSocketFactory() {
+  /** 
+   * Creates a new instance of CompressedSslClientSocketFactory.
+   * 
+   * @param dictionary true if the streams use a session dictionary
+   */
+  public CompressedSslClientSocketFactory(boolean dictionary) {
     hshCode = getClass().hashCode();
+    this.dictionary = dictionary;
+  }
+  
+  /** 
+   * Creates a new instance of CompressedSslClientSocketFactory
+   * with the default dictionary mode.
+   * 
+   * @see CompressedSocket#isDictionaryDefault() 
+   */
+  public CompressedSslClientSocketFactory() {
+    this(CompressedSocket.isDictionaryDefault());
   }
 
   @Override
   public Socket createSocket(String host, int port) throws IOException {
-    return new CompressedSocketWrapper(super.createSocket(host, port));
+    return new CompressedSocketWrapper(super.createSocket(host, port), dictionary);
   }
   
   
@@ -65,7 +82,18 @@ public class CompressedSslClientSocketFactory extends SslRMIClientSocketFactory
     if (obj == this) {
       return true;
     }
-    return this.getClass().equals(obj.getClass());
+    return this.getClass().equals(obj.getClass()) &&
+           dictionary == ((CompressedSslClientSocketFactory) obj).dictionary;
+  }
+  
+  
+  /**
+   * Returns whether the compressed streams use a session dictionary.
+   * 
+   * @return true if dictionary mode
+   */
+  public boolean isDictionary() {
+    return dictionary;
   }
   
 }
@@ -27,6 +27,7 @@ import java.net.Socket;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 import javax.rmi.ssl.SslRMIServerSocketFactory;
+import org.tentackle.net.CompressedSocket;
 import org.tentackle.net.CompressedSocketWrapper;
 
 /**
@@ -37,6 +38,7 @@ import org.tentackle.net.CompressedSocketWrapper;
 public class CompressedSslServerSocketFactory extends SslRMIServerSocketFactory {
   
   private int hshCode; // the hashcode (for RMI to distinguish the socket types)
+  private boolean dictionary; // true if streams in dictionary mode
   
   
   /** 
@@ -45,13 +47,32 @@ public class CompressedSslServerSocketFactory extends SslRMIServerSocketFactory
    * @param enabledCipherSuites the enabled cipher suites, null for default
    * @param enabledProtocols the enabled protocols, null for default
    * @param needClientAuth true if server request SSL-client-authentication
+   * @param dictionary true if the streams use a session dictionary
    */
   public CompressedSslServerSocketFactory(String[] enabledCipherSuites,
                                           String[] enabledProtocols,
-                                          boolean needClientAuth) {
+                                          boolean needClientAuth,
+                                          boolean dictionary) {
     
     super(enabledCipherSuites, enabledProtocols, needClientAuth);
     hshCode = getClass().hashCode();
+    this.dictionary = dictionary;
+  }
+  
+  /** 
+   * Creates a new instance of CompressedServerSocketFactory
+   * with the default dictionary mode.
+   * 
+   * @param enabledCipherSuites the enabled cipher suites, null for default
+   * @param enabledProtocols the enabled protocols, null for default
+   * @param needClientAuth true if server request SSL-client-authentication
+   * @see CompressedSocket#isDictionaryDefault() 
+   */
+  public CompressedSslServerSocketFactory(String[] enabledCipherSuites,
+                                          String[] enabledProtocols,
+                                          boolean needClientAuth) {
+    
+    this(enabledCipherSuites, enabledProtocols, needClientAuth, CompressedSocket.isDictionaryDefault());
   }
   
   
@@ -85,7 +106,7 @@ public class CompressedSslServerSocketFactory extends SslRMIServerSocketFactory
         }
         sslSocket.setNeedClientAuth(getNeedClientAuth());
         // wrap the ssl-socket by a compressed socket!
-        return new CompressedSocketWrapper(sslSocket);
+        return new CompressedSocketWrapper(sslSocket, dictionary);
       }
     };
   }
@@ -104,7 +125,18 @@ public class CompressedSslServerSocketFactory extends SslRMIServerSocketFactory
     if (obj == this) {
       return true;
     }
-    return this.getClass().equals(obj.getClass());
+    return this.getClass().equals(obj.getClass()) &&
+           dictionary == ((CompressedSslServerSocketFactory) obj).dictionary;
+  }
+  
+  
+  /**
+   * Returns whether the compressed streams use a session dictionary.
+   * 
+   * @return true if dictionary mode
+   */
+  public boolean isDictionary() {
+    return dictionary;
   }
   
 }
@@ -133,6 +133,16 @@ public abstract class DbObjectRemoteDelegateImpl<T extends DbObject>
   
   public DbObject select(long id, boolean withLinkedObjects) throws RemoteException {
     try {
+      ServerObjectCache cache = ServerObjectCache.getCache(clazz);
+      if (cache != null) {
+        DbObject obj = cache.get(db, id, withLinkedObjects, false);
+        if (obj == null) {
+          long generation = cache.getGeneration();
+          obj = newObject().select(id, withLinkedObjects);
+          cache.put(obj, withLinkedObjects, false, generation);
+        }
+        return obj;
+      }
       return newObject().select(id, withLinkedObjects);
     }
     catch (Exception e) {
@@ -151,6 +161,16 @@ public abstract class DbObjectRemoteDelegateImpl<T extends DbObject>
   
   public DbObject selectInValidContext(long id, boolean withLinkedObjects) throws RemoteException {
     try {
+      ServerObjectCache cache = ServerObjectCache.getCache(clazz);
+      if (cache != null) {
+        DbObject obj = cache.get(db, id, withLinkedObjects, true);
+        if (obj == null) {
+          long generation = cache.getGeneration();
+          obj = DbObject.newByClass(db, clazz).selectInValidContext(id, withLinkedObjects);
+          cache.put(obj, withLinkedObjects, true, generation);
+        }
+        return obj;
+      }
       return DbObject.newByClass(db, clazz).selectInValidContext(id, withLinkedObjects);
     }
     catch (Exception e) {
@@ -160,6 +180,16 @@ public abstract class DbObjectRemoteDelegateImpl<T extends DbObject>
   
   public List<? extends DbObject> selectAll(boolean withLinkedObjects) throws RemoteException {
     try {
+      ServerObjectCache cache = ServerObjectCache.getCache(clazz);
+      if (cache != null) {
+        List<? extends DbObject> list = cache.getAll(db, withLinkedObjects);
+        if (list == null) {
+          long generation = cache.getGeneration();
+          list = dbObject.selectAll(withLinkedObjects);
+          cache.putAll(list, withLinkedObjects, generation);
+        }
+        return list;
+      }
       return dbObject.selectAll(withLinkedObjects);
     }
     catch (Exception e) {
@@ -49,6 +49,21 @@ public interface DbRemoteDelegate extends Remote {
   public boolean commit(boolean oldCommit) throws RemoteException;
   
   public boolean rollback(boolean oldCommit) throws RemoteException;
+  
+  /**
+   * Executes a batch of deferred operations in a single roundtrip.<br>
+   * The operations are executed in order. If an operation fails, the transaction
+   * is rolled back and the remaining operations are skipped.
+   * 
+   * @param txName the transaction name if begin is true
+   * @param begin true if begin a transaction before the operations
+   * @param operations the operations, empty if none
+   * @param commit true if commit the transaction after the operations
+   * @return the results
+   * @throws RemoteException 
+   */
+  public RemoteBatchResult executeBatch(String txName, boolean begin, List<RemoteBatchOperation> operations, boolean commit) 
+         throws RemoteException;
 
   public void setCountModificationAllowed(boolean flag) throws RemoteException;
   
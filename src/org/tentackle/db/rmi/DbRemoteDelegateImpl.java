@@ -24,6 +24,7 @@ package org.tentackle.db.rmi;
 
 import java.util.List;
 import org.tentackle.db.Db;
+import org.tentackle.db.DbObject;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
 import org.tentackle.db.ModificationLog;
@@ -124,6 +125,57 @@ public class DbRemoteDelegateImpl extends UnicastRemoteObject
     }             
   }
   
+  public RemoteBatchResult executeBatch(String txName, boolean begin, List<RemoteBatchOperation> operations, boolean commit) 
+         throws RemoteException {
+    RemoteBatchResult batchResult = new RemoteBatchResult(operations.size());
+    try {
+      if (begin && db.begin(txName)) {
+        batchResult.txCount = db.getTxCount();
+      }
+      int ndx = 0;
+      for (RemoteBatchOperation operation: operations) {
+        DbObjectRemoteDelegate delegate = 
+                (DbObjectRemoteDelegate) session.createRemoteDelegate(operation.classname, operation.delegateId);
+        DbObject object = operation.getSnapshot();
+        DbObjectResult result;
+        switch (operation.type) {
+          case RemoteBatchOperation.INSERT:
+            result = delegate.insertObject(object, operation.withLinkedObjects);
+            break;
+          case RemoteBatchOperation.UPDATE:
+            result = delegate.updateObject(object, operation.withLinkedObjects);
+            break;
+          case RemoteBatchOperation.SAVE:
+            result = delegate.save(object);
+            break;
+          case RemoteBatchOperation.DELETE:
+            result = delegate.deleteObject(object, operation.withLinkedObjects);
+            break;
+          default:
+            throw new RemoteException("illegal batch operation type " + operation.type);
+        }
+        batchResult.results[ndx] = result;
+        if (!result.result) {
+          // failed: rollback the whole transaction
+          batchResult.failedIndex = ndx;
+          db.rollback(true);
+          return batchResult;
+        }
+        ndx++;
+      }
+      if (commit) {
+        batchResult.committed = db.commit(true);
+      }
+      return batchResult;
+    }
+    catch (Exception ex)  {
+      if (!db.isAutoCommit()) {
+        db.rollback(true);
+      }
+      throw new RemoteException("remote executeBatch failed", ex);
+    }
+  }
+  
   public long begin(String txName) throws RemoteException {
     try {
       return db.begin(txName) ? db.getTxCount() : 0;
@@ -35,6 +35,7 @@ import javax.rmi.ssl.SslRMIClientSocketFactory;
 import javax.rmi.ssl.SslRMIServerSocketFactory;
 import org.tentackle.db.DbGlobal;
 import org.tentackle.db.UserInfo;
+import org.tentackle.net.CompressedSocket;
 import org.tentackle.util.ApplicationException;
 import org.tentackle.util.StringHelper;
 import static org.tentackle.db.UserInfo.*;
@@ -128,6 +129,11 @@ import static org.tentackle.db.UserInfo.*;
  * <tt>clientauth</tt>: set if server requires client authentication
  * </li>
  * 
+ * <li>
+ * <tt>dictionary</tt>: compressed connections use a session dictionary,
+ *  i.e. data already sent is used to compress further packets (see {@link org.tentackle.util.CompressedOutputStream})
+ * </li>
+ * 
  * 
  * </ul>
  * 
@@ -293,6 +299,9 @@ public class DbServer {
       needClientAuth = true;
     }
 
+    // compression dictionary (applies to all compressed socket factories created by the server)
+    CompressedSocket.setDictionaryDefault(props.getProperty("dictionary") != null);
+
 
     // switch socket factories
     int socketConfig = serverInfo.getSocketConfig();
@@ -0,0 +1,154 @@
+/**
+ * Tentackle - a framework for java desktop applications
+ * Copyright (C) 2001-2008 Harald Krake, harald@krake.de, +49 7722 9508-0
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+// $Id$
+
+package org.tentackle.db.rmi;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.Remote;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * Client side of a delegate invoked via the {@link RemoteDelegateDispatcher}.<br>
+ * The delegate is a dynamic proxy implementing the remote interfaces of the
+ * server's delegate. Each method call is forwarded to the dispatcher of the session.
+ * 
+ * @author harald
+ */
+public class DispatchedDelegate implements InvocationHandler {
+  
+  // method keys (shared by all proxies)
+  private static final ConcurrentMap<Method,String> methodKeys = new ConcurrentHashMap<Method,String>();
+  
+  // remote interfaces by delegate class
+  private static final ConcurrentMap<Class<?>,Class<?>[]> remoteInterfaces = 
+          new ConcurrentHashMap<Class<?>,Class<?>[]>();
+  
+  
+  /**
+   * Creates a proxy for a dispatched delegate.
+   * 
+   * @param dispatcher the session's dispatcher
+   * @param delegateId the delegate ID
+   * @param interfaces the remote interfaces as returned by {@link RemoteDelegateDispatcher#prepareDelegate}
+   * @return the delegate
+   */
+  public static RemoteDelegate createProxy(RemoteDelegateDispatcher dispatcher, int delegateId, Class<?>[] interfaces) {
+    return (RemoteDelegate) Proxy.newProxyInstance(interfaces[0].getClassLoader(), interfaces, 
+                                                   new DispatchedDelegate(dispatcher, delegateId));
+  }
+  
+  
+  /**
+   * Gets the key of a method.<br>
+   * The key is unique within the delegate interfaces and the same
+   * for the client and the server.
+   * 
+   * @param method the method
+   * @return the method key
+   */
+  public static String getMethodKey(Method method) {
+    String key = methodKeys.get(method);
+    if (key == null) {
+      StringBuilder buf = new StringBuilder(method.getName());
+      buf.append('(');
+      Class<?>[] types = method.getParameterTypes();
+      for (int i=0; i < types.length; i++) {
+        if (i > 0) {
+          buf.append(',');
+        }
+        buf.append(types[i].getName());
+      }
+      buf.append(')');
+      key = buf.toString();
+      methodKeys.put(method, key);
+    }
+    return key;
+  }
+  
+  
+  /**
+   * Gets the remote interfaces of a delegate class.
+   * 
+   * @param delegateClass the delegate class
+   * @return the interfaces extending {@link Remote}
+   */
+  public static Class<?>[] getRemoteInterfaces(Class<?> delegateClass) {
+    Class<?>[] interfaces = remoteInterfaces.get(delegateClass);
+    if (interfaces == null) {
+      List<Class<?>> list = new ArrayList<Class<?>>();
+      for (Class<?> clazz = delegateClass; clazz != null; clazz = clazz.getSuperclass()) {
+        for (Class<?> iface: clazz.getInterfaces()) {
+          if (Remote.class.isAssignableFrom(iface) && !list.contains(iface)) {
+            list.add(iface);
+          }
+        }
+      }
+      interfaces = list.toArray(new Class<?>[list.size()]);
+      remoteInterfaces.put(delegateClass, interfaces);
+    }
+    return interfaces;
+  }
+  
+  
+  
+  
+  private final RemoteDelegateDispatcher dispatcher;    // the session's dispatcher
+  private final int delegateId;                         // the delegate ID
+  
+  
+  /**
+   * Creates an invocation handler.
+   * 
+   * @param dispatcher the session's dispatcher
+   * @param delegateId the delegate ID
+   */
+  public DispatchedDelegate(RemoteDelegateDispatcher dispatcher, int delegateId) {
+    this.dispatcher = dispatcher;
+    this.delegateId = delegateId;
+  }
+  
+  
+  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    if (method.getDeclaringClass() == Object.class) {
+      String name = method.getName();
+      if (name.equals("equals")) {
+        return proxy == args[0];
+      }
+      if (name.equals("hashCode")) {
+        return System.identityHashCode(proxy);
+      }
+      return toString();
+    }
+    return dispatcher.invoke(delegateId, getMethodKey(method), args);
+  }
+  
+  
+  @Override
+  public String toString() {
+    return "dispatched delegate " + delegateId;
+  }
+  
+}
@@ -0,0 +1,115 @@
+/**
+ * Tentackle - a framework for java desktop applications
+ * Copyright (C) 2001-2008 Harald Krake, harald@krake.de, +49 7722 9508-0
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+// $Id$
+
+package org.tentackle.db.rmi;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.rmi.MarshalledObject;
+import org.tentackle.db.DbObject;
+
+
+/**
+ * A deferred modification of a {@link DbObject} within a batched remote transaction.<br>
+ * The operation holds a serialized snapshot of the object taken when the operation was
+ * queued, so that later changes to the object don't leak into the transaction.
+ * 
+ * @author harald
+ * @see org.tentackle.db.Db#setRemoteBatching(boolean)
+ */
+public class RemoteBatchOperation implements Serializable {
+  
+  private static final long serialVersionUID = 2841965034519375470L;
+  
+  /** {@link DbObject#insertObject(boolean)} **/
+  public static final int INSERT = 1;
+  /** {@link DbObject#updateObject(boolean)} **/
+  public static final int UPDATE = 2;
+  /** {@link DbObject#save()} **/
+  public static final int SAVE   = 3;
+  /** {@link DbObject#deleteObject(boolean)} **/
+  public static final int DELETE = 4;
+  
+  
+  /** the operation type **/
+  public int type;
+  /** the delegate ID (starting at 0) **/
+  public int delegateId;
+  /** the classname of the delegate **/
+  public String classname;
+  /** the object (client side only) **/
+  public transient DbObject object;
+  /** the snapshot of the object sent to the server **/
+  public MarshalledObject<DbObject> snapshot;
+  /** true if with linked objects **/
+  public boolean withLinkedObjects;
+  
+  
+  /**
+   * Creates an operation.
+   * 
+   * @param type the operation type
+   * @param delegateId the delegate ID (starting at 0)
+   * @param classname the classname of the delegate
+   * @param object the object
+   * @param withLinkedObjects true if with linked objects
+   * @throws IOException if the object could not be serialized
+   */
+  public RemoteBatchOperation(int type, int delegateId, String classname, DbObject object, boolean withLinkedObjects) 
+         throws IOException {
+    this.type = type;
+    this.delegateId = delegateId;
+    this.classname = classname;
+    this.object = object;
+    this.withLinkedObjects = withLinkedObjects;
+    takeSnapshot();
+  }
+  
+  
+  /**
+   * Takes a snapshot of the current state of the object.
+   * 
+   * @throws IOException if the object could not be serialized
+   */
+  public void takeSnapshot() throws IOException {
+    snapshot = new MarshalledObject<DbObject>(object);
+  }
+  
+  
+  /**
+   * Gets the object from the snapshot.<br>
+   * Invoked by the server.
+   * 
+   * @return the object as it was when the snapshot was taken
+   * @throws IOException if deserialization failed
+   * @throws ClassNotFoundException if the object's class could not be loaded
+   */
+  public DbObject getSnapshot() throws IOException, ClassNotFoundException {
+    return snapshot.get();
+  }
+  
+  
+  @Override
+  public String toString() {
+    return (type == INSERT ? "insert " : (type == UPDATE ? "update " : (type == SAVE ? "save " : "delete "))) +
+           classname + (object == null ? "" : "[" + object.getId() + "]");
+  }
+  
+}
@@ -0,0 +1,56 @@
+/**
+ * Tentackle - a framework for java desktop applications
+ * Copyright (C) 2001-2008 Harald Krake, harald@krake.de, +49 7722 9508-0
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+// $Id$
+
+package org.tentackle.db.rmi;
+
+import java.io.Serializable;
+
+
+/**
+ * Result of a batched remote transaction.
+ * 
+ * @author harald
+ * @see DbRemoteDelegate#executeBatch
+ */
+public class RemoteBatchResult implements Serializable {
+  
+  private static final long serialVersionUID = 7014468871536629027L;
+  
+  /** the transaction count if the transaction was begun, else 0 **/
+  public long txCount;
+  /** the results of the operations, null if not executed **/
+  public DbObjectResult[] results;
+  /** the index of the failed operation, -1 if all succeeded **/
+  public int failedIndex;
+  /** true if the transaction was committed **/
+  public boolean committed;
+  
+  
+  /**
+   * Creates a batch result.
+   * 
+   * @param size the number of operations
+   */
+  public RemoteBatchResult(int size) {
+    results = new DbObjectResult[size];
+    failedIndex = -1;
+  }
+  
+}
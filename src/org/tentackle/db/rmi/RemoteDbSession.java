@@ -82,4 +82,16 @@ public interface RemoteDbSession extends Remote {
    */
   public RemoteDelegate getRemoteDelegate(String classname, int delegateId) throws RemoteException;
   
+  /**
+   * Gets the dispatcher for the delegates.<br>
+   * If the client requested dispatched delegates via the db property {@code "dispatcher"},
+   * the session provides a single exported dispatcher instead of one exported delegate
+   * per class. This reduces the number of remote objects, DGC leases and setup roundtrips
+   * if a session uses many classes.
+   *
+   * @return the dispatcher, null if delegates are not dispatched
+   * @throws RemoteException 
+   */
+  public RemoteDelegateDispatcher getRemoteDelegateDispatcher() throws RemoteException;
+  
 }
@@ -32,6 +32,8 @@ import java.util.Iterator;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import javax.rmi.ssl.SslRMIClientSocketFactory;
 import javax.rmi.ssl.SslRMIServerSocketFactory;
 import org.tentackle.db.Db;
@@ -170,6 +172,65 @@ public class RemoteDbSessionImpl extends UnicastRemoteObject
   }
   
   
+  /**
+   * The delegate constructors by DbObject class.
+   * Shared by all sessions.
+   */
+  private static final ConcurrentMap<Class<?>,Constructor<?>> delegateConstructors = 
+          new ConcurrentHashMap<Class<?>,Constructor<?>>();
+  
+  /**
+   * Gets the constructor of the delegate for a class.<br>
+   * The name of the delegate is "&lt;package&gt;.rmi.&lt;classname&gt;RemoteDelegateImpl".
+   * If there is no such class, the superclasses are tried.
+   * 
+   * @param clazz the DbObject class
+   * @return the constructor with args (RemoteDbSessionImpl session, Class clazz)
+   * @throws ClassNotFoundException if no delegate found
+   * @throws NoSuchMethodException if the delegate does not provide the required constructor
+   */
+  private static Constructor<?> getDelegateConstructor(Class<?> clazz) 
+          throws ClassNotFoundException, NoSuchMethodException {
+    Constructor<?> constructor = delegateConstructors.get(clazz);
+    if (constructor == null) {
+      Class<?> delegateClazz = null;
+      ClassNotFoundException nfe = null;    // first exception thrown
+
+      // try to find remote class.
+      // Use superclass if no direct implementation found
+      for (Class<?> superClazz = clazz; ; ) {
+        /** 
+         * the name of the delegate is 
+         * "<package>.rmi.<classname>RemoteDelegateImpl" (we need the implementation!!!)
+         */
+        String clazzName = superClazz.getName();
+        int ndx = clazzName.lastIndexOf('.');
+        String pkgName = clazzName.substring(0, ndx);
+        String clsName = clazzName.substring(ndx + 1);
+
+        try {
+          delegateClazz = Class.forName(pkgName + ".rmi." + clsName + "RemoteDelegateImpl");
+          break;    // found
+        }
+        catch (ClassNotFoundException e) {
+          if (superClazz == Object.class) {
+            // abort with first exception thrown
+            throw nfe;
+          }
+          if (nfe == null) {
+            nfe = e;    // remember
+          }
+          // try superclass
+          superClazz = superClazz.getSuperclass();
+        }
+      }
+      constructor = delegateClazz.getConstructor(RemoteDbSessionImpl.class, Class.class);
+      delegateConstructors.put(clazz, constructor);
+    }
+    return constructor;
+  }
+  
+  
   // each session gets a unique number (only for identification in log files)
   private static int sessionNumber;
   
@@ -194,6 +255,9 @@ public class RemoteDbSessionImpl extends UnicastRemoteObject
   private String clientHost;            // the client host string
   private Db db;                        // the local Db-connection
   private Class[] remoteClasses;        // the classes according to the delegate handle
+  private RemoteDelegate[] delegates;   // the delegates according to the delegate handle
+  private boolean dispatching;          // true if delegates are dispatched
+  private RemoteDelegateDispatcherImpl dispatcher;  // the dispatcher, null if not created yet
   
   private int port;                     // default port for all sessions
   private RMIClientSocketFactory csf;   // default client socket factory for all delegates
@@ -279,6 +343,8 @@ public class RemoteDbSessionImpl extends UnicastRemoteObject
         port = con.getServer().getPort(port, csf, ssf);
       }
 
+      dispatching = props.getProperty("dispatcher") != null;
+      
       val = props.getProperty("timeout");
       if (val != null) {
         timeout = Integer.valueOf(val);
@@ -291,7 +357,8 @@ public class RemoteDbSessionImpl extends UnicastRemoteObject
       DbGlobal.logger.info("Session " + getClass().getName() + " started:" +
                            "\nclient socket factory = " + (csf == null ? "<system default>" : csf.getClass().getName()) +
                            "\nserver socket factory = " + (ssf == null ? "<system default>" : ssf.getClass().getName()) +
-                           "\ntcp-port = " + (port == 0 ? "<system default>" : port) + ", timeout=" + timeout);
+                           "\ntcp-port = " + (port == 0 ? "<system default>" : port) + ", timeout=" + timeout +
+                           (dispatching ? ", dispatched delegates" : ""));
     }
     catch (Exception ex)  {
       closeDb();
@@ -321,6 +388,78 @@ public class RemoteDbSessionImpl extends UnicastRemoteObject
   }
   
   
+  /**
+   * Returns whether the delegates are dispatched via a single {@link RemoteDelegateDispatcher}.<br>
+   * Requested by the client with the db property {@code "dispatcher"}.
+   * 
+   * @return true if dispatched, false if each delegate is exported
+   */
+  public boolean isDispatching() {
+    return dispatching;
+  }
+  
+  
+  /**
+   * Creates the delegate for a given classname.<br>
+   * The delegate is created only once per session and delegate id.
+   * 
+   * @param classname is the name of class
+   * @param delegateId is the client-side ID of the delegate
+   * @return the delegate
+   * @throws RemoteException if creating the delegate failed
+   */
+  synchronized RemoteDelegate createRemoteDelegate(String classname, int delegateId) throws RemoteException {
+    try {
+      /**
+       * keep a cache of DbObject-Classes for fast instantiation (by delegateId)
+       */
+      if (remoteClasses == null)  {
+        remoteClasses = new Class[16];    // start with a reasonable size
+        delegates = new RemoteDelegate[16];
+      }
+      // double the size until delegateId fits
+      while (remoteClasses.length <= delegateId) {
+        Class[] old = remoteClasses;
+        remoteClasses = new Class[old.length + old.length];
+        System.arraycopy(old, 0, remoteClasses, 0, old.length);
+        RemoteDelegate[] oldDelegates = delegates;
+        delegates = new RemoteDelegate[remoteClasses.length];
+        System.arraycopy(oldDelegates, 0, delegates, 0, oldDelegates.length);
+      }
+      
+      RemoteDelegate delegate = delegates[delegateId];
+      if (delegate == null) {
+        // remember the class
+        Class<?> clazz = Class.forName(classname);
+        remoteClasses[delegateId] = clazz;
+        // create instance of delegate for the session db
+        delegate = (RemoteDelegate) getDelegateConstructor(clazz).newInstance(this, clazz);
+        delegates[delegateId] = delegate;
+      }
+      // return reference for delegate to client
+      return delegate;
+    }
+    catch (Exception ex)  {
+      throw new RemoteException("coudn't create delegate for " + classname, ex);
+    }
+  }
+  
+  
+  /**
+   * Gets a delegate that has already been created.
+   * 
+   * @param delegateId is the client-side ID of the delegate
+   * @return the delegate
+   * @throws RemoteException if no such delegate
+   */
+  synchronized RemoteDelegate getDispatchedDelegate(int delegateId) throws RemoteException {
+    if (delegates == null || delegateId < 0 || delegateId >= delegates.length || delegates[delegateId] == null) {
+      throw new RemoteException("no delegate " + delegateId + " in " + this);
+    }
+    return delegates[delegateId];
+  }
+  
+  
   /**
    * Gets the session db connection
    * @return the db connection
@@ -534,6 +673,17 @@ public class RemoteDbSessionImpl extends UnicastRemoteObject
       }
       db = null;    // closed -> to GC
     }
+    synchronized(this) {
+      if (dispatcher != null) {
+        try {
+          UnicastRemoteObject.unexportObject(dispatcher, true);
+        }
+        catch (Exception ex) {
+          DbGlobal.logger.warning("unexporting dispatcher failed: " + ex);
+        }
+        dispatcher = null;
+      }
+    }
   }
   
   
@@ -597,73 +747,20 @@ public class RemoteDbSessionImpl extends UnicastRemoteObject
   
 
   public RemoteDelegate getRemoteDelegate(String classname, int delegateId) throws RemoteException  {
-    try {
-      /**
-       * keep a cache of DbObject-Classes for fast instantiation (by delegateId)
-       */
-      if (remoteClasses == null)  {
-        remoteClasses = new Class[16];    // start with a reasonable size
-        for (int i=0; i < remoteClasses.length; i++)  {
-          remoteClasses[i] = null; 
-        }
-      }
-      // double the size until delegateId fits
-      while (remoteClasses.length <= delegateId) {
-        Class[] old = remoteClasses;
-        remoteClasses = new Class[old.length + old.length];
-        for (int i=0; i < old.length; i++)  {
-          remoteClasses[i] = old[i];
-        }
-        // set the rest to null
-        for (int i=old.length; i < remoteClasses.length; i++)  {
-          remoteClasses[i] = null;
-        }        
-      }
-      
-      // remember the class
-      Class<?> clazz = Class.forName(classname);
-      remoteClasses[delegateId] = clazz;
-      Class<?> delegateClazz = null;
-      ClassNotFoundException nfe = null;    // first exception thrown
-      
-      // try to find remote class.
-      // Use superclass if no direct implementation found
-      for (;;) {
-        /** 
-         * the name of the delegate is 
-         * "<package>.rmi.<classname>RemoteDelegateImpl" (we need the implementation!!!)
-         */
-        String clazzName = clazz.getName();
-        int ndx = clazzName.lastIndexOf('.');
-        String pkgName = clazzName.substring(0, ndx);
-        String clsName = clazzName.substring(ndx + 1);
-      
-        try {
-          delegateClazz = Class.forName(pkgName + ".rmi." + clsName + "RemoteDelegateImpl");
-          break;    // found
-        }
-        catch (ClassNotFoundException e) {
-          if (clazz == Object.class) {
-            // abort with first exception thrown
-            throw nfe;
-          }
-          if (nfe == null) {
-            nfe = e;    // remember
-          }
-          // try superclass
-          clazz = clazz.getSuperclass();
-        }
+    return createRemoteDelegate(classname, delegateId);
+  }
+  
+  
+  public RemoteDelegateDispatcher getRemoteDelegateDispatcher() throws RemoteException {
+    if (!dispatching) {
+      return null;
+    }
+    synchronized(this) {
+      if (dispatcher == null) {
+        dispatcher = new RemoteDelegateDispatcherImpl(this);
       }
-      // get the constructor with args (RemoteDbSessionImpl session, Class clazz)
-      Constructor<?> constructor = delegateClazz.getConstructor(RemoteDbSessionImpl.class, Class.class);
-      // create instance of delegate for the session db
-      RemoteDelegate delegate = (RemoteDelegate)constructor.newInstance(this, remoteClasses[delegateId]);
-      // return reference for delegate to client
-      return delegate;    
+      return dispatcher;
     }
-    catch (Exception ex)  {
-      throw new RemoteException("coudn't create delegate for " + classname, ex);
-    }            
   }
 
   
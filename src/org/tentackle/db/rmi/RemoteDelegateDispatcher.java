@@ -0,0 +1,63 @@
+/**
+ * Tentackle - a framework for java desktop applications
+ * Copyright (C) 2001-2008 Harald Krake, harald@krake.de, +49 7722 9508-0
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+// $Id$
+
+package org.tentackle.db.rmi;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+
+/**
+ * Single remote endpoint of a session for all dispatched delegates.<br>
+ * 
+ * Instead of exporting a {@link RemoteDelegate} per class and session, the delegates
+ * remain local to the server and the client invokes them via the dispatcher
+ * by their delegate ID. On the client side the delegates are represented by
+ * proxies created by {@link DispatchedDelegate}.
+ * 
+ * @author harald
+ */
+public interface RemoteDelegateDispatcher extends Remote {
+  
+  /**
+   * Prepares a delegate for a given classname.<br>
+   * If the delegate requires its own sockets, it is exported and must
+   * be retrieved via {@link RemoteDbSession#getRemoteDelegate}.
+   * 
+   * @param classname is the name of class
+   * @param delegateId is the client-side ID of the delegate
+   * @return the remote interfaces implemented by the delegate, null if exported
+   * @throws RemoteException 
+   */
+  public Class<?>[] prepareDelegate(String classname, int delegateId) throws RemoteException;
+  
+  
+  /**
+   * Invokes a method of a delegate.
+   * 
+   * @param delegateId the delegate ID
+   * @param methodKey the method key, see {@link DispatchedDelegate#getMethodKey}
+   * @param args the arguments
+   * @return the return value of the delegate method
+   * @throws RemoteException if the delegate method failed
+   */
+  public Object invoke(int delegateId, String methodKey, Object[] args) throws RemoteException;
+  
+}
@@ -0,0 +1,136 @@
+/**
+ * Tentackle - a framework for java desktop applications
+ * Copyright (C) 2001-2008 Harald Krake, harald@krake.de, +49 7722 9508-0
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+// $Id$
+
+package org.tentackle.db.rmi;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * Implementation of the delegate dispatcher for a session.
+ * 
+ * @author harald
+ */
+public class RemoteDelegateDispatcherImpl extends UnicastRemoteObject implements RemoteDelegateDispatcher {
+  
+  private static final long serialVersionUID = 4281957356280119354L;
+  
+  
+  /**
+   * The delegate methods by delegate class and method key.
+   * Shared by all sessions.
+   */
+  private static final ConcurrentMap<Class<?>,ConcurrentMap<String,Method>> delegateMethods = 
+          new ConcurrentHashMap<Class<?>,ConcurrentMap<String,Method>>();
+  
+  
+  
+  private final RemoteDbSessionImpl session;    // the session
+  
+  
+  /**
+   * Creates a dispatcher on the session socket.
+   * 
+   * @param session the server session
+   * @throws RemoteException 
+   */
+  public RemoteDelegateDispatcherImpl(RemoteDbSessionImpl session) throws RemoteException {
+    super(session.getPort(),
+          session.getClientSocketFactory(),
+          session.getServerSocketFactory());
+    this.session = session;
+  }
+  
+  
+  /**
+   * Gets the session.
+   * 
+   * @return the server session
+   */
+  public RemoteDbSessionImpl getSession() {
+    return session;
+  }
+  
+  
+  public Class<?>[] prepareDelegate(String classname, int delegateId) throws RemoteException {
+    RemoteDelegate delegate = session.createRemoteDelegate(classname, delegateId);
+    if (delegate instanceof RemoteDelegateImpl && ((RemoteDelegateImpl<?>) delegate).isExported()) {
+      return null;
+    }
+    return DispatchedDelegate.getRemoteInterfaces(delegate.getClass());
+  }
+  
+  
+  public Object invoke(int delegateId, String methodKey, Object[] args) throws RemoteException {
+    RemoteDelegate delegate = session.getDispatchedDelegate(delegateId);
+    Method method = getMethod(delegate.getClass(), methodKey);
+    try {
+      return method.invoke(delegate, args);
+    }
+    catch (InvocationTargetException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof RemoteException) {
+        // delegate methods usually wrap all exceptions
+        throw (RemoteException) cause;
+      }
+      throw new RemoteException(methodKey + " failed", cause);
+    }
+    catch (Exception ex) {
+      throw new RemoteException("invoking " + methodKey + " failed", ex);
+    }
+  }
+  
+  
+  
+  /**
+   * Gets the method of a delegate class.
+   * 
+   * @param delegateClass the delegate class
+   * @param methodKey the method key
+   * @return the method
+   * @throws RemoteException if no such remote method
+   */
+  private Method getMethod(Class<?> delegateClass, String methodKey) throws RemoteException {
+    ConcurrentMap<String,Method> methods = delegateMethods.get(delegateClass);
+    if (methods == null) {
+      methods = new ConcurrentHashMap<String,Method>();
+      for (Class<?> iface: DispatchedDelegate.getRemoteInterfaces(delegateClass)) {
+        for (Method method: iface.getMethods()) {
+          methods.put(DispatchedDelegate.getMethodKey(method), method);
+        }
+      }
+      ConcurrentMap<String,Method> oldMethods = delegateMethods.putIfAbsent(delegateClass, methods);
+      if (oldMethods != null) {
+        methods = oldMethods;
+      }
+    }
+    Method method = methods.get(methodKey);
+    if (method == null) {
+      throw new RemoteException("no such method " + methodKey + " in " + delegateClass.getName());
+    }
+    return method;
+  }
+  
+}
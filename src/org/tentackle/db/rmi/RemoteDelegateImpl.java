@@ -32,7 +32,12 @@ import org.tentackle.db.DbGlobal;
 import org.tentackle.util.Logger.Level;
 
 /**
- * All remote delegates must extend this class
+ * All remote delegates must extend this class.<br>
+ * 
+ * If the session dispatches the delegate calls (see {@link RemoteDbSessionImpl#isDispatching()}),
+ * the delegate is unexported right after construction unless it requires sockets other
+ * than the session's. Delegates still extend {@link UnicastRemoteObject}, but dispatched
+ * delegates must not be unexported by the application (see {@link #isExported()}).
  *
  * @param <T> the class handled by this delegate
  * @author  harald
@@ -52,6 +57,8 @@ public abstract class RemoteDelegateImpl<T> extends UnicastRemoteObject implemen
   protected RMIClientSocketFactory csf;
   /** the server socket factory **/
   protected RMIServerSocketFactory ssf;
+  /** true if exported **/
+  private boolean exported;
   
   
   
@@ -73,11 +80,23 @@ public abstract class RemoteDelegateImpl<T> extends UnicastRemoteObject implemen
          throws RemoteException {
     
     super(port, csf, ssf);
+    
+    if (session.isDispatching() && 
+        port == session.getPort() && csf == session.getClientSocketFactory() && ssf == session.getServerSocketFactory()) {
+      // invoked via the session's dispatcher: no need to be exported
+      UnicastRemoteObject.unexportObject(this, true);
+    }
+    else  {
+      exported = true;
+    }
 
     if (DbGlobal.logger.isLoggable(Level.FINE)) {
-      DbGlobal.logger.fine("Delegate created for session=" + session + ", class=" + clazz.getName() + ", port=" + port +
-                         ", csf=" + (csf == null ? "<default>" : csf.getClass().getName()) +
-                         ", ssf=" + (ssf == null ? "<default>" : ssf.getClass().getName()));
+      DbGlobal.logger.fine("Delegate created for session=" + session + ", class=" + clazz.getName() + 
+                         (exported ? 
+                           (", port=" + port +
+                            ", csf=" + (csf == null ? "<default>" : csf.getClass().getName()) +
+                            ", ssf=" + (ssf == null ? "<default>" : ssf.getClass().getName())) :
+                           ", dispatched"));
     }
     
     this.session = session;
@@ -133,6 +152,17 @@ public abstract class RemoteDelegateImpl<T> extends UnicastRemoteObject implemen
   }
   
   
+  /**
+   * Returns whether this delegate is exported.<br>
+   * Delegates not exported are invoked via {@link RemoteDelegateDispatcherImpl#invoke}.
+   * 
+   * @return true if exported, false if dispatched by the session
+   */
+  public boolean isExported() {
+    return exported;
+  }
+  
+  
   /**
    * Gets the port number.
    * 
@@ -0,0 +1,496 @@
+/**
+ * Tentackle - a framework for java desktop applications
+ * Copyright (C) 2001-2008 Harald Krake, harald@krake.de, +49 7722 9508-0
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+// $Id$
+
+package org.tentackle.db.rmi;
+
+import java.io.IOException;
+import java.rmi.MarshalledObject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.tentackle.db.Db;
+import org.tentackle.db.DbGlobal;
+import org.tentackle.db.DbObject;
+import org.tentackle.db.DbRuntimeException;
+import org.tentackle.db.ModificationThread;
+
+
+/**
+ * JVM-wide read-through cache for the remote delegates in an application server.<br>
+ * 
+ * Without a cache, each {@link DbObjectRemoteDelegateImpl#select}, {@link DbObjectRemoteDelegateImpl#selectInValidContext}
+ * and {@link DbObjectRemoteDelegateImpl#selectAll} hits the database, even if hundreds of
+ * clients ask for the same master data a few seconds apart.
+ * The cache is shared among all {@link RemoteDbSessionImpl}s and must be enabled per class:
+ * <pre>
+ *   ServerObjectCache.enable(Country.class, true);
+ * </pre>
+ * The cache is invalidated by the server's {@link ModificationThread}. If the class provides a
+ * tableSerial (see {@link DbObject#isTableSerialValid()}), only the modified objects are removed
+ * according to {@link DbObject#getExpiredTableSerials} which in turn feeds the server's
+ * {@link org.tentackle.db.TableSerialExpirationBacklog} for the clients. Deletions (gaps in the
+ * tableSerials) and classes without a tableSerial clear the whole cache.
+ * <p>
+ * Objects with linked objects should only be cached with linked objects if the linked
+ * objects are not modified without modifying the object itself.
+ * <p>
+ * The cache holds the objects in serialized form and each caller gets its own copy
+ * bound to the caller's {@link Db}. Hence, the cache never hands out objects of
+ * another session. However, the cached objects are the same for all users and contexts.
+ * Classes whose objects are not {@link DbObject#isShareable()}, for example
+ * AppDbObjects with security checks enabled, cannot be cached.
+ *
+ * @author harald
+ */
+public class ServerObjectCache {
+  
+  /** the caches by class **/
+  private static final ConcurrentMap<Class<?>,ServerObjectCache> caches = 
+          new ConcurrentHashMap<Class<?>,ServerObjectCache>();
+  
+  
+  /**
+   * Enables the cache for a class.<br>
+   * Requires a running {@link ModificationThread}.
+   * 
+   * @param clazz the class of the database objects
+   * @param withLinkedObjects true if selects with linked objects should be cached as well
+   * @return the cache
+   * @throws DbRuntimeException if the objects of the class are not shareable among users
+   */
+  public static ServerObjectCache enable(Class<? extends DbObject> clazz, boolean withLinkedObjects) {
+    ServerObjectCache cache = caches.get(clazz);
+    if (cache == null) {
+      cache = new ServerObjectCache(clazz, withLinkedObjects);
+      ServerObjectCache oldCache = caches.putIfAbsent(clazz, cache);
+      if (oldCache != null) {
+        cache = oldCache;
+      }
+      else  {
+        ModificationThread.getThread().registerTable(cache.tableName, cache.serialRunnable);
+        DbGlobal.logger.info("server cache enabled for " + clazz.getName());
+      }
+    }
+    return cache;
+  }
+  
+  
+  /**
+   * Disables the cache for a class.
+   * 
+   * @param clazz the class of the database objects
+   */
+  public static void disable(Class<? extends DbObject> clazz) {
+    ServerObjectCache cache = caches.remove(clazz);
+    if (cache != null) {
+      ModificationThread.getThread().unregisterTable(cache.tableName, cache.serialRunnable);
+      cache.invalidate();
+      DbGlobal.logger.info("server cache disabled for " + clazz.getName());
+    }
+  }
+  
+  
+  /**
+   * Gets the cache for a class.
+   * 
+   * @param clazz the class of the database objects
+   * @return the cache, null if not enabled
+   */
+  public static ServerObjectCache getCache(Class<?> clazz) {
+    return caches.get(clazz);
+  }
+  
+  
+  /**
+   * Gets all enabled caches.
+   * 
+   * @return the caches
+   */
+  public static Collection<ServerObjectCache> getCaches() {
+    return new ArrayList<ServerObjectCache>(caches.values());
+  }
+  
+  
+  
+  
+  // cache slots (bitmask)
+  private static final int LINKED = 1;            // with linked objects
+  private static final int VALID_CONTEXT = 2;     // selectInValidContext
+  
+  
+  private final Class<? extends DbObject> clazz;                  // the object class
+  private final String tableName;                                 // the tablename
+  private final boolean tableSerialValid;                         // true if class provides a tableSerial
+  private final boolean withLinkedObjects;                        // true if cache objects with linked objects
+  private final List<ConcurrentMap<Long,MarshalledObject<DbObject>>> objects;  // cached objects per slot
+  private MarshalledObject<List<? extends DbObject>> allList;               // cached selectAll list
+  private MarshalledObject<List<? extends DbObject>> allListLinked;         // cached selectAll list with linked objects
+  private final AtomicLong generation = new AtomicLong();         // incremented on each expiration
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong expirations = new AtomicLong();
+  private final AtomicLong invalidations = new AtomicLong();
+  private long tableSerial = -1;                                  // tableSerial the cache is valid for, -1 = unknown
+  
+  private final ModificationThread.SerialRunnable serialRunnable = new ModificationThread.SerialRunnable() {
+    public void run(Db db, long serial) {
+      expire(db, serial);
+    }
+  };
+  
+  
+  
+  /**
+   * Creates a cache.
+   * 
+   * @param clazz the object class
+   * @param withLinkedObjects true if cache objects with linked objects
+   */
+  private ServerObjectCache(Class<? extends DbObject> clazz, boolean withLinkedObjects) {
+    this.clazz = clazz;
+    this.withLinkedObjects = withLinkedObjects;
+    DbObject obj = DbObject.newByClassWrapped(clazz);
+    if (!obj.isShareable()) {
+      throw new DbRuntimeException("objects of " + clazz.getName() + " cannot be shared among users");
+    }
+    tableName = obj.getTableName();
+    tableSerialValid = obj.isTableSerialValid();
+    objects = new ArrayList<ConcurrentMap<Long,MarshalledObject<DbObject>>>(4);
+    for (int i=0; i < 4; i++) {
+      objects.add(new ConcurrentHashMap<Long,MarshalledObject<DbObject>>());
+    }
+  }
+  
+  
+  /**
+   * Gets the object class.
+   * 
+   * @return the class
+   */
+  public Class<? extends DbObject> getObjectClass() {
+    return clazz;
+  }
+  
+  
+  /**
+   * Gets the current generation.<br>
+   * Must be retrieved before loading an object from the database
+   * and passed to {@link #put}.
+   * 
+   * @return the generation
+   */
+  public long getGeneration() {
+    return generation.get();
+  }
+  
+  
+  /**
+   * Gets a copy of an object from the cache.
+   * 
+   * @param db the caller's db
+   * @param id the object id
+   * @param withLinkedObjects true if with linked objects
+   * @param validContext true if selected by selectInValidContext
+   * @return the object, null if not in cache
+   */
+  public DbObject get(Db db, long id, boolean withLinkedObjects, boolean validContext) {
+    if (withLinkedObjects && !this.withLinkedObjects) {
+      return null;
+    }
+    DbObject obj = unmarshal(objects.get(slot(withLinkedObjects, validContext)).get(id));
+    if (obj == null) {
+      misses.incrementAndGet();
+    }
+    else  {
+      hits.incrementAndGet();
+      obj.setDb(db);
+    }
+    return obj;
+  }
+  
+  
+  /**
+   * Puts an object into the cache.<br>
+   * Ignored if the cache has been expired since the given generation.
+   * 
+   * @param obj the object loaded from the database, null if not found
+   * @param withLinkedObjects true if with linked objects
+   * @param validContext true if selected by selectInValidContext
+   * @param generation the generation before the object was loaded
+   */
+  public void put(DbObject obj, boolean withLinkedObjects, boolean validContext, long generation) {
+    if (obj != null && (!withLinkedObjects || this.withLinkedObjects)) {
+      MarshalledObject<DbObject> data = marshal(obj);
+      if (data != null) {
+        synchronized(this) {
+          if (this.generation.get() == generation) {
+            objects.get(slot(withLinkedObjects, validContext)).put(obj.getId(), data);
+          }
+        }
+      }
+    }
+  }
+  
+  
+  /**
+   * Gets a copy of the list of all objects from the cache.
+   * 
+   * @param db the caller's db
+   * @param withLinkedObjects true if with linked objects
+   * @return the list, null if not in cache
+   */
+  public List<? extends DbObject> getAll(Db db, boolean withLinkedObjects) {
+    MarshalledObject<List<? extends DbObject>> data = null;
+    if (!withLinkedObjects || this.withLinkedObjects) {
+      synchronized(this) {
+        data = withLinkedObjects ? allListLinked : allList;
+      }
+    }
+    List<? extends DbObject> list = unmarshal(data);
+    if (list == null) {
+      misses.incrementAndGet();
+    }
+    else  {
+      hits.incrementAndGet();
+      for (DbObject obj: list) {
+        obj.setDb(db);
+      }
+    }
+    return list;
+  }
+  
+  
+  /**
+   * Puts the list of all objects into the cache.<br>
+   * Ignored if the cache has been expired since the given generation.
+   * 
+   * @param list the list of all objects
+   * @param withLinkedObjects true if with linked objects
+   * @param generation the generation before the list was loaded
+   */
+  public void putAll(List<? extends DbObject> list, boolean withLinkedObjects, long generation) {
+    if (list != null && (!withLinkedObjects || this.withLinkedObjects)) {
+      MarshalledObject<List<? extends DbObject>> data = marshal(list);
+      if (data != null) {
+        synchronized(this) {
+          if (this.generation.get() == generation) {
+            if (withLinkedObjects) {
+              allListLinked = data;
+            }
+            else  {
+              allList = data;
+            }
+          }
+        }
+      }
+    }
+  }
+  
+  
+  /**
+   * Removes all objects from the cache.
+   */
+  public void invalidate() {
+    synchronized(this) {
+      generation.incrementAndGet();
+      for (ConcurrentMap<Long,MarshalledObject<DbObject>> map: objects) {
+        map.clear();
+      }
+      allList = null;
+      allListLinked = null;
+      invalidations.incrementAndGet();
+    }
+  }
+  
+  
+  /**
+   * Expires the cache.<br>
+   * Invoked from the {@link ModificationThread} whenever the table has been modified.
+   * 
+   * @param db the modification thread's db
+   * @param serial the new table serial
+   */
+  public void expire(Db db, long serial) {
+    long oldSerial;
+    synchronized(this) {
+      oldSerial = tableSerial;
+      tableSerial = serial;
+      if (oldSerial < 0 || serial <= oldSerial || !tableSerialValid) {
+        // first notification, or no tableserial: we don't know what has changed
+        invalidate();
+        return;
+      }
+      // lists are no more valid in any case
+      generation.incrementAndGet();
+      allList = null;
+      allListLinked = null;
+    }
+    
+    try {
+      // get from the backlog or select (and add to the backlog for the clients)
+      long[] expireSet = DbObject.newByClass(db, clazz).getExpiredTableSerials(oldSerial, serial);
+      // check for gaps, i.e. deleted objects
+      long expectedSerial = oldSerial + 1;
+      for (int i=1; i < expireSet.length; i += 2) {
+        if (expireSet[i] != expectedSerial) {
+          // deleted or modified more than once
+          invalidate();
+          return;
+        }
+        expectedSerial++;
+      }
+      if (expectedSerial <= serial) {
+        invalidate();
+        return;
+      }
+      synchronized(this) {
+        generation.incrementAndGet();
+        for (int i=0; i < expireSet.length; i += 2) {
+          Long id = expireSet[i];
+          for (ConcurrentMap<Long,MarshalledObject<DbObject>> map: objects) {
+            map.remove(id);
+          }
+          expirations.incrementAndGet();
+        }
+      }
+    }
+    catch (Exception ex) {
+      DbGlobal.logger.warning("expiring " + this + " failed: " + ex);
+      invalidate();
+    }
+  }
+  
+  
+  /**
+   * Gets the number of cache hits.
+   * 
+   * @return the hits
+   */
+  public long getHitCount() {
+    return hits.get();
+  }
+  
+  /**
+   * Gets the number of cache misses.
+   * 
+   * @return the misses
+   */
+  public long getMissCount() {
+    return misses.get();
+  }
+  
+  /**
+   * Gets the hit rate.
+   * 
+   * @return the hit rate between 0.0 and 1.0
+   */
+  public double getHitRate() {
+    long h = hits.get();
+    long total = h + misses.get();
+    return total == 0 ? 0.0d : (double) h / total;
+  }
+  
+  /**
+   * Gets the number of expired objects.
+   * 
+   * @return the expirations
+   */
+  public long getExpirationCount() {
+    return expirations.get();
+  }
+  
+  /**
+   * Gets the number of invalidations of the whole cache.
+   * 
+   * @return the invalidations
+   */
+  public long getInvalidationCount() {
+    return invalidations.get();
+  }
+  
+  /**
+   * Gets the number of cached objects.
+   * 
+   * @return the number of objects
+   */
+  public int getSize() {
+    int size = 0;
+    for (ConcurrentMap<Long,MarshalledObject<DbObject>> map: objects) {
+      size += map.size();
+    }
+    return size;
+  }
+  
+  /**
+   * Resets the statistics.
+   */
+  public void resetStatistics() {
+    hits.set(0);
+    misses.set(0);
+    expirations.set(0);
+    invalidations.set(0);
+  }
+  
+  
+  @Override
+  public String toString() {
+    return "server cache " + clazz.getName() + " [size=" + getSize() + 
+           ", hits=" + hits.get() + ", misses=" + misses.get() + 
+           ", hitrate=" + Math.round(getHitRate() * 100.0d) + "%" +
+           ", expirations=" + expirations.get() + ", invalidations=" + invalidations.get() + "]";
+  }
+  
+  
+  
+  // serializes the object(s) for the cache, null if failed
+  private <T> MarshalledObject<T> marshal(T obj) {
+    try {
+      return new MarshalledObject<T>(obj);
+    }
+    catch (IOException ex) {
+      DbGlobal.logger.warning("caching in " + this + " failed: " + ex);
+      return null;
+    }
+  }
+  
+  // creates a copy of the cached object(s), null if not cached or failed
+  private <T> T unmarshal(MarshalledObject<T> data) {
+    if (data != null) {
+      try {
+        return data.get();
+      }
+      catch (Exception ex) {
+        DbGlobal.logger.warning("reading from " + this + " failed: " + ex);
+      }
+    }
+    return null;
+  }
+  
+  
+  // gets the slot index
+  private static int slot(boolean withLinkedObjects, boolean validContext) {
+    return (withLinkedObjects ? LINKED : 0) | (validContext ? VALID_CONTEXT : 0);
+  }
+  
+}
@@ -35,20 +35,34 @@ import java.net.Socket;
  */
 public class CompressedServerSocket extends ServerSocket {
   
+  private final boolean dictionary;     // true if streams in dictionary mode
+  
   
   /**
    * Creates a compressed server socket.
    * 
    * @param port the port number, or <code>0</code> to use any free port.
+   * @param dictionary true if the streams use a session dictionary
    * @throws java.io.IOException
    */
-  public CompressedServerSocket(int port) throws IOException {
+  public CompressedServerSocket(int port, boolean dictionary) throws IOException {
     super(port);
+    this.dictionary = dictionary;
+  }
+  
+  /**
+   * Creates a compressed server socket.
+   * 
+   * @param port the port number, or <code>0</code> to use any free port.
+   * @throws java.io.IOException
+   */
+  public CompressedServerSocket(int port) throws IOException {
+    this(port, false);
   }
   
   @Override
   public Socket accept() throws IOException { 
-    Socket socket = new CompressedSocket();
+    Socket socket = new CompressedSocket(dictionary);
     implAccept(socket);
     return socket;
   }  
@@ -38,8 +38,32 @@ import org.tentackle.util.CompressedOutputStream;
  */
 public class CompressedSocket extends Socket {
 
+  private static volatile boolean dictionaryDefault;   // default dictionary mode
+  
+  
+  /**
+   * Sets the default dictionary mode for the compressed socket factories.
+   * 
+   * @param dictionary true if the compressing streams should use a session dictionary
+   * @see CompressedOutputStream
+   */
+  public static void setDictionaryDefault(boolean dictionary) {
+    dictionaryDefault = dictionary;
+  }
+  
+  /**
+   * Gets the default dictionary mode for the compressed socket factories.
+   * 
+   * @return true if the compressing streams use a session dictionary
+   */
+  public static boolean isDictionaryDefault() {
+    return dictionaryDefault;
+  }
+  
+  
   private CompressedOutputStream out;
   private CompressedInputStream in;
+  private final boolean dictionary;     // true if streams in dictionary mode
   
 
   /**
@@ -48,11 +72,26 @@ public class CompressedSocket extends Socket {
    * 
    * @param host the host name, or <code>null</code> for the loopback address.
    * @param port the port number.
+   * @param dictionary true if the streams use a session dictionary
    * @exception  IOException  if an I/O error occurs when creating the socket.
    * @see Socket#Socket(java.lang.String, int) 
    */
-  public CompressedSocket(String host, int port) throws IOException {
+  public CompressedSocket(String host, int port, boolean dictionary) throws IOException {
     super(host, port);
+    this.dictionary = dictionary;
+  }
+  
+  /**
+   * Creates a compressed stream socket and connects it to the specified port
+   * number on the named host.
+   * 
+   * @param host the host name, or <code>null</code> for the loopback address.
+   * @param port the port number.
+   * @exception  IOException  if an I/O error occurs when creating the socket.
+   * @see Socket#Socket(java.lang.String, int) 
+   */
+  public CompressedSocket(String host, int port) throws IOException {
+    this(host, port, false);
   }
 
 
@@ -60,10 +99,22 @@ public class CompressedSocket extends Socket {
    * Creates an unconnected socket, with the
    * system-default type of SocketImpl.
    *
+   * @param dictionary true if the streams use a session dictionary
    * @see Socket#Socket() 
    */
-  public CompressedSocket() { 
+  public CompressedSocket(boolean dictionary) { 
     super();
+    this.dictionary = dictionary;
+  }
+  
+  /**
+   * Creates an unconnected socket, with the
+   * system-default type of SocketImpl.
+   *
+   * @see Socket#Socket() 
+   */
+  public CompressedSocket() { 
+    this(false);
   }
 
   
@@ -71,7 +122,7 @@ public class CompressedSocket extends Socket {
   @Override
   public InputStream getInputStream() throws IOException {
     if (in == null) {
-      in = new CompressedInputStream(super.getInputStream());
+      in = new CompressedInputStream(super.getInputStream(), dictionary);
     }
     return in;
   }
@@ -80,7 +131,7 @@ public class CompressedSocket extends Socket {
   public OutputStream getOutputStream() throws IOException {
     if (out == null) {
       // buffer should be as large as possible!
-      out = new CompressedOutputStream(super.getOutputStream());
+      out = new CompressedOutputStream(super.getOutputStream(), dictionary);
     }
     return out;
   }
@@ -42,23 +42,36 @@ public class CompressedSocketWrapper extends SocketWrapper {
   
   private CompressedOutputStream out;
   private CompressedInputStream in;
+  private final boolean dictionary;     // true if streams in dictionary mode
   
   
   /**
    * Creates a compressed socket wrapper.
    * 
    * @param socket the wrapped socket (for example a {@link javax.net.ssl.SSLSocket}).
+   * @param dictionary true if the streams use a session dictionary
    * @throws java.net.SocketException
    */
-  public CompressedSocketWrapper(Socket socket) throws SocketException {
+  public CompressedSocketWrapper(Socket socket, boolean dictionary) throws SocketException {
     super(socket);
+    this.dictionary = dictionary;
+  }
+  
+  /**
+   * Creates a compressed socket wrapper.
+   * 
+   * @param socket the wrapped socket (for example a {@link javax.net.ssl.SSLSocket}).
+   * @throws java.net.SocketException
+   */
+  public CompressedSocketWrapper(Socket socket) throws SocketException {
+    this(socket, false);
   }
   
   
   @Override
   public InputStream getInputStream() throws IOException {
     if (in == null) {
-      in = new CompressedInputStream(super.getInputStream());
+      in = new CompressedInputStream(super.getInputStream(), dictionary);
     }
     return in;
   }
@@ -66,7 +79,7 @@ public class CompressedSocketWrapper extends SocketWrapper {
   @Override
   public OutputStream getOutputStream() throws IOException {
     if (out == null) {
-      out = new CompressedOutputStream(super.getOutputStream());
+      out = new CompressedOutputStream(super.getOutputStream(), dictionary);
     }
     return out;
   }
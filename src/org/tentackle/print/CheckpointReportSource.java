@@ -0,0 +1,53 @@
+/**
+ * Tentackle - a framework for java desktop applications
+ * Copyright (C) 2001-2008 Harald Krake, harald@krake.de, +49 7722 9508-0
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+// $Id$
+
+package org.tentackle.print;
+
+/**
+ * A {@link ReportSource} supporting checkpoints.<br>
+ * 
+ * While {@link #save()} and {@link #restore()} only keep the last saved state,
+ * checkpoints allow any number of states to be kept. The {@link Report}
+ * creates a checkpoint at the start of each page during pagination.
+ * Any page can then be printed directly without replaying the data
+ * from the start of the report.
+ *
+ * @author harald
+ */
+public interface CheckpointReportSource extends ReportSource {
+  
+  /**
+   * Creates a checkpoint for the current state.<br>
+   * The checkpoint must not change if the source advances,
+   * e.g. an index into a list of rows.
+   * 
+   * @return the checkpoint
+   */
+  public Object checkpoint();
+  
+  /**
+   * Restores the state from a checkpoint.
+   * 
+   * @param checkpoint the checkpoint created by {@link #checkpoint()}
+   */
+  public void restore(Object checkpoint);
+  
+}
@@ -29,6 +29,9 @@ import java.awt.print.PageFormat;
 import java.awt.print.Pageable;
 import java.awt.print.Printable;
 import java.awt.print.PrinterException;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
 import static java.awt.print.Pageable.UNKNOWN_NUMBER_OF_PAGES;
 
 
@@ -36,8 +39,19 @@ import static java.awt.print.Pageable.UNKNOWN_NUMBER_OF_PAGES;
  * A generic report.
  * <p>
  * Can be used as {@link Printable} or {@link Pageable}. If used as Pageable the number of
- * pages will be determined in dummy pass first and then printed in a second pass.
- * If used as a Printable there is only one pass.
+ * pages will be determined in a layout pass first and then printed in a second pass.
+ * If used as a Printable there is only one pass and the source is closed after the last page.
+ * If used as a Pageable the source is closed when the printer job requests the last page.
+ * <p>
+ * If the source is a {@link CheckpointReportSource}, the layout pass records
+ * a checkpoint at the start of each page, i.e. the state of the source plus the
+ * state of the report. Pages are then printed directly from their checkpoints,
+ * so reprinting or printing pages out of order doesn't replay the data.
+ * Because any page may be requested again, the source of a checkpointed report
+ * is <em>not</em> closed automatically. Applications switching to a
+ * {@link CheckpointReportSource} must {@link #close()} the report after the
+ * printer job has finished. Invoking {@link #close()} is harmless for
+ * all other reports, so applications may always close the report.
  * <p>
  * The report is implemented as a statemachine and gets its data
  * from a {@link ReportSource}.
@@ -124,7 +138,10 @@ public class Report implements Printable, Pageable {
   private int[] subFooterAlignment;           // alignments of sub-footers
 
   private boolean initDone;           // init ran
+  private boolean sourceOpened;       // true if source is open
+  private boolean paginating;         // true if in layout pass
   private int     pages;              // number of pages
+  private List<Checkpoint> checkpoints;   // checkpoints for each page, null if none
   private int     yOffset;            // current position in page
   private int     yMax;               // maximum y pos on paper so far
 
@@ -165,6 +182,7 @@ public class Report implements Printable, Pageable {
     }
 
     initDone = false;
+    pages = UNKNOWN_NUMBER_OF_PAGES;
   }
 
   
@@ -725,27 +743,86 @@ public class Report implements Printable, Pageable {
    */
   public int getNumberOfPages() {
     if (pages == UNKNOWN_NUMBER_OF_PAGES) { // if not yet known
-      init();
       try {
-        // run in layout-mode
-        pages = 0;
-        
-        // @todo: number of pages are based on graphics-context (cause of scaling!)
-        // rework that!!!!
-        
-        while (print(null, pageFormat, pages) == Printable.PAGE_EXISTS)  {
-          pages++;
-        }
+        paginate();
       }
       catch (PrinterException e)  {
-        pages = UNKNOWN_NUMBER_OF_PAGES;
+        PrintGlobal.logger.warning("pagination failed: " + e.getMessage());
       }
+    }
+    return pages;
+  }
+  
+  
+  /**
+   * Runs the report in layout mode to determine the number of pages.<br>
+   * If the source is a {@link CheckpointReportSource} the checkpoints
+   * for each page are recorded.
+   * <p>
+   * Notice that the layout depends on the pageformat only, not on the
+   * graphics context of the printer.
+   * 
+   * @return the number of pages
+   * @throws PrinterException if layout failed
+   */
+  public int paginate() throws PrinterException {
+    initDone = false;
+    pages = UNKNOWN_NUMBER_OF_PAGES;
+    checkpoints = null;
+    init();
+    List<Checkpoint> pageCheckpoints = source instanceof CheckpointReportSource ? new ArrayList<Checkpoint>() : null;
+    checkpoints = pageCheckpoints;
+    // all panels are printed to a dummy image
+    BufferedImage image = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+    paginating = true;
+    try {
+      int count = 0;
+      for (;;) {
+        if (pageCheckpoints != null) {
+          pageCheckpoints.add(new Checkpoint(state.clone(), ((CheckpointReportSource) source).checkpoint(), scale));
+        }
+        Graphics2D g2d = image.createGraphics();
+        try {
+          if (print(g2d, pageFormat, count, false) != Printable.PAGE_EXISTS) {
+            break;
+          }
+        }
+        finally {
+          g2d.dispose();
+        }
+        count++;
+      }
+      if (pageCheckpoints != null) {
+        pageCheckpoints.remove(count);    // checkpoint beyond last page
+      }
+      else  {
+        // no checkpoints: printing must start from the beginning
+        initDone = false;
+      }
+      pages = count;
+    }
+    catch (PrinterException e) {
+      checkpoints = null;
       initDone = false;
+      throw e;
+    }
+    finally {
+      paginating = false;
     }
     return pages;
   }
 
-
+  
+  /**
+   * Checks whether the pages can be printed from checkpoints.
+   * 
+   * @return true if paginated with a {@link CheckpointReportSource}
+   */
+  public boolean isCheckpointed() {
+    return checkpoints != null && pages != UNKNOWN_NUMBER_OF_PAGES;
+  }
+  
+  
   /**
    * Runs the report.<br>
    * This implements the interface {@link Printable}.
@@ -767,11 +844,35 @@ public class Report implements Printable, Pageable {
       throw new IndexOutOfBoundsException("requested page " + (pageIndex+1) +
                                           " of " + pages);
     }
-    if (pageIndex == pages-1) { // this was the last page
-      source.close();           // we can safely close the data-source
+    if (pageIndex == pages-1 && !isCheckpointed() && sourceOpened) {
+      // this was the last page: we can safely close the data-source
+      source.close();
+      sourceOpened = false;
     }
     return this;
   }
+  
+  
+  /**
+   * Closes the report source.<br>
+   * Must be invoked when a checkpointed report has been printed as a {@link Pageable}
+   * because the printer job may print any page more than once and hence the
+   * report cannot determine when printing is done. For all other reports the
+   * source is already closed when the last page is requested and this method
+   * just resets the report. Printing the report again re-opens the source
+   * and paginates again.
+   * 
+   * @see #isCheckpointed()
+   */
+  public void close() {
+    if (sourceOpened) {
+      source.close();
+      sourceOpened = false;
+    }
+    initDone = false;
+    checkpoints = null;
+    pages = UNKNOWN_NUMBER_OF_PAGES;
+  }
 
 
   
@@ -784,7 +885,16 @@ public class Report implements Printable, Pageable {
 
     init();   // initially get heights of panels
 
-    if (state.lastPageIndex == pageIndex && savedState != null) {
+    Checkpoint checkpoint = checkpoints != null && pageIndex >= 0 && pageIndex < checkpoints.size() ?
+                            checkpoints.get(pageIndex) : null;
+    
+    if (checkpoint != null) {
+      if (pageIndex != state.lastPageIndex + 1 || state.lastPagePrinted) {
+        // not the successor of the last printed page: continue from checkpoint
+        restore(checkpoint);
+      }
+    }
+    else if (state.lastPageIndex == pageIndex && savedState != null) {
       // page will be printed again
       state = savedState;
       savedState = null;
@@ -1220,8 +1330,10 @@ public class Report implements Printable, Pageable {
       }
     }
 
-    if (!countOnly && pages == UNKNOWN_NUMBER_OF_PAGES) { // if invoked as a Printable
+    if (!countOnly && !paginating && pages == UNKNOWN_NUMBER_OF_PAGES) { // if invoked as a Printable
       source.close();   // end of report
+      sourceOpened = false;
+      initDone = false;
     }
     return Printable.NO_SUCH_PAGE;
   }
@@ -1234,12 +1346,13 @@ public class Report implements Printable, Pageable {
   private void init() {
     if (!initDone) {
       state = new State();
-      pages = UNKNOWN_NUMBER_OF_PAGES;    // no pages computed so far
-      if (initDone) {
+      savedState = null;
+      if (sourceOpened) {
         source.rewind();      // rewind the source
       }
       else  {
         source.open();        // open the datasource
+        sourceOpened = true;
       }
       initDone = true;
     }
@@ -1367,6 +1480,36 @@ public class Report implements Printable, Pageable {
   
   
   
+  /**
+   * Restores the state from a checkpoint.
+   * 
+   * @param checkpoint the checkpoint
+   */
+  private void restore(Checkpoint checkpoint) {
+    state = checkpoint.pageState.clone();
+    ((CheckpointReportSource) source).restore(checkpoint.sourceState);
+    scale = checkpoint.pageScale;
+  }
+  
+  
+  /**
+   * Checkpoint at the start of a page.<br>
+   * Immutable, so it can be shared among reports.
+   */
+  private static class Checkpoint {
+    
+    private final State  pageState;     // the report's state
+    private final Object sourceState;   // the source's state
+    private final double pageScale;     // the scaling
+    
+    private Checkpoint(State pageState, Object sourceState, double pageScale) {
+      this.pageState   = pageState;
+      this.sourceState = sourceState;
+      this.pageScale   = pageScale;
+    }
+  }
+  
+  
   /**
    * Represents the state of this state machine.
    */
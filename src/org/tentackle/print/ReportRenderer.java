@@ -0,0 +1,450 @@
+/**
+ * Tentackle - a framework for java desktop applications
+ * Copyright (C) 2001-2008 Harald Krake, harald@krake.de, +49 7722 9508-0
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+// $Id$
+
+package org.tentackle.print;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.print.PageFormat;
+import java.awt.print.PrinterException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import javax.imageio.ImageIO;
+import javax.print.DocFlavor;
+import javax.print.DocPrintJob;
+import javax.print.PrintException;
+import javax.print.SimpleDoc;
+import javax.print.StreamPrintService;
+import javax.print.StreamPrintServiceFactory;
+
+
+/**
+ * Renders {@link Report}s without a printer.<br>
+ * 
+ * Works in headless mode ({@code java.awt.headless=true}) and is intended
+ * for server-side generation of documents.
+ * Pages are rendered to images or to a PostScript stream.
+ * <p>
+ * Because a report and its print panels are not threadsafe, the renderer
+ * gets a separate report for each worker thread from a {@link ReportFactory}.
+ * If the source of the reports is a {@link CheckpointReportSource}, each report
+ * is paginated to record its own checkpoints and the pages are rendered concurrently.
+ * Otherwise the pages are rendered sequentially by a single report.
+ * All reports are closed when rendering is finished.
+ * <p>
+ * Example:
+ * <pre>
+ *   ReportRenderer renderer = new ReportRenderer(new ReportRenderer.ReportFactory() {
+ *     public Report createReport() throws PrinterException {
+ *       return new InvoiceReport(invoice);
+ *     }
+ *   });
+ *   renderer.renderImages(out, "png");
+ * </pre>
+ *
+ * @author harald
+ */
+public class ReportRenderer {
+  
+  /**
+   * Creates the reports for the renderer.
+   */
+  public interface ReportFactory {
+    
+    /**
+     * Creates a new report.<br>
+     * All reports must be set up the same way and must use
+     * a separate instance of the source.
+     * 
+     * @return the report
+     * @throws PrinterException if creating the report failed
+     */
+    public Report createReport() throws PrinterException;
+  }
+  
+  
+  /**
+   * Receives the rendered pages.
+   */
+  public interface PageHandler {
+    
+    /**
+     * Invoked for each page in ascending page order.
+     * 
+     * @param pageIndex the page index (starting at 0)
+     * @param image the rendered page
+     * @throws IOException if processing the page failed
+     */
+    public void pageRendered(int pageIndex, BufferedImage image) throws IOException;
+  }
+  
+  
+  
+  private static ExecutorService executor;      // shared pool for all renderers
+  
+  private final ReportFactory factory;          // the report factory
+  private int threads;                          // max. number of reports rendering concurrently
+  private int resolution;                       // the resolution in dpi
+  
+  
+  /**
+   * Creates a renderer.
+   * 
+   * @param factory the report factory
+   */
+  public ReportRenderer(ReportFactory factory) {
+    this.factory = factory;
+    threads = Runtime.getRuntime().availableProcessors();
+    resolution = 150;
+  }
+  
+  
+  /**
+   * Sets the number of pages rendered concurrently.
+   * 
+   * @param threads the number of threads, default is the number of processors
+   */
+  public void setThreads(int threads) {
+    this.threads = threads;
+  }
+  
+  /**
+   * Gets the number of pages rendered concurrently.
+   * 
+   * @return the number of threads
+   */
+  public int getThreads() {
+    return threads;
+  }
+  
+  
+  /**
+   * Sets the resolution of the rendered images.
+   * 
+   * @param resolution the resolution in dpi, default is 150
+   */
+  public void setResolution(int resolution) {
+    this.resolution = resolution;
+  }
+  
+  /**
+   * Gets the resolution of the rendered images.
+   * 
+   * @return the resolution in dpi
+   */
+  public int getResolution() {
+    return resolution;
+  }
+  
+  
+  
+  /**
+   * Renders all pages to images.
+   * 
+   * @param handler the handler receiving the pages
+   * @return the number of pages
+   * @throws PrinterException if rendering failed
+   * @throws IOException if the handler failed
+   */
+  public int render(final PageHandler handler) throws PrinterException, IOException {
+    return render(new PageEncoder() {
+      public Object encode(BufferedImage image) {
+        return image;
+      }
+      public void pageDone(int pageIndex, Object page) throws IOException {
+        handler.pageRendered(pageIndex, (BufferedImage) page);
+      }
+    });
+  }
+  
+  
+  /**
+   * Renders all pages to images and writes them as a ZIP-stream.<br>
+   * Each page becomes an entry named {@code page0001.png}, {@code page0002.png}, etc...
+   * The pages are encoded concurrently and written as soon as all
+   * previous pages are written. The stream is not closed.
+   * 
+   * @param out the output stream
+   * @param format the informal image format name, e.g. "png"
+   * @return the number of pages
+   * @throws PrinterException if rendering failed
+   * @throws IOException if writing failed
+   */
+  public int renderImages(OutputStream out, final String format) throws PrinterException, IOException {
+    final ZipOutputStream zip = new ZipOutputStream(out);
+    int pages = render(new PageEncoder() {
+      public Object encode(BufferedImage image) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        if (!ImageIO.write(image, format, buf)) {
+          throw new IOException("no image writer for " + format);
+        }
+        return buf.toByteArray();
+      }
+      public void pageDone(int pageIndex, Object page) throws IOException {
+        zip.putNextEntry(new ZipEntry("page" + String.format("%04d", pageIndex + 1) + "." + format));
+        zip.write((byte[]) page);
+        zip.closeEntry();
+      }
+    });
+    zip.finish();
+    return pages;
+  }
+  
+  
+  /**
+   * Renders the report as PostScript.<br>
+   * This is a vector format and the pages are rendered sequentially.
+   * The stream is not closed.
+   * 
+   * @param out the output stream
+   * @return the number of pages
+   * @throws PrinterException if rendering failed or no PostScript service available
+   */
+  public int renderPostScript(OutputStream out) throws PrinterException {
+    DocFlavor flavor = DocFlavor.SERVICE_FORMATTED.PAGEABLE;
+    StreamPrintServiceFactory[] factories = StreamPrintServiceFactory.lookupStreamPrintServiceFactories(
+            flavor, "application/postscript");
+    if (factories.length == 0) {
+      throw new PrinterException("no PostScript stream print service available");
+    }
+    StreamPrintService service = factories[0].getPrintService(out);
+    Report report = null;
+    try {
+      report = factory.createReport();
+      int pages = report.paginate();
+      DocPrintJob job = service.createPrintJob();
+      job.print(new SimpleDoc(report, flavor, null), null);
+      return pages;
+    }
+    catch (PrintException ex) {
+      throw new PrinterException("printing to PostScript failed: " + ex.getMessage());
+    }
+    finally {
+      if (report != null) {
+        report.close();
+      }
+      service.dispose();
+    }
+  }
+  
+  
+  
+  /**
+   * Converts the rendered pages.
+   */
+  private interface PageEncoder {
+    
+    /**
+     * Encodes a page (invoked in a worker thread).
+     */
+    public Object encode(BufferedImage image) throws IOException;
+    
+    /**
+     * Processes an encoded page (invoked in the calling thread in page order).
+     */
+    public void pageDone(int pageIndex, Object page) throws IOException;
+  }
+  
+  
+  /**
+   * Renders all pages.
+   */
+  private int render(final PageEncoder encoder) throws PrinterException, IOException {
+    
+    Report master = factory.createReport();
+    int masterPages;
+    boolean sequential = true;
+    try {
+      masterPages = master.paginate();
+      if (master.isCheckpointed() && threads > 1 && masterPages > 1) {
+        sequential = false;
+      }
+      else  {
+        for (int pageIndex=0; pageIndex < masterPages; pageIndex++) {
+          encoder.pageDone(pageIndex, encoder.encode(renderPage(master, pageIndex)));
+        }
+        return masterPages;
+      }
+    }
+    finally {
+      if (sequential) {
+        master.close();
+      }
+    }
+    final int pages = masterPages;
+    
+    // reports not in use by a worker (the others are paginated by the workers on first use)
+    final BlockingQueue<Report> reports = new LinkedBlockingQueue<Report>();
+    reports.add(master);
+    int reportCount = 1;
+    boolean created = false;
+    try {
+      for (; reportCount < threads && reportCount < pages; reportCount++) {
+        reports.add(factory.createReport());
+      }
+      created = true;
+    }
+    finally {
+      if (!created) {
+        closeReports(reports, reportCount);
+      }
+    }
+    
+    // submit pages in order, keep at most 2 pages per thread in flight
+    LinkedList<Future<Object>> futures = new LinkedList<Future<Object>>();
+    int nextPage = 0;
+    int donePage = 0;
+    try {
+      while (donePage < pages) {
+        while (nextPage < pages && futures.size() < threads * 2) {
+          final int pageIndex = nextPage++;
+          futures.add(getExecutor().submit(new Callable<Object>() {
+            public Object call() throws Exception {
+              Report report = reports.take();
+              BufferedImage image;
+              try {
+                if (!report.isCheckpointed() && report.paginate() != pages) {
+                  throw new PrinterException("reports of factory paginate differently");
+                }
+                image = renderPage(report, pageIndex);
+              }
+              finally {
+                reports.add(report);
+              }
+              return encoder.encode(image);
+            }
+          }));
+        }
+        encoder.pageDone(donePage, futures.removeFirst().get());
+        donePage++;
+      }
+    }
+    catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new PrinterException("rendering interrupted");
+    }
+    catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof PrinterException) {
+        throw (PrinterException) cause;
+      }
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new PrinterException("rendering failed: " + cause);
+    }
+    finally {
+      for (Future<Object> future: futures) {
+        future.cancel(true);
+      }
+      closeReports(reports, reportCount);
+    }
+    return pages;
+  }
+  
+  
+  /**
+   * Closes the reports.<br>
+   * Waits until the running workers have returned their reports.
+   */
+  private void closeReports(BlockingQueue<Report> reports, int reportCount) {
+    boolean interrupted = false;
+    for (int i=0; i < reportCount; ) {
+      try {
+        reports.take().close();
+        i++;
+      }
+      catch (InterruptedException ex) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+  
+  
+  /**
+   * Renders a single page.
+   */
+  private BufferedImage renderPage(Report report, int pageIndex) throws PrinterException {
+    PageFormat pageFormat = report.getPageFormat(pageIndex);
+    double dpiScale = resolution / 72.0;
+    // the image has the size of the paper, landscape pages are rotated like on a printer
+    int width  = (int) Math.ceil(pageFormat.getPaper().getWidth() * dpiScale);
+    int height = (int) Math.ceil(pageFormat.getPaper().getHeight() * dpiScale);
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    Graphics2D g2d = image.createGraphics();
+    try {
+      g2d.setColor(Color.WHITE);
+      g2d.fillRect(0, 0, width, height);
+      g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+      g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+      g2d.scale(dpiScale, dpiScale);
+      if (pageFormat.getOrientation() != PageFormat.PORTRAIT) {
+        g2d.transform(new AffineTransform(pageFormat.getMatrix()));
+      }
+      if (report.print(g2d, pageFormat, pageIndex) != java.awt.print.Printable.PAGE_EXISTS) {
+        throw new PrinterException("page " + (pageIndex + 1) + " does not exist");
+      }
+    }
+    finally {
+      g2d.dispose();
+    }
+    return image;
+  }
+  
+  
+  /**
+   * Gets the shared worker pool.
+   */
+  private static synchronized ExecutorService getExecutor() {
+    if (executor == null) {
+      executor = Executors.newCachedThreadPool(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "ReportRenderer worker");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return executor;
+  }
+  
+}
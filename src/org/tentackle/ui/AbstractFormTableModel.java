@@ -163,6 +163,24 @@ abstract public class AbstractFormTableModel extends AbstractTableModel {
   }
   
 
+  /**
+   * Applies a sorting to the data of this model.<br>
+   * Models that can deliver their rows in a given order (e.g. by an
+   * SQL {@code ORDER BY}) should override this method, so that a
+   * {@link FormTableSorter} does not need to sort in memory.
+   * Models that cannot be sorted in memory (e.g. because not all rows are
+   * loaded) must return true as well, even if they keep their natural order.
+   * The default implementation returns false.
+   *
+   * @param sortby the array of column indexes (see {@link FormTableEntry#compareTo}),
+   *        an empty array for the natural ordering
+   * @return true if the model took care of the sorting, false if the rows must be sorted in memory
+   */
+  public boolean applySorting(int[] sortby) {
+    return false;
+  }
+
+
   /** 
    * Returns whether data has changed.
    * Used to for the famous "discard any changes?"-question.
@@ -0,0 +1,480 @@
+/**
+ * Tentackle - a framework for java desktop applications
+ * Copyright (C) 2001-2008 Harald Krake, harald@krake.de, +49 7722 9508-0
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+// $Id$
+
+package org.tentackle.ui;
+
+import java.awt.AWTEvent;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Measures the latency of events dispatched by the {@link FormEventQueue}.<br>
+ * 
+ * The monitor keeps a histogram of the dispatch times and samples the stack of the
+ * event dispatch thread whenever an event is blocking it longer than a threshold.
+ * A watchdog thread does the sampling and logs a summary periodically.
+ * <p>
+ * Events dispatched by nested event loops (modal dialogs, for example) are
+ * measured separately and their time is not added to the outer event.
+ * Neither is the time the EDT waits for events within such a loop, nor is it
+ * reported as a stall.
+ * <p>
+ * Example:
+ * <pre>
+ *   EventLatencyMonitor monitor = new EventLatencyMonitor(200, 60000);
+ *   FormHelper.getEventQueue().setLatencyMonitor(monitor);
+ * </pre>
+ *
+ * @author harald
+ */
+public class EventLatencyMonitor {
+  
+  /** upper limits of the histogram buckets in milliseconds, the last bucket is unlimited **/
+  public static final long[] BUCKET_LIMITS = { 1, 2, 4, 8, 16, 32, 64, 128, 256, 512, 1024, 2048, 4096, Long.MAX_VALUE };
+  
+  private static final int MAX_DEPTH = 32;      // max. nesting of event loops
+  
+  
+  /**
+   * A blocked event dispatch thread.
+   */
+  public static class Stall {
+    
+    private final long time;                    // system time when detected
+    private final long duration;                // milliseconds the event was running when detected
+    private final String event;                 // the event description
+    private final StackTraceElement[] stack;    // the sampled stack
+    
+    private Stall(long time, long duration, String event, StackTraceElement[] stack) {
+      this.time = time;
+      this.duration = duration;
+      this.event = event;
+      this.stack = stack;
+    }
+    
+    /**
+     * Gets the time when the stall was detected.
+     * @return the epochal time in milliseconds
+     */
+    public long getTime() {
+      return time;
+    }
+    
+    /**
+     * Gets the time the event was running when sampled.
+     * @return the duration in milliseconds
+     */
+    public long getDuration() {
+      return duration;
+    }
+    
+    /**
+     * Gets the description of the event.
+     * @return the event class, id and source
+     */
+    public String getEvent() {
+      return event;
+    }
+    
+    /**
+     * Gets the stack of the event dispatch thread.
+     * @return the stack trace
+     */
+    public StackTraceElement[] getStackTrace() {
+      return stack;
+    }
+    
+    @Override
+    public String toString() {
+      StringBuilder buf = new StringBuilder();
+      buf.append("EDT blocked for ").append(duration).append(" ms by ").append(event);
+      for (StackTraceElement element: stack) {
+        buf.append("\n\tat ").append(element);
+      }
+      return buf.toString();
+    }
+  }
+  
+  
+  
+  private final long threshold;                 // stall threshold in ms
+  private final long summaryInterval;           // ms between log summaries, 0 = none
+  private final AtomicLongArray histogram;      // number of events per bucket
+  private final LinkedList<Stall> stalls;       // the last stalls
+  private int maxStalls;                        // max. number of stalls kept
+  
+  // statistics (written by the EDT only)
+  private volatile long eventCount;             // number of dispatched events
+  private volatile long totalNanos;             // sum of dispatch times
+  private volatile long maxNanos;               // longest dispatch time
+  
+  // the current event (EDT only)
+  private final long[] startNanos = new long[MAX_DEPTH];    // start per nesting level
+  private final long[] nestedNanos = new long[MAX_DEPTH];   // time spent in nested loops per level
+  private final AWTEvent[] events = new AWTEvent[MAX_DEPTH];  // the events per nesting level
+  private int depth;                                        // current nesting level, 0 = idle
+  private long waitNanos;                                   // start of waiting for the next event, 0 = not waiting
+  
+  // the current event (seen by the watchdog)
+  private volatile Thread dispatchThread;       // the event dispatch thread
+  private volatile AWTEvent currentEvent;       // the event being dispatched, null if idle
+  private volatile long currentStart;           // start of the current event in ms
+  private volatile boolean currentSampled;      // true if current event already sampled
+  
+  private Thread watchdog;                      // the watchdog thread
+  
+  
+  /**
+   * Creates a latency monitor.
+   * 
+   * @param threshold the threshold in milliseconds to sample the EDT's stack
+   * @param summaryInterval the interval in milliseconds to log a summary, 0 if no logging
+   */
+  public EventLatencyMonitor(long threshold, long summaryInterval) {
+    this.threshold = threshold;
+    this.summaryInterval = summaryInterval;
+    histogram = new AtomicLongArray(BUCKET_LIMITS.length);
+    stalls = new LinkedList<Stall>();
+    maxStalls = 100;
+  }
+  
+  
+  /**
+   * Gets the stall threshold.
+   * 
+   * @return the threshold in milliseconds
+   */
+  public long getThreshold() {
+    return threshold;
+  }
+  
+  
+  /**
+   * Sets the maximum number of stalls kept.
+   * 
+   * @param maxStalls the maximum number, default is 100
+   */
+  public synchronized void setMaxStalls(int maxStalls) {
+    this.maxStalls = maxStalls;
+  }
+  
+  
+  /**
+   * Starts the watchdog thread.<br>
+   * Invoked by {@link FormEventQueue#setLatencyMonitor}.
+   */
+  public synchronized void start() {
+    if (watchdog == null) {
+      watchdog = new Thread("EDT latency watchdog") {
+        @Override
+        public void run() {
+          watch();
+        }
+      };
+      watchdog.setDaemon(true);
+      watchdog.start();
+    }
+  }
+  
+  
+  /**
+   * Stops the watchdog thread.
+   */
+  public synchronized void stop() {
+    if (watchdog != null) {
+      watchdog.interrupt();
+      watchdog = null;
+    }
+  }
+  
+  
+  /**
+   * Invoked by the event queue before an event is dispatched.
+   * 
+   * @param event the event
+   */
+  void eventStarted(AWTEvent event) {
+    long now = System.nanoTime();
+    if (depth < MAX_DEPTH) {
+      startNanos[depth] = now;
+      nestedNanos[depth] = 0;
+      events[depth] = event;
+    }
+    depth++;
+    dispatchThread = Thread.currentThread();
+    currentStart = System.currentTimeMillis();
+    currentSampled = false;
+    currentEvent = event;
+  }
+  
+  
+  /**
+   * Invoked by the event queue after an event is dispatched.
+   */
+  void eventFinished() {
+    long now = System.nanoTime();
+    depth--;
+    if (depth < MAX_DEPTH) {
+      long elapsed = now - startNanos[depth];
+      if (depth > 0) {
+        nestedNanos[depth - 1] += elapsed;
+      }
+      record(elapsed - nestedNanos[depth]);
+      events[depth] = null;
+    }
+    if (depth > 0) {
+      // back to the outer event: either its secondary loop waits for the next event
+      // (see waitingForEvent) or the loop has terminated and the outer event continues
+      resumeOuterEvent();
+    }
+    else  {
+      currentEvent = null;
+    }
+  }
+
+
+  /**
+   * Invoked by the event queue before it waits for the next event.<br>
+   * If invoked from within a secondary loop (modal dialog, etc...) the
+   * EDT is idle until the next event arrives. That time is neither watched
+   * nor accounted to the blocked outer event.
+   */
+  void waitingForEvent() {
+    currentEvent = null;
+    if (depth > 0) {
+      waitNanos = System.nanoTime();
+    }
+  }
+
+
+  /**
+   * Invoked by the event queue when the next event has been retrieved.
+   */
+  void eventReceived() {
+    if (waitNanos != 0) {
+      if (depth > 0 && depth <= MAX_DEPTH) {
+        nestedNanos[depth - 1] += System.nanoTime() - waitNanos;
+      }
+      waitNanos = 0;
+    }
+    if (depth > 0) {
+      // the event may still be filtered by the secondary loop or terminate it
+      resumeOuterEvent();
+    }
+  }
+
+
+  /**
+   * Watches the outer event again from now on.
+   */
+  private void resumeOuterEvent() {
+    currentStart = System.currentTimeMillis();
+    currentSampled = false;
+    currentEvent = depth <= MAX_DEPTH ? events[depth - 1] : null;
+  }
+  
+  
+  /**
+   * Records a dispatch time.
+   */
+  private void record(long nanos) {
+    long millis = nanos / 1000000;
+    int bucket = 0;
+    while (millis >= BUCKET_LIMITS[bucket]) {
+      bucket++;
+    }
+    histogram.incrementAndGet(bucket);
+    eventCount++;
+    totalNanos += nanos;
+    if (nanos > maxNanos) {
+      maxNanos = nanos;
+    }
+  }
+  
+  
+  
+  /**
+   * Gets the number of dispatched events.
+   * 
+   * @return the number of events
+   */
+  public long getEventCount() {
+    return eventCount;
+  }
+  
+  
+  /**
+   * Gets the mean dispatch time.
+   * 
+   * @return the mean time in milliseconds
+   */
+  public double getMeanLatency() {
+    long count = eventCount;
+    return count == 0 ? 0.0 : totalNanos / 1000000.0 / count;
+  }
+  
+  
+  /**
+   * Gets the longest dispatch time.
+   * 
+   * @return the maximum in milliseconds
+   */
+  public double getMaxLatency() {
+    return maxNanos / 1000000.0;
+  }
+  
+  
+  /**
+   * Gets the histogram.
+   * 
+   * @return the number of events for each bucket of {@link #BUCKET_LIMITS}
+   */
+  public long[] getHistogram() {
+    long[] counts = new long[histogram.length()];
+    for (int i=0; i < counts.length; i++) {
+      counts[i] = histogram.get(i);
+    }
+    return counts;
+  }
+  
+  
+  /**
+   * Gets an upper bound for a percentile of the dispatch times.
+   * 
+   * @param percentile the percentile, e.g. 99.0
+   * @return the upper limit of the histogram bucket in milliseconds, 0 if no events
+   */
+  public long getPercentile(double percentile) {
+    long[] counts = getHistogram();
+    long total = 0;
+    for (long count: counts) {
+      total += count;
+    }
+    long limit = (long) Math.ceil(total * percentile / 100.0);
+    long sum = 0;
+    for (int i=0; i < counts.length; i++) {
+      sum += counts[i];
+      if (sum >= limit && sum > 0) {
+        return BUCKET_LIMITS[i];
+      }
+    }
+    return 0;
+  }
+  
+  
+  /**
+   * Gets the stalls detected so far.
+   * 
+   * @return the stalls, oldest first
+   */
+  public synchronized List<Stall> getStalls() {
+    return new ArrayList<Stall>(stalls);
+  }
+  
+  
+  /**
+   * Clears all statistics and stalls.
+   */
+  public synchronized void reset() {
+    for (int i=0; i < histogram.length(); i++) {
+      histogram.set(i, 0);
+    }
+    eventCount = 0;
+    totalNanos = 0;
+    maxNanos = 0;
+    stalls.clear();
+  }
+  
+  
+  /**
+   * Gets a one-line summary of the statistics.
+   * 
+   * @return the summary
+   */
+  public String getSummary() {
+    StringBuilder buf = new StringBuilder();
+    buf.append("EDT: ").append(getEventCount()).append(" events, mean ").
+        append(String.format("%.2f", getMeanLatency())).append(" ms, max ").
+        append(String.format("%.1f", getMaxLatency())).append(" ms, p50").
+        append(percentileText(50.0)).append(", p99").
+        append(percentileText(99.0)).append(", ");
+    synchronized(this) {
+      buf.append(stalls.size());
+    }
+    buf.append(" stalls >").append(threshold).append(" ms");
+    return buf.toString();
+  }
+  
+  
+  /**
+   * Formats a percentile for the summary.
+   */
+  private String percentileText(double percentile) {
+    long limit = getPercentile(percentile);
+    return limit == Long.MAX_VALUE ?
+           (">" + BUCKET_LIMITS[BUCKET_LIMITS.length - 2] + " ms") :
+           ("<" + limit + " ms");
+  }
+  
+  
+  
+  /**
+   * The watchdog loop.
+   */
+  private void watch() {
+    long interval = Math.max(threshold / 2, 10);
+    long nextSummary = System.currentTimeMillis() + summaryInterval;
+    while (!Thread.currentThread().isInterrupted()) {
+      try {
+        Thread.sleep(interval);
+      }
+      catch (InterruptedException ex) {
+        break;
+      }
+      long now = System.currentTimeMillis();
+      AWTEvent event = currentEvent;
+      long start = currentStart;
+      if (event != null && !currentSampled && now - start > threshold) {
+        currentSampled = true;
+        Thread thread = dispatchThread;
+        Stall stall = new Stall(now, now - start,
+                                event.getClass().getName() + "[" + event.getID() + "] from " +
+                                event.getSource().getClass().getName(),
+                                thread == null ? new StackTraceElement[0] : thread.getStackTrace());
+        synchronized(this) {
+          stalls.add(stall);
+          while (stalls.size() > maxStalls) {
+            stalls.removeFirst();
+          }
+        }
+        UIGlobal.logger.warning(stall.toString());
+      }
+      if (summaryInterval > 0 && now >= nextSummary) {
+        nextSummary = now + summaryInterval;
+        UIGlobal.logger.info(getSummary());
+      }
+    }
+  }
+  
+}
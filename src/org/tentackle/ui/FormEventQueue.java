@@ -27,7 +27,8 @@ import java.awt.event.KeyEvent;
 
 /**
  * A replacement for the standard event queue providing
- * support for dropping key events a given amount of time.
+ * support for dropping key events a given amount of time
+ * and optional measurement of the event latencies.
  * 
  * @author harald
  */
@@ -38,6 +39,7 @@ public class FormEventQueue extends EventQueue {
   
   
   private long dropKeyEventTime;    // drop keys in ms
+  private volatile EventLatencyMonitor latencyMonitor;    // != null if measure latencies
   
   
   /**
@@ -67,18 +69,80 @@ public class FormEventQueue extends EventQueue {
   }
   
   
+  /**
+   * Sets the latency monitor.<br>
+   * The monitor's watchdog is started and the watchdog of the old monitor, if any, stopped.
+   * 
+   * @param latencyMonitor the monitor, null to disable latency measurement (default)
+   */
+  public void setLatencyMonitor(EventLatencyMonitor latencyMonitor) {
+    EventLatencyMonitor oldMonitor = this.latencyMonitor;
+    if (oldMonitor != null) {
+      oldMonitor.stop();
+    }
+    if (latencyMonitor != null) {
+      latencyMonitor.start();
+    }
+    this.latencyMonitor = latencyMonitor;
+  }
+  
+  /**
+   * Gets the latency monitor.
+   * 
+   * @return the monitor, null if none
+   */
+  public EventLatencyMonitor getLatencyMonitor() {
+    return latencyMonitor;
+  }
+  
+  
   /**
    * {@inheritDoc}
    * <p>
-   * Overridden to drop keyboard events.
+   * Overridden to measure the latency, if a monitor is set.
+   */
+  @Override
+  protected void dispatchEvent(AWTEvent event) {
+    EventLatencyMonitor monitor = latencyMonitor;
+    if (monitor == null) {
+      super.dispatchEvent(event);
+    }
+    else  {
+      monitor.eventStarted(event);
+      try {
+        super.dispatchEvent(event);
+      }
+      finally {
+        monitor.eventFinished();
+      }
+    }
+  }
+  
+  
+  /**
+   * {@inheritDoc}
+   * <p>
+   * Overridden to drop keyboard events and to tell the latency monitor,
+   * if any, that the EDT is idle.
    */
   @Override
   public AWTEvent getNextEvent() throws InterruptedException {
+    EventLatencyMonitor monitor = latencyMonitor;
+    if (monitor != null) {
+      monitor.waitingForEvent();
+    }
     AWTEvent event;
-    do  {
-      event = super.getNextEvent();
+    try {
+      do  {
+        event = super.getNextEvent();
+      }
+      while (event instanceof KeyEvent && ((KeyEvent)event).getWhen() <= dropKeyEventTime);
+    }
+    finally {
+      if (monitor != null) {
+        monitor.eventReceived();
+      }
     }
-    while (event instanceof KeyEvent && ((KeyEvent)event).getWhen() <= dropKeyEventTime);
     return event;
   }
   
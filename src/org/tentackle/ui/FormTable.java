@@ -61,6 +61,7 @@ import javax.swing.UIManager;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
+import javax.swing.event.TableModelEvent;
 import javax.swing.table.TableCellEditor;
 import javax.swing.table.TableCellRenderer;
 import javax.swing.table.TableColumn;
@@ -134,6 +135,11 @@ public class FormTable extends JTable {
   private List<String>        formatFlags;    // special formatting flags
   private List<Integer>       hAlignment;     // horizontal alignment (array of Integers)
   private List<Integer>       vAlignment;     // vertical alignment (array of Integers)
+  
+  private int renderCacheMaxRows = 1000;                        // max. rows in render cache
+  private FormTableRenderCache renderCache =                    // cached values and rendered texts, null if disabled
+                  new FormTableRenderCache(renderCacheMaxRows);
+  private boolean valueCacheEnabled;                            // true if cell values are cached as well
 
   private static final char FORMAT_AUTOSELECT  = 'S';       // autoselect field
   private static final char FORMAT_BLANKZERO   = 'Z';       // blankzero field
@@ -760,6 +766,156 @@ public class FormTable extends JTable {
   }
   
   
+  
+  /**
+   * Enables or disables the render cache.<br>
+   * The render cache holds the formatted texts of the cells, keyed by the
+   * row's {@link FormTableEntry} and the model column. A text is reused
+   * as long as the cell's value doesn't change, i.e. formatting
+   * is skipped on repaints. The cache is cleared whenever the model fires
+   * a {@link TableModelEvent} (see {@link FormTableModel#listUpdated(int, int)} and
+   * {@link FormTableModel#listCellUpdated(int, int)}) or the
+   * formatting of a column is changed.<br>
+   * Works only if the model is a FormTableModel and the default
+   * {@link FormTableCellRenderer} is used. The default is enabled.
+   * 
+   * @param enabled true to enable, false to disable
+   */
+  public void setRenderCacheEnabled(boolean enabled) {
+    if (enabled) {
+      if (renderCache == null) {
+        renderCache = new FormTableRenderCache(renderCacheMaxRows);
+      }
+    }
+    else  {
+      renderCache = null;
+    }
+  }
+  
+  /**
+   * Returns whether the render cache is enabled.
+   * 
+   * @return true if enabled
+   */
+  public boolean isRenderCacheEnabled() {
+    return renderCache != null;
+  }
+  
+  
+  /**
+   * Sets the maximum number of rows held in the render cache.<br>
+   * If exceeded, the cache is cleared and refilled by the visible rows.
+   * The default is 1000.
+   * 
+   * @param maxRows the maximum number of rows
+   */
+  public void setRenderCacheMaxRows(int maxRows) {
+    renderCacheMaxRows = maxRows;
+    if (renderCache != null) {
+      renderCache.setMaxRows(maxRows);
+    }
+  }
+  
+  /**
+   * Gets the maximum number of rows held in the render cache.
+   * 
+   * @return the maximum number of rows
+   */
+  public int getRenderCacheMaxRows() {
+    return renderCacheMaxRows;
+  }
+  
+  
+  /**
+   * Enables caching of the cell values.<br>
+   * By default, {@link #getValueAt(int, int)} invokes {@link FormTableEntry#getValueAt(int)}
+   * for each cell on every repaint. Applications with expensive
+   * getValueAt-implementations (computed columns, lazy references, etc...) may
+   * cache the values until the model fires the next {@link TableModelEvent}.
+   * Requires the render cache to be enabled. The default is disabled.
+   * <p>
+   * Notice: the application must fire listCellUpdated or listUpdated whenever
+   * the data of an entry is changed. Otherwise the table will show stale values.
+   * 
+   * @param enabled true to cache the values
+   */
+  public void setValueCacheEnabled(boolean enabled) {
+    valueCacheEnabled = enabled;
+    clearRenderCache();
+  }
+  
+  /**
+   * Returns whether cell values are cached.
+   * 
+   * @return true if values are cached
+   */
+  public boolean isValueCacheEnabled() {
+    return valueCacheEnabled;
+  }
+  
+  
+  /**
+   * Clears the render cache.<br>
+   * Invoked whenever the model fires an event or the formatting changes.
+   * Applications must only invoke this method if the data of
+   * the entries is changed without firing an event.
+   */
+  public void clearRenderCache() {
+    if (renderCache != null) {
+      renderCache.clear();
+    }
+  }
+  
+  
+  /**
+   * Gets the render cache.
+   * 
+   * @return the cache, null if the model is not a FormTableModel or the cache is disabled
+   */
+  FormTableRenderCache getRenderCache() {
+    return usingAbstractFormTableModel ? renderCache : null;
+  }
+  
+  
+  /**
+   * {@inheritDoc}
+   * <p>
+   * Overridden to clear the render cache.
+   */
+  @Override
+  public void tableChanged(TableModelEvent e) {
+    clearRenderCache();
+    super.tableChanged(e);
+  }
+  
+  
+  /**
+   * {@inheritDoc}
+   * <p>
+   * Overridden to use the value cache, if enabled.
+   * @see #setValueCacheEnabled(boolean) 
+   */
+  @Override
+  public Object getValueAt(int row, int column) {
+    if (valueCacheEnabled) {
+      FormTableRenderCache cache = getRenderCache();
+      if (cache != null) {
+        FormTableEntry entry = getEntryAt(row);
+        if (entry != null) {
+          int modelColumn = convertColumnIndexToModel(column);
+          Object value = cache.getValue(entry, modelColumn);
+          if (value == FormTableRenderCache.NO_VALUE) {
+            value = super.getValueAt(row, column);
+            cache.putValue(entry, modelColumn, value);
+          }
+          return value;
+        }
+      }
+    }
+    return super.getValueAt(row, column);
+  }
+  
+  
   /**
    * Gets the data object at the current row.
    * Useful for action listeners when row is double-clicked.
@@ -1890,6 +2046,7 @@ public class FormTable extends JTable {
     format.set(column, fmt);
     dateFormat.set(column, null);      // force creation of cached format next time
     numberFormat.set(column, null);
+    clearRenderCache();
   }
 
   /**
@@ -2119,6 +2276,7 @@ public class FormTable extends JTable {
    */
   public void setHorizontalAlignment (int column, int align) {
     hAlignment.set(column, new Integer(align));
+    clearRenderCache();
   }
   
   /**
@@ -2130,6 +2288,7 @@ public class FormTable extends JTable {
     for (int i=0; i < hAlignment.size(); i++)  {
       hAlignment.set(i, new Integer(align));
     }
+    clearRenderCache();
   }
 
   /**
@@ -2155,6 +2314,7 @@ public class FormTable extends JTable {
    */
   public void setVerticalAlignment (int column, int align) {
     vAlignment.set(column, new Integer(align));
+    clearRenderCache();
   }
   
   /**
@@ -2168,6 +2328,7 @@ public class FormTable extends JTable {
     for (int i=0; i < vAlignment.size(); i++)  {
       vAlignment.set(i, new Integer(align));
     }
+    clearRenderCache();
   }
 
   /**
@@ -2189,6 +2350,7 @@ public class FormTable extends JTable {
     String formatFlag = formatFlags.get(index);
     if (formatFlag.indexOf(flag) == -1) {
       formatFlags.set(index, formatFlag + flag);
+      clearRenderCache();
     }
   }
 
@@ -2209,7 +2371,10 @@ public class FormTable extends JTable {
         newFlag += c;
       }
     }
-    formatFlags.set(index, newFlag);
+    if (newFlag.length() != formatFlag.length()) {
+      formatFlags.set(index, newFlag);
+      clearRenderCache();
+    }
   }
 
   // same for all columns
@@ -226,8 +226,18 @@ public class FormTableCellRenderer extends DefaultTableCellRenderer {
         setBorder(noFocusBorder);
       }
 
-      // set the default value
-      setValue(value);
+      // rendered text from the table's cache, if value unchanged
+      FormTableRenderCache renderCache = formTable.getRenderCache();
+      FormTableEntry entry = renderCache == null ? null : formTable.getEntryAt(row);
+      String text = entry == null ? null : renderCache.getText(entry, modelColumn, value);
+      
+      if (text != null) {
+        setText(text);
+      }
+      else  {
+        // set the default value
+        setValue(value);
+      }
       
       int hAlign = JLabel.LEFT;
       int vAlign = JLabel.CENTER;
@@ -237,6 +247,10 @@ public class FormTableCellRenderer extends DefaultTableCellRenderer {
         if (value instanceof Number) {
 
           hAlign = SwingConstants.TRAILING;
+          
+          if (text != null) {
+            return this;      // already formatted
+          }
 
           if (formTable.isBlankZero(modelColumn)) {
             boolean blankZero = false;
@@ -294,23 +308,33 @@ public class FormTableCellRenderer extends DefaultTableCellRenderer {
           // not a number
           if (value instanceof Timestamp) {
             hAlign = JLabel.CENTER;
-            setText (value == null ? StringHelper.emptyString : formTable.getDateFormat(modelColumn, true).format((Date)value));            
+            if (text == null) {
+              setText (formTable.getDateFormat(modelColumn, true).format((Date)value));
+            }
           }
           else if (value instanceof Date)  {
             hAlign = JLabel.CENTER;
-            setText (value == null ? StringHelper.emptyString : formTable.getDateFormat(modelColumn).format((Date)value));
+            if (text == null) {
+              setText (formTable.getDateFormat(modelColumn).format((Date)value));
+            }
           }
           return this;
         }
       }
 
       finally {
-        // do some other formatting stuff
-        switch (formTable.getConvert(modelColumn)) {
-        case FormField.CONVERT_LC:  setText(getText().toLowerCase());
-                                    break;
-        case FormField.CONVERT_UC:  setText(getText().toUpperCase());
-                                    break;
+        if (text == null) {
+          // do some other formatting stuff
+          switch (formTable.getConvert(modelColumn)) {
+          case FormField.CONVERT_LC:  setText(getText().toLowerCase());
+                                      break;
+          case FormField.CONVERT_UC:  setText(getText().toUpperCase());
+                                      break;
+          }
+          if (entry != null) {
+            // setFormat above may have cleared the cache: put afterwards
+            renderCache.putText(entry, modelColumn, value, getText());
+          }
         }
         int alignment = formTable.getHorizontalAlignment(modelColumn);
         if (alignment != -1 && alignment != hAlign) {
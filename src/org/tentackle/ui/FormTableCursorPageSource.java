@@ -0,0 +1,171 @@
+/**
+ * Tentackle - a framework for java desktop applications
+ * Copyright (C) 2001-2008 Harald Krake, harald@krake.de, +49 7722 9508-0
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+// $Id$
+
+package org.tentackle.ui;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.tentackle.db.DbCursor;
+import org.tentackle.db.DbObject;
+import org.tentackle.util.Compare;
+
+
+/**
+ * A {@link FormTablePageSource} reading pages through a {@link DbCursor}.
+ * <p>
+ * The cursor must be scrollable, i.e. created with
+ * {@link java.sql.ResultSet#TYPE_SCROLL_INSENSITIVE}.
+ * Sorting is implemented by re-opening the cursor with an {@code ORDER BY}-clause.
+ * Hence, subclasses must provide the SQL column names for the model columns
+ * to enable sorting.
+ * <p>
+ * Notice that the cursor is used from the loader thread of the {@link FormTablePagedModel}.
+ * Applications should use a separate {@link org.tentackle.db.Db} connection for the cursor
+ * to avoid interference with transactions running in the event dispatch thread.
+ *
+ * @author harald
+ */
+abstract public class FormTableCursorPageSource implements FormTablePageSource {
+
+  private DbCursor<? extends DbObject> cursor;    // the current cursor, null if not opened yet
+  private String cursorOrderBy;                   // the order by clause the cursor was opened with
+  private volatile String orderBy;                // the requested order by clause, null = natural order
+
+
+  /**
+   * Opens the cursor.
+   *
+   * @param orderBy the order by clause (without the leading {@code "ORDER BY"}),
+   *        null for the natural ordering
+   * @return the scrollable cursor
+   */
+  abstract protected DbCursor<? extends DbObject> openCursor(String orderBy);
+
+
+  /**
+   * Gets the SQL column name for a model column.<br>
+   * The default implementation returns null, i.e. sorting is not supported.
+   *
+   * @param column the model column index
+   * @return the SQL column name, null if the column is not sortable
+   */
+  protected String getSqlColumnName(int column) {
+    return null;
+  }
+
+
+  /**
+   * Gets the current cursor.
+   * Opens the cursor if not yet done.
+   *
+   * @return the cursor
+   */
+  protected synchronized DbCursor<? extends DbObject> getCursor() {
+    String currentOrderBy = orderBy;
+    if (cursor != null && !Compare.equals(cursorOrderBy, currentOrderBy)) {
+      closeCursor();    // sorting changed
+    }
+    if (cursor == null) {
+      cursor = openCursor(currentOrderBy);
+      cursorOrderBy = currentOrderBy;
+    }
+    return cursor;
+  }
+
+
+  public synchronized int getRowCount() {
+    return getCursor().getRowCount();
+  }
+
+
+  public synchronized List<?> loadPage(int firstRow, int rowCount) {
+    List<DbObject> list = new ArrayList<DbObject>(rowCount);
+    DbCursor<? extends DbObject> c = getCursor();
+    if (c.setRow(firstRow + 1)) {
+      do {
+        list.add(c.getObject());
+      } while (list.size() < rowCount && c.next());
+    }
+    return list;
+  }
+
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * The cursor will be re-opened with the new order on next access.
+   * Does not block while a page is being loaded.
+   */
+  public boolean setSorting(int[] sortby) {
+    String newOrderBy = null;
+    if (sortby != null && sortby.length > 0) {
+      StringBuilder buf = new StringBuilder();
+      for (int i=0; i < sortby.length; i++) {
+        int col = sortby[i];
+        boolean descending = col < 0;
+        if (descending) {
+          col = -col - 1;
+        }
+        String name = getSqlColumnName(col);
+        if (name == null) {
+          return false;
+        }
+        if (i > 0) {
+          buf.append(',');
+        }
+        buf.append(name);
+        if (descending) {
+          buf.append(" DESC");
+        }
+      }
+      newOrderBy = buf.toString();
+    }
+    orderBy = newOrderBy;
+    return true;
+  }
+
+
+  /**
+   * Gets the current order by clause.
+   *
+   * @return the order by clause, null if natural order
+   */
+  public String getOrderBy() {
+    return orderBy;
+  }
+
+
+  public synchronized void close() {
+    closeCursor();
+  }
+
+
+  /**
+   * closes the cursor, if open
+   */
+  private void closeCursor() {
+    if (cursor != null) {
+      cursor.close();
+      cursor = null;
+    }
+  }
+
+}
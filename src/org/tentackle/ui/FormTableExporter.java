@@ -0,0 +1,588 @@
+/**
+ * Tentackle - a framework for java desktop applications
+ * Copyright (C) 2001-2008 Harald Krake, harald@krake.de, +49 7722 9508-0
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+// $Id$
+
+package org.tentackle.ui;
+
+import java.awt.EventQueue;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import javax.swing.table.TableColumnModel;
+import javax.swing.table.TableModel;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
+import javax.xml.transform.stream.StreamResult;
+import org.tentackle.util.StringHelper;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+
+/**
+ * Streaming export of a {@link FormTable} to XML.
+ * <p>
+ * The rows are fetched page by page and written through a SAX {@link TransformerHandler},
+ * i.e. the memory consumption does not depend on the number of rows.
+ * If the table is backed by a {@link FormTablePagedModel}, the rows are read
+ * from its {@link FormTablePageSource} directly without loading them into the model.
+ * Otherwise the values of each page are retrieved from the table model
+ * in the event dispatch thread.
+ * <p>
+ * The export is usually run from a {@link WorkerThread} via {@link #exportInBackground}.
+ * Interrupting the thread cancels the export.
+ * <p>
+ * Two formats are supported:
+ * <ul>
+ * <li>{@link #XML}: the generic FormTable-XML format</li>
+ * <li>{@link #SPREADSHEET}: an XML spreadsheet that can be opened by Excel.
+ *     Other than the binary excel format, this is not limited to 65536 rows.</li>
+ * </ul>
+ *
+ * @author harald
+ */
+public class FormTableExporter {
+
+  /** generic FormTable-XML format **/
+  public static final int XML = 0;
+
+  /** XML spreadsheet (Excel 2003 XML) **/
+  public static final int SPREADSHEET = 1;
+
+  /** default number of rows per page **/
+  public static final int DEFAULT_PAGE_SIZE = 500;
+
+
+  private static final String SS_NAMESPACE = "urn:schemas-microsoft-com:office:spreadsheet";   // NOI18N
+
+
+  private final FormTable table;            // the table
+  private final int format;                 // XML or SPREADSHEET
+  private final String title;               // the title, null if none
+  private final String intro;               // the intro, null if none
+  private final int[] selectedRows;         // the selected rows, null if all rows
+  private final int[] columns;              // model column indexes
+  private final String[] columnNames;       // displayed column names
+  private final int[] columnWidths;         // column widths
+  private final FormTablePageSource source; // the page source, null if export from table model
+  private final FormTableEntry template;    // the template to create entries from source objects
+  private final int rowCount;               // number of rows to export
+
+  private int pageSize;                     // rows per page
+  private SimpleDateFormat dateFormat;      // date format for spreadsheets
+  private volatile int progress;            // progress in percent
+
+
+  /**
+   * Creates an exporter.<br>
+   * Must be invoked from the event dispatch thread.
+   *
+   * @param table the table to export
+   * @param format the format, one of {@link #XML} or {@link #SPREADSHEET}
+   * @param onlySelected true if export only selected rows
+   * @param title the title, null if none
+   * @param intro the intro, null if none
+   */
+  public FormTableExporter(FormTable table, int format, boolean onlySelected, String title, String intro) {
+
+    this.table  = table;
+    this.format = format;
+    this.title  = title;
+    this.intro  = intro;
+
+    pageSize = DEFAULT_PAGE_SIZE;
+
+    TableModel model = table.getModel();
+    TableColumnModel columnModel = table.getColumnModel();
+    boolean isAbstractFormTableModel = model instanceof AbstractFormTableModel;
+
+    int cols = columnModel.getColumnCount();
+    columns = new int[cols];
+    columnNames = new String[cols];
+    columnWidths = new int[cols];
+    for (int i=0; i < cols; i++) {
+      int c = columnModel.getColumn(i).getModelIndex();
+      columns[i] = c;
+      columnNames[i] = isAbstractFormTableModel ?
+                         ((AbstractFormTableModel)model).getDisplayedColumnName(c) :
+                         model.getColumnName(c);
+      columnWidths[i] = columnModel.getColumn(i).getWidth();
+    }
+
+    if (onlySelected) {
+      selectedRows = table.getSelectedRows();
+      rowCount = selectedRows.length;
+      source = null;
+      template = null;
+    }
+    else  {
+      selectedRows = null;
+      rowCount = model.getRowCount();
+      // check for a paged model
+      TableModel dataModel = model;
+      while (dataModel instanceof FormTableMap) {
+        dataModel = ((FormTableMap) dataModel).getModel();
+      }
+      if (dataModel instanceof FormTablePagedModel && ((FormTablePagedModel) dataModel).getSource() != null) {
+        // paged models are always sorted by the source
+        source = ((FormTablePagedModel) dataModel).getSource();
+        template = ((FormTablePagedModel) dataModel).getTemplate();
+      }
+      else  {
+        source = null;
+        template = null;
+      }
+    }
+  }
+
+
+  /**
+   * Sets the number of rows per page.
+   *
+   * @param pageSize the page size, default is {@link #DEFAULT_PAGE_SIZE}
+   */
+  public void setPageSize(int pageSize) {
+    if (pageSize < 1) {
+      throw new IllegalArgumentException("illegal page size " + pageSize);
+    }
+    this.pageSize = pageSize;
+  }
+
+  /**
+   * Gets the number of rows per page.
+   *
+   * @return the page size
+   */
+  public int getPageSize() {
+    return pageSize;
+  }
+
+
+  /**
+   * Gets the number of rows to export.
+   *
+   * @return the number of rows
+   */
+  public int getRowCount() {
+    return rowCount;
+  }
+
+
+  /**
+   * Gets the progress.
+   *
+   * @return the progress in percent
+   */
+  public int getProgress() {
+    return progress;
+  }
+
+
+  /**
+   * Invoked after each page.<br>
+   * The default implementation does nothing.
+   * Invoked from the exporting thread.
+   *
+   * @param percent the progress in percent
+   */
+  protected void exportProgress(int percent) {
+  }
+
+
+  /**
+   * Exports the table to a file in a {@link WorkerThread}.<br>
+   * The worker dialog shows the progress and allows to cancel the export.
+   * A partially written file will be removed if cancelled or failed.
+   *
+   * @param file the output file
+   * @param onSuccess the runnable invoked from the event dispatch thread when done, null if none
+   * @return the worker thread (already started)
+   */
+  public WorkerThread exportInBackground(final File file, final Runnable onSuccess) {
+    WorkerThread worker = new WorkerThread(new Runnable() {
+      public void run() {
+        WorkerDialog dialog = (WorkerDialog) ((WorkerThread) Thread.currentThread()).getWorkerDialog();
+        try {
+          OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 65536);
+          try {
+            exportWithProgress(out, dialog);
+          }
+          finally {
+            out.close();
+          }
+          if (onSuccess != null) {
+            EventQueue.invokeLater(onSuccess);
+          }
+        }
+        catch (InterruptedException ex) {
+          file.delete();
+          UIGlobal.logger.info("export to " + file + " cancelled");
+        }
+        catch (final Exception ex) {
+          file.delete();
+          EventQueue.invokeLater(new Runnable() {
+            public void run() {
+              FormError.printException(format == XML ?
+                                         Locales.bundle.getString("XML-Datei_konnte_nicht_erzeugt_werden") :
+                                         Locales.bundle.getString("Excel-Datei_konnte_nicht_erzeugt_werden"), ex);
+            }
+          });
+        }
+      }
+    }, false, Locales.bundle.getString("exportiere_Tabelle..."));
+    worker.start();
+    return worker;
+  }
+
+
+  /**
+   * Exports the table.<br>
+   * If invoked from the event dispatch thread the table model is accessed directly,
+   * otherwise by pages via {@link EventQueue#invokeAndWait}.
+   *
+   * @param out the output stream (not closed)
+   * @throws IOException if writing failed
+   * @throws TransformerConfigurationException if no transformer
+   * @throws SAXException if transformation failed
+   * @throws InterruptedException if export cancelled
+   */
+  public void export(OutputStream out)
+         throws IOException, TransformerConfigurationException, SAXException, InterruptedException {
+    exportWithProgress(out, null);
+  }
+
+
+  /**
+   * Exports the table and updates the progress of a worker dialog.
+   */
+  private void exportWithProgress(OutputStream out, WorkerDialog dialog)
+          throws IOException, TransformerConfigurationException, SAXException, InterruptedException {
+
+    StreamResult streamResult = new StreamResult(out);
+    SAXTransformerFactory tf = (SAXTransformerFactory) SAXTransformerFactory.newInstance();
+    TransformerHandler hd = tf.newTransformerHandler();
+    Transformer serializer = hd.getTransformer();
+    serializer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+    serializer.setOutputProperty(OutputKeys.INDENT, format == XML ? "yes" : "no");
+    hd.setResult(streamResult);
+    hd.startDocument();
+
+    String[] tags = null;
+    if (format == XML) {
+      startXml(hd);
+      tags = new String[columns.length];
+      for (int i=0; i < columns.length; i++) {
+        tags[i] = StringHelper.toVarName(StringHelper.unDiacrit(columnNames[i]));
+      }
+    }
+    else  {
+      dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS");
+      startSpreadsheet(hd);
+    }
+
+    AttributesImpl atts = new AttributesImpl();
+    String rowTag = table.getName();
+    int lastPercent = -1;
+
+    for (int first=0; first < rowCount; first += pageSize) {
+
+      if (Thread.interrupted()) {
+        throw new InterruptedException("export cancelled");
+      }
+
+      Object[][] page = loadPage(first, Math.min(pageSize, rowCount - first));
+
+      for (Object[] values: page) {
+        if (format == XML) {
+          hd.startElement(StringHelper.emptyString, StringHelper.emptyString, rowTag, atts);
+          for (int i=0; i < values.length; i++)  {
+            Object object = values[i];
+            String value = object == null ? StringHelper.emptyString : object.toString();
+            hd.startElement(StringHelper.emptyString, StringHelper.emptyString, tags[i], atts);
+            hd.characters(value.toCharArray(), 0, value.length());
+            hd.endElement(StringHelper.emptyString, StringHelper.emptyString, tags[i]);
+          }
+          hd.endElement(StringHelper.emptyString, StringHelper.emptyString, rowTag);
+        }
+        else  {
+          writeSpreadsheetRow(hd, values);
+        }
+      }
+
+      int percent = (int) ((first + page.length) * 100L / rowCount);
+      if (percent != lastPercent) {
+        lastPercent = percent;
+        progress = percent;
+        if (dialog != null) {
+          dialog.setProgress(percent);
+        }
+        exportProgress(percent);
+      }
+      if (page.length == 0) {
+        break;    // table shrunk meanwhile
+      }
+    }
+
+    if (format == XML) {
+      hd.endElement(StringHelper.emptyString, StringHelper.emptyString, "FormTable");
+    }
+    else  {
+      endSpreadsheet(hd);
+    }
+    hd.endDocument();
+    out.flush();
+  }
+
+
+  /**
+   * Loads the values of a page.
+   *
+   * @param first the first row
+   * @param count the number of rows
+   * @return the values per row and column
+   * @throws InterruptedException if interrupted while waiting for the event dispatch thread
+   */
+  private Object[][] loadPage(final int first, final int count) throws InterruptedException {
+
+    if (source != null) {
+      // read from page source (in this thread)
+      List<?> objects = source.loadPage(first, count);
+      Object[][] page = new Object[objects.size()][];
+      for (int r=0; r < page.length; r++) {
+        FormTableEntry entry = template.newInstanceOf(objects.get(r));
+        Object[] values = new Object[columns.length];
+        for (int i=0; i < columns.length; i++) {
+          values[i] = entry.getValueAt(columns[i]);
+        }
+        page[r] = values;
+      }
+      return page;
+    }
+
+    final Object[][][] result = new Object[1][][];
+    Runnable loader = new Runnable() {
+      public void run() {
+        TableModel model = table.getModel();
+        int num = Math.max(0, Math.min(count, selectedRows == null ? model.getRowCount() - first : count));
+        Object[][] page = new Object[num][];
+        for (int r=0; r < num; r++) {
+          int modelRow = selectedRows == null ? first + r : selectedRows[first + r];
+          Object[] values = new Object[columns.length];
+          for (int i=0; i < columns.length; i++) {
+            values[i] = model.getValueAt(modelRow, columns[i]);
+          }
+          page[r] = values;
+        }
+        result[0] = page;
+      }
+    };
+
+    if (EventQueue.isDispatchThread()) {
+      loader.run();
+    }
+    else  {
+      try {
+        EventQueue.invokeAndWait(loader);
+      }
+      catch (InvocationTargetException ex) {
+        throw new GUIRuntimeException("loading rows " + first + " - " + (first + count - 1) + " failed", ex.getCause());
+      }
+    }
+    return result[0];
+  }
+
+
+  /**
+   * Writes title and intro of the FormTable-XML format.
+   */
+  private void startXml(TransformerHandler hd) throws SAXException {
+    AttributesImpl atts = new AttributesImpl();
+    hd.startElement(StringHelper.emptyString, StringHelper.emptyString, "FormTable", atts);
+    if (title != null)  {
+      hd.startElement(StringHelper.emptyString, StringHelper.emptyString, "title", atts);
+      hd.characters(title.toCharArray(), 0, title.length());
+      hd.endElement(StringHelper.emptyString, StringHelper.emptyString, "title");
+    }
+    if (intro != null)  {
+      hd.startElement(StringHelper.emptyString, StringHelper.emptyString, "intro", atts);
+      hd.characters(intro.toCharArray(), 0, intro.length());
+      hd.endElement(StringHelper.emptyString, StringHelper.emptyString, "intro");
+    }
+  }
+
+
+  /**
+   * Writes the header of the spreadsheet.
+   */
+  private void startSpreadsheet(TransformerHandler hd) throws SAXException {
+    hd.processingInstruction("mso-application", "progid=\"Excel.Sheet\"");    // NOI18N
+    hd.startPrefixMapping(StringHelper.emptyString, SS_NAMESPACE);
+    hd.startPrefixMapping("ss", SS_NAMESPACE);
+    startElement(hd, "Workbook");
+
+    startElement(hd, "Styles");
+    startElement(hd, "Style", "ss:ID", "title");
+    emptyElement(hd, "Font", "ss:Bold", "1");
+    endElement(hd, "Style");
+    startElement(hd, "Style", "ss:ID", "intro");
+    emptyElement(hd, "Alignment", "ss:WrapText", "1");
+    endElement(hd, "Style");
+    startElement(hd, "Style", "ss:ID", "header");
+    emptyElement(hd, "Alignment", "ss:Horizontal", "Center");
+    emptyElement(hd, "Font", "ss:Bold", "1", "ss:Italic", "1");
+    endElement(hd, "Style");
+    startElement(hd, "Style", "ss:ID", "date");
+    emptyElement(hd, "NumberFormat", "ss:Format", "Short Date");
+    endElement(hd, "Style");
+    endElement(hd, "Styles");
+
+    String sheetName = title == null ? "Sheet1" : title;
+    if (sheetName.length() > 31) {
+      sheetName = sheetName.substring(0, 31);   // excel's limit
+    }
+    startElement(hd, "Worksheet", "ss:Name", sheetName.replaceAll("[\\[\\]\\*\\?:/\\\\]", "_"));
+    startElement(hd, "Table");
+    for (int width: columnWidths) {
+      emptyElement(hd, "Column", "ss:Width", Integer.toString(width));
+    }
+
+    String merge = Integer.toString(columns.length - 1);
+    if (title != null) {
+      startElement(hd, "Row");
+      startElement(hd, "Cell", "ss:StyleID", "title", "ss:MergeAcross", merge);
+      data(hd, "String", title);
+      endElement(hd, "Cell");
+      endElement(hd, "Row");
+    }
+    if (intro != null) {
+      startElement(hd, "Row");
+      startElement(hd, "Cell", "ss:StyleID", "intro", "ss:MergeAcross", merge);
+      data(hd, "String", intro);
+      endElement(hd, "Cell");
+      endElement(hd, "Row");
+    }
+    emptyElement(hd, "Row");    // always skip one line
+
+    startElement(hd, "Row");
+    for (String name: columnNames) {
+      startElement(hd, "Cell", "ss:StyleID", "header");
+      data(hd, "String", name == null ? StringHelper.emptyString : name);
+      endElement(hd, "Cell");
+    }
+    endElement(hd, "Row");
+  }
+
+
+  /**
+   * Writes a row of the spreadsheet.
+   */
+  private void writeSpreadsheetRow(TransformerHandler hd, Object[] values) throws SAXException {
+    startElement(hd, "Row");
+    for (Object value: values) {
+      if (value instanceof Boolean) {
+        startElement(hd, "Cell");
+        data(hd, "Boolean", ((Boolean) value).booleanValue() ? "1" : "0");
+      }
+      else if (value instanceof Number) {
+        startElement(hd, "Cell");
+        double dval = ((Number) value).doubleValue();
+        data(hd, "Number", dval == (long) dval ? Long.toString((long) dval) : Double.toString(dval));
+      }
+      else if (value instanceof Date) {
+        startElement(hd, "Cell", "ss:StyleID", "date");
+        data(hd, "DateTime", dateFormat.format((Date) value));
+      }
+      else if (value instanceof Calendar) {
+        startElement(hd, "Cell", "ss:StyleID", "date");
+        data(hd, "DateTime", dateFormat.format(((Calendar) value).getTime()));
+      }
+      else if (value != null) {
+        startElement(hd, "Cell");
+        data(hd, "String", value.toString());
+      }
+      else  {
+        emptyElement(hd, "Cell");
+        continue;
+      }
+      endElement(hd, "Cell");
+    }
+    endElement(hd, "Row");
+  }
+
+
+  /**
+   * Writes the end of the spreadsheet.
+   */
+  private void endSpreadsheet(TransformerHandler hd) throws SAXException {
+    endElement(hd, "Table");
+    endElement(hd, "Worksheet");
+    endElement(hd, "Workbook");
+    hd.endPrefixMapping("ss");
+    hd.endPrefixMapping(StringHelper.emptyString);
+  }
+
+
+  /**
+   * Starts a spreadsheet element.
+   * The attributes are given as pairs of qualified name and value.
+   */
+  private void startElement(TransformerHandler hd, String tag, String... attributes) throws SAXException {
+    AttributesImpl atts = new AttributesImpl();
+    for (int i=0; i < attributes.length; i += 2) {
+      String qName = attributes[i];
+      atts.addAttribute(SS_NAMESPACE, qName.substring(qName.indexOf(':') + 1), qName, "CDATA", attributes[i + 1]);
+    }
+    hd.startElement(SS_NAMESPACE, tag, tag, atts);
+  }
+
+  /**
+   * Ends a spreadsheet element.
+   */
+  private void endElement(TransformerHandler hd, String tag) throws SAXException {
+    hd.endElement(SS_NAMESPACE, tag, tag);
+  }
+
+  /**
+   * Writes an empty spreadsheet element.
+   */
+  private void emptyElement(TransformerHandler hd, String tag, String... attributes) throws SAXException {
+    startElement(hd, tag, attributes);
+    endElement(hd, tag);
+  }
+
+  /**
+   * Writes a data element of a cell.
+   */
+  private void data(TransformerHandler hd, String type, String value) throws SAXException {
+    startElement(hd, "Data", "ss:Type", type);
+    hd.characters(value.toCharArray(), 0, value.length());
+    endElement(hd, "Data");
+  }
+
+}
@@ -172,6 +172,11 @@ public class FormTableMap extends AbstractFormTableModel
     fireTableChanged(e);
   }
   
+  @Override
+  public boolean applySorting(int[] sortby) {
+    return model.applySorting(sortby);
+  }
+
   @Override
   public boolean isDataChanged() {
     return model.isDataChanged();
@@ -0,0 +1,71 @@
+/**
+ * Tentackle - a framework for java desktop applications
+ * Copyright (C) 2001-2008 Harald Krake, harald@krake.de, +49 7722 9508-0
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+// $Id$
+
+package org.tentackle.ui;
+
+import java.util.List;
+
+
+/**
+ * Source of rows for a {@link FormTablePagedModel}.
+ * <p>
+ * The methods of a page source are invoked from the loader thread
+ * of the paged model, i.e. <em>not</em> from the event dispatch thread.
+ * Implementations must be thread-safe with respect to {@link #setSorting}
+ * which is invoked from the event dispatch thread.
+ *
+ * @author harald
+ */
+public interface FormTablePageSource {
+
+  /**
+   * Gets the total number of rows.
+   *
+   * @return the number of rows
+   */
+  public int getRowCount();
+
+  /**
+   * Loads a page of objects.
+   *
+   * @param firstRow the first row to load, starting at 0
+   * @param rowCount the maximum number of rows to load
+   * @return the list of objects, never null
+   */
+  public List<?> loadPage(int firstRow, int rowCount);
+
+  /**
+   * Sets the sorting.<br>
+   * The source is expected to deliver the rows in the requested order
+   * the next time {@link #getRowCount()} or {@link #loadPage} is invoked.
+   *
+   * @param sortby the array of column indexes (see {@link FormTableEntry#compareTo}),
+   *        an empty array for the natural ordering
+   * @return true if the source supports this sorting, false if not
+   */
+  public boolean setSorting(int[] sortby);
+
+  /**
+   * Releases all resources held by this source.
+   */
+  public void close();
+
+}
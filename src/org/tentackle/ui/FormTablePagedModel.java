@@ -0,0 +1,513 @@
+/**
+ * Tentackle - a framework for java desktop applications
+ * Copyright (C) 2001-2008 Harald Krake, harald@krake.de, +49 7722 9508-0
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+// $Id$
+
+package org.tentackle.ui;
+
+import java.awt.EventQueue;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+
+/**
+ * Table-model for {@link FormTable}s that keeps only a window of rows in memory.
+ * <p>
+ * The rows are loaded page-wise from a {@link FormTablePageSource} by a background
+ * thread. Only the most recently used pages are kept, older pages are dropped
+ * and reloaded if necessary. While a page is being loaded the table shows
+ * placeholder rows (see {@link #getPlaceholderValueAt}).
+ * <p>
+ * Sorting is pushed down to the page source (usually an SQL {@code ORDER BY}),
+ * i.e. a {@link FormTableSorter} on top of this model will not sort in memory.
+ * If the source does not support a sorting (e.g. columns without an SQL name),
+ * the rows are kept in the natural order of the source. Sorting in memory would
+ * require loading all pages.
+ * <p>
+ * Notice: except for the page source all methods must be invoked from the
+ * event dispatch thread. The model is read-only.
+ *
+ * @author harald
+ */
+public class FormTablePagedModel extends AbstractFormTableModel {
+
+  private static final long serialVersionUID = 4093865527181301946L;
+
+  /** default number of rows per page **/
+  public static final int DEFAULT_PAGE_SIZE = 100;
+
+  /** default number of pages kept in memory **/
+  public static final int DEFAULT_MAX_PAGES = 20;
+
+
+  private FormTableEntry template;              // template to create entries
+  private FormTablePageSource source;           // the page source, null = none
+  private final int pageSize;                   // rows per page
+  private final int maxPages;                   // max. number of pages in memory
+  private final Map<Integer,FormTableEntry[]> pages;  // loaded pages in LRU order
+  private final Set<Integer> pendingPages;      // pages currently being loaded
+  private final FormTableEntry placeholder;     // the placeholder entry
+  private ExecutorService loader;               // the loader thread
+  private int rowCount;                         // number of rows
+  private int[] sortby;                         // the current sorting, null if natural order
+  private int[] rejectedSortby;                 // the last sorting rejected by the source, null if none
+  private volatile int generation;              // incremented whenever the source or sorting changes
+
+
+  /**
+   * Creates a paged table model.
+   *
+   * @param template the table entry as a template to create other entries
+   * @param pageSize the number of rows per page
+   * @param maxPages the maximum number of pages kept in memory
+   */
+  public FormTablePagedModel(FormTableEntry template, int pageSize, int maxPages) {
+    if (pageSize <= 0 || maxPages <= 0) {
+      throw new IllegalArgumentException("pageSize and maxPages must be > 0");
+    }
+    this.template     = template;
+    this.pageSize     = pageSize;
+    this.maxPages     = maxPages;
+    this.pendingPages = new HashSet<Integer>();
+    this.placeholder  = new PlaceholderEntry();
+    this.pages        = new LinkedHashMap<Integer,FormTableEntry[]>(16, 0.75f, true) {
+      private static final long serialVersionUID = -2349870412387543211L;
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer,FormTableEntry[]> eldest) {
+        return size() > FormTablePagedModel.this.maxPages;
+      }
+    };
+  }
+
+  /**
+   * Creates a paged table model with default page size and window.
+   *
+   * @param template the table entry as a template to create other entries
+   */
+  public FormTablePagedModel(FormTableEntry template) {
+    this(template, DEFAULT_PAGE_SIZE, DEFAULT_MAX_PAGES);
+  }
+
+  /**
+   * Creates a paged table model with default page size and window for a page source.
+   *
+   * @param template the table entry as a template to create other entries
+   * @param source the page source
+   */
+  public FormTablePagedModel(FormTableEntry template, FormTablePageSource source) {
+    this(template);
+    sourceChanged(source);
+  }
+
+
+  /**
+   * Sets the template (useful if context changed)
+   * @param template the new template
+   */
+  public void setTemplate(FormTableEntry template)  {
+    this.template = template;
+  }
+
+  public FormTableEntry getTemplate() {
+    return template;
+  }
+
+  /**
+   * Gets the number of rows per page.
+   *
+   * @return the page size
+   */
+  public int getPageSize() {
+    return pageSize;
+  }
+
+  /**
+   * Gets the maximum number of pages kept in memory.
+   *
+   * @return the max. number of pages
+   */
+  public int getMaxPages() {
+    return maxPages;
+  }
+
+  /**
+   * Gets the page source.
+   *
+   * @return the source, null if none
+   */
+  public FormTablePageSource getSource() {
+    return source;
+  }
+
+
+  /**
+   * Sets a new page source.<br>
+   * The old source, if any, will be closed.
+   * The number of rows is determined in background and the
+   * model fires tableDataChanged when known.
+   *
+   * @param source the new page source, null to clear the model
+   */
+  public void sourceChanged(FormTablePageSource source) {
+    if (this.source != null && this.source != source) {
+      final FormTablePageSource oldSource = this.source;
+      if (loader != null) {
+        // close in loader thread to serialize with pending loads
+        loader.execute(new Runnable() {
+          public void run() {
+            oldSource.close();
+          }
+        });
+      }
+      else  {
+        oldSource.close();
+      }
+    }
+    this.source = source;
+    rejectedSortby = null;
+    if (source != null && sortby != null && !source.setSorting(sortby)) {
+      rejectedSortby = sortby;
+      sortby = null;
+    }
+    setDataChanged(false);
+    reload();
+  }
+
+
+  /**
+   * Drops all pages and reloads the model from the page source.
+   */
+  public void reload() {
+    generation++;
+    pages.clear();
+    pendingPages.clear();
+    rowCount = 0;
+    fireTableDataChanged();
+    if (source != null) {
+      final int gen = generation;
+      final FormTablePageSource src = source;
+      getLoader().execute(new Runnable() {
+        public void run() {
+          final int count = src.getRowCount();
+          EventQueue.invokeLater(new Runnable() {
+            public void run() {
+              if (gen == generation) {
+                rowCount = count;
+                fireTableDataChanged();
+              }
+            }
+          });
+        }
+      });
+    }
+  }
+
+
+  /**
+   * Closes the page source and terminates the loader thread.
+   */
+  public void close() {
+    generation++;
+    pages.clear();
+    pendingPages.clear();
+    if (loader != null) {
+      final FormTablePageSource src = source;
+      if (src != null) {
+        loader.execute(new Runnable() {
+          public void run() {
+            src.close();
+          }
+        });
+      }
+      loader.shutdown();
+      loader = null;
+    }
+    else if (source != null) {
+      source.close();
+    }
+    source = null;
+    rowCount = 0;
+    fireTableDataChanged();
+  }
+
+
+  /**
+   * Determines whether a row is loaded.
+   *
+   * @param row the row index
+   * @return true if loaded, false if placeholder
+   */
+  public boolean isRowLoaded(int row) {
+    FormTableEntry[] page = pages.get(row / pageSize);
+    return page != null && row % pageSize < page.length;
+  }
+
+
+  /**
+   * Gets the value displayed for a row that is not loaded yet.<br>
+   * The default implementation returns null, i.e. an empty row.
+   * Override to display something like "loading...".
+   *
+   * @param rowIndex the row index
+   * @param columnIndex the column index
+   * @return the placeholder value
+   */
+  public Object getPlaceholderValueAt(int rowIndex, int columnIndex) {
+    return null;
+  }
+
+
+  public int getRowCount() {
+    return rowCount;
+  }
+
+  public int getColumnCount() {
+    return template.getColumnCount();
+  }
+
+  @Override
+  public String getColumnName (int columnIndex) {
+    return template.getColumnName(columnIndex);
+  }
+
+  public String getDisplayedColumnName (int columnIndex) {
+    return template.getDisplayedColumnName(columnIndex);
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * Only the template and the loaded pages are analyzed.
+   */
+  @Override
+  public Class<?> getColumnClass (int columnIndex) {
+    Class<?> colClass = template.getColumnClass(columnIndex);
+    if (colClass != null) {
+      return colClass;
+    }
+    for (FormTableEntry[] page: pages.values()) {
+      for (FormTableEntry entry: page) {
+        Object value = entry.getValueAt(columnIndex);
+        if (value != null) {
+          return value.getClass();
+        }
+      }
+    }
+    return Object.class;
+  }
+
+
+  public Object getValueAt(int rowIndex, int columnIndex) {
+    FormTableEntry entry = getEntryAt(rowIndex);
+    if (entry == placeholder) {
+      return getPlaceholderValueAt(rowIndex, columnIndex);
+    }
+    return entry == null ? null : entry.getValueAt(columnIndex);
+  }
+
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * If the row is not loaded yet, the page will be scheduled for loading
+   * and a placeholder entry is returned.
+   */
+  public FormTableEntry getEntryAt(int row) {
+    if (row < 0 || row >= rowCount) {
+      return null;
+    }
+    int pageNo = row / pageSize;
+    FormTableEntry[] page = pages.get(pageNo);
+    int offset = row % pageSize;
+    if (page != null && offset < page.length) {
+      if (offset >= pageSize - (pageSize >> 2)) {
+        // last quarter of page: prefetch next one
+        schedulePage(pageNo + 1);
+      }
+      return page[offset];
+    }
+    schedulePage(pageNo);
+    placeholder.setRow(row);
+    return placeholder;
+  }
+
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * Sorting is pushed down to the page source.
+   * If the source does not support the requested sorting, the natural
+   * ordering of the source is restored. A rejected sorting is not passed
+   * to the source again until another sorting is requested.
+   * <p>
+   * Always returns true since a paged model must never be sorted in memory.
+   */
+  @Override
+  public boolean applySorting(int[] sortby) {
+    if (sortby != null && sortby.length == 0) {
+      sortby = null;
+    }
+    if (!Arrays.equals(this.sortby, sortby) && (sortby == null || !Arrays.equals(rejectedSortby, sortby))) {
+      this.sortby = sortby;
+      rejectedSortby = null;
+      if (source != null) {
+        if (!source.setSorting(sortby == null ? new int[0] : sortby)) {
+          UIGlobal.logger.warning("sorting not supported by page source " + source);
+          rejectedSortby = sortby;
+          this.sortby = null;
+          source.setSorting(new int[0]);    // back to natural order
+        }
+        reload();
+      }
+    }
+    return true;
+  }
+
+
+  /**
+   * Schedules a page for loading if not already loaded or pending.
+   *
+   * @param pageNo the page number
+   */
+  private void schedulePage(final int pageNo) {
+    final int firstRow = pageNo * pageSize;
+    if (source != null && firstRow < rowCount &&
+        !pages.containsKey(pageNo) && pendingPages.add(pageNo)) {
+      final int gen = generation;
+      final FormTablePageSource src = source;
+      final FormTableEntry tmpl = template;
+      getLoader().execute(new Runnable() {
+        public void run() {
+          if (gen != generation) {
+            return;   // stale request: source or sorting changed meanwhile
+          }
+          FormTableEntry[] loadedPage = null;
+          try {
+            List<?> objects = src.loadPage(firstRow, pageSize);
+            loadedPage = new FormTableEntry[objects.size()];
+            for (int i=0; i < loadedPage.length; i++) {
+              loadedPage[i] = tmpl.newInstanceOf(objects.get(i));
+            }
+          }
+          catch (RuntimeException ex) {
+            UIGlobal.logger.severe("loading page " + pageNo + " failed: " + ex);
+          }
+          final FormTableEntry[] page = loadedPage;
+          EventQueue.invokeLater(new Runnable() {
+            public void run() {
+              pageLoaded(gen, pageNo, page);
+            }
+          });
+        }
+      });
+    }
+  }
+
+
+  /**
+   * Installs a loaded page.
+   * Invoked from the event dispatch thread.
+   */
+  private void pageLoaded(int gen, int pageNo, FormTableEntry[] page) {
+    if (gen == generation) {
+      pendingPages.remove(pageNo);
+      if (page == null) {
+        return;   // failed: will be retried on next access
+      }
+      int firstRow = pageNo * pageSize;
+      for (int i=0; i < page.length; i++) {
+        page[i].setModel(this);
+        page[i].setRow(firstRow + i);
+      }
+      pages.put(pageNo, page);
+      if (page.length > 0) {
+        fireTableRowsUpdated(firstRow, firstRow + page.length - 1);
+      }
+    }
+  }
+
+
+  /**
+   * Gets the loader, creates it if not yet done.
+   */
+  private ExecutorService getLoader() {
+    if (loader == null) {
+      loader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "FormTablePagedModel loader");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return loader;
+  }
+
+
+
+  /**
+   * Entry for rows not loaded yet.
+   * Delegates the configuration to the template.
+   */
+  private class PlaceholderEntry extends FormTableEntry {
+
+    public FormTableEntry newInstanceOf(Object object) {
+      return template.newInstanceOf(object);
+    }
+
+    public int getColumnCount() {
+      return template.getColumnCount();
+    }
+
+    public String getColumnName(int mColumn) {
+      return template.getColumnName(mColumn);
+    }
+
+    @Override
+    public String getDisplayedColumnName(int mColumn) {
+      return template.getDisplayedColumnName(mColumn);
+    }
+
+    @Override
+    public String getFormat(int mColumn) {
+      return template.getFormat(mColumn);
+    }
+
+    @Override
+    public int getHorizontalAlignment(int mColumn) {
+      return template.getHorizontalAlignment(mColumn);
+    }
+
+    public Object getObject() {
+      return null;
+    }
+
+    public Object getValueAt(int mColumn) {
+      return getPlaceholderValueAt(getRow(), mColumn);
+    }
+  }
+
+}
@@ -0,0 +1,172 @@
+/**
+ * Tentackle - a framework for java desktop applications
+ * Copyright (C) 2001-2008 Harald Krake, harald@krake.de, +49 7722 9508-0
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+// $Id$
+
+package org.tentackle.ui;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+
+/**
+ * Cache for the values and rendered texts of the cells of a {@link FormTable}.<br>
+ * 
+ * The cells are identified by the {@link FormTableEntry} of the row and the model column.
+ * Rendered texts are only reused if the cell's value is still the same.
+ * The cache is cleared whenever the table's model fires an event, i.e. on
+ * {@code listUpdated}, {@code listCellUpdated}, etc..., and whenever the
+ * formatting of a column is changed.
+ *
+ * @author harald
+ */
+class FormTableRenderCache {
+  
+  /** marker for "not cached" **/
+  static final Object NO_VALUE = new Object();
+  
+  private final Map<FormTableEntry,Object[]> rows;   // 3 slots per column: value, rendered value, text
+  private int maxRows;                               // max. number of cached rows
+  
+  
+  /**
+   * Creates a cache.
+   * 
+   * @param maxRows the maximum number of rows to cache
+   */
+  FormTableRenderCache(int maxRows) {
+    this.maxRows = maxRows;
+    rows = new IdentityHashMap<FormTableEntry,Object[]>();
+  }
+  
+  
+  /**
+   * Sets the maximum number of cached rows.
+   * 
+   * @param maxRows the maximum number of rows
+   */
+  void setMaxRows(int maxRows) {
+    this.maxRows = maxRows;
+    clear();
+  }
+  
+  
+  /**
+   * Gets the cached value of a cell.
+   * 
+   * @param entry the row's entry
+   * @param column the model column
+   * @return the value, {@link #NO_VALUE} if not cached
+   */
+  Object getValue(FormTableEntry entry, int column) {
+    Object[] slots = rows.get(entry);
+    if (slots == null) {
+      return NO_VALUE;
+    }
+    int ndx = column * 3;
+    return ndx < slots.length ? slots[ndx] : NO_VALUE;
+  }
+  
+  
+  /**
+   * Caches the value of a cell.
+   * 
+   * @param entry the row's entry
+   * @param column the model column
+   * @param value the value
+   */
+  void putValue(FormTableEntry entry, int column, Object value) {
+    getSlots(entry, column)[column * 3] = value;
+  }
+  
+  
+  /**
+   * Gets the rendered text of a cell.
+   * 
+   * @param entry the row's entry
+   * @param column the model column
+   * @param value the current value of the cell
+   * @return the text, null if not cached or value has changed
+   */
+  String getText(FormTableEntry entry, int column, Object value) {
+    Object[] slots = rows.get(entry);
+    if (slots != null) {
+      int ndx = column * 3 + 1;
+      if (ndx < slots.length) {
+        String text = (String) slots[ndx + 1];
+        if (text != null) {
+          Object renderedValue = slots[ndx];
+          if (renderedValue == value ||
+              (renderedValue != null && value != null &&
+               renderedValue.getClass() == value.getClass() && renderedValue.equals(value))) {
+            return text;
+          }
+        }
+      }
+    }
+    return null;
+  }
+  
+  
+  /**
+   * Caches the rendered text of a cell.
+   * 
+   * @param entry the row's entry
+   * @param column the model column
+   * @param value the value
+   * @param text the rendered text
+   */
+  void putText(FormTableEntry entry, int column, Object value, String text) {
+    Object[] slots = getSlots(entry, column);
+    slots[column * 3 + 1] = value;
+    slots[column * 3 + 2] = text;
+  }
+  
+  
+  /**
+   * Clears the cache.
+   */
+  void clear() {
+    rows.clear();
+  }
+  
+  
+  /**
+   * Gets the slots for a row, creates them if not yet done.
+   */
+  private Object[] getSlots(FormTableEntry entry, int column) {
+    Object[] slots = rows.get(entry);
+    if (slots == null || column * 3 >= slots.length) {
+      if (slots == null && rows.size() >= maxRows) {
+        rows.clear();
+      }
+      Object[] newSlots = new Object[Math.max(entry.getColumnCount(), column + 1) * 3];
+      for (int i=0; i < newSlots.length; i += 3) {
+        newSlots[i] = NO_VALUE;
+      }
+      if (slots != null) {
+        System.arraycopy(slots, 0, newSlots, 0, slots.length);
+      }
+      slots = newSlots;
+      rows.put(entry, slots);
+    }
+    return slots;
+  }
+  
+}
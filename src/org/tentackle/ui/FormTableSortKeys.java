@@ -0,0 +1,538 @@
+/**
+ * Tentackle - a framework for java desktop applications
+ * Copyright (C) 2001-2008 Harald Krake, harald@krake.de, +49 7722 9508-0
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+// $Id$
+
+package org.tentackle.ui;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import org.tentackle.util.Compare;
+
+
+/**
+ * The sort keys of a table model.
+ * <p>
+ * The values of the sort columns are extracted once from the table entries
+ * and stored in compact arrays. Numeric columns, booleans and dates are encoded
+ * as primitives. Each key is turned into a dense rank per row and the ranks of all
+ * keys are combined into a single primitive long per row, which is sorted by
+ * {@link Arrays#parallelSort(long[])} without accessing the model again.
+ * Hence, sorting can safely run in any thread and, for large tables, in parallel.
+ * <p>
+ * If the table entries override {@link FormTableEntry#compareTo} the entries
+ * themselves are kept and compared.
+ *
+ * @author harald
+ */
+public class FormTableSortKeys {
+
+  private final int rows;             // number of rows
+  private final Key[] keys;           // the sort keys
+
+
+  /**
+   * Extracts the sort keys from a table model.<br>
+   * Must be invoked from the event dispatch thread because the
+   * table entries are loaded from the model.
+   *
+   * @param model the table model
+   * @param sortby the array of column indexes (see {@link FormTableEntry#compareTo})
+   */
+  public FormTableSortKeys(AbstractFormTableModel model, int[] sortby) {
+    rows = model.getRowCount();
+    FormTableEntry[] entries = new FormTableEntry[rows];
+    for (int row=0; row < rows; row++) {
+      entries[row] = model.getEntryAt(row);
+    }
+    if (isCompareToOverridden(model.getTemplate())) {
+      keys = new Key[] { new EntryKey(entries, sortby) };
+    }
+    else  {
+      keys = new Key[sortby.length];
+      for (int i=0; i < sortby.length; i++) {
+        int col = sortby[i];
+        boolean descending = col < 0;
+        if (descending) {
+          col = -col - 1;
+        }
+        keys[i] = createKey(entries, col, descending);
+      }
+    }
+  }
+
+
+  /**
+   * Gets the number of rows.
+   *
+   * @return the number of rows
+   */
+  public int getRowCount() {
+    return rows;
+  }
+
+
+  /**
+   * Compares two rows.
+   *
+   * @param row1 the first row
+   * @param row2 the second row
+   * @return a negative integer, zero, or a positive integer as row1
+   *         is less than, equal to, or greater than row2.
+   */
+  public int compare(int row1, int row2) {
+    for (int i=0; i < keys.length; i++) {
+      int rv = keys[i].compare(row1, row2);
+      if (rv != 0) {
+        return rv;
+      }
+    }
+    return 0;
+  }
+
+
+  /**
+   * Sorts the rows.<br>
+   * The sort is stable, i.e. rows with equal keys keep their order.
+   * Large tables are sorted in parallel.
+   *
+   * @return the sorted row indexes
+   */
+  public int[] sort() {
+    int[] map = new int[rows];
+    if (rows < 2) {
+      for (int i=0; i < rows; i++) {
+        map[i] = i;
+      }
+      sortProgress(100);
+      return map;
+    }
+
+    // combine the ranks of all keys into a single rank per row
+    long[] packed = new long[rows];
+    int[] rank = null;
+    for (int i=0; i < keys.length; i++) {
+      int[] keyRank = keys[i].rank(rows);
+      if (rank == null) {
+        rank = keyRank;
+      }
+      else  {
+        for (int row=0; row < rows; row++) {
+          packed[row] = ((long) rank[row] << 32) | keyRank[row];
+        }
+        rank = denseRank(packed);
+      }
+      sortProgress((i + 1) * 100 / (keys.length + 1));
+    }
+
+    // sort by rank and row (the row makes the sort stable)
+    for (int row=0; row < rows; row++) {
+      packed[row] = ((long) rank[row] << 32) | row;
+    }
+    Arrays.parallelSort(packed);
+    for (int i=0; i < rows; i++) {
+      map[i] = (int) packed[i];
+    }
+
+    sortProgress(100);
+    return map;
+  }
+
+
+  /**
+   * Invoked to report the progress of {@link #sort()}.<br>
+   * The default implementation does nothing.
+   * Notice that this method is invoked from the sorting thread.
+   *
+   * @param percent the progress in percent
+   */
+  protected void sortProgress(int percent) {
+  }
+
+
+
+  /**
+   * Computes the dense rank of each value, starting at 0.
+   */
+  private static int[] denseRank(long[] values) {
+    long[] sorted = values.clone();
+    Arrays.parallelSort(sorted);
+    int n = distinct(sorted);
+    int[] rank = new int[values.length];
+    for (int i=0; i < values.length; i++) {
+      rank[i] = Arrays.binarySearch(sorted, 0, n, values[i]);
+    }
+    return rank;
+  }
+
+
+  /**
+   * Moves the distinct values of a sorted array to the front.
+   *
+   * @return the number of distinct values
+   */
+  private static int distinct(long[] sorted) {
+    int n = 0;
+    for (int i=0; i < sorted.length; i++) {
+      if (n == 0 || sorted[i] != sorted[n - 1]) {
+        sorted[n++] = sorted[i];
+      }
+    }
+    return n;
+  }
+
+
+  /**
+   * Checks whether the template overrides compareTo.
+   */
+  private static boolean isCompareToOverridden(FormTableEntry template) {
+    if (template != null) {
+      try {
+        return template.getClass().getMethod("compareTo", FormTableEntry.class, int[].class).
+                 getDeclaringClass() != FormTableEntry.class;
+      }
+      catch (NoSuchMethodException ex) {
+        // cannot happen
+      }
+    }
+    return false;
+  }
+
+
+  /**
+   * Creates the key for a column.<br>
+   * Primitive keys are used if all non-null values are of the same kind.
+   */
+  private static Key createKey(FormTableEntry[] entries, int col, boolean descending) {
+    int rows = entries.length;
+    Object[] values = new Object[rows];
+    boolean integral = true;
+    boolean floating = true;
+    Class<?> valueClass = null;
+    for (int row=0; row < rows; row++) {
+      FormTableEntry entry = entries[row];
+      Object value = entry == null ? null : entry.getValueAt(col);
+      values[row] = value;
+      if (value != null) {
+        Class<?> clazz = value.getClass();
+        if (valueClass == null) {
+          valueClass = clazz;
+        }
+        else if (valueClass != clazz) {
+          integral = false;
+          floating = false;
+        }
+        if (!(value instanceof Long || value instanceof Integer || value instanceof Short ||
+              value instanceof Byte || value instanceof Boolean ||
+              clazz == Date.class || clazz == java.sql.Date.class || clazz == java.sql.Time.class)) {
+          integral = false;
+        }
+        if (!(value instanceof Double || value instanceof Float)) {
+          floating = false;
+        }
+      }
+    }
+
+    if (valueClass != null && (integral || floating)) {
+      boolean[] nulls = new boolean[rows];
+      if (integral) {
+        long[] longs = new long[rows];
+        for (int row=0; row < rows; row++) {
+          Object value = values[row];
+          if (value == null) {
+            nulls[row] = true;
+          }
+          else if (value instanceof Number) {
+            longs[row] = ((Number) value).longValue();
+          }
+          else if (value instanceof Boolean) {
+            longs[row] = ((Boolean) value).booleanValue() ? 1 : 0;
+          }
+          else  {
+            longs[row] = ((Date) value).getTime();
+          }
+        }
+        return new LongKey(longs, nulls, descending);
+      }
+      else  {
+        double[] doubles = new double[rows];
+        for (int row=0; row < rows; row++) {
+          Object value = values[row];
+          if (value == null) {
+            nulls[row] = true;
+          }
+          else  {
+            doubles[row] = ((Number) value).doubleValue();
+          }
+        }
+        return new DoubleKey(doubles, nulls, descending);
+      }
+    }
+    return new ObjectKey(values, descending);
+  }
+
+
+
+  /**
+   * Key for a single column or the whole entry.
+   */
+  private static abstract class Key {
+
+    final boolean descending;
+
+    Key(boolean descending) {
+      this.descending = descending;
+    }
+
+    int compare(int row1, int row2) {
+      int rv = compareAscending(row1, row2);
+      return descending ? -rv : rv;
+    }
+
+    /**
+     * Computes the dense rank of each row according to the sorting direction.
+     */
+    int[] rank(int rows) {
+      int[] rank = rankAscending(rows);
+      if (descending) {
+        int max = 0;
+        for (int r: rank) {
+          if (r > max) {
+            max = r;
+          }
+        }
+        for (int row=0; row < rows; row++) {
+          rank[row] = max - rank[row];
+        }
+      }
+      return rank;
+    }
+
+    /**
+     * Computes the dense ascending rank of each row.<br>
+     * The default implementation sorts the rows by {@link #compareAscending}.
+     */
+    int[] rankAscending(int rows) {
+      Integer[] order = new Integer[rows];
+      for (int row=0; row < rows; row++) {
+        order[row] = row;
+      }
+      Arrays.parallelSort(order, new Comparator<Integer>() {
+        public int compare(Integer row1, Integer row2) {
+          return compareAscending(row1, row2);
+        }
+      });
+      int[] rank = new int[rows];
+      int r = 0;
+      for (int i=0; i < rows; i++) {
+        if (i > 0 && compareAscending(order[i - 1], order[i]) != 0) {
+          r++;
+        }
+        rank[order[i]] = r;
+      }
+      return rank;
+    }
+
+    abstract int compareAscending(int row1, int row2);
+  }
+
+
+  /**
+   * Primitive long key.
+   * Nulls are treated as smallest value like {@link Compare#compare}.
+   */
+  private static class LongKey extends Key {
+
+    final long[] values;
+    final boolean[] nulls;
+
+    LongKey(long[] values, boolean[] nulls, boolean descending) {
+      super(descending);
+      this.values = values;
+      this.nulls = nulls;
+    }
+
+    int compareAscending(int row1, int row2) {
+      if (nulls[row1]) {
+        return nulls[row2] ? 0 : -1;
+      }
+      if (nulls[row2]) {
+        return 1;
+      }
+      return Compare.compareLong(values[row1], values[row2]);
+    }
+
+    @Override
+    int[] rankAscending(int rows) {
+      long[] sorted = new long[rows];
+      int count = 0;
+      for (int row=0; row < rows; row++) {
+        if (!nulls[row]) {
+          sorted[count++] = values[row];
+        }
+      }
+      sorted = Arrays.copyOf(sorted, count);
+      Arrays.parallelSort(sorted);
+      int n = distinct(sorted);
+      int[] rank = new int[rows];
+      for (int row=0; row < rows; row++) {
+        // nulls first
+        rank[row] = nulls[row] ? 0 : Arrays.binarySearch(sorted, 0, n, values[row]) + 1;
+      }
+      return rank;
+    }
+  }
+
+
+  /**
+   * Primitive double key.
+   */
+  private static class DoubleKey extends Key {
+
+    final double[] values;
+    final boolean[] nulls;
+
+    DoubleKey(double[] values, boolean[] nulls, boolean descending) {
+      super(descending);
+      this.values = values;
+      this.nulls = nulls;
+    }
+
+    int compareAscending(int row1, int row2) {
+      if (nulls[row1]) {
+        return nulls[row2] ? 0 : -1;
+      }
+      if (nulls[row2]) {
+        return 1;
+      }
+      return Double.compare(values[row1], values[row2]);
+    }
+
+    @Override
+    int[] rankAscending(int rows) {
+      double[] sorted = new double[rows];
+      int count = 0;
+      for (int row=0; row < rows; row++) {
+        if (!nulls[row]) {
+          sorted[count++] = values[row];
+        }
+      }
+      sorted = Arrays.copyOf(sorted, count);
+      Arrays.parallelSort(sorted);
+      int n = 0;
+      for (int i=0; i < sorted.length; i++) {
+        if (n == 0 || Double.compare(sorted[i], sorted[n - 1]) != 0) {
+          sorted[n++] = sorted[i];
+        }
+      }
+      int[] rank = new int[rows];
+      for (int row=0; row < rows; row++) {
+        // nulls first
+        rank[row] = nulls[row] ? 0 : Arrays.binarySearch(sorted, 0, n, values[row]) + 1;
+      }
+      return rank;
+    }
+  }
+
+
+  /**
+   * Object key.
+   * Same semantics as {@link FormTableEntry#compareTo} if the values are comparable.
+   * Otherwise the values are ordered by their class names first and by value within
+   * the same class, so that the ordering is consistent.
+   */
+  private static class ObjectKey extends Key {
+
+    final Object[] values;
+    final boolean mixed;      // true if values are not mutually comparable
+
+    ObjectKey(Object[] values, boolean descending) {
+      super(descending);
+      this.values = values;
+      // the values are comparable if their common superclass is
+      Class<?> common = null;
+      for (Object value: values) {
+        if (value != null) {
+          Class<?> clazz = value.getClass();
+          if (common == null) {
+            common = clazz;
+          }
+          else  {
+            while (!common.isAssignableFrom(clazz)) {
+              common = common.getSuperclass();
+            }
+          }
+        }
+      }
+      mixed = common != null && !Comparable.class.isAssignableFrom(common);
+    }
+
+    @SuppressWarnings("unchecked")
+    int compareAscending(int row1, int row2) {
+      Object o1 = values[row1];
+      Object o2 = values[row2];
+      if (!mixed) {
+        return Compare.compare((Comparable<Object>) o1, (Comparable<Object>) o2);
+      }
+      // order by class first, then by value within the same class
+      if (o1 == null) {
+        return o2 == null ? 0 : -1;
+      }
+      if (o2 == null) {
+        return 1;
+      }
+      Class<?> c1 = o1.getClass();
+      Class<?> c2 = o2.getClass();
+      if (c1 != c2) {
+        int rv = c1.getName().compareTo(c2.getName());
+        if (rv != 0) {
+          return rv;
+        }
+        // same name but different classloaders
+        return Compare.compareLong(System.identityHashCode(c1), System.identityHashCode(c2));
+      }
+      if (o1 instanceof Comparable) {
+        return ((Comparable<Object>) o1).compareTo(o2);
+      }
+      return o1.toString().compareTo(o2.toString());
+    }
+  }
+
+
+  /**
+   * Key comparing the entries by {@link FormTableEntry#compareTo}.
+   */
+  private static class EntryKey extends Key {
+
+    final FormTableEntry[] entries;
+    final int[] sortby;
+
+    EntryKey(FormTableEntry[] entries, int[] sortby) {
+      super(false);
+      this.entries = entries;
+      this.sortby = sortby;
+    }
+
+    int compareAscending(int row1, int row2) {
+      return entries[row1].compareTo(entries[row2], sortby);
+    }
+  }
+
+}
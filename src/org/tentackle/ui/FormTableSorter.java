@@ -22,11 +22,13 @@
 
 package org.tentackle.ui;
 
+import java.awt.EventQueue;
 import java.awt.event.InputEvent;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import javax.swing.SwingWorker;
 import javax.swing.event.TableModelEvent;
 
 
@@ -43,6 +45,9 @@ public class FormTableSorter extends FormTableMap implements MouseListener {
   private int[]     sortby;               // column-indexes for sorting
   private boolean   sortdone;             // true if sorted, i.e. next mouse clears sortby
   private boolean   sorting;              // true if sorting in progress
+  private boolean   sortedByModel;        // true if the chained model did the sorting
+  private int       sortGeneration;       // incremented for each sort to detect outdated background sorts
+  private int       backgroundSortThreshold = 10000;  // min. rows to sort in background on mouse click
   private FormTableEntry sumEntry;        // != null if last line contains a fixed sum line
 
   
@@ -227,28 +232,139 @@ public class FormTableSorter extends FormTableMap implements MouseListener {
   
   
   /**
-   * Do the sort
+   * Do the sort.
+   * <p>
+   * The sort keys are extracted once from the model and the rows are
+   * sorted by {@link java.util.Arrays#parallelSort(long[])}, in parallel for large tables.
+   * If the model can sort itself (see {@link AbstractFormTableModel#applySorting})
+   * the sorting is left to the model.
    */
   public void sort() {
     
-    int[] selectedRows = null;
+    int[] selectedRows = startSort();
     
-    FormTable table = getTable();
+    clearMapping();           // revert to original mapping
+    
+    // let the model sort if it can (e.g. by the database)
+    sortedByModel = model.applySorting(sortby);
+    
+    if (!sortedByModel && sortby.length > 0)  {
+      map = new FormTableSortKeys(model, sortby).sort();
+    }
+    
+    finishSort(selectedRows);
+  }
+  
+  
+  /**
+   * Do the sort in background.
+   * <p>
+   * The sort keys are extracted from the model in the current thread (which must
+   * be the event dispatch thread) since this may require database access.
+   * The sorting itself runs in background. The progress is reported as the property
+   * {@code "sortProgress"} to the property change listeners.
+   * When finished, the table is updated from within the event dispatch thread.
+   * <p>
+   * If the model can sort itself (see {@link AbstractFormTableModel#applySorting})
+   * the sorting is left to the model and this method is the same as {@link #sort()}.
+   */
+  public void sortInBackground() {
     
+    if (sortby.length == 0 || model.applySorting(sortby)) {
+      sort();
+      return;
+    }
+    
+    final int[] selectedRows = startSort();
+    final int generation = ++sortGeneration;
+    final int[] sortedBy = sortby;
+    
+    final FormTableSortKeys keys = new FormTableSortKeys(model, sortby) {
+      @Override
+      protected void sortProgress(final int percent) {
+        EventQueue.invokeLater(new Runnable() {
+          public void run() {
+            fireSortProgress(percent);
+          }
+        });
+      }
+    };
+    
+    new SwingWorker<int[],Object>() {
+      
+      @Override
+      protected int[] doInBackground() {
+        return keys.sort();
+      }
+
+      @Override
+      protected void done() {
+        if (generation == sortGeneration) {
+          sortedByModel = false;
+          try {
+            int[] sortedMap = get();
+            if (sortby == sortedBy && sortedMap.length == model.getRowCount()) {
+              map = sortedMap;
+              sortdone = true;
+            }
+          }
+          catch (Exception ex) {
+            UIGlobal.logger.severe("background sort failed: " + ex);
+          }
+          finishSort(selectedRows);
+        }
+      }
+    }.execute();
+  }
+  
+  
+  /**
+   * Gets the number of rows above which the sorting
+   * is run in background when initiated by a mouse click.
+   * 
+   * @return the number of rows
+   */
+  public int getBackgroundSortThreshold() {
+    return backgroundSortThreshold;
+  }
+  
+  /**
+   * Sets the number of rows above which the sorting
+   * is run in background when initiated by a mouse click.
+   * The default is 10000.
+   * 
+   * @param backgroundSortThreshold the number of rows, 0 to always sort in foreground
+   */
+  public void setBackgroundSortThreshold(int backgroundSortThreshold) {
+    this.backgroundSortThreshold = backgroundSortThreshold;
+  }
+  
+  
+  /**
+   * Starts sorting.
+   * 
+   * @return the selected model rows
+   */
+  private int[] startSort() {
+    int[] selectedRows = null;
+    FormTable table = getTable();
     if (table != null)  {
       // remember selections
       selectedRows = getModelIndex(table.getSelectedRows());
     }
-
+    sortGeneration++;         // cancel pending background sorts
     sorting = true;
     fireSortingChanged();     // tell that we are sorting now
-    
-    clearMapping();           // revert to original mapping
-    
-    if (sortby.length > 0)  {
-      // implements a simple quicksort
-      qsort (0, map.length-1);
-    }
+    return selectedRows;
+  }
+  
+  
+  /**
+   * Finishes sorting.
+   * 
+   * @param selectedRows the selected model rows
+   */
+  private void finishSort(int[] selectedRows) {
     
     fireTableDataChanged();   // display new sorted data
     
@@ -256,7 +372,8 @@ public class FormTableSorter extends FormTableMap implements MouseListener {
     
     fireSortingChanged();     // tell that we finished sorting
     
-    if (table != null)  {
+    FormTable table = getTable();
+    if (table != null && selectedRows != null)  {
       // restore selections
       table.setSelectedRows(getMappedIndex(selectedRows));
     }
@@ -370,6 +487,17 @@ public class FormTableSorter extends FormTableMap implements MouseListener {
    */
   @Override
   public void tableChanged(TableModelEvent e) {
+    if (sortedByModel) {
+      // rows are already delivered in sorting order
+      if (map == null || map.length != model.getRowCount()) {
+        clearMapping();
+        fireTableDataChanged();
+      }
+      else  {
+        super.tableChanged(e);
+      }
+      return;
+    }
     // check if we need to sort
     boolean needsort = false;
     if (map == null || map.length != model.getRowCount()) {
@@ -475,12 +603,18 @@ public class FormTableSorter extends FormTableMap implements MouseListener {
           /**
            * do the sort.
            *
-           * We cannot run the sort in an extra thread, because there is a high
-           * possibility that sorting requires db-accesses and this might interfere
+           * The sort keys are always extracted in the event dispatch thread, because there 
+           * is a high possibility that this requires db-accesses and this might interfere
            * with transactions the user is doing during lengthy sorts.
+           * The sorting itself, however, can be done in background for large tables.
            */
           FormHelper.setWaitCursor(table);
-          sort();
+          if (backgroundSortThreshold > 0 && model.getRowCount() >= backgroundSortThreshold) {
+            sortInBackground();
+          }
+          else  {
+            sort();
+          }
           FormHelper.setDefaultCursor(table);   
         }
       }
@@ -508,52 +642,15 @@ public class FormTableSorter extends FormTableMap implements MouseListener {
   
 
   /**
-   * simple quick sort
-   *
-   * @param lower first index where to start sorting
-   * @param upper last index where to end sorting
+   * fire the sort progress event
    */
-  private void qsort (int lower, int upper) {
-    if (lower < upper)  {
-      // at least one element to sort!
-      int left   = lower;
-      int right  = upper;
-      int middle = (lower + upper) >> 1;
-      while (left < right)  {
-        // compare left and middle
-        if (getEntryAt(middle).compareTo(getEntryAt(left), sortby) < 0) {
-          // middle is less than left entry
-          swap (left, middle);
-          middle = left;
-        }
-        // compare right and middle
-        if (getEntryAt(middle).compareTo(getEntryAt(right), sortby) > 0) {
-          // middle is greater than right entry
-          swap (right, middle);
-          middle = right;
-        }
-        // move pointers
-        if (left  < middle) {
-          left++;
-        }
-        if (right > middle) {
-          right--;
-        }
-      }
-      // sort the rest
-      qsort (lower,    middle-1);
-      qsort (middle+1, upper);
+  private void fireSortProgress(int percent) {
+    PropertyChangeListener[] pl = listenerList.getListeners(PropertyChangeListener.class);
+    PropertyChangeEvent pe = new PropertyChangeEvent(this, "sortProgress", null, percent);
+    for (int i=0; i < pl.length; i++) {
+      pl[i].propertyChange(pe);
     }
   }
-
-  /**
-   * swaps mappings
-   */
-  private void swap (int idx1, int idx2) {
-    int saved = map[idx1];
-    map[idx1] = map[idx2];
-    map[idx2] = saved;
-  }
   
   
   /**
@@ -24,12 +24,7 @@
 package org.tentackle.ui;
 
 import org.tentackle.print.FormTablePrintable;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
-import javax.xml.transform.sax.SAXTransformerFactory;
-import javax.xml.transform.sax.TransformerHandler;
-import javax.xml.transform.stream.StreamResult;
 import org.tentackle.util.BMoney;
 import org.tentackle.util.StringHelper;
 import org.tentackle.util.URLHelper;
@@ -45,7 +40,8 @@ import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.GregorianCalendar;
@@ -73,7 +69,6 @@ import org.apache.poi.hssf.usermodel.HSSFSheet;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.hssf.util.CellRangeAddress;
 import org.xml.sax.SAXException;
-import org.xml.sax.helpers.AttributesImpl;
 
 
 
@@ -103,6 +98,9 @@ public class FormTableUtilityPopup implements MouseListener, KeyListener {
   private static final String EXCELKEY   = "path";
   private static final String LASTXMLPREFIX = "/_lastXmlNames_";
   private static final String XMLKEY   = "path";
+  private static final String SPREADSHEET_EXTENSION = ".xml";
+
+  private int backgroundExportThreshold = 10000;  // rows to export in background
   
   
   /**
@@ -718,6 +716,12 @@ public class FormTableUtilityPopup implements MouseListener, KeyListener {
       String lastName = prefs.get(EXCELKEY, null);
 
       // Filename erfragen (default vom letzten Mal)
+      // large tables are streamed as XML spreadsheet in background
+      final boolean background = isBackgroundExport(onlySelected);
+      final String extension = background ? SPREADSHEET_EXTENSION : EXCEL_EXTENSION;
+      if (background && lastName != null && lastName.toLowerCase().endsWith(EXCEL_EXTENSION)) {
+        lastName = lastName.substring(0, lastName.length() - EXCEL_EXTENSION.length()) + SPREADSHEET_EXTENSION;
+      }
       JFileChooser jfc = new JFileChooser(lastName);
       if (lastName != null) {
         jfc.setSelectedFile(new File(lastName));
@@ -725,7 +729,7 @@ public class FormTableUtilityPopup implements MouseListener, KeyListener {
       jfc.setFileSelectionMode(JFileChooser.FILES_ONLY);
       jfc.setFileFilter(new FileFilter()  {
         public boolean accept(File f) {
-          return f.getName().toLowerCase().endsWith(EXCEL_EXTENSION) || f.isDirectory();
+          return f.getName().toLowerCase().endsWith(extension) || f.isDirectory();
         }
         public String getDescription()  {
           return Locales.bundle.getString("Excel-Datei");
@@ -733,10 +737,15 @@ public class FormTableUtilityPopup implements MouseListener, KeyListener {
       });
       if (jfc.showSaveDialog(null) == JFileChooser.APPROVE_OPTION) {
         File outFile = jfc.getSelectedFile();
-        if (outFile.getName().toLowerCase().endsWith(EXCEL_EXTENSION) == false)  {
-          outFile = new File(outFile.getPath() + EXCEL_EXTENSION);
+        if (outFile.getName().toLowerCase().endsWith(extension) == false)  {
+          outFile = new File(outFile.getPath() + extension);
+        }
+        if (background) {
+          exportInBackground(outFile, FormTableExporter.SPREADSHEET, onlySelected);
+        }
+        else  {
+          excel(outFile, onlySelected);
         }
-        excel(outFile, onlySelected);
         if (!FormHelper.preferencesAreReadOnly) {
           prefs.put(EXCELKEY, outFile.getAbsolutePath());
           prefs.flush();
@@ -769,30 +778,27 @@ public class FormTableUtilityPopup implements MouseListener, KeyListener {
    * @throws SAXException 
    */
   public void xml(File file, boolean onlySelected) throws IOException, TransformerConfigurationException, SAXException {
-           
-    TableModel       model       = table.getModel();
-    TableColumnModel columnModel = table.getColumnModel();
-    
-    PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(file)));
-    
-    int[] selectedRows = onlySelected ? table.getSelectedRows() : new int[] { };
-    
-    int rows = onlySelected ? selectedRows.length : model.getRowCount();  // number of data rows
-    int cols = columnModel.getColumnCount();                              // number of data columns
-    
-    StreamResult streamResult = new StreamResult(out);
-    SAXTransformerFactory tf = (SAXTransformerFactory) SAXTransformerFactory.newInstance();
-    // SAX2.0 ContentHandler.
-    TransformerHandler hd = tf.newTransformerHandler();
-    Transformer serializer = hd.getTransformer();
-    serializer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
-    serializer.setOutputProperty(OutputKeys.INDENT, "yes");
-    hd.setResult(streamResult);
-    hd.startDocument();
-    AttributesImpl atts = new AttributesImpl();
-    
-    hd.startElement(StringHelper.emptyString, StringHelper.emptyString, "FormTable", atts);
-    
+    OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+    try {
+      createExporter(FormTableExporter.XML, onlySelected).export(out);
+    }
+    catch (InterruptedException ex) {
+      throw new InterruptedIOException(ex.getMessage());
+    }
+    finally {
+      out.close();
+    }
+  }
+
+
+  /**
+   * Creates a streaming exporter for this table.
+   *
+   * @param format the format, one of {@link FormTableExporter#XML} or {@link FormTableExporter#SPREADSHEET}
+   * @param onlySelected true if export only selected rows
+   * @return the exporter
+   */
+  public FormTableExporter createExporter(int format, boolean onlySelected) {
     // local copies cause might be changed
     String xTitle = this.title;
     String xIntro = this.intro;
@@ -801,7 +807,6 @@ public class FormTableUtilityPopup implements MouseListener, KeyListener {
       // get default from window title
       Window parent = FormHelper.getParentWindow(table);
       try {
-        // paint page-title
         xTitle = ((FormWindow)parent).getTitle();
       }
       catch (Exception e) {
@@ -809,64 +814,74 @@ public class FormTableUtilityPopup implements MouseListener, KeyListener {
       }
     }
     
-    if (xTitle != null)  {
-      hd.startElement(StringHelper.emptyString, StringHelper.emptyString, "title", atts);
-      hd.characters(xTitle.toCharArray(), 0, xTitle.length());
-      hd.endElement(StringHelper.emptyString, StringHelper.emptyString, "title");
-    }
-    
-    if (xIntro != null || onlySelected)  {
-      if (onlySelected) {
-        if (xIntro == null) {
-          xIntro = StringHelper.emptyString;
-        }
-        else {
-          xIntro += ", ";
-        }
-        xIntro += Locales.bundle.getString("<nur_selektierte_Zeilen>");
-      }
-      hd.startElement(StringHelper.emptyString, StringHelper.emptyString, "intro", atts);
-      hd.characters(xIntro.toCharArray(), 0, xIntro.length());
-      hd.endElement(StringHelper.emptyString, StringHelper.emptyString, "intro");
-    }
-    
-    boolean isAbstractFormTableModel = model instanceof AbstractFormTableModel;
-    
-    // create xml-tags
-    String[] tags = new String[cols];
-    if (rows > 0) {
-      for (int i=0; i < cols; i++)  {
-        int c = columnModel.getColumn(i).getModelIndex();
-        tags[i] = StringHelper.toVarName(StringHelper.unDiacrit(
-                      isAbstractFormTableModel ?
-                        ((AbstractFormTableModel)model).getDisplayedColumnName(c) :
-                        model.getColumnName(c)));
+    if (onlySelected) {
+      if (xIntro == null) {
+        xIntro = StringHelper.emptyString;
       }
-    }
-    
-    for (int r=0; r < rows; r++)  {
-      
-      int modelRow = onlySelected ? selectedRows[r] : r;
-      
-      hd.startElement(StringHelper.emptyString, StringHelper.emptyString, table.getName(), atts);
-      
-      for (int i=0; i < cols; i++)  {
-        int c = columnModel.getColumn(i).getModelIndex();
-        String tag = tags[i];
-        Object object = model.getValueAt(modelRow, c);
-        String value = object == null ? StringHelper.emptyString : object.toString();
-        hd.startElement(StringHelper.emptyString, StringHelper.emptyString, tag, atts);
-        hd.characters(value.toCharArray(), 0, value.length());
-        hd.endElement(StringHelper.emptyString, StringHelper.emptyString, tag);
+      else {
+        xIntro += ", ";
       }
-      
-      hd.endElement(StringHelper.emptyString, StringHelper.emptyString, table.getName());
+      xIntro += Locales.bundle.getString("<nur_selektierte_Zeilen>");
     }
     
-    hd.endElement(StringHelper.emptyString, StringHelper.emptyString, "FormTable");
-    hd.endDocument();
+    return new FormTableExporter(table, format, onlySelected, xTitle, xIntro);
+  }
+
+
+  /**
+   * Exports the table in background.<br>
+   * The rows are streamed page by page. A worker dialog shows the progress
+   * and allows to cancel the export.
+   *
+   * @param file the output file
+   * @param format the format, one of {@link FormTableExporter#XML} or {@link FormTableExporter#SPREADSHEET}
+   * @param onlySelected true if export only selected rows
+   */
+  public void exportInBackground(final File file, int format, boolean onlySelected) {
+    createExporter(format, onlySelected).exportInBackground(file, format == FormTableExporter.XML ? null :
+      new Runnable() {
+        public void run() {
+          try {
+            // open Excel
+            URLHelper.openURL(file.getPath());
+          }
+          catch (IOException ex) {
+            FormError.printException(Locales.bundle.getString("Excel-Datei_konnte_nicht_erzeugt_werden"), ex);
+          }
+        }
+      });
+  }
+
+
+  /**
+   * Gets the number of rows above which exports run in background.
+   *
+   * @return the threshold
+   */
+  public int getBackgroundExportThreshold() {
+    return backgroundExportThreshold;
+  }
+
+  /**
+   * Sets the number of rows above which exports run in background.<br>
+   * Excel exports above the threshold are written as XML spreadsheets.
+   *
+   * @param backgroundExportThreshold the threshold, default is 10000
+   */
+  public void setBackgroundExportThreshold(int backgroundExportThreshold) {
+    this.backgroundExportThreshold = backgroundExportThreshold;
+  }
 
-    out.close();
+
+  /**
+   * Returns whether an export should run in background.
+   *
+   * @param onlySelected true if export only selected rows
+   * @return true if number of rows exceeds the threshold
+   */
+  private boolean isBackgroundExport(boolean onlySelected) {
+    int rows = onlySelected ? table.getSelectedRowCount() : table.getModel().getRowCount();
+    return rows > backgroundExportThreshold;
   }
   
 
@@ -901,7 +916,12 @@ public class FormTableUtilityPopup implements MouseListener, KeyListener {
         if (outFile.getName().toLowerCase().endsWith(XML_EXTENSION) == false)  {
           outFile = new File(outFile.getPath() + XML_EXTENSION);
         }
-        xml(outFile, onlySelected);
+        if (isBackgroundExport(onlySelected)) {
+          exportInBackground(outFile, FormTableExporter.XML, onlySelected);
+        }
+        else  {
+          xml(outFile, onlySelected);
+        }
         if (!FormHelper.preferencesAreReadOnly) {
           prefs.put(XMLKEY, outFile.getAbsolutePath());
           prefs.flush();
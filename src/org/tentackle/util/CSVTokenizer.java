@@ -0,0 +1,325 @@
+/**
+ * Tentackle - a framework for java desktop applications
+ * Copyright (C) 2001-2008 Harald Krake, harald@krake.de, +49 7722 9508-0
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+// $Id$
+
+package org.tentackle.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Bulk tokenizer for CSV data held in a char buffer.
+ * <p>
+ * Applies the same rules as {@link CSVReader} but works on whole buffers
+ * instead of single characters. Furthermore, it can {@link #scan} a stream
+ * of buffers for record boundaries, so that the input can be split into
+ * record-aligned chunks which are then tokenized independently (e.g. in parallel).
+ * <p>
+ * A tokenizer instance is not thread-safe. However, {@link #tokenize} does not
+ * modify the scanning state and may be invoked concurrently if the delimiter
+ * and quote character are not changed.
+ *
+ * @author harald
+ */
+public class CSVTokenizer {
+
+  private static final int END_OF_LINE      = 0;    // before the first field of a record
+  private static final int IN_FIELD         = 1;    // in between a non-quoted field
+  private static final int IN_BLANK_FIELD   = 2;    // in a non-quoted field with only blanks so far
+  private static final int IN_QUOTED_FIELD  = 3;    // in between a quoted field
+  private static final int QUOTE_IN_QUOTED  = 4;    // quote seen in quoted field (embedded or closing)
+  private static final int END_OF_QUOTED    = 5;    // after end of quoted field
+
+  private final char fieldDelimiter;    // field delimiter
+  private final char quoteCharacter;    // quote character
+
+  private int scanState;                // scanner state
+  private long scanRecords;             // records completed by scan
+
+
+  /**
+   * Creates a tokenizer.
+   *
+   * @param fieldDelimiter the field delimiter
+   * @param quoteCharacter the quote character
+   */
+  public CSVTokenizer(char fieldDelimiter, char quoteCharacter) {
+    this.fieldDelimiter = fieldDelimiter;
+    this.quoteCharacter = quoteCharacter;
+    scanState = END_OF_LINE;
+  }
+
+  /**
+   * Creates a tokenizer with comma as delimiter and double-quotes.
+   */
+  public CSVTokenizer() {
+    this(',', '"');
+  }
+
+
+  /**
+   * Scans the next part of the input for record boundaries.<br>
+   * The state is kept between invocations, i.e. the buffers must be
+   * passed in the order of the input and each character only once.
+   *
+   * @param buf the char buffer
+   * @param offset the offset of the first character to scan
+   * @param length the number of characters to scan
+   * @return the index in buf following the last complete record, -1 if no record completed
+   * @throws ApplicationException if illegal characters found after a closing quote
+   */
+  public int scan(char[] buf, int offset, int length) throws ApplicationException {
+    int boundary = -1;
+    int state = scanState;
+    int end = offset + length;
+    for (int i=offset; i < end; i++) {
+      char c = buf[i];
+      switch (state) {
+        case END_OF_LINE:
+          if (c == '\r' || c == '\n') {
+            continue;
+          }
+          if (c == quoteCharacter) {
+            state = IN_QUOTED_FIELD;
+          }
+          else if (c == fieldDelimiter) {
+            state = IN_BLANK_FIELD;
+          }
+          else  {
+            state = Character.isWhitespace(c) ? IN_BLANK_FIELD : IN_FIELD;
+          }
+          break;
+
+        case QUOTE_IN_QUOTED:
+          if (c == quoteCharacter) {
+            state = IN_QUOTED_FIELD;    // embedded quote
+            break;
+          }
+          state = END_OF_QUOTED;
+          // fall through: c belongs to END_OF_QUOTED
+        case END_OF_QUOTED:
+          if (c == fieldDelimiter) {
+            state = IN_BLANK_FIELD;
+          }
+          else if (c == '\r' || c == '\n') {
+            state = END_OF_LINE;
+            scanRecords++;
+            boundary = i + 1;
+          }
+          else if (!Character.isWhitespace(c)) {
+            throw new ApplicationException("illegal character '" + c + "' after closing quote");
+          }
+          break;
+
+        case IN_QUOTED_FIELD:
+          if (c == quoteCharacter) {
+            state = QUOTE_IN_QUOTED;
+          }
+          break;
+
+        default:    // IN_FIELD, IN_BLANK_FIELD
+          if (c == fieldDelimiter) {
+            state = IN_BLANK_FIELD;
+          }
+          else if (c == '\r' || c == '\n') {
+            state = END_OF_LINE;
+            scanRecords++;
+            boundary = i + 1;
+          }
+          else if (c == quoteCharacter && state == IN_BLANK_FIELD) {
+            state = IN_QUOTED_FIELD;
+          }
+          else if (!Character.isWhitespace(c)) {
+            state = IN_FIELD;
+          }
+      }
+    }
+    scanState = state;
+    return boundary;
+  }
+
+
+  /**
+   * Gets the number of records completed by {@link #scan} so far.
+   *
+   * @return the number of records
+   */
+  public long getScannedRecordCount() {
+    return scanRecords;
+  }
+
+
+  /**
+   * Tokenizes a record-aligned buffer.<br>
+   * Empty lines are skipped. A last record not terminated by a newline
+   * is returned as well.
+   *
+   * @param buf the char buffer
+   * @param offset the offset of the first character
+   * @param length the number of characters
+   * @return the list of records, each an array of fields.
+   *         Empty non-quoted fields are returned as null, non-quoted fields are trimmed.
+   * @throws ApplicationException if parsing failed
+   */
+  public List<String[]> tokenize(char[] buf, int offset, int length) throws ApplicationException {
+
+    List<String[]> records = new ArrayList<String[]>();
+    List<String> fields = new ArrayList<String>();
+    StringBuilder value = null;     // only used for quoted fields with embedded quotes or CRs
+    int end = offset + length;
+    int start = 0;                  // start of current field value
+    int state = END_OF_LINE;
+
+    for (int i=offset; i < end; i++) {
+      char c = buf[i];
+
+      if (state == END_OF_LINE) {
+        if (c == '\r' || c == '\n') {
+          continue;
+        }
+        if (c == quoteCharacter) {
+          state = IN_QUOTED_FIELD;
+          start = i + 1;
+          value = null;
+          continue;
+        }
+        state = IN_FIELD;
+        start = i;
+        // continue processing below...
+      }
+
+      if (state == IN_FIELD) {
+        if (c == fieldDelimiter) {
+          fields.add(unquotedValue(buf, start, i));
+          start = i + 1;
+        }
+        else if (c == '\r' || c == '\n') {
+          fields.add(unquotedValue(buf, start, i));
+          records.add(fields.toArray(new String[fields.size()]));
+          fields.clear();
+          state = END_OF_LINE;
+        }
+        else if (c == quoteCharacter && isBlank(buf, start, i)) {
+          // ignore leading blanks before starting quote
+          state = IN_QUOTED_FIELD;
+          start = i + 1;
+          value = null;
+        }
+        // else: part of the value
+      }
+
+      else if (state == IN_QUOTED_FIELD) {
+        if (c == quoteCharacter) {
+          if (i + 1 < end && buf[i + 1] == quoteCharacter) {
+            // embedded quote
+            if (value == null) {
+              value = new StringBuilder();
+            }
+            value.append(buf, start, i - start + 1);
+            i++;
+            start = i + 1;
+          }
+          else  {
+            // end of the quoted string
+            if (value == null) {
+              fields.add(new String(buf, start, i - start));
+            }
+            else  {
+              value.append(buf, start, i - start);
+              fields.add(value.toString());
+              value = null;
+            }
+            state = END_OF_QUOTED;
+          }
+        }
+        else if (c == '\r') {
+          // skip carriage returns
+          if (value == null) {
+            value = new StringBuilder();
+          }
+          value.append(buf, start, i - start);
+          start = i + 1;
+        }
+      }
+
+      else if (state == END_OF_QUOTED) {
+        if (c == fieldDelimiter) {
+          state = IN_FIELD;
+          start = i + 1;
+        }
+        else if (c == '\r' || c == '\n') {
+          records.add(fields.toArray(new String[fields.size()]));
+          fields.clear();
+          state = END_OF_LINE;
+        }
+        else if (!Character.isWhitespace(c)) {
+          throw new ApplicationException("illegal character '" + c + "' after closing quote in record " +
+                                         (records.size() + 1));
+        }
+      }
+    }
+
+    // unterminated last record
+    if (state == IN_FIELD) {
+      fields.add(unquotedValue(buf, start, end));
+    }
+    else if (state == IN_QUOTED_FIELD) {
+      throw new ApplicationException("unterminated quoted field in record " + (records.size() + 1));
+    }
+    if (!fields.isEmpty()) {
+      records.add(fields.toArray(new String[fields.size()]));
+    }
+
+    return records;
+  }
+
+
+  /**
+   * Creates the value for a non-quoted field.
+   */
+  private String unquotedValue(char[] buf, int start, int end) {
+    if (start >= end) {
+      return null;
+    }
+    // trim
+    while (start < end && buf[start] <= ' ') {
+      start++;
+    }
+    while (end > start && buf[end - 1] <= ' ') {
+      end--;
+    }
+    return new String(buf, start, end - start);
+  }
+
+
+  /**
+   * Checks whether a range contains only whitespaces.
+   */
+  private boolean isBlank(char[] buf, int start, int end) {
+    for (int i=start; i < end; i++) {
+      if (buf[i] > ' ') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+}
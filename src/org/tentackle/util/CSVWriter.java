@@ -22,19 +22,55 @@
 
 package org.tentackle.util;
 
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.zip.GZIPOutputStream;
 
 /**
- * Generic writer for CSV-Files.<br>
+ * Generic writer for CSV-Files.
+ * <p>
+ * Objects are written via {@link #formatCSVObject}.
+ * For bulk exports the fields can also be written one by one
+ * via the {@code writeField}-methods followed by {@link #endRecord()}.
+ * Numbers and dates are formatted directly into an internal buffer
+ * without creating intermediate strings.
+ * <p>
+ * When created for a {@link Writer}, the buffer is passed to the writer
+ * after each record. When created for an {@link OutputStream} or channel,
+ * the output is encoded in large blocks and {@link #close()} must be invoked
+ * at the end.
  *
  * @author harald
  */
 public class CSVWriter {
   
-  private Writer writer;                // where to write the csv output
+  private static final int BUFSIZE = 65536;   // buffer size for channels
+
+  private Writer writer;                // where to write the csv output, null if channel
+  private WritableByteChannel channel;  // channel to write to, null if writer
+  private CharsetEncoder encoder;       // the encoder for the channel
+  private ByteBuffer byteBuf;           // encoded bytes for the channel
   private int objectCount;              // number of converted objects
   private char fieldDelimiter = ',';    // field delimiter, default is comma
   private char quoteCharacter = '"';    // quote character, default is double-quote  
+  private char[] buf;                   // the record buffer
+  private int len;                      // number of chars in buf
+  private boolean firstField;           // true if next field is the first in record
+  private Calendar calendar;            // calendar to format dates, null if not used yet
   
   
   /**
@@ -45,7 +81,43 @@ public class CSVWriter {
   public CSVWriter(Writer writer) {
     this.writer = writer;
     objectCount = 0;
+    buf = new char[256];
+    firstField = true;
+  }
+
+
+  /**
+   * Creates a CSV-Writer for a channel.
+   *
+   * @param channel the channel to write to
+   * @param charset the character set
+   */
+  public CSVWriter(WritableByteChannel channel, Charset charset) {
+    this.channel = channel;
+    encoder = charset.newEncoder().
+              onMalformedInput(CodingErrorAction.REPLACE).
+              onUnmappableCharacter(CodingErrorAction.REPLACE);
+    byteBuf = ByteBuffer.allocate(BUFSIZE * 2);
+    buf = new char[BUFSIZE];
+    firstField = true;
   }
+
+
+  /**
+   * Creates a CSV-Writer for an output stream.<br>
+   * File output streams are written via their file channel.
+   *
+   * @param out the output stream
+   * @param charset the character set
+   * @param gzip true if compress output with gzip
+   * @throws IOException if creating the gzip stream failed
+   */
+  public CSVWriter(OutputStream out, Charset charset, boolean gzip) throws IOException {
+    this(gzip ? Channels.newChannel(new GZIPOutputStream(out, BUFSIZE)) :
+           (out instanceof FileOutputStream ? ((FileOutputStream) out).getChannel() : Channels.newChannel(out)),
+         charset);
+  }
+
   
   /**
    * Writes an object to a CSV-stream.
@@ -56,30 +128,214 @@ public class CSVWriter {
   public void formatCSVObject(CSVObject object) throws ApplicationException {
     
     int fieldCount = object.getCSVFieldCount();
+    int recordStart = len;
     
     try {
-      
       for (int index=0; index < fieldCount; index++)  {
-        
-        String value = makeField(object.formatCSVField(index));
-        if (value != null)  {
-          writer.write(value);
-        }
-        if (index < fieldCount - 1) {
-          writer.write(fieldDelimiter);
-        }
+        writeField(object.formatCSVField(index));
       }
-    
-      objectCount++;
-      writer.write('\n');
+      endRecord();
     }
     catch (ApplicationException e)  {
+      len = recordStart;    // discard partial record
+      firstField = true;
       throw e;
     }
     catch (Exception e) {
+      len = recordStart;
+      firstField = true;
       throw new ApplicationException("formatting object failed", e);
     }
   }
+
+
+  /**
+   * Writes a string field.<br>
+   * Strings are always quoted.
+   *
+   * @param value the value, null for an empty field
+   */
+  public void writeField(String value) {
+    startField();
+    if (value != null) {
+      int length = value.length();
+      ensureCapacity(length * 2 + 2);
+      buf[len++] = quoteCharacter;
+      for (int i=0; i < length; i++)  {
+        char c = value.charAt(i);
+        if (c == quoteCharacter) {
+          buf[len++] = quoteCharacter;
+        }
+        buf[len++] = c;
+      }
+      buf[len++] = quoteCharacter;
+    }
+  }
+
+
+  /**
+   * Writes a numeric field.
+   *
+   * @param value the value
+   */
+  public void writeField(long value) {
+    startField();
+    appendLong(value, 1);
+  }
+
+
+  /**
+   * Writes a floating point field.
+   *
+   * @param value the value
+   */
+  public void writeField(double value) {
+    startField();
+    if (value == (long) value && Math.abs(value) < 1e15) {
+      appendLong((long) value, 1);
+      ensureCapacity(2);
+      buf[len++] = '.';
+      buf[len++] = '0';
+    }
+    else  {
+      appendString(Double.toString(value));
+    }
+  }
+
+
+  /**
+   * Writes a decimal field.
+   *
+   * @param value the value, null for an empty field
+   */
+  public void writeField(BigDecimal value) {
+    startField();
+    if (value != null) {
+      if (value.scale() == 0 && value.precision() < 19) {
+        appendLong(value.longValue(), 1);
+      }
+      else  {
+        appendString(value.toPlainString());
+      }
+    }
+  }
+
+
+  /**
+   * Writes a date field.<br>
+   * {@link java.sql.Date}s are written as {@code yyyy-MM-dd},
+   * {@link java.sql.Time}s as {@code HH:mm:ss} and all others
+   * as {@code yyyy-MM-dd HH:mm:ss[.SSS]}. Dates are not quoted.
+   *
+   * @param value the value, null for an empty field
+   */
+  public void writeField(Date value) {
+    startField();
+    if (value != null) {
+      if (calendar == null) {
+        calendar = new GregorianCalendar();
+      }
+      calendar.setTime(value);
+      ensureCapacity(32);
+      boolean isTime = value instanceof java.sql.Time;
+      if (!isTime) {
+        appendLong(calendar.get(Calendar.YEAR), 4);
+        buf[len++] = '-';
+        appendLong(calendar.get(Calendar.MONTH) + 1, 2);
+        buf[len++] = '-';
+        appendLong(calendar.get(Calendar.DAY_OF_MONTH), 2);
+      }
+      if (!(value instanceof java.sql.Date)) {
+        if (!isTime) {
+          buf[len++] = ' ';
+        }
+        appendLong(calendar.get(Calendar.HOUR_OF_DAY), 2);
+        buf[len++] = ':';
+        appendLong(calendar.get(Calendar.MINUTE), 2);
+        buf[len++] = ':';
+        appendLong(calendar.get(Calendar.SECOND), 2);
+        int millis = calendar.get(Calendar.MILLISECOND);
+        if (millis != 0 && !isTime) {
+          buf[len++] = '.';
+          appendLong(millis, 3);
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Writes an empty field.
+   */
+  public void writeNull() {
+    startField();
+  }
+
+
+  /**
+   * Terminates the current record.
+   *
+   * @throws ApplicationException if writing failed
+   */
+  public void endRecord() throws ApplicationException {
+    ensureCapacity(1);
+    buf[len++] = '\n';
+    firstField = true;
+    objectCount++;
+    try {
+      if (writer != null) {
+        writer.write(buf, 0, len);
+        len = 0;
+      }
+      else if (len >= BUFSIZE) {
+        flushBuffer(false);
+      }
+    }
+    catch (IOException e) {
+      throw new ApplicationException("writing CSV record failed", e);
+    }
+  }
+
+
+  /**
+   * Flushes the output.
+   *
+   * @throws ApplicationException if writing failed
+   */
+  public void flush() throws ApplicationException {
+    try {
+      if (writer != null) {
+        writer.flush();
+      }
+      else  {
+        flushBuffer(false);
+      }
+    }
+    catch (IOException e) {
+      throw new ApplicationException("flushing CSV output failed", e);
+    }
+  }
+
+
+  /**
+   * Flushes and closes the output.
+   *
+   * @throws ApplicationException if writing failed
+   */
+  public void close() throws ApplicationException {
+    try {
+      if (writer != null) {
+        writer.close();
+      }
+      else  {
+        flushBuffer(true);
+        channel.close();
+      }
+    }
+    catch (IOException e) {
+      throw new ApplicationException("closing CSV output failed", e);
+    }
+  }
   
   
   
@@ -92,6 +348,7 @@ public class CSVWriter {
     return objectCount;
   }
 
+
  
   /**
    * Fets the field delimiter.
@@ -135,25 +392,113 @@ public class CSVWriter {
   
   
   /**
-   * convert a string to a quoted CSV-Field.
-   * @return the quoted string, null if value was null
+   * Appends the field delimiter if not the first field.
    */
-  private String makeField(String value)  {
-    if (value != null)  {
-      StringBuilder field = new StringBuilder();
-      field.append(quoteCharacter);
-      int length = value.length();
-      for (int i=0; i < length; i++)  {
-        char c = value.charAt(i);
-        if (c == quoteCharacter) {
-          field.append(quoteCharacter);
-        }
-        field.append(c);
+  private void startField() {
+    if (firstField) {
+      firstField = false;
+    }
+    else  {
+      ensureCapacity(1);
+      buf[len++] = fieldDelimiter;
+    }
+  }
+
+
+  /**
+   * Ensures that the buffer can take the given number of chars.
+   */
+  private void ensureCapacity(int count) {
+    if (len + count > buf.length) {
+      char[] nbuf = new char[Math.max(buf.length * 2, len + count)];
+      System.arraycopy(buf, 0, nbuf, 0, len);
+      buf = nbuf;
+    }
+  }
+
+
+  /**
+   * Appends a string unquoted.
+   */
+  private void appendString(String str) {
+    int length = str.length();
+    ensureCapacity(length);
+    str.getChars(0, length, buf, len);
+    len += length;
+  }
+
+
+  /**
+   * Appends a long value.
+   *
+   * @param value the value
+   * @param digits the minimum number of digits (leading zeros)
+   */
+  private void appendLong(long value, int digits) {
+    if (value == Long.MIN_VALUE) {
+      appendString(Long.toString(value));
+      return;
+    }
+    ensureCapacity(20 + digits);
+    if (value < 0) {
+      buf[len++] = '-';
+      value = -value;
+    }
+    int count = 1;
+    for (long v = value / 10; v != 0; v /= 10) {
+      count++;
+    }
+    if (count < digits) {
+      for (int i=count; i < digits; i++) {
+        buf[len++] = '0';
+      }
+    }
+    int pos = len + count;
+    len = pos;
+    do {
+      buf[--pos] = (char) ('0' + (value % 10));
+      value /= 10;
+    } while (value != 0);
+  }
+
+
+  /**
+   * Encodes and writes the buffer to the channel.
+   *
+   * @param endOfInput true if no more output follows, i.e. the encoder is flushed as well
+   */
+  private void flushBuffer(boolean endOfInput) throws IOException {
+    CharBuffer chars = CharBuffer.wrap(buf, 0, len);
+    for (;;) {
+      CoderResult result = encoder.encode(chars, byteBuf, endOfInput);
+      writeBytes();
+      if (!result.isOverflow()) {
+        break;
       }
-      field.append(quoteCharacter);
-      return field.toString();
     }
-    return null;
+    len = chars.remaining();    // usually 0 (unless high surrogate at end)
+    if (len > 0) {
+      chars.get(buf, 0, len);
+    }
+    if (endOfInput) {
+      // write the final bytes of stateful charsets
+      while (encoder.flush(byteBuf).isOverflow()) {
+        writeBytes();
+      }
+      writeBytes();
+    }
+  }
+
+
+  /**
+   * Writes the encoded bytes to the channel.
+   */
+  private void writeBytes() throws IOException {
+    byteBuf.flip();
+    while (byteBuf.hasRemaining()) {
+      channel.write(byteBuf);
+    }
+    byteBuf.clear();
   }
   
 }
@@ -35,6 +35,7 @@ import java.util.zip.Inflater;
  * Stream to read compressed data from the underlying input stream.<br>
  * 
  * Counterpart to CompressedOutputStream.
+ * The dictionary mode must be the same as for the output stream.
  */
 public class CompressedInputStream extends FilterInputStream {
 
@@ -44,6 +45,9 @@ public class CompressedInputStream extends FilterInputStream {
   private int readPending;              // number of bytes pending to read from underlying stream
   private byte[] byteBuf;               // single byte buffer for read()
   private boolean closed;               // true if closed
+  private byte[] history;               // last uncompressed data (dictionary mode only)
+  private int historyLen;               // number of bytes in history
+  private byte[] handshake;             // expected handshake, null if received or no dictionary
 
   // for statistic only (Level.FINE must be enabled)
   private long totalRead;               // total number of bytes read by application
@@ -58,17 +62,46 @@ public class CompressedInputStream extends FilterInputStream {
    * The buffersize adapts dynamically to the packet size.
    *
    * @param in the underlying input stream
+   * @param dictionary true if dictionary mode
    */
-  public CompressedInputStream(InputStream in) {
+  public CompressedInputStream(InputStream in, boolean dictionary) {
     super(in);
     inflater = new Inflater(true);
     byteBuf = new byte[1];
+    if (dictionary) {
+      byte[] preset = CompressedOutputStream.getDictionaryPreset();
+      history    = new byte[CompressedOutputStream.HISTORY_SIZE];
+      historyLen = CompressedOutputStream.appendHistory(history, 0, preset, 0, preset.length);
+      handshake  = CompressedOutputStream.createHandshake(preset);
+    }
     if (UtilGlobal.logger.isFinerLoggable()) {
       UtilGlobal.logger.finer("compressed input stream ceated for: " + in);
     }
   }
   
   
+  /**
+   * Creates a new compressed input stream.<br>
+   * 
+   * The buffersize adapts dynamically to the packet size.
+   *
+   * @param in the underlying input stream
+   */
+  public CompressedInputStream(InputStream in) {
+    this(in, false);
+  }
+  
+  
+  /**
+   * Returns whether this stream runs in dictionary mode.
+   * 
+   * @return true if dictionary mode
+   */
+  public boolean isDictionary() {
+    return history != null;
+  }
+  
+  
   @Override
   public void close() throws IOException {
     if (!closed) {
@@ -210,6 +243,9 @@ public class CompressedInputStream extends FilterInputStream {
       }
     }
     
+    if (history != null) {
+      historyLen = CompressedOutputStream.appendHistory(history, historyLen, b, off, count);
+    }
     totalRead += count;
     return count;
   }
@@ -237,9 +273,19 @@ public class CompressedInputStream extends FilterInputStream {
     compressed = ((readPending & CompressedOutputStream.COMPRESSED) == CompressedOutputStream.COMPRESSED);
     readPending &= ~CompressedOutputStream.COMPRESSED;
     
+    if (handshake != null) {
+      // first packet in dictionary mode
+      verifyHandshake();
+      return readHeader();
+    }
+    
     if (compressed) {
       // reset decompressor on each new compressed packet
       inflater.reset();
+      if (historyLen > 0) {
+        // continue where the last packet ended
+        inflater.setDictionary(history, 0, historyLen);
+      }
       // make sure buffer is large enough to hold the whole packet.
       if (infBuf == null || infBuf.length < readPending) {
         // allocate larger buffer
@@ -253,4 +299,34 @@ public class CompressedInputStream extends FilterInputStream {
     return true;
   }
   
+  
+  /**
+   * Verifies the handshake in dictionary mode.
+   */
+  private void verifyHandshake() throws IOException {
+    boolean valid = !compressed && readPending == handshake.length;
+    if (valid) {
+      byte[] buf = new byte[readPending];
+      int len = 0;
+      while (len < buf.length) {
+        int num = in.read(buf, len, buf.length - len);
+        if (num < 0) {
+          throw new EOFException();
+        }
+        len += num;
+      }
+      for (int i=0; i < buf.length; i++) {
+        if (buf[i] != handshake[i]) {
+          valid = false;
+          break;
+        }
+      }
+    }
+    if (!valid) {
+      throw new IOException("compression dictionary mismatch");
+    }
+    handshake = null;
+    readPending = 0;
+  }
+  
 }
@@ -24,6 +24,8 @@ package org.tentackle.util;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.zip.Adler32;
 import java.util.zip.Deflater;
 
 
@@ -43,6 +45,13 @@ import java.util.zip.Deflater;
  * For the packet size we use the first two bytes in the packet (short), while
  * MSBit signals whether the packet is compressed or not.
  * Because of this, the maximum buffer size is limited to 32K - 1.
+ * <p>
+ * By default, each packet is compressed independently. In dictionary mode
+ * the last 32K of data passed through the stream are used as a preset dictionary
+ * for the next packet. Hence, recurring data such as class descriptors and field
+ * names of serialized objects compress to back-references, even if they were sent
+ * in an earlier packet. The first packet is preset with a vocabulary
+ * (see {@link #setDictionaryPreset}), which must be the same on both sides of the stream.
  */
 public class CompressedOutputStream extends FilterOutputStream {
 
@@ -53,6 +62,134 @@ public class CompressedOutputStream extends FilterOutputStream {
   
   
   final static int COMPRESSED = MAX_BUFFER_SIZE + 1;    // 0x8000 MSBit: 1 = compressed, 0 = uncompressed
+  
+  final static int HISTORY_SIZE = 32768;                // max. size of the dictionary (deflate window)
+  
+  final static byte[] HANDSHAKE_MAGIC = { 'T', 'C', 'D', 1 };   // first packet in dictionary mode
+  
+  
+  /**
+   * The default vocabulary for the dictionary preset.<br>
+   * Frequently used names appear last.
+   */
+  public static final String[] DEFAULT_VOCABULARY = {
+    "java.rmi.server.RemoteObject", "java.rmi.server.RemoteStub", "java.rmi.MarshalledObject",
+    "java.rmi.server.UID", "java.rmi.dgc.Lease", "java.rmi.dgc.VMID",
+    "java.util.HashMap", "java.util.TreeMap", "java.util.Vector",
+    "java.lang.Enum", "java.lang.Character", "java.lang.Short", "java.lang.Double",
+    "java.math.BigInteger", "[Ljava/lang/Object;", "Ljava/lang/Object;", "[Ljava.lang.Object;",
+    "org.tentackle.util.DMoney", "org.tentackle.util.BMoney", "java.math.BigDecimal", "intValscale",
+    "java.util.Date", "java.sql.Date", "java.sql.Time", "java.sql.Timestamp", "Ljava/sql/Timestamp;nanos",
+    "org.tentackle.db.rmi.DbObjectResult", "uniqueViolation", "result",
+    "org.tentackle.appworx.ContextDb", "contextDb", "Lorg/tentackle/appworx/ContextDb;",
+    "editedBy", "editedSince", "editedExpiry", "normText",
+    "org.tentackle.appworx.AppDbObject", "org.tentackle.db.DbObject",
+    "java.lang.Number", "java.lang.Integer", "java.lang.Long", "java.lang.Boolean", "value",
+    "java.util.ArrayList", "size", "Ljava/lang/String;", "java.lang.String",
+    "modified", "tableSerial", "serial", "id",
+  };
+  
+  
+  private static volatile byte[] dictionaryPreset = createDictionaryPreset(DEFAULT_VOCABULARY);
+  
+  
+  /**
+   * Creates a dictionary preset from a vocabulary.
+   * 
+   * @param vocabulary the words, frequently used words last
+   * @return the preset
+   */
+  public static byte[] createDictionaryPreset(String... vocabulary) {
+    StringBuilder buf = new StringBuilder();
+    for (String word: vocabulary) {
+      buf.append(word);
+    }
+    try {
+      byte[] preset = buf.toString().getBytes("UTF-8");
+      if (preset.length > HISTORY_SIZE) {
+        byte[] tail = new byte[HISTORY_SIZE];
+        System.arraycopy(preset, preset.length - HISTORY_SIZE, tail, 0, HISTORY_SIZE);
+        preset = tail;
+      }
+      return preset;
+    }
+    catch (UnsupportedEncodingException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+  
+  
+  /**
+   * Sets the dictionary preset for streams in dictionary mode.<br>
+   * Applications may add their own vocabulary, for example the classnames
+   * of their database objects. The preset must be the same for the client and the server.
+   * Streams already created are not affected.
+   * 
+   * @param preset the dictionary preset
+   */
+  public static void setDictionaryPreset(byte[] preset) {
+    if (preset == null) {
+      throw new NullPointerException("preset must not be null");
+    }
+    dictionaryPreset = preset;
+  }
+  
+  
+  /**
+   * Gets the dictionary preset for streams in dictionary mode.
+   * 
+   * @return the preset
+   */
+  public static byte[] getDictionaryPreset() {
+    return dictionaryPreset;
+  }
+  
+  
+  /**
+   * Appends data to the history.
+   * 
+   * @param history the history buffer of {@link #HISTORY_SIZE}
+   * @param historyLen the number of bytes in history
+   * @param b the data
+   * @param off the offset in the data
+   * @param len the number of bytes
+   * @return the new number of bytes in history
+   */
+  static int appendHistory(byte[] history, int historyLen, byte[] b, int off, int len) {
+    if (len >= HISTORY_SIZE) {
+      System.arraycopy(b, off + len - HISTORY_SIZE, history, 0, HISTORY_SIZE);
+      return HISTORY_SIZE;
+    }
+    int keep = HISTORY_SIZE - len;
+    if (historyLen > keep) {
+      // drop the oldest bytes
+      System.arraycopy(history, historyLen - keep, history, 0, keep);
+      historyLen = keep;
+    }
+    System.arraycopy(b, off, history, historyLen, len);
+    return historyLen + len;
+  }
+  
+  
+  /**
+   * Creates the handshake for dictionary mode.
+   * 
+   * @param preset the dictionary preset
+   * @return the handshake data
+   */
+  static byte[] createHandshake(byte[] preset) {
+    Adler32 adler = new Adler32();
+    adler.update(preset, 0, preset.length);
+    int checksum = (int) adler.getValue();
+    byte[] handshake = new byte[HANDSHAKE_MAGIC.length + 4];
+    System.arraycopy(HANDSHAKE_MAGIC, 0, handshake, 0, HANDSHAKE_MAGIC.length);
+    handshake[HANDSHAKE_MAGIC.length]     = (byte) (checksum >>> 24);
+    handshake[HANDSHAKE_MAGIC.length + 1] = (byte) (checksum >>> 16);
+    handshake[HANDSHAKE_MAGIC.length + 2] = (byte) (checksum >>> 8);
+    handshake[HANDSHAKE_MAGIC.length + 3] = (byte) checksum;
+    return handshake;
+  }
+  
 
   private int minCompressSize;          // minimum packet size for compression
   private int bufSize;                  // buffer size
@@ -64,6 +201,9 @@ public class CompressedOutputStream extends FilterOutputStream {
   private int defLen;                   // number of bytes in defBuf
   private byte[] byteBuf = new byte[1]; // single byte buffer for write(b)
   private boolean closed;               // true if closed
+  private byte[] history;               // last uncompressed data (dictionary mode only)
+  private int historyLen;               // number of bytes in history
+  private byte[] handshake;             // handshake to send before the first packet, null if sent or no dictionary
   
   // for statistic only (Level.FINE must be enabled)
   private long totalWritten;            // total number of bytes written by application
@@ -76,8 +216,9 @@ public class CompressedOutputStream extends FilterOutputStream {
    * @param out the underlying output stream (e.g. from a socket)
    * @param bufSize the buffer size for compression. Packets larger than bufSize are split.
    * @param minCompressSize the minimum compressed packet size. Smaller packets pass the stream uncompressed.
+   * @param dictionary true if dictionary mode
    */
-  public CompressedOutputStream(OutputStream out, int bufSize, int minCompressSize) {
+  public CompressedOutputStream(OutputStream out, int bufSize, int minCompressSize, boolean dictionary) {
     
     super(out);
     
@@ -91,6 +232,24 @@ public class CompressedOutputStream extends FilterOutputStream {
     orgBuf        = new byte[bufSize];
     deflater      = new Deflater(Deflater.DEFAULT_COMPRESSION, true);  // with noWrap: less metadata -> better compression
     defBuf        = new byte[bufSize];
+    
+    if (dictionary) {
+      byte[] preset = dictionaryPreset;
+      history       = new byte[HISTORY_SIZE];
+      historyLen    = appendHistory(history, 0, preset, 0, preset.length);
+      handshake     = createHandshake(preset);
+    }
+  }
+  
+  /**
+   * Creates a compressed output stream.
+   *
+   * @param out the underlying output stream (e.g. from a socket)
+   * @param bufSize the buffer size for compression. Packets larger than bufSize are split.
+   * @param minCompressSize the minimum compressed packet size. Smaller packets pass the stream uncompressed.
+   */
+  public CompressedOutputStream(OutputStream out, int bufSize, int minCompressSize) {
+    this(out, bufSize, minCompressSize, false);
   }
   
   /**
@@ -102,6 +261,27 @@ public class CompressedOutputStream extends FilterOutputStream {
   public CompressedOutputStream(OutputStream out) {
     this(out, MAX_BUFFER_SIZE, 64);
   }
+  
+  /**
+   * Creates a compressed output stream with maximum allowed buffersize (32K-1) and
+   * a default minCompressSize of 64.
+   * 
+   * @param out the underlying output stream
+   * @param dictionary true if dictionary mode
+   */
+  public CompressedOutputStream(OutputStream out, boolean dictionary) {
+    this(out, MAX_BUFFER_SIZE, 64, dictionary);
+  }
+  
+  
+  /**
+   * Returns whether this stream runs in dictionary mode.
+   * 
+   * @return true if dictionary mode
+   */
+  public boolean isDictionary() {
+    return history != null;
+  }
 
 
   /**
@@ -223,9 +403,19 @@ public class CompressedOutputStream extends FilterOutputStream {
    */
   private void flushBuffer() throws IOException {
     if (orgLen > 0) {
+      if (handshake != null) {
+        // first packet in dictionary mode
+        writeHeader(handshake.length, false);
+        out.write(handshake);
+        handshake = null;
+      }
       if (orgLen >= minCompressSize) {
         // compress the data
         deflater.reset();   // sadly we must reset() cause of finish() :(
+        if (historyLen > 0) {
+          // continue where the last packet ended
+          deflater.setDictionary(history, 0, historyLen);
+        }
         deflater.setInput(orgBuf, 0, orgLen);
         deflater.finish();
         defLen = 0;
@@ -244,6 +434,9 @@ public class CompressedOutputStream extends FilterOutputStream {
           writeHeader(defLen, true);
           out.write(defBuf, 0, defLen);
           totalCompressed += defLen;
+          if (history != null) {
+            historyLen = appendHistory(history, historyLen, orgBuf, 0, orgLen);
+          }
           orgLen = 0;
           if (UtilGlobal.logger.isFinerLoggable()) {
             UtilGlobal.logger.fine("compressed packet written: " + defLen + "/" + orgLen);
@@ -256,6 +449,9 @@ public class CompressedOutputStream extends FilterOutputStream {
       writeHeader(orgLen, false);
       out.write(orgBuf, 0, orgLen);
       totalUncompressed += orgLen;
+      if (history != null) {
+        historyLen = appendHistory(history, historyLen, orgBuf, 0, orgLen);
+      }
       orgLen = 0;
       if (UtilGlobal.logger.isFinerLoggable()) {
         UtilGlobal.logger.fine("uncompressed packet written: " + orgLen);
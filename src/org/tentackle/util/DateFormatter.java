@@ -0,0 +1,431 @@
+/**
+ * Tentackle - a framework for java desktop applications
+ * Copyright (C) 2001-2008 Harald Krake, harald@krake.de, +49 7722 9508-0
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+// $Id$
+
+package org.tentackle.util;
+
+import java.text.DateFormat;
+import java.text.DateFormatSymbols;
+import java.text.DecimalFormatSymbols;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * Immutable and thread-safe formatter for dates.<br>
+ * 
+ * Unlike {@link SimpleDateFormat} a DateFormatter may be shared among threads
+ * without synchronization or cloning. The pattern is compiled once
+ * and the formatted text is appended directly to a {@link StringBuilder}.
+ * The pattern syntax is the same as for {@link SimpleDateFormat}.
+ * Patterns with letters other than {@code GyMdhHmsSEDkKa} are formatted
+ * by a per-thread {@link SimpleDateFormat}. Parsing always uses the per-thread
+ * {@link SimpleDateFormat}.
+ * <p>
+ * Formatters are cached per locale and pattern:
+ * <pre>
+ *   StringBuilder buf = new StringBuilder();
+ *   DateFormatter.getInstance("dd.MM.yyyy").format(date, buf);
+ * </pre>
+ * The timezone is the default timezone at the time the formatter was created.
+ * 
+ * @author harald
+ */
+public final class DateFormatter {
+  
+  /** cached formatters **/
+  private static final ConcurrentMap<String,DateFormatter> formatters = 
+          new ConcurrentHashMap<String,DateFormatter>();
+  
+  
+  /**
+   * Gets the formatter for a pattern and locale.
+   * 
+   * @param pattern the pattern
+   * @param locale the locale
+   * @return the formatter
+   */
+  public static DateFormatter getInstance(String pattern, Locale locale) {
+    String key = locale.toString() + '|' + pattern;
+    DateFormatter formatter = formatters.get(key);
+    if (formatter == null) {
+      formatter = new DateFormatter(pattern, locale);
+      DateFormatter oldFormatter = formatters.putIfAbsent(key, formatter);
+      if (oldFormatter != null) {
+        formatter = oldFormatter;
+      }
+    }
+    return formatter;
+  }
+  
+  /**
+   * Gets the formatter for a pattern and the default locale.
+   * 
+   * @param pattern the pattern
+   * @return the formatter
+   */
+  public static DateFormatter getInstance(String pattern) {
+    return getInstance(pattern, Locale.getDefault());
+  }
+  
+  
+  /**
+   * Clears the cache.<br>
+   * Necessary only if the default timezone has changed.
+   */
+  public static void clearCache() {
+    formatters.clear();
+  }
+  
+  
+  
+  // field types
+  private static final int LITERAL = 0;
+  private static final int ERA     = 1;
+  private static final int YEAR    = 2;
+  private static final int MONTH   = 3;
+  private static final int NUMBER  = 4;     // simple numeric calendar field
+  private static final int HOUR12  = 5;     // h: 1-12
+  private static final int HOUR24  = 6;     // k: 1-24
+  private static final int WEEKDAY = 7;
+  private static final int AMPM    = 8;
+  
+  
+  private final String pattern;             // the pattern
+  private final Locale locale;              // the locale
+  private final TimeZone timeZone;          // the timezone
+  private final int[] types;                // the field types
+  private final int[] fields;               // the calendar fields
+  private final int[] counts;               // the pattern letter counts
+  private final String[] literals;          // literal texts
+  private final String[] eras;              // localized symbols
+  private final String[] months;
+  private final String[] shortMonths;
+  private final String[] weekdays;
+  private final String[] shortWeekdays;
+  private final String[] ampms;
+  private final boolean compiled;           // false if pattern not supported by compiler
+  
+  private final ThreadLocal<Calendar> calendar = new ThreadLocal<Calendar>() {
+    @Override
+    protected Calendar initialValue() {
+      return new GregorianCalendar(timeZone, locale);
+    }
+  };
+  
+  private final ThreadLocal<DateFormat> dateFormat = new ThreadLocal<DateFormat>() {
+    @Override
+    protected DateFormat initialValue() {
+      SimpleDateFormat format = new SimpleDateFormat(pattern, locale);
+      format.setTimeZone(timeZone);
+      return format;
+    }
+  };
+  
+  
+  
+  /**
+   * Creates a formatter.
+   * 
+   * @param pattern the pattern
+   * @param locale the locale
+   */
+  private DateFormatter(String pattern, Locale locale) {
+    
+    this.pattern  = pattern;
+    this.locale   = locale;
+    this.timeZone = TimeZone.getDefault();
+    
+    DateFormatSymbols symbols = new DateFormatSymbols(locale);
+    eras          = symbols.getEras();
+    months        = symbols.getMonths();
+    shortMonths   = symbols.getShortMonths();
+    weekdays      = symbols.getWeekdays();
+    shortWeekdays = symbols.getShortWeekdays();
+    ampms         = symbols.getAmPmStrings();
+    
+    List<int[]> fieldList = new ArrayList<int[]>();
+    List<String> literalList = new ArrayList<String>();
+    boolean supported = true;
+    
+    int len = pattern.length();
+    int ndx = 0;
+    while (ndx < len) {
+      char c = pattern.charAt(ndx);
+      if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+        int count = 1;
+        while (ndx + count < len && pattern.charAt(ndx + count) == c) {
+          count++;
+        }
+        ndx += count;
+        int[] field;
+        switch (c) {
+          case 'G': field = new int[] { ERA, Calendar.ERA, count };                   break;
+          case 'y': field = new int[] { YEAR, Calendar.YEAR, count };                 break;
+          case 'M': field = new int[] { MONTH, Calendar.MONTH, count };               break;
+          case 'd': field = new int[] { NUMBER, Calendar.DAY_OF_MONTH, count };       break;
+          case 'H': field = new int[] { NUMBER, Calendar.HOUR_OF_DAY, count };        break;
+          case 'K': field = new int[] { NUMBER, Calendar.HOUR, count };               break;
+          case 'h': field = new int[] { HOUR12, Calendar.HOUR, count };               break;
+          case 'k': field = new int[] { HOUR24, Calendar.HOUR_OF_DAY, count };        break;
+          case 'm': field = new int[] { NUMBER, Calendar.MINUTE, count };             break;
+          case 's': field = new int[] { NUMBER, Calendar.SECOND, count };             break;
+          case 'S': field = new int[] { NUMBER, Calendar.MILLISECOND, count };        break;
+          case 'D': field = new int[] { NUMBER, Calendar.DAY_OF_YEAR, count };        break;
+          case 'E': field = new int[] { WEEKDAY, Calendar.DAY_OF_WEEK, count };       break;
+          case 'a': field = new int[] { AMPM, Calendar.AM_PM, count };                break;
+          default:  field = null;   // not supported
+        }
+        if (field == null) {
+          supported = false;
+          break;
+        }
+        fieldList.add(field);
+        literalList.add(null);
+      }
+      else  {
+        StringBuilder literal = new StringBuilder();
+        while (ndx < len) {
+          c = pattern.charAt(ndx);
+          if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+            break;
+          }
+          ndx++;
+          if (c == '\'') {
+            if (ndx < len && pattern.charAt(ndx) == '\'') {
+              // escaped quote
+              literal.append(c);
+              ndx++;
+            }
+            else  {
+              // quoted text
+              while (ndx < len) {
+                c = pattern.charAt(ndx++);
+                if (c == '\'') {
+                  if (ndx < len && pattern.charAt(ndx) == '\'') {
+                    literal.append(c);
+                    ndx++;
+                  }
+                  else  {
+                    break;
+                  }
+                }
+                else  {
+                  literal.append(c);
+                }
+              }
+            }
+          }
+          else  {
+            literal.append(c);
+          }
+        }
+        fieldList.add(new int[] { LITERAL, 0, 0 });
+        literalList.add(literal.toString());
+      }
+    }
+    
+    // localized digits are not supported by the compiler
+    compiled = supported && new DecimalFormatSymbols(locale).getZeroDigit() == '0';
+    int size = compiled ? fieldList.size() : 0;
+    types    = new int[size];
+    fields   = new int[size];
+    counts   = new int[size];
+    literals = new String[size];
+    for (int i=0; i < size; i++) {
+      int[] field = fieldList.get(i);
+      types[i]    = field[0];
+      fields[i]   = field[1];
+      counts[i]   = field[2];
+      literals[i] = literalList.get(i);
+    }
+  }
+  
+  
+  /**
+   * Gets the pattern.
+   * 
+   * @return the pattern
+   */
+  public String getPattern() {
+    return pattern;
+  }
+  
+  /**
+   * Gets the locale.
+   * 
+   * @return the locale
+   */
+  public Locale getLocale() {
+    return locale;
+  }
+  
+  
+  /**
+   * Formats a date and appends it to a string builder.
+   * 
+   * @param date the date
+   * @param buf the string builder
+   * @return the string builder
+   */
+  public StringBuilder format(Date date, StringBuilder buf) {
+    if (compiled) {
+      format(date.getTime(), buf);
+    }
+    else  {
+      buf.append(dateFormat.get().format(date));
+    }
+    return buf;
+  }
+  
+  
+  /**
+   * Formats a date.
+   * 
+   * @param date the date
+   * @return the formatted date
+   */
+  public String format(Date date) {
+    return format(date, new StringBuilder(pattern.length() + 8)).toString();
+  }
+  
+  
+  /**
+   * Formats a time given in milliseconds and appends it to a string builder.
+   * 
+   * @param millis the epochal milliseconds
+   * @param buf the string builder
+   * @return the string builder
+   */
+  public StringBuilder format(long millis, StringBuilder buf) {
+    if (!compiled) {
+      return format(new Date(millis), buf);
+    }
+    Calendar cal = calendar.get();
+    cal.setTimeInMillis(millis);
+    for (int i=0; i < types.length; i++) {
+      int count = counts[i];
+      switch (types[i]) {
+        case LITERAL:
+          buf.append(literals[i]);
+          break;
+          
+        case ERA:
+          buf.append(eras[cal.get(Calendar.ERA)]);
+          break;
+          
+        case YEAR:
+          int year = cal.get(Calendar.YEAR);
+          if (count == 2) {
+            appendNumber(buf, year % 100, 2);
+          }
+          else  {
+            appendNumber(buf, year, count);
+          }
+          break;
+          
+        case MONTH:
+          int month = cal.get(Calendar.MONTH);
+          if (count >= 4) {
+            buf.append(months[month]);
+          }
+          else if (count == 3) {
+            buf.append(shortMonths[month]);
+          }
+          else  {
+            appendNumber(buf, month + 1, count);
+          }
+          break;
+          
+        case HOUR12:
+          int hour = cal.get(Calendar.HOUR);
+          appendNumber(buf, hour == 0 ? 12 : hour, count);
+          break;
+          
+        case HOUR24:
+          hour = cal.get(Calendar.HOUR_OF_DAY);
+          appendNumber(buf, hour == 0 ? 24 : hour, count);
+          break;
+          
+        case WEEKDAY:
+          int day = cal.get(Calendar.DAY_OF_WEEK);
+          buf.append(count >= 4 ? weekdays[day] : shortWeekdays[day]);
+          break;
+          
+        case AMPM:
+          buf.append(ampms[cal.get(Calendar.AM_PM)]);
+          break;
+          
+        default:
+          appendNumber(buf, cal.get(fields[i]), count);
+      }
+    }
+    return buf;
+  }
+  
+  
+  /**
+   * Parses a string.<br>
+   * Same as {@link SimpleDateFormat#parse(java.lang.String)}.
+   * 
+   * @param text the string to parse
+   * @return the date
+   * @throws ParseException if text could not be parsed
+   */
+  public Date parse(String text) throws ParseException {
+    return dateFormat.get().parse(text);
+  }
+  
+  
+  @Override
+  public String toString() {
+    return pattern;
+  }
+  
+  
+  /**
+   * Appends a non-negative number left-filled with zeros.
+   */
+  private static void appendNumber(StringBuilder buf, int value, int minDigits) {
+    if (value < 10) {
+      for (int i=1; i < minDigits; i++) {
+        buf.append('0');
+      }
+      buf.append((char) ('0' + value));
+    }
+    else  {
+      int digits = value < 100 ? 2 : (value < 1000 ? 3 : (value < 10000 ? 4 : Integer.toString(value).length()));
+      for (int i=digits; i < minDigits; i++) {
+        buf.append('0');
+      }
+      buf.append(value);
+    }
+  }
+  
+}
@@ -0,0 +1,484 @@
+/**
+ * Tentackle - a framework for java desktop applications
+ * Copyright (C) 2001-2008 Harald Krake, harald@krake.de, +49 7722 9508-0
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+// $Id$
+
+package org.tentackle.util;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.ParseException;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * Immutable and thread-safe formatter for numbers.<br>
+ * 
+ * Unlike {@link DecimalFormat} a DecimalFormatter may be shared among threads
+ * without synchronization or cloning. The pattern is compiled once
+ * and the formatted text is appended directly to a {@link StringBuilder}.
+ * The compiler supports the plain numeric patterns used throughout tentackle
+ * such as {@link StringHelper#integerPattern}, {@link StringHelper#floatDoublePattern}
+ * and {@link StringHelper#moneyPattern}, i.e. grouping, zero- and optional digits
+ * in the integer and fraction part. Rounding is {@link RoundingMode#HALF_EVEN}
+ * as in {@link DecimalFormat}.
+ * All other patterns (prefixes, suffixes, percent, exponents, etc...) and
+ * parsing are handled by a per-thread {@link DecimalFormat}.
+ * <p>
+ * Formatters are cached per locale and pattern:
+ * <pre>
+ *   StringBuilder buf = new StringBuilder();
+ *   DecimalFormatter.getInstance(StringHelper.moneyPattern).format(money, buf);
+ * </pre>
+ * 
+ * @author harald
+ */
+public final class DecimalFormatter {
+  
+  /** cached formatters **/
+  private static final ConcurrentMap<String,DecimalFormatter> formatters = 
+          new ConcurrentHashMap<String,DecimalFormatter>();
+  
+  
+  /**
+   * Gets the formatter for a pattern and locale.
+   * 
+   * @param pattern the pattern
+   * @param locale the locale
+   * @return the formatter
+   */
+  public static DecimalFormatter getInstance(String pattern, Locale locale) {
+    String key = locale.toString() + '|' + pattern;
+    DecimalFormatter formatter = formatters.get(key);
+    if (formatter == null) {
+      formatter = new DecimalFormatter(pattern, locale);
+      DecimalFormatter oldFormatter = formatters.putIfAbsent(key, formatter);
+      if (oldFormatter != null) {
+        formatter = oldFormatter;
+      }
+    }
+    return formatter;
+  }
+  
+  /**
+   * Gets the formatter for a pattern and the default locale.
+   * 
+   * @param pattern the pattern
+   * @return the formatter
+   */
+  public static DecimalFormatter getInstance(String pattern) {
+    return getInstance(pattern, Locale.getDefault());
+  }
+  
+  
+  
+  private static final BigDecimal MAX_LONG = BigDecimal.valueOf(Long.MAX_VALUE);
+  
+  
+  private final String pattern;             // the pattern
+  private final Locale locale;              // the locale
+  private final boolean compiled;           // false if pattern not supported by compiler
+  private final int minIntegerDigits;       // minimum number of integer digits
+  private final int minFractionDigits;      // minimum number of fraction digits
+  private final int maxFractionDigits;      // maximum number of fraction digits
+  private final int groupingSize;           // grouping size, 0 if no grouping
+  private final char zeroDigit;             // localized symbols
+  private final char groupingSeparator;
+  private final char decimalSeparator;
+  private final char minusSign;
+  
+  private final ThreadLocal<DecimalFormat> decimalFormat = new ThreadLocal<DecimalFormat>() {
+    @Override
+    protected DecimalFormat initialValue() {
+      return new DecimalFormat(pattern, new DecimalFormatSymbols(locale));
+    }
+  };
+  
+  private final ThreadLocal<DecimalFormat> parseFormat = new ThreadLocal<DecimalFormat>() {
+    @Override
+    protected DecimalFormat initialValue() {
+      DecimalFormat format = new DecimalFormat(pattern, new DecimalFormatSymbols(locale));
+      format.setParseBigDecimal(true);
+      return format;
+    }
+  };
+  
+  
+  
+  /**
+   * Creates a formatter.
+   * 
+   * @param pattern the pattern
+   * @param locale the locale
+   */
+  private DecimalFormatter(String pattern, Locale locale) {
+    
+    this.pattern = pattern;
+    this.locale  = locale;
+    
+    DecimalFormatSymbols symbols = new DecimalFormatSymbols(locale);
+    zeroDigit         = symbols.getZeroDigit();
+    groupingSeparator = symbols.getGroupingSeparator();
+    decimalSeparator  = symbols.getDecimalSeparator();
+    minusSign         = symbols.getMinusSign();
+    
+    // integer part: [#,]*[0,]* 
+    int len = pattern.length();
+    int ndx = 0;
+    int minInt = 0;
+    int lastGrouping = -1;
+    boolean supported = true;
+    while (ndx < len) {
+      char c = pattern.charAt(ndx);
+      if (c == '#') {
+        if (minInt > 0) {
+          supported = false;    // # after 0
+        }
+      }
+      else if (c == '0') {
+        minInt++;
+      }
+      else if (c == ',') {
+        lastGrouping = ndx;
+      }
+      else  {
+        break;
+      }
+      ndx++;
+    }
+    int grouping = lastGrouping >= 0 ? ndx - lastGrouping - 1 : 0;
+    
+    // fraction part: [.[0]*[#]*]
+    int minFrac = 0;
+    int maxFrac = 0;
+    if (ndx < len && pattern.charAt(ndx) == '.') {
+      ndx++;
+      while (ndx < len) {
+        char c = pattern.charAt(ndx);
+        if (c == '0') {
+          if (maxFrac > minFrac) {
+            supported = false;    // 0 after #
+          }
+          minFrac++;
+          maxFrac++;
+        }
+        else if (c == '#') {
+          maxFrac++;
+        }
+        else  {
+          break;
+        }
+        ndx++;
+      }
+    }
+    
+    minIntegerDigits  = minInt;
+    minFractionDigits = minFrac;
+    maxFractionDigits = maxFrac;
+    groupingSize      = grouping;
+    compiled = supported && ndx == len && minInt > 0 && (lastGrouping < 0 || grouping > 0);
+  }
+  
+  
+  /**
+   * Gets the pattern.
+   * 
+   * @return the pattern
+   */
+  public String getPattern() {
+    return pattern;
+  }
+  
+  /**
+   * Gets the locale.
+   * 
+   * @return the locale
+   */
+  public Locale getLocale() {
+    return locale;
+  }
+  
+  
+  /**
+   * Formats a number and appends it to a string builder.
+   * 
+   * @param number the number
+   * @param buf the string builder
+   * @return the string builder
+   */
+  public StringBuilder format(Number number, StringBuilder buf) {
+    if (compiled) {
+      if (number instanceof BigDecimal) {
+        return format((BigDecimal) number, minFractionDigits, maxFractionDigits, false, buf);
+      }
+      if (number instanceof Long || number instanceof Integer ||
+          number instanceof Short || number instanceof Byte) {
+        return format(number.longValue(), buf);
+      }
+      if (number instanceof Double || number instanceof Float) {
+        return format(number.doubleValue(), buf);
+      }
+      if (number instanceof BigInteger) {
+        return format(new BigDecimal((BigInteger) number), minFractionDigits, maxFractionDigits, false, buf);
+      }
+    }
+    return buf.append(decimalFormat.get().format(number));
+  }
+  
+  
+  /**
+   * Formats a number.
+   * 
+   * @param number the number
+   * @return the formatted number
+   */
+  public String format(Number number) {
+    return format(number, new StringBuilder(24)).toString();
+  }
+  
+  
+  /**
+   * Formats a long and appends it to a string builder.
+   * 
+   * @param value the value
+   * @param buf the string builder
+   * @return the string builder
+   */
+  public StringBuilder format(long value, StringBuilder buf) {
+    if (!compiled || value == Long.MIN_VALUE) {
+      return buf.append(decimalFormat.get().format(value));
+    }
+    if (value < 0) {
+      buf.append(minusSign);
+      value = -value;
+    }
+    int digits = 1;
+    for (long v = value / 10; v > 0; v /= 10) {
+      digits++;
+    }
+    appendInteger(buf, value, digits);
+    if (minFractionDigits > 0) {
+      buf.append(decimalSeparator);
+      for (int i=0; i < minFractionDigits; i++) {
+        buf.append(zeroDigit);
+      }
+    }
+    return buf;
+  }
+  
+  
+  /**
+   * Formats a double and appends it to a string builder.
+   * 
+   * @param value the value
+   * @param buf the string builder
+   * @return the string builder
+   */
+  public StringBuilder format(double value, StringBuilder buf) {
+    if (!compiled || Double.isNaN(value) || Double.isInfinite(value)) {
+      return buf.append(decimalFormat.get().format(value));
+    }
+    boolean negative = value < 0.0d || (value == 0.0d && 1.0d / value < 0.0d);
+    return format(new BigDecimal(value), minFractionDigits, maxFractionDigits, negative, buf);
+  }
+  
+  
+  /**
+   * Formats a money value and appends it to a string builder.<br>
+   * The fraction digits are taken from the scale of the money value
+   * (see {@link org.tentackle.ui.FormHelper#setScale}).
+   * 
+   * @param money the money value
+   * @param buf the string builder
+   * @return the string builder
+   */
+  public StringBuilder format(BMoney money, StringBuilder buf) {
+    return format(money, money.scale(), buf);
+  }
+  
+  
+  /**
+   * Formats a decimal with a given scale and appends it to a string builder.<br>
+   * The scale overrides the fraction digits of the pattern.
+   * 
+   * @param value the value
+   * @param scale the number of fraction digits
+   * @param buf the string builder
+   * @return the string builder
+   */
+  public StringBuilder format(BigDecimal value, int scale, StringBuilder buf) {
+    if (compiled) {
+      return format(value, scale, scale, false, buf);
+    }
+    DecimalFormat format = (DecimalFormat) decimalFormat.get().clone();
+    format.setMinimumFractionDigits(scale);
+    format.setMaximumFractionDigits(scale);
+    return buf.append(format.format(value));
+  }
+  
+  
+  /**
+   * Parses a string.<br>
+   * Same as {@link DecimalFormat#parse(java.lang.String)} with {@link DecimalFormat#setParseBigDecimal}.
+   * 
+   * @param text the string to parse
+   * @return the decimal
+   * @throws ParseException if text could not be parsed
+   */
+  public BigDecimal parse(String text) throws ParseException {
+    return (BigDecimal) parseFormat.get().parse(text);
+  }
+  
+  
+  @Override
+  public String toString() {
+    return pattern;
+  }
+  
+  
+  
+  /**
+   * Formats a decimal.
+   * 
+   * @param value the value
+   * @param minFrac the minimum fraction digits
+   * @param maxFrac the maximum fraction digits
+   * @param negative true if value is a negative zero
+   * @param buf the string builder
+   * @return the string builder
+   */
+  private StringBuilder format(BigDecimal value, int minFrac, int maxFrac, boolean negative, StringBuilder buf) {
+    if (value.signum() < 0) {
+      negative = true;
+      value = value.negate();
+    }
+    if (value.scale() > maxFrac) {
+      value = value.setScale(maxFrac, RoundingMode.HALF_EVEN);
+    }
+    if (negative) {
+      buf.append(minusSign);
+    }
+    
+    int scale = value.scale();
+    if (scale <= 0 && value.compareTo(MAX_LONG) <= 0) {
+      // fast path for integral values
+      long lval = value.longValue();
+      int digits = 1;
+      for (long v = lval / 10; v > 0; v /= 10) {
+        digits++;
+      }
+      appendInteger(buf, lval, digits);
+      scale = 0;
+    }
+    else  {
+      String digits = value.unscaledValue().toString();
+      if (scale < 0) {
+        // positive exponent
+        StringBuilder sb = new StringBuilder(digits);
+        for (int i=scale; i < 0; i++) {
+          sb.append('0');
+        }
+        digits = sb.toString();
+        scale = 0;
+      }
+      int intLen = digits.length() - scale;
+      // strip trailing zeros down to the minimum
+      int fracLen = scale;
+      while (fracLen > minFrac && digitAt(digits, intLen + fracLen - 1) == 0) {
+        fracLen--;
+      }
+      appendInteger(buf, digits, intLen);
+      if (fracLen > 0 || minFrac > 0) {
+        buf.append(decimalSeparator);
+        for (int i=0; i < fracLen; i++) {
+          buf.append((char) (zeroDigit + digitAt(digits, intLen + i)));
+        }
+      }
+      for (int i=fracLen; i < minFrac; i++) {
+        buf.append(zeroDigit);
+      }
+      return buf;
+    }
+    
+    if (minFrac > 0) {
+      buf.append(decimalSeparator);
+      for (int i=0; i < minFrac; i++) {
+        buf.append(zeroDigit);
+      }
+    }
+    return buf;
+  }
+  
+  
+  /**
+   * Appends the integer part of a non-negative long.
+   */
+  private void appendInteger(StringBuilder buf, long value, int digits) {
+    int total = Math.max(digits, minIntegerDigits);
+    long divisor = 1;
+    for (int i=1; i < digits; i++) {
+      divisor *= 10;
+    }
+    for (int pos=total; pos > 0; pos--) {
+      if (pos > digits) {
+        buf.append(zeroDigit);
+      }
+      else  {
+        buf.append((char) (zeroDigit + (value / divisor) % 10));
+        divisor /= 10;
+      }
+      if (groupingSize > 0 && pos > 1 && (pos - 1) % groupingSize == 0) {
+        buf.append(groupingSeparator);
+      }
+    }
+  }
+  
+  
+  /**
+   * Gets the digit at given index, 0 if index is negative (leading zeros).
+   */
+  private static int digitAt(String digits, int ndx) {
+    return ndx < 0 ? 0 : digits.charAt(ndx) - '0';
+  }
+  
+  
+  /**
+   * Appends the integer part of a digit string.
+   */
+  private void appendInteger(StringBuilder buf, String digits, int intLen) {
+    int total = Math.max(intLen, minIntegerDigits);
+    for (int pos=total; pos > 0; pos--) {
+      if (pos > intLen) {
+        buf.append(zeroDigit);
+      }
+      else  {
+        buf.append((char) (zeroDigit + digitAt(digits, intLen - pos)));
+      }
+      if (groupingSize > 0 && pos > 1 && (pos - 1) % groupingSize == 0) {
+        buf.append(groupingSeparator);
+      }
+    }
+  }
+  
+}
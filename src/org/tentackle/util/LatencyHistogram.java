@@ -0,0 +1,191 @@
+/**
+ * Tentackle - a framework for java desktop applications
+ * Copyright (C) 2001-2008 Harald Krake, harald@krake.de, +49 7722 9508-0
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+// $Id$
+
+package org.tentackle.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Histogram of latencies.<br>
+ * 
+ * The latencies are counted in buckets of powers of 2 microseconds,
+ * from 1 microsecond up to about 16 seconds, the last bucket is unlimited.
+ * Recording is lock-free.
+ *
+ * @author harald
+ */
+public class LatencyHistogram {
+  
+  /** upper limits of the histogram buckets in microseconds, the last bucket is unlimited **/
+  public static final long[] BUCKET_LIMITS;
+  
+  static {
+    BUCKET_LIMITS = new long[26];
+    for (int i=0; i < BUCKET_LIMITS.length - 1; i++) {
+      BUCKET_LIMITS[i] = 1L << i;
+    }
+    BUCKET_LIMITS[BUCKET_LIMITS.length - 1] = Long.MAX_VALUE;
+  }
+  
+  
+  private final AtomicLongArray histogram;      // number of recordings per bucket
+  private final AtomicLong totalNanos;          // sum of all latencies
+  private final AtomicLong maxNanos;            // highest latency
+  
+  
+  /**
+   * Creates an empty histogram.
+   */
+  public LatencyHistogram() {
+    histogram  = new AtomicLongArray(BUCKET_LIMITS.length);
+    totalNanos = new AtomicLong();
+    maxNanos   = new AtomicLong();
+  }
+  
+  
+  /**
+   * Records a latency.
+   * 
+   * @param nanos the latency in nanoseconds
+   */
+  public void record(long nanos) {
+    long micros = nanos / 1000;
+    int bucket = 0;
+    while (micros >= BUCKET_LIMITS[bucket]) {
+      bucket++;
+    }
+    histogram.incrementAndGet(bucket);
+    totalNanos.addAndGet(nanos);
+    long max = maxNanos.get();
+    while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+      max = maxNanos.get();
+    }
+  }
+  
+  
+  /**
+   * Gets the number of recordings per bucket.
+   * 
+   * @return the counts according to {@link #BUCKET_LIMITS}
+   */
+  public long[] getCounts() {
+    long[] counts = new long[histogram.length()];
+    for (int i=0; i < counts.length; i++) {
+      counts[i] = histogram.get(i);
+    }
+    return counts;
+  }
+  
+  
+  /**
+   * Gets the number of recordings.
+   * 
+   * @return the number of latencies recorded
+   */
+  public long getCount() {
+    long count = 0;
+    for (int i=0; i < histogram.length(); i++) {
+      count += histogram.get(i);
+    }
+    return count;
+  }
+  
+  
+  /**
+   * Gets the sum of all latencies.
+   * 
+   * @return the total in nanoseconds
+   */
+  public long getTotalNanos() {
+    return totalNanos.get();
+  }
+  
+  
+  /**
+   * Gets the highest latency.
+   * 
+   * @return the maximum in nanoseconds
+   */
+  public long getMaxNanos() {
+    return maxNanos.get();
+  }
+  
+  
+  /**
+   * Gets the average latency.
+   * 
+   * @return the average in nanoseconds, 0 if nothing recorded
+   */
+  public long getAverageNanos() {
+    long count = getCount();
+    return count == 0 ? 0 : totalNanos.get() / count;
+  }
+  
+  
+  /**
+   * Gets an upper bound of a percentile.
+   * 
+   * @param percent the percentile, e.g. 99.0
+   * @return the upper limit of the bucket holding the percentile in microseconds, 0 if nothing recorded
+   */
+  public long getPercentileMicros(double percent) {
+    long[] counts = getCounts();
+    long count = 0;
+    for (long c: counts) {
+      count += c;
+    }
+    if (count == 0) {
+      return 0;
+    }
+    long limit = (long) Math.ceil(count * percent / 100.0);
+    long sum = 0;
+    for (int i=0; i < counts.length; i++) {
+      sum += counts[i];
+      if (sum >= limit) {
+        return BUCKET_LIMITS[i];
+      }
+    }
+    return BUCKET_LIMITS[BUCKET_LIMITS.length - 1];
+  }
+  
+  
+  /**
+   * Clears the histogram.<br>
+   * Concurrent recordings may get lost.
+   */
+  public void reset() {
+    for (int i=0; i < histogram.length(); i++) {
+      histogram.set(i, 0);
+    }
+    totalNanos.set(0);
+    maxNanos.set(0);
+  }
+  
+  
+  @Override
+  public String toString() {
+    return "count=" + getCount() + ", avg=" + getAverageNanos() / 1000 + "us, p99<=" + 
+           getPercentileMicros(99.0) + "us, max=" + getMaxNanos() / 1000 + "us";
+  }
+  
+}
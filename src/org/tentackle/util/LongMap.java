@@ -0,0 +1,227 @@
+/**
+ * Tentackle - a framework for java desktop applications
+ * Copyright (C) 2001-2008 Harald Krake, harald@krake.de, +49 7722 9508-0
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+// $Id$
+
+package org.tentackle.util;
+
+/**
+ * Fast hash map with long primitives as keys.<br>
+ * 
+ * Replacement for Map&lt;Long,V&gt; without boxing the keys.
+ * Uses open addressing with linear probing, so lookups don't
+ * allocate any objects. Null values are not allowed.
+ * The map is not synchronized.
+ * 
+ * @param <V> the value type
+ * @author harald
+ */
+public class LongMap<V> {
+  
+  private long[] keys;        // the keys
+  private Object[] values;    // the values, null = free slot
+  private int count;          // number of entries
+  private int threshold;      // resize when count reaches threshold
+  
+  
+  /**
+   * Creates an empty map.
+   *
+   * @param size the expected number of entries
+   */
+  public LongMap(int size) {
+    int capacity = 16;
+    while (capacity * 3 / 4 < size) {
+      capacity <<= 1;
+    }
+    allocate(capacity);
+  }
+  
+  /**
+   * Creates an empty map with a default initial size.
+   */
+  public LongMap() {
+    this(12);
+  }
+  
+  
+  /**
+   * Gets the value for a key.
+   *
+   * @param key the key
+   * @return the value, null if no such key
+   */
+  @SuppressWarnings("unchecked")
+  public V get(long key) {
+    int mask = keys.length - 1;
+    int ndx = hash(key) & mask;
+    Object value;
+    while ((value = values[ndx]) != null) {
+      if (keys[ndx] == key) {
+        return (V) value;
+      }
+      ndx = (ndx + 1) & mask;
+    }
+    return null;
+  }
+  
+  
+  /**
+   * Checks whether a key is in the map.
+   *
+   * @param key the key
+   * @return true if key exists
+   */
+  public boolean containsKey(long key) {
+    return get(key) != null;
+  }
+  
+  
+  /**
+   * Associates a value with a key.
+   *
+   * @param key the key
+   * @param value the value, null to remove
+   * @return the old value, null if none
+   */
+  @SuppressWarnings("unchecked")
+  public V put(long key, V value) {
+    if (value == null) {
+      return remove(key);
+    }
+    int mask = keys.length - 1;
+    int ndx = hash(key) & mask;
+    Object old;
+    while ((old = values[ndx]) != null) {
+      if (keys[ndx] == key) {
+        values[ndx] = value;
+        return (V) old;
+      }
+      ndx = (ndx + 1) & mask;
+    }
+    keys[ndx] = key;
+    values[ndx] = value;
+    if (++count >= threshold) {
+      resize(keys.length << 1);
+    }
+    return null;
+  }
+  
+  
+  /**
+   * Removes a key.
+   *
+   * @param key the key
+   * @return the removed value, null if no such key
+   */
+  @SuppressWarnings("unchecked")
+  public V remove(long key) {
+    int mask = keys.length - 1;
+    int ndx = hash(key) & mask;
+    Object old;
+    while ((old = values[ndx]) != null) {
+      if (keys[ndx] == key) {
+        // shift following entries of the probe sequence back
+        int free = ndx;
+        for (;;) {
+          ndx = (ndx + 1) & mask;
+          if (values[ndx] == null) {
+            break;
+          }
+          int home = hash(keys[ndx]) & mask;
+          // move the entry if its home slot is not in ]free,ndx]
+          if (free <= ndx ? (home <= free || home > ndx) : (home <= free && home > ndx)) {
+            keys[free] = keys[ndx];
+            values[free] = values[ndx];
+            free = ndx;
+          }
+        }
+        values[free] = null;
+        count--;
+        return (V) old;
+      }
+      ndx = (ndx + 1) & mask;
+    }
+    return null;
+  }
+  
+  
+  /**
+   * Gets the number of entries.
+   *
+   * @return the size
+   */
+  public int size() {
+    return count;
+  }
+  
+  
+  /**
+   * Checks whether the map is empty.
+   *
+   * @return true if empty
+   */
+  public boolean isEmpty() {
+    return count == 0;
+  }
+  
+  
+  /**
+   * Removes all entries.
+   */
+  public void clear() {
+    for (int i=0; i < values.length; i++) {
+      values[i] = null;
+    }
+    count = 0;
+  }
+  
+  
+  
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = new Object[capacity];
+    threshold = capacity * 3 / 4;
+  }
+  
+  
+  private void resize(int capacity) {
+    long[] oldKeys = keys;
+    Object[] oldValues = values;
+    allocate(capacity);
+    int mask = capacity - 1;
+    for (int i=0; i < oldValues.length; i++) {
+      if (oldValues[i] != null) {
+        int ndx = hash(oldKeys[i]) & mask;
+        while (values[ndx] != null) {
+          ndx = (ndx + 1) & mask;
+        }
+        keys[ndx] = oldKeys[i];
+        values[ndx] = oldValues[i];
+      }
+    }
+  }
+  
+  
+  private static int hash(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+  
+}
@@ -24,10 +24,8 @@ package org.tentackle.util;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
-import org.tentackle.ui.FormHelper;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.text.DecimalFormat;
 
 /**
  * Some handy methods for strings.
@@ -69,6 +67,23 @@ public class StringHelper {
   public static DateFormat shortDateFormat;
   /** localized {@link DateFormat} for a short time **/
   public static DateFormat shortTimeFormat;
+  
+  // Notice: the DateFormats above are not thread-safe. Use the formatters below instead.
+  
+  /** localized thread-safe formatter for a timestamp **/
+  public static volatile DateFormatter timestampFormatter;
+  /** localized thread-safe formatter for a date **/
+  public static volatile DateFormatter dateFormatter;
+  /** localized thread-safe formatter for a time **/
+  public static volatile DateFormatter timeFormatter;
+  /** localized thread-safe formatter for a short timestamp **/
+  public static volatile DateFormatter shortTimestampFormatter;
+  /** localized thread-safe formatter for a short date **/
+  public static volatile DateFormatter shortDateFormatter;
+  /** localized thread-safe formatter for a short time **/
+  public static volatile DateFormatter shortTimeFormatter;
+  /** localized thread-safe formatter for money values **/
+  public static volatile DecimalFormatter moneyFormatter;
 
   /** short letter for "debit" (soll) **/
   public static char debitLetter;
@@ -98,6 +113,14 @@ public class StringHelper {
     shortDateFormat       = new SimpleDateFormat(shortDatePattern);
     shortTimeFormat       = new SimpleDateFormat(shortTimePattern);
     
+    timestampFormatter      = DateFormatter.getInstance(timestampPattern);
+    dateFormatter           = DateFormatter.getInstance(datePattern);
+    timeFormatter           = DateFormatter.getInstance(timePattern);
+    shortTimestampFormatter = DateFormatter.getInstance(shortTimestampPattern);
+    shortDateFormatter      = DateFormatter.getInstance(shortDatePattern);
+    shortTimeFormatter      = DateFormatter.getInstance(shortTimePattern);
+    moneyFormatter          = DecimalFormatter.getInstance(moneyPattern);
+    
     debitLetter = Locales.bundle.getString("debitLetter").charAt(0);
     debitString = " " + debitLetter + "    ";
     creditLetter = Locales.bundle.getString("creditLetter").charAt(0);
@@ -493,8 +516,6 @@ public class StringHelper {
   
   
   
-  private static DecimalFormat betragFormat = new DecimalFormat(",##0");
-
   
   /**
    * Translates a money value to a string with a suffix
@@ -509,9 +530,14 @@ public class StringHelper {
     if (money == null) {
       return emptyString;
     }
-    FormHelper.setScale(betragFormat, money.scale());
-    return debit ? (betragFormat.format(money) + debitString) : 
-                   ("    " + betragFormat.format(money) + creditString);     
+    StringBuilder buf = new StringBuilder(32);
+    if (debit) {
+      moneyFormatter.format(money, buf).append(debitString);
+    }
+    else  {
+      moneyFormatter.format(money, buf.append("    ")).append(creditString);
+    }
+    return buf.toString();
   }
   
   